@@ -0,0 +1,14 @@
+package com.jeeex.objregex;
+
+/**
+ * A {@link com.google.common.base.Predicate} of {@code double} values, which
+ * are never boxed.
+ *
+ * @see DoubleObjectPattern
+ */
+public interface DoublePredicate {
+	/**
+	 * Applies this predicate to the given value.
+	 */
+	public boolean apply(double input);
+}
@@ -0,0 +1,48 @@
+package com.jeeex.objregex;
+
+import java.util.EnumSet;
+
+import com.google.common.base.Predicate;
+
+/**
+ * An {@link ObjectPattern} over enum values, whose identifiers stand for sets
+ * of constants.
+ * <p>
+ * Each identifier is resolved to an {@link EnumSet} when it is assigned - a
+ * predicate is called once per constant then, and never while matching. The
+ * pattern is then compiled to a minimal DFA whose transition table is indexed
+ * by {@link Enum#ordinal()}, so that matching an element is a single array
+ * lookup. "null" only matches {@code null}, which has a column of its own.
+ * <p>
+ * The table cannot be built for a pattern that refers to other patterns, or
+ * that has counted repetitions or more identifiers than
+ * {@link com.jeeex.objregex.impl.DefaultRegexFactory#setDfaMemoryLimit(int)
+ * the memory limit} allows. Such patterns are matched as usual, by testing
+ * the sets of the identifiers.
+ *
+ * @param <E>
+ * @see RegexFactory#compileEnum(String, Class)
+ */
+public interface EnumObjectPattern<E extends Enum<E>> extends ObjectPattern<E> {
+	/**
+	 * Pairs up the given identifier and set of constants in this pattern.
+	 * The set is copied.
+	 *
+	 * @throws NullPointerException
+	 *             If any of the arguments are null.
+	 */
+	public void set(String identifier, EnumSet<E> values)
+			throws NullPointerException;
+
+	/**
+	 * Pairs up the given identifier and the constants that the predicate
+	 * accepts in this pattern. The predicate is called once per constant, and
+	 * once with {@code null}, which it does not accept if it throws an
+	 * exception. It is not kept.
+	 *
+	 * @throws NullPointerException
+	 *             If any of the arguments are null.
+	 */
+	public void set(String identifier, Predicate<E> predicate)
+			throws NullPointerException;
+}
@@ -0,0 +1,71 @@
+package com.jeeex.objregex;
+
+import java.nio.IntBuffer;
+
+/**
+ * An {@link ObjectPattern} over sequences of {@code int} values, whose
+ * identifiers are bound to {@link IntPredicate}s. The values are never
+ * boxed, so matching does not allocate per element.
+ * <p>
+ * The regular expression is compiled and run as for an {@link ObjectPattern},
+ * and "null" matches no value.
+ *
+ * @see RegexFactory#compileInt(String)
+ */
+public interface IntObjectPattern {
+	/**
+	 * Determines whether the given array matches against the underlying
+	 * regular expression.
+	 *
+	 * @throws NullPointerException
+	 *             if the input is {@code null}.
+	 */
+	public boolean match(int[] input) throws NullPointerException;
+
+	/**
+	 * Determines whether the range of the given array from {@code fromIndex},
+	 * inclusive, to {@code toIndex}, exclusive, matches against the
+	 * underlying regular expression.
+	 *
+	 * @throws NullPointerException
+	 *             if the input is {@code null}.
+	 * @throws IndexOutOfBoundsException
+	 *             if {@code fromIndex < 0}, {@code toIndex > input.length} or
+	 *             {@code fromIndex > toIndex}.
+	 */
+	public boolean match(int[] input, int fromIndex, int toIndex)
+			throws NullPointerException, IndexOutOfBoundsException;
+
+	/**
+	 * Determines whether the remaining values of the given buffer match
+	 * against the underlying regular expression. The position of the buffer
+	 * is not changed.
+	 *
+	 * @throws NullPointerException
+	 *             if the input is {@code null}.
+	 */
+	public boolean match(IntBuffer input) throws NullPointerException;
+
+	/**
+	 * Pairs up the given identifier and predicate in this pattern.
+	 *
+	 * @throws NullPointerException
+	 *             If any of the arguments are null.
+	 */
+	public void set(String identifier, IntPredicate predicate)
+			throws NullPointerException;
+
+	/**
+	 * Pairs up the given identifier and given pattern in this pattern.
+	 *
+	 * @throws NullPointerException
+	 *             If any of the arguments are null.
+	 */
+	public void set(String identifier, String pattern)
+			throws NullPointerException;
+
+	/**
+	 * Returns the underlying regular expression string.
+	 */
+	public String getRegex();
+}
@@ -0,0 +1,14 @@
+package com.jeeex.objregex;
+
+/**
+ * A {@link com.google.common.base.Predicate} of {@code int} values, which
+ * are never boxed.
+ *
+ * @see IntObjectPattern
+ */
+public interface IntPredicate {
+	/**
+	 * Applies this predicate to the given value.
+	 */
+	public boolean apply(int input);
+}
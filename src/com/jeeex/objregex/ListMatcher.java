@@ -0,0 +1,121 @@
+package com.jeeex.objregex;
+
+import java.util.List;
+
+/**
+ * Finds the occurrences of an {@link ObjectPattern} inside a list, as
+ * {@link java.util.regex.Matcher} does for strings.
+ * <p>
+ * Each call to {@link #find()} scans the list forward from the end of the
+ * previous match, in a single pass, and stops at the leftmost match - the one
+ * that starts first, and among those, the longest. "^" only matches at the
+ * beginning of the list, and "$" at its end.
+ * <p>
+ * Every parenthesized expression of the pattern is a capture group, numbered
+ * from 1 in the order of its opening parenthesis. Group 0 is the whole match.
+ * When a group can match several spans, the one that begins first is
+ * reported, then the longest; a group that is repeated reports its last
+ * repetition. The groups are only resolved when they are requested.
+ * <p>
+ * A matcher shares the state of its pattern, so neither is thread safe. The
+ * list must not be modified while it is being matched.
+ *
+ * @param <T>
+ * @see ObjectPattern#matcher(List)
+ */
+public interface ListMatcher<T> {
+	/**
+	 * Finds the next match, starting at the end of the previous match, or at
+	 * the beginning of the list after a {@link #reset()}. If the previous
+	 * match was empty, the search starts one element after it.
+	 *
+	 * @return {@code true} if a match was found.
+	 */
+	public boolean find();
+
+	/**
+	 * Resets this matcher, then finds the first match that starts at or after
+	 * the given index.
+	 *
+	 * @return {@code true} if a match was found.
+	 * @throws IndexOutOfBoundsException
+	 *             if {@code fromIndex < 0} or {@code fromIndex > size}.
+	 */
+	public boolean find(int fromIndex) throws IndexOutOfBoundsException;
+
+	/**
+	 * Returns the index of the first element of the last match.
+	 *
+	 * @throws IllegalStateException
+	 *             if the last call to {@link #find()} did not find a match.
+	 */
+	public int start() throws IllegalStateException;
+
+	/**
+	 * Returns the index after the last element of the last match.
+	 *
+	 * @throws IllegalStateException
+	 *             if the last call to {@link #find()} did not find a match.
+	 */
+	public int end() throws IllegalStateException;
+
+	/**
+	 * Returns the elements of the last match, as an unmodifiable view of the
+	 * list. Nothing is copied.
+	 *
+	 * @throws IllegalStateException
+	 *             if the last call to {@link #find()} did not find a match.
+	 */
+	public List<T> group() throws IllegalStateException;
+
+	/**
+	 * Returns the number of capture groups of the pattern, not counting group
+	 * 0.
+	 */
+	public int groupCount();
+
+	/**
+	 * Returns the index of the first element of the given group in the last
+	 * match, or -1 if the group did not take part in the match.
+	 *
+	 * @throws IllegalStateException
+	 *             if the last call to {@link #find()} did not find a match.
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no such group.
+	 */
+	public int start(int group) throws IllegalStateException,
+			IndexOutOfBoundsException;
+
+	/**
+	 * Returns the index after the last element of the given group in the last
+	 * match, or -1 if the group did not take part in the match.
+	 *
+	 * @throws IllegalStateException
+	 *             if the last call to {@link #find()} did not find a match.
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no such group.
+	 */
+	public int end(int group) throws IllegalStateException,
+			IndexOutOfBoundsException;
+
+	/**
+	 * Returns the elements of the given group in the last match, as an
+	 * unmodifiable view of the list, or null if the group did not take part
+	 * in the match. Nothing is copied.
+	 *
+	 * @throws IllegalStateException
+	 *             if the last call to {@link #find()} did not find a match.
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no such group.
+	 */
+	public List<T> group(int group) throws IllegalStateException,
+			IndexOutOfBoundsException;
+
+	/**
+	 * Discards the last match, so that the next {@link #find()} starts at the
+	 * beginning of the list.
+	 *
+	 * @return this matcher.
+	 */
+	public ListMatcher<T> reset();
+}
@@ -0,0 +1,66 @@
+package com.jeeex.objregex;
+
+import java.util.regex.PatternSyntaxException;
+
+import com.google.common.base.Predicate;
+
+/**
+ * A set of regular expressions that can be added and removed while the set
+ * is being matched by other threads.
+ * <p>
+ * Every change publishes a new immutable {@link PatternSnapshot}, which
+ * matches every expression of the set in a single pass over the input.
+ * Readers match against the latest snapshot without locking, and always see a
+ * set in which every change is either complete or not applied at all. Changes
+ * are serialized among themselves.
+ * <p>
+ * Each expression is compiled once, when it is added, into a program of its
+ * own. A snapshot runs the programs of its expressions side by side, calling
+ * each predicate at most once per element, so a change never compiles the
+ * other expressions again.
+ * <p>
+ * Expressions only refer to identifiers that are assigned predicates, and
+ * the predicates must be thread safe. "this" is not defined.
+ *
+ * @param <T>
+ * @see RegexFactory#newLivePatternSet()
+ */
+public interface LivePatternSet<T> {
+	/**
+	 * Adds the given expression to the set.
+	 *
+	 * @return the index of the expression in the snapshots, which no other
+	 *         expression is given, even once this one is removed.
+	 * @throws PatternSyntaxException
+	 *             if the expression is invalid.
+	 * @throws IllegalArgumentException
+	 *             if the expression refers to an identifier that is not
+	 *             assigned a predicate.
+	 * @throws NullPointerException
+	 *             if the expression is {@code null}.
+	 */
+	public int add(String regex) throws PatternSyntaxException,
+			IllegalArgumentException, NullPointerException;
+
+	/**
+	 * Removes the expression at the given index from the set.
+	 *
+	 * @return {@code true} if the set had an expression at the index.
+	 */
+	public boolean remove(int index);
+
+	/**
+	 * Pairs up the given identifier and predicate in every expression of
+	 * this set, including those added later.
+	 *
+	 * @throws NullPointerException
+	 *             If any of the arguments are null.
+	 */
+	public void set(String identifier, Predicate<T> predicate)
+			throws NullPointerException;
+
+	/**
+	 * Returns the latest snapshot of the set. It never blocks.
+	 */
+	public PatternSnapshot<T> snapshot();
+}
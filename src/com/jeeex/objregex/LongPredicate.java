@@ -0,0 +1,14 @@
+package com.jeeex.objregex;
+
+/**
+ * A {@link com.google.common.base.Predicate} of {@code long} values, which
+ * are never boxed.
+ *
+ * @see LongObjectPattern
+ */
+public interface LongPredicate {
+	/**
+	 * Applies this predicate to the given value.
+	 */
+	public boolean apply(long input);
+}
@@ -0,0 +1,48 @@
+package com.jeeex.objregex;
+
+/**
+ * Matches an {@link ObjectPattern} against input that is pushed to it one
+ * element at a time, such as an unbounded stream of events.
+ * <p>
+ * The matcher keeps the set of active NFA states between calls, so each
+ * element is processed once, in time proportional to the number of states,
+ * however long the input grows. Once the result is decided - no input can
+ * lead to a match, or every input does - further elements are ignored.
+ * <p>
+ * A matcher shares the state of its pattern, so neither is thread safe. The
+ * identifiers of the pattern must not be assigned while a matcher is in use,
+ * until it is {@link #reset()}.
+ *
+ * @param <T>
+ * @see ObjectPattern#newMatcher()
+ */
+public interface ObjectMatcher<T> {
+	/**
+	 * Appends the given element to the input.
+	 *
+	 * @throws java.util.ConcurrentModificationException
+	 *             if an identifier of the pattern has been assigned since the
+	 *             last {@link #reset()}.
+	 */
+	public void feed(T element);
+
+	/**
+	 * Returns whether the elements fed since the last {@link #reset()} match
+	 * the underlying regular expression, if the input ends now.
+	 */
+	public boolean isMatching();
+
+	/**
+	 * Returns whether the input can still match the underlying regular
+	 * expression, if the right elements are fed. Once it returns {@code
+	 * false}, it does until the next {@link #reset()}.
+	 */
+	public boolean canStillMatch();
+
+	/**
+	 * Discards the elements fed so far, so that the input is empty again.
+	 *
+	 * @return this matcher.
+	 */
+	public ObjectMatcher<T> reset();
+}
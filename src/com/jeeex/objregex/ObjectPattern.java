@@ -1,6 +1,9 @@
 package com.jeeex.objregex;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
 
 import com.google.common.base.Predicate;
 
@@ -28,6 +31,104 @@ public interface ObjectPattern<T> extends Predicate<List<? extends T>> {
 	 */
 	public boolean match(List<? extends T> input) throws NullPointerException;
 
+	/**
+	 * Determines whether the given array matches against the underlying
+	 * regular expression. The array is not copied.
+	 * 
+	 * @param input
+	 *            the input array.
+	 * @return {@code true} if the input satisfies the underlying regular
+	 *         expression, {@code false} otherwise.
+	 * @throws NullPointerException
+	 *             if the input is {@code null}.
+	 */
+	public boolean match(T[] input) throws NullPointerException;
+
+	/**
+	 * Determines whether the elements returned by the given iterator match
+	 * against the underlying regular expression. The elements are pulled one
+	 * at a time, and no more are pulled once the result is known - for
+	 * example, once no continuation of the input can match - so the iterator
+	 * may not be exhausted.
+	 * 
+	 * @param input
+	 *            the input iterator.
+	 * @return {@code true} if the input satisfies the underlying regular
+	 *         expression, {@code false} otherwise.
+	 * @throws NullPointerException
+	 *             if the input is {@code null}.
+	 */
+	public boolean match(Iterator<? extends T> input)
+			throws NullPointerException;
+
+	/**
+	 * Determines whether the elements of the given iterable match against the
+	 * underlying regular expression. Lists are matched as by
+	 * {@link #match(List)}; the elements of any other iterable are pulled as
+	 * by {@link #match(Iterator)}, without copying them.
+	 * 
+	 * @param input
+	 *            the input iterable.
+	 * @return {@code true} if the input satisfies the underlying regular
+	 *         expression, {@code false} otherwise.
+	 * @throws NullPointerException
+	 *             if the input is {@code null}.
+	 */
+	public boolean match(Iterable<? extends T> input)
+			throws NullPointerException;
+
+	/**
+	 * Determines whether the elements of the given list from {@code
+	 * fromIndex}, inclusive, to {@code toIndex}, exclusive, match against the
+	 * underlying regular expression. Equivalent to {@code
+	 * match(input.subList(fromIndex, toIndex))}, but {@link RandomAccess}
+	 * lists are walked by index, without allocating a sub list or an
+	 * iterator.
+	 * 
+	 * @throws NullPointerException
+	 *             if the input is {@code null}.
+	 * @throws IndexOutOfBoundsException
+	 *             if {@code fromIndex < 0}, {@code toIndex > input.size()} or
+	 *             {@code fromIndex > toIndex}.
+	 */
+	public boolean match(List<? extends T> input, int fromIndex, int toIndex)
+			throws NullPointerException, IndexOutOfBoundsException;
+
+	/**
+	 * Creates a matcher that finds the occurrences of the underlying regular
+	 * expression inside the given list, rather than matching the whole list.
+	 * The list is not copied.
+	 *
+	 * @throws NullPointerException
+	 *             if the input is {@code null}.
+	 */
+	public ListMatcher<T> matcher(List<? extends T> input)
+			throws NullPointerException;
+
+	/**
+	 * Creates a matcher that is fed the input one element at a time, for
+	 * input that is not available as a list, such as an unbounded stream of
+	 * events.
+	 */
+	public ObjectMatcher<T> newMatcher();
+
+	/**
+	 * Creates a matcher that is fed a stream of timestamped elements one at a
+	 * time, and reports the occurrences of the underlying regular expression
+	 * whose elements are at most {@code window} apart in time.
+	 *
+	 * @param timestamps
+	 *            Extracts the time of the elements, which must not decrease
+	 *            along the stream.
+	 * @throws NullPointerException
+	 *             if {@code timestamps} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code window} is negative.
+	 */
+	public WindowedMatcher<T> newWindowedMatcher(
+			TimestampExtractor<? super T> timestamps, long window)
+			throws NullPointerException, IllegalArgumentException;
+
 	/**
 	 * Pairs up the given identifier and predicate in this pattern.
 	 * 
@@ -37,6 +138,30 @@ public interface ObjectPattern<T> extends Predicate<List<? extends T>> {
 	public void set(String identifier, Predicate<T> predicate)
 			throws NullPointerException;
 
+	/**
+	 * Pairs up the given identifier with the elements equal to {@code value}
+	 * in this pattern, as {@code set(identifier, Predicates.equalTo(value))}
+	 * does. The identifiers that are assigned values are tested together, by
+	 * a single hash lookup of the element, however many there are.
+	 * 
+	 * @throws NullPointerException
+	 *             If {@code identifier} is null.
+	 */
+	public void setEquals(String identifier, T value)
+			throws NullPointerException;
+
+	/**
+	 * Pairs up the given identifier with the elements of the given set in
+	 * this pattern, as {@code set(identifier, Predicates.in(values))} does,
+	 * and tested like {@link #setEquals(String, Object)}. The set is copied,
+	 * and its elements must not change their hash codes.
+	 * 
+	 * @throws NullPointerException
+	 *             If any of the arguments are null.
+	 */
+	public void setIn(String identifier, Set<? extends T> values)
+			throws NullPointerException;
+
 	/**
 	 * Pairs up the given identifier and given pattern in this pattern.
 	 * 
@@ -50,4 +175,18 @@ public interface ObjectPattern<T> extends Predicate<List<? extends T>> {
 	 * Returns the underlying regular expression string.
 	 */
 	public String getRegex();
+
+	/**
+	 * Returns the number of times a predicate bound to this pattern has been
+	 * called while matching. Each predicate is called at most once per
+	 * element.
+	 */
+	public long getPredicateCallCount();
+
+	/**
+	 * Returns the number of NFA states that were saved by simplifying the
+	 * underlying regular expression before building its NFA, compared to its
+	 * literal translation.
+	 */
+	public int getStatesSaved();
 }
@@ -0,0 +1,81 @@
+package com.jeeex.objregex;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.base.Predicate;
+
+/**
+ * A set of regular expressions that are matched against the same input at
+ * once, as RE2::Set does for strings.
+ * <p>
+ * The expressions are compiled into a single automaton, with an accepting
+ * state per expression, so the input is traversed once however many
+ * expressions there are. The identifiers are shared by every expression, and
+ * each predicate is called at most once per element, however many
+ * expressions refer to it.
+ * <p>
+ * "this" is not defined in a set, since it would not tell which expression it
+ * refers to.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @param <T>
+ * @see RegexFactory#compileSet(List)
+ */
+public interface PatternSet<T> {
+	/**
+	 * Determines which expressions the given list matches.
+	 *
+	 * @return the indices of the expressions that the input satisfies.
+	 * @throws NullPointerException
+	 *             if the input is {@code null}.
+	 */
+	public BitSet match(List<? extends T> input) throws NullPointerException;
+
+	/**
+	 * Determines which expressions the elements returned by the given
+	 * iterator match. The elements are pulled one at a time, and no more are
+	 * pulled once no expression can match any continuation of the input.
+	 *
+	 * @return the indices of the expressions that the input satisfies.
+	 * @throws NullPointerException
+	 *             if the input is {@code null}.
+	 */
+	public BitSet match(Iterator<? extends T> input)
+			throws NullPointerException;
+
+	/**
+	 * Pairs up the given identifier and predicate in every expression of
+	 * this set.
+	 *
+	 * @throws NullPointerException
+	 *             If any of the arguments are null.
+	 */
+	public void set(String identifier, Predicate<T> predicate)
+			throws NullPointerException;
+
+	/**
+	 * Pairs up the given identifier and pattern in every expression of this
+	 * set.
+	 *
+	 * @throws NullPointerException
+	 *             If any of the arguments are null.
+	 */
+	public void set(String identifier, String pattern)
+			throws NullPointerException;
+
+	/**
+	 * Returns the number of expressions in this set.
+	 */
+	public int size();
+
+	/**
+	 * Returns the expression at the given index.
+	 *
+	 * @throws IndexOutOfBoundsException
+	 *             if {@code index} is not in {@code [0, size())}.
+	 */
+	public String getRegex(int index) throws IndexOutOfBoundsException;
+}
@@ -0,0 +1,48 @@
+package com.jeeex.objregex;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An immutable state of a {@link LivePatternSet}, which any number of
+ * threads can match against at once.
+ *
+ * @param <T>
+ * @see LivePatternSet#snapshot()
+ */
+public interface PatternSnapshot<T> {
+	/**
+	 * Determines which expressions the given list matches.
+	 *
+	 * @return the indices of the expressions that the input satisfies.
+	 * @throws NullPointerException
+	 *             if the input is {@code null}.
+	 */
+	public BitSet match(List<? extends T> input) throws NullPointerException;
+
+	/**
+	 * Determines which expressions the elements returned by the given
+	 * iterator match. No more elements are pulled once no expression can
+	 * match any continuation of the input.
+	 *
+	 * @return the indices of the expressions that the input satisfies.
+	 * @throws NullPointerException
+	 *             if the input is {@code null}.
+	 */
+	public BitSet match(Iterator<? extends T> input)
+			throws NullPointerException;
+
+	/**
+	 * Returns the number of indices that the snapshot covers: one per
+	 * expression added to the set before it, including those removed since,
+	 * for which {@link #getRegex(int)} returns {@code null}.
+	 */
+	public int size();
+
+	/**
+	 * Returns the expression at the given index, or {@code null} if the
+	 * snapshot has none there.
+	 */
+	public String getRegex(int index);
+}
@@ -1,5 +1,6 @@
 package com.jeeex.objregex;
 
+import java.util.List;
 import java.util.regex.PatternSyntaxException;
 
 /**
@@ -25,4 +26,68 @@ public interface RegexFactory {
 	 */
 	public <T> ObjectPattern<T> compile(String pattern)
 			throws PatternSyntaxException;
+
+	/**
+	 * Compiles the given regex pattern strings into a set, which matches them
+	 * all in a single pass.
+	 *
+	 * @param <T>
+	 *            Type of list that the compiled set can match against with.
+	 * @param patterns
+	 *            The regex pattern strings. Expression {@code i} of the set is
+	 *            {@code patterns.get(i)}.
+	 * @throws PatternSyntaxException
+	 *             If any of the strings is an invalid regex string.
+	 */
+	public <T> PatternSet<T> compileSet(List<String> patterns)
+			throws PatternSyntaxException;
+
+	/**
+	 * Compiles the given regex pattern string into a pattern over {@code int}
+	 * values.
+	 *
+	 * @throws PatternSyntaxException
+	 *             If the string {@code pattern} is an invalid regex string.
+	 */
+	public IntObjectPattern compileInt(String pattern)
+			throws PatternSyntaxException;
+
+	/**
+	 * Compiles the given regex pattern string into a pattern over {@code long}
+	 * values.
+	 *
+	 * @throws PatternSyntaxException
+	 *             If the string {@code pattern} is an invalid regex string.
+	 */
+	public LongObjectPattern compileLong(String pattern)
+			throws PatternSyntaxException;
+
+	/**
+	 * Compiles the given regex pattern string into a pattern over {@code double}
+	 * values.
+	 *
+	 * @throws PatternSyntaxException
+	 *             If the string {@code pattern} is an invalid regex string.
+	 */
+	public DoubleObjectPattern compileDouble(String pattern)
+			throws PatternSyntaxException;
+
+	/**
+	 * Compiles the given regex pattern string into a pattern over the
+	 * constants of the given enum type.
+	 *
+	 * @throws PatternSyntaxException
+	 *             If the string {@code pattern} is an invalid regex string.
+	 */
+	public <E extends Enum<E>> EnumObjectPattern<E> compileEnum(
+			String pattern, Class<E> type) throws PatternSyntaxException;
+
+	/**
+	 * Creates an empty set of regex pattern strings, to which patterns can be
+	 * added and removed while it is matched.
+	 *
+	 * @param <T>
+	 *            Type of list that the set can match against with.
+	 */
+	public <T> LivePatternSet<T> newLivePatternSet();
 }
@@ -0,0 +1,14 @@
+package com.jeeex.objregex;
+
+/**
+ * Extracts the time of an element, for a {@link WindowedMatcher}.
+ *
+ * @param <T>
+ */
+public interface TimestampExtractor<T> {
+	/**
+	 * Returns the time of the given element, in the unit of the window of the
+	 * matcher.
+	 */
+	public long getTimestamp(T element);
+}
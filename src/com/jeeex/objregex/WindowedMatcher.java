@@ -0,0 +1,68 @@
+package com.jeeex.objregex;
+
+/**
+ * Finds the occurrences of an {@link ObjectPattern} inside a stream of
+ * timestamped elements that are pushed to it one at a time, such that the
+ * first and the last element of an occurrence are at most a given window of
+ * time apart. For instance, "A B C" with a window of 30 seconds detects an A,
+ * followed by a B, followed by a C, all within 30 seconds.
+ * <p>
+ * An occurrence is a non-empty run of consecutive elements that matches the
+ * pattern; to allow other elements in between, say so in the pattern, as in
+ * "A .* B .* C". "^" only matches before the first element of the stream, and
+ * "$" after the element just fed.
+ * <p>
+ * Nothing is buffered: the matcher keeps, for every NFA state, the time at
+ * which the latest partial match that reached it started, and drops the
+ * partial matches that fall out of the window as it goes. So every element
+ * is processed once, in time proportional to the number of states, however
+ * long the window is, and the occurrences are reported as soon as their last
+ * element is fed.
+ * <p>
+ * A matcher shares the state of its pattern, so neither is thread safe. The
+ * identifiers of the pattern must not be assigned while a matcher is in use,
+ * until it is {@link #reset()}.
+ *
+ * @param <T>
+ * @see ObjectPattern#newWindowedMatcher(TimestampExtractor, long)
+ */
+public interface WindowedMatcher<T> {
+	/**
+	 * Appends the given element to the stream.
+	 *
+	 * @return {@code true} if an occurrence ends at the element.
+	 * @throws IllegalArgumentException
+	 *             if the element is older than the previous one.
+	 * @throws java.util.ConcurrentModificationException
+	 *             if an identifier of the pattern has been assigned since the
+	 *             last {@link #reset()}.
+	 */
+	public boolean feed(T element) throws IllegalArgumentException;
+
+	/**
+	 * Returns the index in the stream of the first element of the shortest
+	 * occurrence that ends at the last element fed.
+	 *
+	 * @throws IllegalStateException
+	 *             if the last call to {@link #feed(Object)} did not report an
+	 *             occurrence.
+	 */
+	public long start() throws IllegalStateException;
+
+	/**
+	 * Returns the index in the stream after the last element fed, which ends
+	 * the occurrence.
+	 *
+	 * @throws IllegalStateException
+	 *             if the last call to {@link #feed(Object)} did not report an
+	 *             occurrence.
+	 */
+	public long end() throws IllegalStateException;
+
+	/**
+	 * Discards the elements fed so far, so that the stream is empty again.
+	 *
+	 * @return this matcher.
+	 */
+	public WindowedMatcher<T> reset();
+}
@@ -0,0 +1,62 @@
+package com.jeeex.objregex.flow;
+
+/**
+ * The state of a match after an element of the input, as published by a
+ * {@link MatchProcessor}.
+ */
+public final class MatchEvent {
+	private final long index;
+	private final boolean match;
+	private final boolean canStillMatch;
+
+	public MatchEvent(long index, boolean match, boolean canStillMatch) {
+		this.index = index;
+		this.match = match;
+		this.canStillMatch = canStillMatch;
+	}
+
+	/**
+	 * Returns the index of the element in the input, from 0.
+	 */
+	public long getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns whether the input up to, and including, the element matches.
+	 */
+	public boolean isMatch() {
+		return match;
+	}
+
+	/**
+	 * Returns whether the input can still match once more elements follow.
+	 * The last event of a {@link MatchProcessor} is the first one for which
+	 * it is {@code false}, if any.
+	 */
+	public boolean canStillMatch() {
+		return canStillMatch;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof MatchEvent)) {
+			return false;
+		}
+		MatchEvent event = (MatchEvent) other;
+		return index == event.index && match == event.match
+				&& canStillMatch == event.canStillMatch;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (index ^ (index >>> 32)) * 4 + (match ? 2 : 0)
+				+ (canStillMatch ? 1 : 0);
+	}
+
+	@Override
+	public String toString() {
+		return index + (match ? ": match" : ": no match")
+				+ (canStillMatch ? "" : ", final");
+	}
+}
@@ -0,0 +1,271 @@
+package com.jeeex.objregex.flow;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.jeeex.objregex.ObjectMatcher;
+import com.jeeex.objregex.ObjectPattern;
+
+/**
+ * Matches the elements of a {@link Publisher} against an
+ * {@link ObjectPattern} as they arrive, and publishes one {@link MatchEvent}
+ * per element to a single subscriber.
+ * <p>
+ * The elements are fed to an {@link ObjectMatcher} of the pattern, so nothing
+ * is buffered or copied. Since every element produces exactly one event, the
+ * demand of the subscriber is passed upstream as is, and the processor never
+ * holds more elements than were requested. Once the input can no longer
+ * match, the upstream subscription is cancelled and the subscriber is
+ * completed, so the rest of the input is never produced.
+ * <p>
+ * The pattern must not be used by anything else while the processor runs,
+ * since patterns are not thread safe.
+ *
+ * @param <T>
+ *            Type of the elements.
+ */
+public final class MatchProcessor<T> implements Processor<T, MatchEvent> {
+
+	private final ObjectMatcher<T> matcher;
+
+	/**
+	 * The subscription to the publisher of the elements. Null until
+	 * {@link #onSubscribe(Subscription)}.
+	 */
+	private Subscription upstream;
+
+	/**
+	 * The subscriber of the events. Null until {@link #subscribe(Subscriber)}.
+	 */
+	private Subscriber<? super MatchEvent> downstream;
+
+	/**
+	 * Events requested before {@link #upstream} is known.
+	 */
+	private long pendingDemand;
+
+	/**
+	 * Whether the subscriber has been, or is about to be, sent its last
+	 * signal. Guarded by this.
+	 */
+	private boolean done;
+
+	/**
+	 * The last signal for the subscriber, until it can be sent: the error, or
+	 * this processor for the completion. Guarded by this.
+	 */
+	private Object pendingTermination;
+
+	/**
+	 * Number of calls to the subscriber in progress. The last signal is only
+	 * sent once there are none, so that it never overlaps
+	 * {@link Subscriber#onSubscribe(Subscription)} or an event. Guarded by
+	 * this.
+	 */
+	private int signalling;
+
+	private long index;
+
+	public MatchProcessor(ObjectPattern<T> pattern) {
+		this.matcher = pattern.newMatcher();
+	}
+
+	public void subscribe(Subscriber<? super MatchEvent> subscriber)
+			throws NullPointerException {
+		checkNotNull(subscriber);
+		synchronized (this) {
+			if (downstream == null) {
+				downstream = subscriber;
+				signalling++;
+				subscriber = null;
+			}
+		}
+		if (subscriber != null) {
+			subscriber.onSubscribe(EMPTY_SUBSCRIPTION);
+			subscriber.onError(new IllegalStateException(
+					"A match processor only has one subscriber."));
+			return;
+		}
+		try {
+			downstream.onSubscribe(new Subscription() {
+				public void request(long n) {
+					MatchProcessor.this.request(n);
+				}
+
+				public void cancel() {
+					MatchProcessor.this.cancel();
+				}
+			});
+		} finally {
+			endSignal();
+		}
+	}
+
+	public void onSubscribe(Subscription subscription) {
+		checkNotNull(subscription);
+		long demand;
+		synchronized (this) {
+			if (upstream != null || done) {
+				// only one publisher, once.
+				subscription.cancel();
+				return;
+			}
+			upstream = subscription;
+			demand = pendingDemand;
+			pendingDemand = 0;
+		}
+		if (demand > 0) {
+			subscription.request(demand);
+		}
+	}
+
+	public void onNext(T item) {
+		checkNotNull(item);
+		synchronized (this) {
+			if (done) {
+				return;
+			}
+			signalling++;
+		}
+		try {
+			MatchEvent event;
+			try {
+				matcher.feed(item);
+				event = new MatchEvent(index++, matcher.isMatching(), matcher
+						.canStillMatch());
+			} catch (RuntimeException e) {
+				if (terminate(e)) {
+					cancelUpstream();
+				}
+				return;
+			}
+			// terminate first, so that requests made by the subscriber on the
+			// last event do not pull in more input.
+			if (!event.canStillMatch() && terminate(this)) {
+				cancelUpstream();
+			}
+			downstream.onNext(event);
+		} finally {
+			endSignal();
+		}
+	}
+
+	public void onError(Throwable throwable) {
+		checkNotNull(throwable);
+		if (terminate(throwable)) {
+			flushTermination();
+		}
+	}
+
+	public void onComplete() {
+		if (terminate(this)) {
+			flushTermination();
+		}
+	}
+
+	/**
+	 * Ends the input with the given signal, which is sent to the subscriber
+	 * by {@link #flushTermination()}.
+	 *
+	 * @return whether this is the first signal to end the input.
+	 */
+	private synchronized boolean terminate(Object termination) {
+		if (done) {
+			return false;
+		}
+		done = true;
+		pendingTermination = termination;
+		return true;
+	}
+
+	/**
+	 * Marks the end of a call to the subscriber, and sends the last signal if
+	 * it was held back by the call.
+	 */
+	private void endSignal() {
+		synchronized (this) {
+			signalling--;
+		}
+		flushTermination();
+	}
+
+	/**
+	 * Sends the last signal to the subscriber, unless there is none yet, or no
+	 * subscriber, or another call to the subscriber is in progress, in which
+	 * case it is sent when that call ends.
+	 */
+	private void flushTermination() {
+		Object termination;
+		synchronized (this) {
+			if (pendingTermination == null || downstream == null
+					|| signalling > 0) {
+				return;
+			}
+			termination = pendingTermination;
+			pendingTermination = null;
+		}
+		if (termination instanceof Throwable) {
+			downstream.onError((Throwable) termination);
+		} else {
+			downstream.onComplete();
+		}
+	}
+
+	/**
+	 * Passes the demand of the subscriber upstream.
+	 */
+	private void request(long n) {
+		if (n <= 0) {
+			if (terminate(new IllegalArgumentException(
+					"Non-positive request: " + n))) {
+				cancelUpstream();
+				flushTermination();
+			}
+			return;
+		}
+		Subscription subscription;
+		synchronized (this) {
+			if (done) {
+				return;
+			}
+			subscription = upstream;
+			if (subscription == null) {
+				pendingDemand += n;
+				if (pendingDemand < 0) {
+					// effectively unbounded.
+					pendingDemand = Long.MAX_VALUE;
+				}
+				return;
+			}
+		}
+		subscription.request(n);
+	}
+
+	/**
+	 * Stops the input. The subscriber is not sent anything more.
+	 */
+	private void cancel() {
+		synchronized (this) {
+			done = true;
+			pendingTermination = null;
+		}
+		cancelUpstream();
+	}
+
+	private void cancelUpstream() {
+		Subscription subscription;
+		synchronized (this) {
+			subscription = upstream;
+		}
+		if (subscription != null) {
+			subscription.cancel();
+		}
+	}
+
+	private static final Subscription EMPTY_SUBSCRIPTION = new Subscription() {
+		public void request(long n) {
+		}
+
+		public void cancel() {
+		}
+	};
+}
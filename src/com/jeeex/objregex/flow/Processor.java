@@ -0,0 +1,14 @@
+package com.jeeex.objregex.flow;
+
+/**
+ * A stage of a pipeline, which subscribes to elements of one type and
+ * publishes elements of another.
+ * 
+ * @param <T>
+ *            Type of the elements received.
+ * @param <R>
+ *            Type of the elements published.
+ * @see Publisher
+ */
+public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+}
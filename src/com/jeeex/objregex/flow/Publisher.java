@@ -0,0 +1,26 @@
+package com.jeeex.objregex.flow;
+
+/**
+ * A producer of elements, which it sends to its {@link Subscriber}s as they
+ * request them.
+ * <p>
+ * This interface, along with {@link Subscriber}, {@link Subscription} and
+ * {@link Processor}, has the same methods and contract as its counterpart in
+ * {@code java.util.concurrent.Flow}, which is not available to this library.
+ * An adapter to and from the standard interfaces only has to delegate.
+ * 
+ * @param <T>
+ *            Type of the elements.
+ */
+public interface Publisher<T> {
+	/**
+	 * Adds the given subscriber, which is then sent
+	 * {@link Subscriber#onSubscribe(Subscription)}, or
+	 * {@link Subscriber#onError(Throwable)} if it cannot be added.
+	 * 
+	 * @throws NullPointerException
+	 *             if the subscriber is {@code null}.
+	 */
+	public void subscribe(Subscriber<? super T> subscriber)
+			throws NullPointerException;
+}
@@ -0,0 +1,35 @@
+package com.jeeex.objregex.flow;
+
+/**
+ * A receiver of elements from a {@link Publisher}. The methods of a subscriber
+ * are called one at a time, in order: {@link #onSubscribe(Subscription)},
+ * then at most as many {@link #onNext(Object)} as requested, then at most one
+ * of {@link #onError(Throwable)} and {@link #onComplete()}.
+ * 
+ * @param <T>
+ *            Type of the elements.
+ * @see Publisher
+ */
+public interface Subscriber<T> {
+	/**
+	 * Called before any other method, with the subscription through which
+	 * elements are requested.
+	 */
+	public void onSubscribe(Subscription subscription);
+
+	/**
+	 * Called with the next element.
+	 */
+	public void onNext(T item);
+
+	/**
+	 * Called when the publisher fails. No other method is called afterwards.
+	 */
+	public void onError(Throwable throwable);
+
+	/**
+	 * Called when the publisher has no more elements. No other method is
+	 * called afterwards.
+	 */
+	public void onComplete();
+}
@@ -0,0 +1,20 @@
+package com.jeeex.objregex.flow;
+
+/**
+ * Links a {@link Publisher} and a {@link Subscriber}. Its methods may be
+ * called from any thread.
+ * 
+ * @see Publisher
+ */
+public interface Subscription {
+	/**
+	 * Requests up to {@code n} more elements. A non-positive {@code n} makes
+	 * the publisher signal {@link Subscriber#onError(Throwable)}.
+	 */
+	public void request(long n);
+
+	/**
+	 * Makes the publisher stop sending elements, eventually.
+	 */
+	public void cancel();
+}
@@ -96,7 +96,15 @@ class ASTVisitor implements com.jeeex.objregex.javacc.RegexParserVisitor {
 		throw new UnsupportedOperationException("Should never visit Operator.");
 	}
 
+	/**
+	 * Counted repetitions, such as "A{2,5}", are built by {@link RegexNode},
+	 * along with every other operator of the chain.
+	 */
 	public State visit(ASTOperatorExpr node, SingleTransitionFactory manager) {
+		RegexNode regexNode = RegexNode.fromAST(node);
+		if (RegexNode.isCountedChain(regexNode)) {
+			return regexNode.toState(manager);
+		}
 		State state = firstChildAccept(node, manager);
 
 		List<RegexOperator> operators = RegexUtil.extractOperators(node);
@@ -0,0 +1,63 @@
+package com.jeeex.objregex.impl;
+
+/**
+ * Utility methods to grow primitive arrays, used by the integer-indexed
+ * matching engines.
+ * <p>
+ * These exist because the project targets Java 5, which lacks
+ * {@code Arrays.copyOf}.
+ */
+final class ArrayUtil {
+
+	private ArrayUtil() {
+		// prevent initialization.
+	}
+
+	static int[] grow(int[] array, int length) {
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	static long[] grow(long[] array, int length) {
+		long[] copy = new long[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	static boolean[] grow(boolean[] array, int length) {
+		boolean[] copy = new boolean[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	static int[][] grow(int[][] array, int length) {
+		int[][] copy = new int[length][];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	static long[][] grow(long[][] array, int length) {
+		long[][] copy = new long[length][];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	static String[] grow(String[] array, int length) {
+		String[] copy = new String[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	static State[] grow(State[] array, int length) {
+		State[] copy = new State[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	static Object[] grow(Object[] array, int length) {
+		Object[] copy = new Object[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+}
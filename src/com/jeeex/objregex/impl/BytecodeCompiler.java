@@ -0,0 +1,618 @@
+package com.jeeex.objregex.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Maps;
+
+/**
+ * Compiles an {@link EagerDFA} to a subclass of {@link CompiledMatcher}, by
+ * emitting a class file and defining it with a fresh class loader.
+ * <p>
+ * Every state of the DFA becomes a block of code that reads the next element
+ * and branches on the outcomes of the predicates, which are kept in final
+ * fields of the generated class and called directly. Only the predicates
+ * that the next state depends on are called, and a predicate is not called
+ * again once its outcome is known, so the JIT compiler sees a straight
+ * sequence of monomorphic calls that it can inline.
+ * <p>
+ * The class file targets version 49 (Java 5), which is verified without
+ * stack map frames.
+ *
+ * @see MatchEngine#COMPILED
+ */
+final class BytecodeCompiler {
+
+	/**
+	 * Maximum length of the generated {@code match} method, in bytes. Branch
+	 * offsets are signed 16 bit integers.
+	 */
+	static final int MAX_CODE_LENGTH = Short.MAX_VALUE;
+
+	private static final String SUPER_CLASS = "com/jeeex/objregex/impl/CompiledMatcher";
+	private static final String PREDICATE = "com/google/common/base/Predicate";
+	private static final String ITERATOR = "java/util/Iterator";
+	private static final String LIST = "java/util/List";
+
+	private static final AtomicInteger CLASS_COUNT = new AtomicInteger();
+
+	// opcodes.
+	private static final int ICONST_0 = 0x03;
+	private static final int BIPUSH = 0x10;
+	private static final int ILOAD = 0x15;
+	private static final int ALOAD = 0x19;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ALOAD_1 = 0x2b;
+	private static final int AALOAD = 0x32;
+	private static final int ISTORE = 0x36;
+	private static final int ASTORE = 0x3a;
+	private static final int DUP = 0x59;
+	private static final int LADD = 0x61;
+	private static final int IINC = 0x84;
+	private static final int I2L = 0x85;
+	private static final int IFEQ = 0x99;
+	private static final int IFNE = 0x9a;
+	private static final int IF_ICMPLT = 0xa1;
+	private static final int GOTO = 0xa7;
+	private static final int IRETURN = 0xac;
+	private static final int RETURN = 0xb1;
+	private static final int GETFIELD = 0xb4;
+	private static final int PUTFIELD = 0xb5;
+	private static final int INVOKEVIRTUAL = 0xb6;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKEINTERFACE = 0xb9;
+
+	// access flags.
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_PRIVATE = 0x0002;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	/**
+	 * Defines a single generated class.
+	 */
+	private static final class Loader extends ClassLoader {
+		Loader() {
+			super(CompiledMatcher.class.getClassLoader());
+		}
+
+		Class<?> define(String name, byte[] classFile) {
+			return defineClass(name, classFile, 0, classFile.length);
+		}
+	}
+
+	/**
+	 * The constant pool of a class file.
+	 */
+	private static final class ConstantPool {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private final Map<String, Integer> indices = Maps.newHashMap();
+		private int count = 1;
+
+		int utf8(String value) throws IOException {
+			Integer index = indices.get("U" + value);
+			if (index == null) {
+				out.writeByte(1);
+				out.writeUTF(value);
+				index = add("U" + value);
+			}
+			return index;
+		}
+
+		int classRef(String name) throws IOException {
+			Integer index = indices.get("C" + name);
+			if (index == null) {
+				int nameIndex = utf8(name);
+				out.writeByte(7);
+				out.writeShort(nameIndex);
+				index = add("C" + name);
+			}
+			return index;
+		}
+
+		int fieldRef(String owner, String name, String descriptor)
+				throws IOException {
+			return memberRef(9, owner, name, descriptor);
+		}
+
+		int methodRef(String owner, String name, String descriptor)
+				throws IOException {
+			return memberRef(10, owner, name, descriptor);
+		}
+
+		int interfaceMethodRef(String owner, String name, String descriptor)
+				throws IOException {
+			return memberRef(11, owner, name, descriptor);
+		}
+
+		private int memberRef(int tag, String owner, String name,
+				String descriptor) throws IOException {
+			String key = tag + owner + "." + name + ":" + descriptor;
+			Integer index = indices.get(key);
+			if (index == null) {
+				int classIndex = classRef(owner);
+				int nameAndType = nameAndType(name, descriptor);
+				out.writeByte(tag);
+				out.writeShort(classIndex);
+				out.writeShort(nameAndType);
+				index = add(key);
+			}
+			return index;
+		}
+
+		private int nameAndType(String name, String descriptor)
+				throws IOException {
+			String key = "N" + name + ":" + descriptor;
+			Integer index = indices.get(key);
+			if (index == null) {
+				int nameIndex = utf8(name);
+				int descriptorIndex = utf8(descriptor);
+				out.writeByte(12);
+				out.writeShort(nameIndex);
+				out.writeShort(descriptorIndex);
+				index = add(key);
+			}
+			return index;
+		}
+
+		private int add(String key) {
+			indices.put(key, count);
+			return count++;
+		}
+
+		void writeTo(DataOutputStream classFile) throws IOException {
+			classFile.writeShort(count);
+			bytes.writeTo(classFile);
+		}
+	}
+
+	/**
+	 * The code of a method, with forward and backward branches to labels.
+	 */
+	private static final class Code {
+		private byte[] bytes = new byte[256];
+		private int length;
+
+		private int[] labels = new int[16];
+		private int labelCount;
+
+		/**
+		 * Branches to patch: offset of the branch instruction, and label.
+		 */
+		private int[] branches = new int[32];
+		private int branchCount;
+
+		int newLabel() {
+			if (labelCount == labels.length) {
+				labels = ArrayUtil.grow(labels, labelCount * 2);
+			}
+			labels[labelCount] = -1;
+			return labelCount++;
+		}
+
+		void mark(int label) {
+			labels[label] = length;
+		}
+
+		void op(int opcode) {
+			u1(opcode);
+		}
+
+		void op(int opcode, int u2) {
+			u1(opcode);
+			u2(u2);
+		}
+
+		void branch(int opcode, int label) {
+			if (branchCount + 2 > branches.length) {
+				branches = ArrayUtil.grow(branches, branches.length * 2);
+			}
+			branches[branchCount++] = length;
+			branches[branchCount++] = label;
+			u1(opcode);
+			u2(0);
+		}
+
+		void u1(int value) {
+			if (length == bytes.length) {
+				byte[] grown = new byte[length * 2];
+				System.arraycopy(bytes, 0, grown, 0, length);
+				bytes = grown;
+			}
+			bytes[length++] = (byte) value;
+		}
+
+		void u2(int value) {
+			u1(value >>> 8);
+			u1(value);
+		}
+
+		int length() {
+			return length;
+		}
+
+		/**
+		 * Patches the branches, and returns the code.
+		 */
+		byte[] toByteArray() {
+			for (int i = 0; i < branchCount; i += 2) {
+				int at = branches[i];
+				int offset = labels[branches[i + 1]] - at;
+				bytes[at + 1] = (byte) (offset >>> 8);
+				bytes[at + 2] = (byte) offset;
+			}
+			byte[] code = new byte[length];
+			System.arraycopy(bytes, 0, code, 0, length);
+			return code;
+		}
+	}
+
+	private final EagerDFA<?> dfa;
+	private final String className;
+	private final ConstantPool pool = new ConstantPool();
+
+	/**
+	 * The input of a generated {@code match} method.
+	 */
+	private enum Input {
+		ITERATOR, LIST, ARRAY
+	}
+
+	/**
+	 * The {@code match} method being generated: its input, its code, and the
+	 * local variables that hold the current element and the number of
+	 * predicate calls.
+	 */
+	private Input input;
+	private Code code;
+	private int elementLocal;
+	private int countLocal;
+
+	/**
+	 * Label of the code block of each state.
+	 */
+	private int[] stateLabels;
+	private int acceptLabel;
+	private int rejectLabel;
+
+	private BytecodeCompiler(EagerDFA<?> dfa, String className) {
+		this.dfa = dfa;
+		this.className = className;
+	}
+
+	/**
+	 * Compiles the given DFA.
+	 *
+	 * @param predicates
+	 *            predicate of each slot of the DFA.
+	 * @return a new matcher, or {@code null} if the generated code would be
+	 *         too long.
+	 */
+	static CompiledMatcher compile(EagerDFA<?> dfa, Predicate<?>[] predicates) {
+		String className = "com/jeeex/objregex/impl/CompiledMatcher$"
+				+ CLASS_COUNT.incrementAndGet();
+		byte[] classFile;
+		try {
+			classFile = new BytecodeCompiler(dfa, className).generate();
+		} catch (IOException e) {
+			// ByteArrayOutputStream does not throw.
+			throw new AssertionError(e);
+		}
+		if (classFile == null) {
+			return null;
+		}
+
+		Class<?> matcherClass = new Loader().define(className
+				.replace('/', '.'), classFile);
+		try {
+			return (CompiledMatcher) matcherClass.getConstructor(
+					Predicate[].class).newInstance((Object) predicates);
+		} catch (InstantiationException e) {
+			throw new RuntimeException(e);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException(e);
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private byte[] generate() throws IOException {
+		int slotCount = dfa.getSlotCount();
+
+		// public boolean match(Iterator input).
+		byte[] iteratorMatch = generateMatch(Input.ITERATOR);
+		// public boolean match(List input, int fromIndex, int toIndex).
+		byte[] listMatch = generateMatch(Input.LIST);
+		// public boolean match(Object[] input, int fromIndex, int toIndex).
+		byte[] arrayMatch = generateMatch(Input.ARRAY);
+		if (iteratorMatch == null || listMatch == null || arrayMatch == null) {
+			return null;
+		}
+
+		// public <init>(Predicate[] predicates).
+		Code init = new Code();
+		init.op(ALOAD_0);
+		init.op(INVOKESPECIAL, pool.methodRef(SUPER_CLASS, "<init>", "()V"));
+		for (int slot = 0; slot < slotCount; slot++) {
+			init.op(ALOAD_0);
+			init.op(ALOAD_1);
+			init.op(BIPUSH);
+			init.u1(slot);
+			init.op(AALOAD);
+			init.op(PUTFIELD, predicateField(slot));
+		}
+		init.op(RETURN);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		int thisClass = pool.classRef(className);
+		int superClass = pool.classRef(SUPER_CLASS);
+		int codeName = pool.utf8("Code");
+		int[] fieldNames = new int[slotCount];
+		for (int slot = 0; slot < slotCount; slot++) {
+			fieldNames[slot] = pool.utf8("p" + slot);
+		}
+		int predicateDescriptor = pool.utf8("L" + PREDICATE + ";");
+		int initName = pool.utf8("<init>");
+		int initDescriptor = pool.utf8("([L" + PREDICATE + ";)V");
+		int matchName = pool.utf8("match");
+		int iteratorDescriptor = pool.utf8("(L" + ITERATOR + ";)Z");
+		int listDescriptor = pool.utf8("(L" + LIST + ";II)Z");
+		int arrayDescriptor = pool.utf8("([Ljava/lang/Object;II)Z");
+
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0);
+		out.writeShort(49);
+		pool.writeTo(out);
+		out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+		out.writeShort(thisClass);
+		out.writeShort(superClass);
+		out.writeShort(0);
+
+		out.writeShort(slotCount);
+		for (int slot = 0; slot < slotCount; slot++) {
+			out.writeShort(ACC_PRIVATE | ACC_FINAL);
+			out.writeShort(fieldNames[slot]);
+			out.writeShort(predicateDescriptor);
+			out.writeShort(0);
+		}
+
+		out.writeShort(4);
+		writeMethod(out, initName, initDescriptor, codeName, 3, 2, init
+				.toByteArray());
+		writeMethod(out, matchName, iteratorDescriptor, codeName, 5, 4,
+				iteratorMatch);
+		writeMethod(out, matchName, listDescriptor, codeName, 5, 6,
+				listMatch);
+		writeMethod(out, matchName, arrayDescriptor, codeName, 5, 6,
+				arrayMatch);
+		out.writeShort(0);
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Generates the code of a {@code match} method.
+	 *
+	 * @param input
+	 *            the input of the method. The locals of
+	 *            {@code match(List, int, int)} and
+	 *            {@code match(Object[], int, int)} are the input, the index,
+	 *            the end index, the element and the call count, and those of
+	 *            {@code match(Iterator)} are the iterator, the element and
+	 *            the call count.
+	 * @return the code, or {@code null} if it is too long.
+	 */
+	private byte[] generateMatch(Input input) throws IOException {
+		this.input = input;
+		this.code = new Code();
+		this.elementLocal = input == Input.ITERATOR ? 2 : 4;
+		this.countLocal = elementLocal + 1;
+		this.stateLabels = new int[dfa.getStateCount()];
+		for (int s = 0; s < stateLabels.length; s++) {
+			stateLabels[s] = code.newLabel();
+		}
+		this.acceptLabel = code.newLabel();
+		this.rejectLabel = code.newLabel();
+
+		code.op(ICONST_0);
+		code.op(ISTORE);
+		code.u1(countLocal);
+		code.branch(GOTO, label(dfa.getStart()));
+		for (int s = 0; s < stateLabels.length; s++) {
+			generateState(s);
+			if (code.length() > MAX_CODE_LENGTH) {
+				return null;
+			}
+		}
+		code.mark(acceptLabel);
+		generateReturn(1);
+		code.mark(rejectLabel);
+		generateReturn(0);
+		if (code.length() > MAX_CODE_LENGTH) {
+			return null;
+		}
+		return code.toByteArray();
+	}
+
+	/**
+	 * Generates the code block of the given state.
+	 */
+	private void generateState(int state) throws IOException {
+		code.mark(stateLabels[state]);
+		if (dfa.isDecided(state)) {
+			// the result is known, whatever follows.
+			code.branch(GOTO, dfa.isDead(state) ? rejectLabel : acceptLabel);
+			return;
+		}
+		int read = code.newLabel();
+		if (input != Input.ITERATOR) {
+			code.op(ILOAD);
+			code.u1(2);
+			code.op(ILOAD);
+			code.u1(3);
+			code.branch(IF_ICMPLT, read);
+		} else {
+			code.op(ALOAD_1);
+			code.op(INVOKEINTERFACE, pool.interfaceMethodRef(ITERATOR,
+					"hasNext", "()Z"));
+			code.u1(1);
+			code.u1(0);
+			code.branch(IFNE, read);
+		}
+		code.branch(GOTO, dfa.isAccepting(state) ? acceptLabel : rejectLabel);
+
+		code.mark(read);
+		code.op(ALOAD_1);
+		if (input != Input.ITERATOR) {
+			code.op(ILOAD);
+			code.u1(2);
+			if (input == Input.LIST) {
+				code.op(INVOKEINTERFACE, pool.interfaceMethodRef(LIST, "get",
+						"(I)Ljava/lang/Object;"));
+				code.u1(2);
+				code.u1(0);
+			} else {
+				code.op(AALOAD);
+			}
+			code.op(IINC);
+			code.u1(2);
+			code.u1(1);
+		} else {
+			code.op(INVOKEINTERFACE, pool.interfaceMethodRef(ITERATOR, "next",
+					"()Ljava/lang/Object;"));
+			code.u1(1);
+			code.u1(0);
+		}
+		code.op(ASTORE);
+		code.u1(elementLocal);
+
+		// the slots that the next state depends on.
+		int slotCount = dfa.getSlotCount();
+		int[] relevant = new int[slotCount];
+		int relevantCount = 0;
+		for (int slot = 0; slot < slotCount; slot++) {
+			for (int vector = 0; vector < 1 << slotCount; vector++) {
+				if (dfa.next(state, vector) != dfa.next(state, vector
+						^ (1 << slot))) {
+					relevant[relevantCount++] = slot;
+					break;
+				}
+			}
+		}
+
+		// next state of each combination of the outcomes of those slots.
+		int[] next = new int[1 << relevantCount];
+		for (int combination = 0; combination < next.length; combination++) {
+			int vector = 0;
+			for (int j = 0; j < relevantCount; j++) {
+				vector |= ((combination >>> j) & 1) << relevant[j];
+			}
+			next[combination] = dfa.next(state, vector);
+		}
+		generateBranches(relevant, relevantCount, next, 0, 0);
+	}
+
+	/**
+	 * Generates a decision tree on the relevant slots from {@code depth}, for
+	 * the combinations whose lower {@code depth} bits are {@code prefix}.
+	 */
+	private void generateBranches(int[] relevant, int relevantCount,
+			int[] next, int depth, int prefix) throws IOException {
+		if (code.length() > MAX_CODE_LENGTH) {
+			return;
+		}
+		int step = 1 << depth;
+		int target = next[prefix];
+		boolean constant = true;
+		for (int c = prefix; constant && c < next.length; c += step) {
+			constant = next[c] == target;
+		}
+		if (constant) {
+			code.branch(GOTO, label(target));
+			return;
+		}
+
+		// skip the slots that do not matter for these combinations.
+		boolean matters = false;
+		for (int c = prefix; !matters && c < next.length; c += step * 2) {
+			matters = next[c] != next[c | step];
+		}
+		if (!matters) {
+			generateBranches(relevant, relevantCount, next, depth + 1, prefix);
+			return;
+		}
+
+		int otherwise = code.newLabel();
+		code.op(IINC);
+		code.u1(countLocal);
+		code.u1(1);
+		code.op(ALOAD_0);
+		code.op(GETFIELD, predicateField(relevant[depth]));
+		code.op(ALOAD);
+		code.u1(elementLocal);
+		code.op(INVOKEINTERFACE, pool.interfaceMethodRef(PREDICATE, "apply",
+				"(Ljava/lang/Object;)Z"));
+		code.u1(2);
+		code.u1(0);
+		code.branch(IFEQ, otherwise);
+		generateBranches(relevant, relevantCount, next, depth + 1, prefix
+				| step);
+		code.mark(otherwise);
+		generateBranches(relevant, relevantCount, next, depth + 1, prefix);
+	}
+
+	/**
+	 * Adds the number of predicate calls to the count of the matcher, and
+	 * returns the given boolean.
+	 */
+	private void generateReturn(int value) throws IOException {
+		code.op(ALOAD_0);
+		code.op(ILOAD);
+		code.u1(countLocal);
+		code.op(INVOKEVIRTUAL, pool.methodRef(SUPER_CLASS, "countCalls",
+				"(I)V"));
+		code.op(ICONST_0 + value);
+		code.op(IRETURN);
+	}
+
+	/**
+	 * Returns the label to jump to once the given state is reached.
+	 */
+	private int label(int state) {
+		if (dfa.isDead(state)) {
+			return rejectLabel;
+		} else if (dfa.isAcceptingForever(state)) {
+			return acceptLabel;
+		}
+		return stateLabels[state];
+	}
+
+	private int predicateField(int slot) throws IOException {
+		return pool.fieldRef(className, "p" + slot, "L" + PREDICATE + ";");
+	}
+
+	private static void writeMethod(DataOutputStream out, int name,
+			int descriptor, int codeName, int maxStack, int maxLocals,
+			byte[] code) throws IOException {
+		out.writeShort(ACC_PUBLIC);
+		out.writeShort(name);
+		out.writeShort(descriptor);
+		out.writeShort(1);
+		out.writeShort(codeName);
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0);
+		out.writeShort(0);
+	}
+}
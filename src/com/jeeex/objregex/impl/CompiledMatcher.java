@@ -0,0 +1,60 @@
+package com.jeeex.objregex.impl;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Base class of the matchers generated by {@link BytecodeCompiler}. This
+ * class is internal to objregex, and is not part of its API.
+ * <p>
+ * The users of objregex should not extend or use this class. It is public
+ * only because the generated subclasses are defined by their own class
+ * loader, and so they do not belong to this package at runtime. For the same
+ * reason, the generated code counts its predicate calls through
+ * {@link #countCalls(int)} rather than a field.
+ *
+ * @see MatchEngine#COMPILED
+ */
+public abstract class CompiledMatcher {
+
+	/**
+	 * Number of predicate calls made by the match methods.
+	 */
+	private long callCount;
+
+	protected CompiledMatcher() {
+	}
+
+	/**
+	 * Returns whether the elements returned by {@code input} match the
+	 * pattern. Stops consuming {@code input} as soon as the result is known.
+	 */
+	public abstract boolean match(Iterator<?> input);
+
+	/**
+	 * Returns whether the elements of {@code input} from {@code fromIndex},
+	 * inclusive, to {@code toIndex}, exclusive, match the pattern. Walks the
+	 * list by index, so {@code input} should support fast random access.
+	 */
+	public abstract boolean match(List<?> input, int fromIndex, int toIndex);
+
+	/**
+	 * Same as {@link #match(List, int, int)}, over a range of an array.
+	 */
+	public abstract boolean match(Object[] input, int fromIndex, int toIndex);
+
+	/**
+	 * Adds to the number of predicate calls. Called by the generated code
+	 * before returning from a match.
+	 */
+	protected final void countCalls(int calls) {
+		callCount += calls;
+	}
+
+	/**
+	 * Returns the number of predicate calls made so far.
+	 */
+	final long getCallCount() {
+		return callCount;
+	}
+}
@@ -0,0 +1,202 @@
+package com.jeeex.objregex.impl;
+
+/**
+ * The registers of the counters of a {@link Program}, while it runs over an
+ * input.
+ * <p>
+ * A counter is in the middle of one run per element at which its entry state
+ * was active, since the last element that did not satisfy its label, which
+ * clears the runs. The register of a counter is a queue of the start of those
+ * runs, oldest first, on a clock that ticks once per element that satisfies
+ * the label. Every element adds the run it enters, if any, and drops the runs
+ * longer than the maximum from the front, and the exit state becomes active
+ * if the oldest run is at least the minimum long. If the counter is unbounded
+ * only the oldest run is kept, since no other run can be longer.
+ * <p>
+ * So an element costs amortized constant time per counter, and a register
+ * holds the runs that are still pending, whatever the bounds are.
+ * <p>
+ * This class is not thread safe.
+ */
+final class CounterRegisters {
+
+	private final Program program;
+
+	/**
+	 * Ring buffer of the starts of the runs of each counter. Null until the
+	 * counter is first entered.
+	 */
+	private long[][] starts = new long[4][];
+
+	/**
+	 * Index in {@link #starts} of the oldest run of each counter.
+	 */
+	private int[] heads = new int[4];
+
+	/**
+	 * Number of runs of each counter.
+	 */
+	private int[] sizes = new int[4];
+
+	/**
+	 * Number of elements that satisfied the label of each counter, since it
+	 * last had no run.
+	 */
+	private long[] clocks = new long[4];
+	private int activeCount;
+
+	/**
+	 * Exit states reached by the last call to {@link #advance}.
+	 */
+	private int[] exits = new int[4];
+	private int exitCount;
+
+	CounterRegisters(Program program) {
+		this.program = program;
+	}
+
+	/**
+	 * Clears every register, before a new input.
+	 */
+	void clear() {
+		for (int c = 0; c < sizes.length; c++) {
+			if (sizes[c] > 0) {
+				reset(c);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether any counter is in the middle of a repetition.
+	 */
+	boolean isActive() {
+		return activeCount > 0;
+	}
+
+	/**
+	 * Advances every counter over the current element of {@code evaluator},
+	 * given the states active before it.
+	 *
+	 * @return The number of exit states reached, available from
+	 *         {@link #getExit(int)}.
+	 */
+	int advance(StateSet states, SlotEvaluator evaluator) {
+		exitCount = 0;
+		for (int c = 0; c < program.getCounterCount(); c++) {
+			boolean entered = states.contains(program.getCounterEntry(c));
+			advance(c, entered, evaluator);
+		}
+		return exitCount;
+	}
+
+	/**
+	 * Same as {@link #advance(StateSet, SlotEvaluator)}.
+	 */
+	int advance(SparseStateSet states, SlotEvaluator evaluator) {
+		exitCount = 0;
+		for (int c = 0; c < program.getCounterCount(); c++) {
+			boolean entered = states.contains(program.getCounterEntry(c));
+			advance(c, entered, evaluator);
+		}
+		return exitCount;
+	}
+
+	/**
+	 * Returns the i-th exit state reached by the last call to
+	 * {@link #advance}.
+	 */
+	int getExit(int i) {
+		return exits[i];
+	}
+
+	private void advance(int counter, boolean entered,
+			SlotEvaluator evaluator) {
+		if (counter >= sizes.length) {
+			int capacity = counter * 2 + 1;
+			starts = ArrayUtil.grow(starts, capacity);
+			heads = ArrayUtil.grow(heads, capacity);
+			sizes = ArrayUtil.grow(sizes, capacity);
+			clocks = ArrayUtil.grow(clocks, capacity);
+		}
+		if (!entered && sizes[counter] == 0) {
+			return;
+		}
+		if (!evaluator.evaluate(program.getCounterLabel(counter))) {
+			if (sizes[counter] > 0) {
+				reset(counter);
+			}
+			return;
+		}
+
+		long clock = ++clocks[counter];
+		int max = program.getCounterMax(counter);
+		if (entered && (max != RegexNode.UNBOUNDED || sizes[counter] == 0)) {
+			add(counter, clock);
+		}
+		if (max != RegexNode.UNBOUNDED) {
+			// drop the runs that are longer than the maximum.
+			while (clock - oldest(counter) >= max) {
+				if (sizes[counter] == 1) {
+					reset(counter);
+					return;
+				}
+				heads[counter] = (heads[counter] + 1)
+						% starts[counter].length;
+				sizes[counter]--;
+			}
+		}
+
+		int min = Math.max(program.getCounterMin(counter), 1);
+		if (clock - oldest(counter) + 1 >= min) {
+			if (exitCount == exits.length) {
+				exits = ArrayUtil.grow(exits, exitCount * 2);
+			}
+			exits[exitCount++] = program.getCounterExit(counter);
+		}
+	}
+
+	/**
+	 * Returns the start of the oldest run of the given counter.
+	 */
+	private long oldest(int counter) {
+		return starts[counter][heads[counter]];
+	}
+
+	/**
+	 * Appends a run that starts at {@code clock} to the given counter.
+	 */
+	private void add(int counter, long clock) {
+		long[] queue = starts[counter];
+		int size = sizes[counter];
+		if (queue == null) {
+			queue = new long[4];
+			starts[counter] = queue;
+		} else if (size == queue.length) {
+			// unwrap the ring into a larger one.
+			long[] grown = new long[size * 2];
+			int head = heads[counter];
+			System.arraycopy(queue, head, grown, 0, size - head);
+			System.arraycopy(queue, 0, grown, size - head, head);
+			queue = grown;
+			starts[counter] = queue;
+			heads[counter] = 0;
+		}
+		queue[(heads[counter] + size) % queue.length] = clock;
+		if (size == 0) {
+			activeCount++;
+		}
+		sizes[counter] = size + 1;
+	}
+
+	/**
+	 * Drops every run of the given counter.
+	 */
+	private void reset(int counter) {
+		if (sizes[counter] > 0) {
+			activeCount--;
+		}
+		sizes[counter] = 0;
+		heads[counter] = 0;
+		clocks[counter] = 0;
+	}
+}
@@ -0,0 +1,98 @@
+package com.jeeex.objregex.impl;
+
+import static com.jeeex.objregex.impl.TransitionIdentifier.EPSILON;
+
+/**
+ * The tail of a counted repetition of a single identifier, such as
+ * "HEARTBEAT{60,120}".
+ * <p>
+ * The repetition is not unrolled into states. Instead, {@link Program} lowers
+ * it into a counter from this state to {@link #getExit() the head}, which the
+ * matching engines run with a {@link CounterRegisters register}. Since the
+ * identifier may turn out to be bound to a pattern, which cannot be counted,
+ * the {@link SingleLazyStateManager} decides how to execute the repetition
+ * when the transitions of this state are first requested.
+ */
+final class CounterState extends LazyState {
+
+	private final TransitionIdentifier tid;
+	private final int min;
+	private final int max;
+	private final LeafState exit;
+
+	/**
+	 * Decides how to execute the repetition. Null if the identifier is known
+	 * to be a predicate.
+	 */
+	private final SingleLazyStateManager manager;
+
+	private boolean counting;
+
+	private CounterState(TransitionIdentifier tid, int min, int max,
+			LeafState exit, SingleLazyStateManager manager) {
+		this.tid = tid;
+		this.min = min;
+		this.max = max;
+		this.exit = exit;
+		this.manager = manager;
+	}
+
+	/**
+	 * Returns the NFA for the regular expression "A{min,max}", where {@code A}
+	 * is a single identifier.
+	 *
+	 * @param max
+	 *            Positive, or {@link RegexNode#UNBOUNDED}.
+	 * @param factory
+	 *            If it is a {@link SingleLazyStateManager}, it decides whether
+	 *            the repetition is counted. Otherwise, it is always counted.
+	 */
+	static State create(TransitionIdentifier tid, int min, int max,
+			SingleTransitionFactory factory) {
+		LeafState exit = new LeafState();
+		CounterState tail = new CounterState(tid, min, max, exit,
+				factory instanceof SingleLazyStateManager
+						? (SingleLazyStateManager) factory : null);
+		if (min == 0) {
+			tail.addTransition(EPSILON, exit);
+		}
+		return new CompositeState(exit, tail);
+	}
+
+	@Override
+	protected void lazyInit() {
+		counting = manager == null
+				|| manager.initializeLazyCounter(this, tid, min, max, exit);
+	}
+
+	/**
+	 * Returns whether the repetition is executed by a counter. Only valid once
+	 * the transitions of this state have been requested.
+	 */
+	boolean isCounting() {
+		return counting;
+	}
+
+	TransitionIdentifier getTid() {
+		return tid;
+	}
+
+	int getMin() {
+		return min;
+	}
+
+	/**
+	 * Returns the maximum number of repetitions, or
+	 * {@link RegexNode#UNBOUNDED}.
+	 */
+	int getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns the state reached once the repetition is complete.
+	 */
+	LeafState getExit() {
+		return exit;
+	}
+}
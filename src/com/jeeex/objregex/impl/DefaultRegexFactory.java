@@ -1,11 +1,19 @@
 package com.jeeex.objregex.impl;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.List;
 import java.util.regex.PatternSyntaxException;
 
 import com.google.common.base.Predicates;
+import com.jeeex.objregex.DoubleObjectPattern;
+import com.jeeex.objregex.EnumObjectPattern;
+import com.jeeex.objregex.IntObjectPattern;
+import com.jeeex.objregex.LivePatternSet;
+import com.jeeex.objregex.LongObjectPattern;
 import com.jeeex.objregex.ObjectPattern;
+import com.jeeex.objregex.PatternSet;
 import com.jeeex.objregex.RegexFactory;
 
 /**
@@ -17,11 +25,73 @@ import com.jeeex.objregex.RegexFactory;
  */
 public class DefaultRegexFactory implements RegexFactory {
 
+	/**
+	 * Default value of {@link #setDfaMemoryLimit(int)}, 1MB.
+	 */
+	public static final int DEFAULT_DFA_MEMORY_LIMIT = 1 << 20;
+
+	private MatchEngine engine = MatchEngine.SET_SIMULATION;
+
+	private NfaConstruction construction = NfaConstruction.THOMPSON;
+
+	private int dfaMemoryLimit = DEFAULT_DFA_MEMORY_LIMIT;
+
+	private boolean optimizerEnabled = true;
+
 	public <T> ObjectPattern<T> compile(String pattern)
 			throws PatternSyntaxException {
+		return this.<T> compilePattern(pattern);
+	}
+
+	/**
+	 * Compiles a pattern over {@code int} values. It is always simulated like
+	 * {@link MatchEngine#SET_SIMULATION}, whatever the engine of this factory
+	 * is.
+	 */
+	public IntObjectPattern compileInt(String pattern)
+			throws PatternSyntaxException {
+		return new IntObjectPatternImpl(this.<Integer> compilePattern(pattern));
+	}
+
+	/**
+	 * Compiles a pattern over {@code long} values. It is always simulated
+	 * like {@link MatchEngine#SET_SIMULATION}, whatever the engine of this
+	 * factory is.
+	 */
+	public LongObjectPattern compileLong(String pattern)
+			throws PatternSyntaxException {
+		return new LongObjectPatternImpl(this.<Long> compilePattern(pattern));
+	}
+
+	/**
+	 * Compiles a pattern over {@code double} values. It is always simulated
+	 * like {@link MatchEngine#SET_SIMULATION}, whatever the engine of this
+	 * factory is.
+	 */
+	public DoubleObjectPattern compileDouble(String pattern)
+			throws PatternSyntaxException {
+		return new DoubleObjectPatternImpl(this.<Double> compilePattern(pattern));
+	}
+
+	/**
+	 * Compiles a pattern over enum constants. The engine of this factory runs
+	 * the patterns that cannot be compiled to a table.
+	 */
+	public <E extends Enum<E>> EnumObjectPattern<E> compileEnum(
+			String pattern, Class<E> type) throws PatternSyntaxException {
+		checkNotNull(type);
+		return new EnumObjectPatternImpl<E>(this.<E> compilePattern(pattern),
+				type);
+	}
+
+	private <T> ObjectPatternImpl<T> compilePattern(String pattern) {
 		checkNotNull(pattern);
 
-		ObjectPatternImpl<T> patternImpl = new ObjectPatternImpl<T>(pattern);
+		ObjectPatternImpl<T> patternImpl = new ObjectPatternImpl<T>(pattern,
+				engine);
+		patternImpl.setDfaMemoryLimit(dfaMemoryLimit);
+		patternImpl.setOptimizerEnabled(optimizerEnabled);
+		patternImpl.setConstruction(construction);
 
 		patternImpl.compile();
 
@@ -30,6 +100,114 @@ public class DefaultRegexFactory implements RegexFactory {
 		return patternImpl;
 	}
 
+	/**
+	 * Compiles a set that is always simulated like
+	 * {@link MatchEngine#SET_SIMULATION}, whatever the engine of this factory
+	 * is. The optimizer setting applies.
+	 */
+	public <T> PatternSet<T> compileSet(List<String> patterns)
+			throws PatternSyntaxException {
+		checkNotNull(patterns);
+
+		PatternSetImpl<T> set = new PatternSetImpl<T>(patterns,
+				optimizerEnabled);
+		set.set("null", Predicates.<T> isNull());
+		set.set(".", Predicates.<T> alwaysTrue());
+		return set;
+	}
+
+	/**
+	 * Creates a set that is always simulated like
+	 * {@link MatchEngine#SET_SIMULATION}, whatever the engine of this factory
+	 * is. The optimizer setting applies.
+	 */
+	public <T> LivePatternSet<T> newLivePatternSet() {
+		LivePatternSetImpl<T> set = new LivePatternSetImpl<T>(optimizerEnabled);
+		set.set("null", Predicates.<T> isNull());
+		set.set(".", Predicates.<T> alwaysTrue());
+		return set;
+	}
+
+	/**
+	 * Returns the {@link MatchEngine} used by the patterns compiled by this
+	 * factory.
+	 */
+	public MatchEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Sets the {@link MatchEngine} used by the patterns compiled by this
+	 * factory from now on. Defaults to {@link MatchEngine#SET_SIMULATION}.
+	 * 
+	 * @throws NullPointerException
+	 *             If {@code engine} is null.
+	 */
+	public void setEngine(MatchEngine engine) throws NullPointerException {
+		this.engine = checkNotNull(engine);
+	}
+
+	/**
+	 * Returns the {@link NfaConstruction} used by the patterns compiled by
+	 * this factory.
+	 */
+	public NfaConstruction getConstruction() {
+		return construction;
+	}
+
+	/**
+	 * Sets the {@link NfaConstruction} used by the patterns compiled by this
+	 * factory from now on. Defaults to {@link NfaConstruction#THOMPSON}.
+	 * 
+	 * @throws NullPointerException
+	 *             If {@code construction} is null.
+	 */
+	public void setConstruction(NfaConstruction construction)
+			throws NullPointerException {
+		this.construction = checkNotNull(construction);
+	}
+
+	/**
+	 * Returns the approximate memory limit of the {@link MatchEngine#LAZY_DFA}
+	 * cache of each pattern, in bytes.
+	 */
+	public int getDfaMemoryLimit() {
+		return dfaMemoryLimit;
+	}
+
+	/**
+	 * Sets the approximate memory limit of the {@link MatchEngine#LAZY_DFA}
+	 * cache of each pattern compiled from now on, in bytes. When a cache
+	 * outgrows the limit, it is discarded and rebuilt. The limit also bounds
+	 * the construction of a {@link MatchEngine#EAGER_DFA}. Defaults to
+	 * {@link #DEFAULT_DFA_MEMORY_LIMIT}.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If {@code bytes} is not positive.
+	 */
+	public void setDfaMemoryLimit(int bytes) throws IllegalArgumentException {
+		checkArgument(bytes > 0, "The DFA memory limit must be positive.");
+		this.dfaMemoryLimit = bytes;
+	}
+
+	/**
+	 * Returns whether the patterns compiled by this factory are simplified
+	 * before they are translated to NFAs.
+	 */
+	public boolean isOptimizerEnabled() {
+		return optimizerEnabled;
+	}
+
+	/**
+	 * Sets whether the patterns compiled by this factory from now on are
+	 * simplified before they are translated to NFAs - for instance, {@code
+	 * (A*)*} is compiled as {@code A*}. The simplified NFA matches the same
+	 * lists with fewer states. Defaults to {@code true}.
+	 */
+	public void setOptimizerEnabled(boolean optimizerEnabled) {
+		this.optimizerEnabled = optimizerEnabled;
+	}
+
 	/**
 	 * Assigns some default predicates to the generated pattern.
 	 */
@@ -0,0 +1,87 @@
+package com.jeeex.objregex.impl;
+
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import java.nio.DoubleBuffer;
+import java.util.Map;
+
+import com.google.common.base.Predicate;
+import com.jeeex.objregex.DoubleObjectPattern;
+import com.jeeex.objregex.DoublePredicate;
+
+/**
+ * An implementation of {@link DoubleObjectPattern}.
+ * <p>
+ * The users of objregex should not initiate this class directly -
+ * {@link DefaultRegexFactory} should be used instead.
+ */
+final class DoubleObjectPatternImpl extends
+		PrimitivePatternImpl<Double, DoublePredicate, DoubleBuffer> implements
+		DoubleObjectPattern {
+
+	private static final DoublePredicate ALWAYS_TRUE = new DoublePredicate() {
+		public boolean apply(double input) {
+			return true;
+		}
+	};
+
+	private static final DoublePredicate ALWAYS_FALSE = new DoublePredicate() {
+		public boolean apply(double input) {
+			return false;
+		}
+	};
+
+	private DoubleEvaluator evaluator;
+
+	private static final class DoubleEvaluator extends
+			Evaluator<DoublePredicate> {
+		double element;
+
+		DoubleEvaluator(Program program,
+				Map<String, DoublePredicate> idToPredicate) {
+			super(program, idToPredicate);
+		}
+
+		@Override
+		boolean call(int slot) {
+			return getPredicate(slot).apply(element);
+		}
+	}
+
+	DoubleObjectPatternImpl(ObjectPatternImpl<Double> pattern) {
+		super(pattern, ALWAYS_TRUE, ALWAYS_FALSE);
+	}
+
+	public boolean match(double[] input) throws NullPointerException {
+		return match(input, 0, input.length);
+	}
+
+	public boolean match(double[] input, int fromIndex, int toIndex)
+			throws NullPointerException, IndexOutOfBoundsException {
+		checkPositionIndexes(fromIndex, toIndex, input.length);
+		// wrapping does not copy the array.
+		return match(DoubleBuffer.wrap(input), fromIndex, toIndex);
+	}
+
+	@Override
+	Evaluator<DoublePredicate> newEvaluator(Program program,
+			Map<String, DoublePredicate> idToPredicate) {
+		evaluator = new DoubleEvaluator(program, idToPredicate);
+		return evaluator;
+	}
+
+	@Override
+	void load(int index) {
+		evaluator.element = input.get(index);
+		evaluator.nextElement();
+	}
+
+	@Override
+	Predicate<Double> box(final DoublePredicate predicate) {
+		return new Predicate<Double>() {
+			public boolean apply(Double input) {
+				return predicate.apply(input);
+			}
+		};
+	}
+}
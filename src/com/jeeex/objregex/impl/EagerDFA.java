@@ -0,0 +1,544 @@
+package com.jeeex.objregex.impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A minimal DFA, built ahead of matching from a fully lowered {@link Program}.
+ * <p>
+ * The alphabet is the set of all outcome vectors over the
+ * {@link Program#getSlot(int) slots} of the program - the same vectors that
+ * {@link Minterms} interns - so a program with {@code k} identifiers has an
+ * alphabet of {@code 2^k} symbols. The DFA is built by subset construction,
+ * minimized with Hopcroft's partition refinement algorithm, and finally the
+ * symbols that behave the same in every state are merged into one column of
+ * the transition table. Matching an element evaluates each predicate once and
+ * looks up the next state in the table.
+ * <p>
+ * Only programs that can be lowered completely - those that do not refer to
+ * other patterns - can be compiled. {@link #build(Program, PredicateEvaluator,
+ * int)} gives up when the construction would exceed the memory limit.
+ *
+ * @see MatchEngine#EAGER_DFA
+ */
+final class EagerDFA<T> {
+
+	/**
+	 * Maximum number of slots supported, which bounds the alphabet to
+	 * {@code 2^MAX_SLOTS} symbols.
+	 */
+	static final int MAX_SLOTS = 16;
+
+	/**
+	 * An {@code int[]} with value semantics, used as a hash key.
+	 */
+	private static final class Key {
+		final int[] values;
+
+		Key(int[] values) {
+			this.values = values;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key
+					&& Arrays.equals(values, ((Key) other).values);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(values);
+		}
+	}
+
+	private final PredicateEvaluator<T> evaluator;
+	private final int slotCount;
+
+	/**
+	 * Maps each outcome vector to its column in {@link #table}.
+	 */
+	private final int[] columns;
+	private final int columnCount;
+
+	/**
+	 * {@code table[state * columnCount + column]} is the next state.
+	 */
+	private final int[] table;
+	private final boolean[] accepting;
+
+	/**
+	 * States that are not accepting and cannot be left.
+	 */
+	private final boolean[] dead;
+
+	/**
+	 * States that are accepting and cannot be left.
+	 */
+	private final boolean[] acceptingForever;
+	private final int start;
+
+	/**
+	 * Slots whose predicate is {@link Predicates#alwaysTrue()}. Their
+	 * outcome is known without calling them.
+	 */
+	private final int alwaysTrue;
+
+	private EagerDFA(PredicateEvaluator<T> evaluator, int slotCount,
+			int alwaysTrue, int[] columns, int columnCount, int[] table,
+			boolean[] accepting, int start) {
+		this.evaluator = evaluator;
+		this.slotCount = slotCount;
+		this.alwaysTrue = alwaysTrue;
+		this.columns = columns;
+		this.columnCount = columnCount;
+		this.table = table;
+		this.accepting = accepting;
+		this.start = start;
+
+		int stateCount = accepting.length;
+		this.dead = new boolean[stateCount];
+		this.acceptingForever = new boolean[stateCount];
+		for (int s = 0; s < stateCount; s++) {
+			boolean trapped = true;
+			for (int c = 0; trapped && c < columnCount; c++) {
+				trapped = table[s * columnCount + c] == s;
+			}
+			dead[s] = trapped && !accepting[s];
+			acceptingForever[s] = trapped && accepting[s];
+		}
+	}
+
+	boolean match(Iterator<? extends T> input) {
+		int state = start;
+		while (!isDecided(state) && input.hasNext()) {
+			state = step(state, input.next());
+		}
+		return accepting[state];
+	}
+
+	boolean match(List<? extends T> input, int fromIndex, int toIndex) {
+		int state = start;
+		for (int i = fromIndex; i < toIndex && !isDecided(state); i++) {
+			state = step(state, input.get(i));
+		}
+		return accepting[state];
+	}
+
+	boolean match(T[] input) {
+		int state = start;
+		for (int i = 0; i < input.length && !isDecided(state); i++) {
+			state = step(state, input[i]);
+		}
+		return accepting[state];
+	}
+
+	private int step(int state, T token) {
+		evaluator.setElement(token);
+		int vector = alwaysTrue;
+		for (int slot = 0; slot < slotCount; slot++) {
+			if ((alwaysTrue & (1 << slot)) == 0
+					&& evaluator.evaluateSlot(slot)) {
+				vector |= 1 << slot;
+			}
+		}
+		return table[state * columnCount + columns[vector]];
+	}
+
+	/**
+	 * Returns the number of slots, whose outcomes make up the symbols.
+	 */
+	int getSlotCount() {
+		return slotCount;
+	}
+
+	int getStart() {
+		return start;
+	}
+
+	boolean isAccepting(int state) {
+		return accepting[state];
+	}
+
+	/**
+	 * Returns whether the given state is not accepting and cannot be left.
+	 */
+	boolean isDead(int state) {
+		return dead[state];
+	}
+
+	/**
+	 * Returns whether the given state is accepting and cannot be left.
+	 */
+	boolean isAcceptingForever(int state) {
+		return acceptingForever[state];
+	}
+
+	/**
+	 * Returns whether the result of a match is known once the given state is
+	 * reached.
+	 */
+	boolean isDecided(int state) {
+		return dead[state] || acceptingForever[state];
+	}
+
+	/**
+	 * Returns whether the predicate of the given slot is
+	 * {@link Predicates#alwaysTrue()}, so that it need not be called.
+	 */
+	boolean isAlwaysTrue(int slot) {
+		return (alwaysTrue & (1 << slot)) != 0;
+	}
+
+	/**
+	 * Returns the state reached from {@code state} by an element whose
+	 * predicate outcomes are given by {@code vector}: bit {@code i} is set if
+	 * the predicate of slot {@code i} accepts the element.
+	 */
+	int next(int state, int vector) {
+		return table[state * columnCount + columns[vector]];
+	}
+
+	/**
+	 * Returns the number of states of the minimal DFA.
+	 */
+	int getStateCount() {
+		return accepting.length;
+	}
+
+	/**
+	 * Returns the number of distinct columns of the transition table.
+	 */
+	int getColumnCount() {
+		return columnCount;
+	}
+
+	/**
+	 * Builds the minimal DFA of the given program.
+	 *
+	 * @param memoryLimit
+	 *            approximate limit, in bytes, of the memory used while
+	 *            building the DFA.
+	 * @return the DFA, or {@code null} if the program has more than
+	 *         {@link #MAX_SLOTS} slots, if it has counters, or if the DFA
+	 *         would not fit in {@code memoryLimit}.
+	 */
+	static <T> EagerDFA<T> build(Program program,
+			PredicateEvaluator<T> evaluator, int memoryLimit) {
+		program.lowerAll();
+		int slotCount = program.getSlotCount();
+		if (slotCount > MAX_SLOTS || program.getCounterCount() > 0) {
+			return null;
+		}
+		int symbolCount = 1 << slotCount;
+		int alwaysTrue = 0;
+		for (int slot = 0; slot < slotCount; slot++) {
+			if (evaluator.isAlwaysTrue(slot)) {
+				alwaysTrue |= 1 << slot;
+			}
+		}
+
+		// subset construction.
+		List<int[]> sets = Lists.newArrayList();
+		Map<Key, Integer> setNumbers = Maps.newHashMap();
+		int[] delta = new int[symbolCount * 4];
+		StateSet scratch = new StateSet(program.getStateCount());
+
+		scratch.clear();
+		for (int s : program.getBofClosure(program.getStart())) {
+			scratch.add(s);
+		}
+		intern(scratch, sets, setNumbers);
+
+		for (int d = 0; d < sets.size(); d++) {
+			if ((long) sets.size() * symbolCount * 4 > memoryLimit) {
+				return null;
+			}
+			if (delta.length < sets.size() * symbolCount) {
+				delta = ArrayUtil.grow(delta, Math.max(delta.length * 2, sets
+						.size()
+						* symbolCount));
+			}
+			int[] set = sets.get(d);
+
+			// successors only depend on the slots used by the set.
+			int[] used = usedSlots(program, set);
+			int[] successors = new int[1 << used.length];
+			for (int combination = 0; combination < successors.length; combination++) {
+				scratch.clear();
+				for (int s : set) {
+					int[] targets = program.getTargets(s);
+					int[] labels = program.getLabels(s);
+					for (int j = 0; j < targets.length; j++) {
+						int bit = indexOf(used, program.getSlot(labels[j]));
+						boolean outcome = ((combination >>> bit) & 1) != 0;
+						if (outcome != program.isNegation(labels[j])) {
+							for (int t : program.getClosure(targets[j])) {
+								scratch.add(t);
+							}
+						}
+					}
+				}
+				successors[combination] = intern(scratch, sets, setNumbers);
+			}
+			for (int symbol = 0; symbol < symbolCount; symbol++) {
+				// symbols that reject an always true slot never occur, so
+				// they behave as if they accepted it.
+				int vector = symbol | alwaysTrue;
+				int combination = 0;
+				for (int j = 0; j < used.length; j++) {
+					combination |= ((vector >>> used[j]) & 1) << j;
+				}
+				delta[d * symbolCount + symbol] = successors[combination];
+			}
+		}
+
+		int setCount = sets.size();
+		boolean[] setAccepting = new boolean[setCount];
+		for (int d = 0; d < setCount; d++) {
+			for (int s : sets.get(d)) {
+				setAccepting[d] |= program.isAcceptingAtEof(s);
+			}
+		}
+
+		// minimization.
+		int[] blocks = minimize(setCount, symbolCount, delta, setAccepting);
+		int blockCount = 0;
+		for (int block : blocks) {
+			blockCount = Math.max(blockCount, block + 1);
+		}
+		int[] minimal = new int[blockCount * symbolCount];
+		boolean[] accepting = new boolean[blockCount];
+		for (int d = 0; d < setCount; d++) {
+			int block = blocks[d];
+			accepting[block] = setAccepting[d];
+			for (int symbol = 0; symbol < symbolCount; symbol++) {
+				minimal[block * symbolCount + symbol] = blocks[delta[d
+						* symbolCount + symbol]];
+			}
+		}
+
+		// merge the symbols with identical columns.
+		int[] columns = new int[symbolCount];
+		List<int[]> distinct = Lists.newArrayList();
+		Map<Key, Integer> columnNumbers = Maps.newHashMap();
+		for (int symbol = 0; symbol < symbolCount; symbol++) {
+			int[] column = new int[blockCount];
+			for (int block = 0; block < blockCount; block++) {
+				column[block] = minimal[block * symbolCount + symbol];
+			}
+			Key key = new Key(column);
+			Integer number = columnNumbers.get(key);
+			if (number == null) {
+				number = distinct.size();
+				distinct.add(column);
+				columnNumbers.put(key, number);
+			}
+			columns[symbol] = number;
+		}
+		int columnCount = distinct.size();
+		int[] table = new int[blockCount * columnCount];
+		for (int c = 0; c < columnCount; c++) {
+			int[] column = distinct.get(c);
+			for (int block = 0; block < blockCount; block++) {
+				table[block * columnCount + c] = column[block];
+			}
+		}
+
+		return new EagerDFA<T>(evaluator, slotCount, alwaysTrue, columns,
+				columnCount, table, accepting, blocks[0]);
+	}
+
+	/**
+	 * Returns the distinct slots of the labels leaving the given states.
+	 */
+	private static int[] usedSlots(Program program, int[] set) {
+		StateSet slots = new StateSet(program.getSlotCount());
+		for (int s : set) {
+			for (int label : program.getLabels(s)) {
+				slots.add(program.getSlot(label));
+			}
+		}
+		int[] used = new int[slots.size()];
+		for (int i = 0; i < used.length; i++) {
+			used[i] = slots.get(i);
+		}
+		return used;
+	}
+
+	private static int indexOf(int[] array, int value) {
+		for (int i = 0; i < array.length; i++) {
+			if (array[i] == value) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException();
+	}
+
+	/**
+	 * Returns the number of the DFA state for the given set of NFA states,
+	 * creating it if required.
+	 */
+	private static int intern(StateSet set, List<int[]> sets,
+			Map<Key, Integer> setNumbers) {
+		int[] states = new int[set.size()];
+		for (int i = 0; i < states.length; i++) {
+			states[i] = set.get(i);
+		}
+		Arrays.sort(states);
+
+		Key key = new Key(states);
+		Integer number = setNumbers.get(key);
+		if (number == null) {
+			number = sets.size();
+			sets.add(states);
+			setNumbers.put(key, number);
+		}
+		return number;
+	}
+
+	/**
+	 * Minimizes a DFA with Hopcroft's algorithm.
+	 *
+	 * @param n
+	 *            number of states.
+	 * @param sigma
+	 *            number of symbols.
+	 * @param delta
+	 *            {@code delta[state * sigma + symbol]} is the next state.
+	 * @return the block, or state of the minimal DFA, of every state. The
+	 *         block of state 0 is 0.
+	 */
+	static int[] minimize(int n, int sigma, int[] delta, boolean[] accepting) {
+		// inverse transitions, indexed by symbol * n + target.
+		int[] inverseStart = new int[sigma * n + 1];
+		for (int q = 0; q < n; q++) {
+			for (int c = 0; c < sigma; c++) {
+				inverseStart[c * n + delta[q * sigma + c] + 1]++;
+			}
+		}
+		for (int i = 0; i < sigma * n; i++) {
+			inverseStart[i + 1] += inverseStart[i];
+		}
+		int[] inverse = new int[sigma * n];
+		int[] fill = new int[sigma * n];
+		System.arraycopy(inverseStart, 0, fill, 0, sigma * n);
+		for (int q = 0; q < n; q++) {
+			for (int c = 0; c < sigma; c++) {
+				inverse[fill[c * n + delta[q * sigma + c]]++] = q;
+			}
+		}
+
+		// the partition. The members of each block are contiguous in
+		// elements, and the marked members of a block come first.
+		int[] elements = new int[n];
+		int[] location = new int[n];
+		int[] blockOf = new int[n];
+		int[] first = new int[n];
+		int[] end = new int[n];
+		int[] marked = new int[n];
+		int blockCount = 0;
+
+		int i = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			int begin = i;
+			for (int q = 0; q < n; q++) {
+				if (accepting[q] == (pass == 0)) {
+					elements[i] = q;
+					location[q] = i;
+					blockOf[q] = blockCount;
+					i++;
+				}
+			}
+			if (i > begin) {
+				first[blockCount] = begin;
+				end[blockCount] = i;
+				blockCount++;
+			}
+		}
+
+		boolean[] waiting = new boolean[n];
+		int[] work = new int[n];
+		int workSize = 0;
+		if (blockCount == 2) {
+			int smaller = end[0] - first[0] <= end[1] - first[1] ? 0 : 1;
+			work[workSize++] = smaller;
+			waiting[smaller] = true;
+		}
+
+		int[] touched = new int[n];
+		int[] splitter = new int[n];
+		while (workSize > 0) {
+			int a = work[--workSize];
+			waiting[a] = false;
+			int splitterSize = end[a] - first[a];
+			System.arraycopy(elements, first[a], splitter, 0, splitterSize);
+
+			for (int c = 0; c < sigma; c++) {
+				int touchedCount = 0;
+				for (int k = 0; k < splitterSize; k++) {
+					int index = c * n + splitter[k];
+					for (int p = inverseStart[index]; p < inverseStart[index + 1]; p++) {
+						// mark the predecessor.
+						int q = inverse[p];
+						int b = blockOf[q];
+						int j = first[b] + marked[b];
+						if (location[q] < j) {
+							continue; // already marked.
+						}
+						int other = elements[j];
+						elements[j] = q;
+						elements[location[q]] = other;
+						location[other] = location[q];
+						location[q] = j;
+						if (marked[b]++ == 0) {
+							touched[touchedCount++] = b;
+						}
+					}
+				}
+
+				for (int k = 0; k < touchedCount; k++) {
+					int b = touched[k];
+					int count = marked[b];
+					marked[b] = 0;
+					if (count == end[b] - first[b]) {
+						continue; // every member is marked - no split.
+					}
+					int nb = blockCount++;
+					first[nb] = first[b];
+					end[nb] = first[b] + count;
+					first[b] = end[nb];
+					for (int p = first[nb]; p < end[nb]; p++) {
+						blockOf[elements[p]] = nb;
+					}
+					if (waiting[b]) {
+						work[workSize++] = nb;
+						waiting[nb] = true;
+					} else {
+						int smaller = count <= end[b] - first[b] ? nb : b;
+						work[workSize++] = smaller;
+						waiting[smaller] = true;
+					}
+				}
+			}
+		}
+
+		// renumber the blocks, so that the block of state 0 is 0.
+		int[] numbers = new int[blockCount];
+		Arrays.fill(numbers, -1);
+		int next = 0;
+		int[] result = new int[n];
+		for (int q = 0; q < n; q++) {
+			if (numbers[blockOf[q]] < 0) {
+				numbers[blockOf[q]] = next++;
+			}
+			result[q] = numbers[blockOf[q]];
+		}
+		return result;
+	}
+}
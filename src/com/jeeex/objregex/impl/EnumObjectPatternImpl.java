@@ -0,0 +1,303 @@
+package com.jeeex.objregex.impl;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.jeeex.objregex.EnumObjectPattern;
+import com.jeeex.objregex.ListMatcher;
+import com.jeeex.objregex.ObjectMatcher;
+import com.jeeex.objregex.TimestampExtractor;
+import com.jeeex.objregex.WindowedMatcher;
+
+/**
+ * An implementation of {@link EnumObjectPattern}.
+ * <p>
+ * The regular expression is compiled by an {@link ObjectPatternImpl}, whose
+ * identifiers are bound to the sets by
+ * {@link ObjectPatternImpl#setIn(String, Set)}, and which runs whatever this
+ * class does not. The table is derived from the {@link EagerDFA} of that
+ * pattern: every constant, and {@code null}, is turned into the outcome
+ * vector of the slots, and column {@code ordinal} of the table holds the
+ * transitions of that vector.
+ * <p>
+ * The users of objregex should not initiate this class directly -
+ * {@link DefaultRegexFactory} should be used instead.
+ */
+final class EnumObjectPatternImpl<E extends Enum<E>> implements
+		EnumObjectPattern<E> {
+
+	private final ObjectPatternImpl<E> pattern;
+
+	private final Class<E> type;
+
+	/**
+	 * The constants of each identifier that is assigned a set.
+	 */
+	private final Map<String, EnumSet<E>> idToValues = Maps.newHashMap();
+
+	/**
+	 * Identifiers that match {@code null}.
+	 */
+	private final Set<String> nullIds = Sets.newHashSet();
+
+	/**
+	 * {@code table[state * width + ordinal]} is the next state, where the
+	 * ordinal of {@code null} is the number of constants. Null if there is no
+	 * table.
+	 */
+	private int[] table;
+	private int width;
+	private boolean[] accepting;
+
+	/**
+	 * Whether the result of a match is known once each state is reached.
+	 */
+	private boolean[] decided;
+	private int start;
+
+	/**
+	 * Whether building {@link #table} has been attempted since the last
+	 * assignment.
+	 */
+	private boolean tableBuilt;
+
+	/**
+	 * {@link ObjectPatternImpl#getModCount()} when {@link #table} was built.
+	 */
+	private int modCount;
+
+	/**
+	 * @param pattern
+	 *            The compiled pattern, with the default identifiers of
+	 *            {@link DefaultRegexFactory} bound.
+	 */
+	EnumObjectPatternImpl(ObjectPatternImpl<E> pattern, Class<E> type) {
+		this.pattern = pattern;
+		this.type = type;
+		idToValues.put(".", EnumSet.allOf(type));
+		idToValues.put("null", EnumSet.noneOf(type));
+		nullIds.add(".");
+		nullIds.add("null");
+	}
+
+	public boolean apply(List<? extends E> input) {
+		return match(input);
+	}
+
+	public boolean match(List<? extends E> input) throws NullPointerException {
+		if (input instanceof RandomAccess) {
+			return match(input, 0, input.size());
+		}
+		return match(input.iterator());
+	}
+
+	public boolean match(E[] input) throws NullPointerException {
+		checkNotNull(input);
+		if (!buildTable()) {
+			return pattern.match(input);
+		}
+		int state = start;
+		for (int i = 0; i < input.length && !decided[state]; i++) {
+			state = next(state, input[i]);
+		}
+		return accepting[state];
+	}
+
+	public boolean match(List<? extends E> input, int fromIndex, int toIndex)
+			throws NullPointerException, IndexOutOfBoundsException {
+		checkPositionIndexes(fromIndex, toIndex, input.size());
+		if (!(input instanceof RandomAccess)) {
+			return match(input.subList(fromIndex, toIndex).iterator());
+		}
+		if (!buildTable()) {
+			return pattern.match(input, fromIndex, toIndex);
+		}
+		int state = start;
+		for (int i = fromIndex; i < toIndex && !decided[state]; i++) {
+			state = next(state, input.get(i));
+		}
+		return accepting[state];
+	}
+
+	public boolean match(Iterable<? extends E> input)
+			throws NullPointerException {
+		if (input instanceof List) {
+			return match((List<? extends E>) input);
+		}
+		return match(input.iterator());
+	}
+
+	public boolean match(Iterator<? extends E> input)
+			throws NullPointerException {
+		checkNotNull(input);
+		if (!buildTable()) {
+			return pattern.match(input);
+		}
+		int state = start;
+		while (!decided[state] && input.hasNext()) {
+			state = next(state, input.next());
+		}
+		return accepting[state];
+	}
+
+	private int next(int state, E element) {
+		int ordinal = element == null ? width - 1 : element.ordinal();
+		return table[state * width + ordinal];
+	}
+
+	public ListMatcher<E> matcher(List<? extends E> input)
+			throws NullPointerException {
+		return pattern.matcher(input);
+	}
+
+	public ObjectMatcher<E> newMatcher() {
+		return pattern.newMatcher();
+	}
+
+	public WindowedMatcher<E> newWindowedMatcher(
+			TimestampExtractor<? super E> timestamps, long window)
+			throws NullPointerException, IllegalArgumentException {
+		return pattern.newWindowedMatcher(timestamps, window);
+	}
+
+	public void set(String identifier, EnumSet<E> values)
+			throws NullPointerException {
+		checkNotNull(identifier);
+		EnumSet<E> copy = EnumSet.copyOf(checkNotNull(values));
+		pattern.setIn(identifier, copy);
+		idToValues.put(identifier, copy);
+		nullIds.remove(identifier);
+	}
+
+	public void setEquals(String identifier, E value)
+			throws NullPointerException {
+		setIn(identifier, Collections.singleton(value));
+	}
+
+	public void setIn(String identifier, Set<? extends E> values)
+			throws NullPointerException {
+		checkNotNull(identifier);
+		EnumSet<E> constants = EnumSet.noneOf(type);
+		boolean matchesNull = false;
+		for (E value : values) {
+			if (value == null) {
+				matchesNull = true;
+			} else {
+				constants.add(value);
+			}
+		}
+		pattern.setIn(identifier, values);
+		idToValues.put(identifier, constants);
+		if (matchesNull) {
+			nullIds.add(identifier);
+		} else {
+			nullIds.remove(identifier);
+		}
+	}
+
+	public void set(String identifier, Predicate<E> predicate)
+			throws NullPointerException {
+		checkNotNull(predicate);
+		Set<E> values = Sets.newHashSet();
+		for (E constant : type.getEnumConstants()) {
+			if (predicate.apply(constant)) {
+				values.add(constant);
+			}
+		}
+		boolean matchesNull;
+		try {
+			matchesNull = predicate.apply(null);
+		} catch (RuntimeException e) {
+			// a predicate that does not expect null does not accept it.
+			matchesNull = false;
+		}
+		if (matchesNull) {
+			values.add(null);
+		}
+		setIn(identifier, values);
+	}
+
+	public void set(String identifier, String pattern)
+			throws NullPointerException {
+		this.pattern.set(identifier, pattern);
+		idToValues.remove(identifier);
+		nullIds.remove(identifier);
+	}
+
+	public String getRegex() {
+		return pattern.getRegex();
+	}
+
+	/**
+	 * Returns the number of predicate calls of the patterns that are not
+	 * matched with a table. Elements matched with the table call none.
+	 */
+	public long getPredicateCallCount() {
+		return pattern.getPredicateCallCount();
+	}
+
+	public int getStatesSaved() {
+		return pattern.getStatesSaved();
+	}
+
+	/**
+	 * Returns whether the pattern is matched with a table, building it if
+	 * required.
+	 */
+	@VisibleForTesting
+	boolean buildTable() {
+		if (tableBuilt && modCount == pattern.getModCount()) {
+			return table != null;
+		}
+		tableBuilt = true;
+		modCount = pattern.getModCount();
+		table = null;
+
+		Program program = pattern.prepare();
+		EagerDFA<E> dfa = pattern.getEagerDFA();
+		if (dfa == null) {
+			return false;
+		}
+		E[] constants = type.getEnumConstants();
+		width = constants.length + 1;
+		int[] vectors = new int[width];
+		for (int slot = 0; slot < dfa.getSlotCount(); slot++) {
+			String id = program.getSlotId(slot);
+			EnumSet<E> values = idToValues.get(id);
+			for (int ordinal = 0; ordinal < constants.length; ordinal++) {
+				if (values.contains(constants[ordinal])) {
+					vectors[ordinal] |= 1 << slot;
+				}
+			}
+			if (nullIds.contains(id)) {
+				vectors[width - 1] |= 1 << slot;
+			}
+		}
+		int stateCount = dfa.getStateCount();
+		int[] table = new int[stateCount * width];
+		accepting = new boolean[stateCount];
+		decided = new boolean[stateCount];
+		for (int s = 0; s < stateCount; s++) {
+			for (int ordinal = 0; ordinal < width; ordinal++) {
+				table[s * width + ordinal] = dfa.next(s, vectors[ordinal]);
+			}
+			accepting[s] = dfa.isAccepting(s);
+			decided[s] = dfa.isDecided(s);
+		}
+		start = dfa.getStart();
+		this.table = table;
+		return true;
+	}
+}
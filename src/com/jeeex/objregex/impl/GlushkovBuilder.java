@@ -0,0 +1,193 @@
+package com.jeeex.objregex.impl;
+
+import java.util.BitSet;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.jeeex.objregex.impl.RegexNode.Alternation;
+import com.jeeex.objregex.impl.RegexNode.Concat;
+import com.jeeex.objregex.impl.RegexNode.Counted;
+import com.jeeex.objregex.impl.RegexNode.Quantified;
+import com.jeeex.objregex.impl.RegexNode.Symbol;
+
+/**
+ * Builds the position automaton, also known as the Glushkov automaton, of a
+ * {@link RegexNode}.
+ * <p>
+ * Every occurrence of an identifier in the pattern is a <em>position</em>,
+ * and the automaton has one state per position, plus the initial state. The
+ * state of a position is entered by the transitions labelled with its
+ * identifier, from the initial state if the position can start a match, and
+ * from every position that it can follow. The automaton has no
+ * {@link TransitionIdentifier#EPSILON} transitions, so the closures that
+ * {@link StateUtil#concat}, {@link StateUtil#or} and
+ * {@link StateUtil#kleineClosure} require are never computed. In return, a
+ * state can have as many transitions as there are positions.
+ * <p>
+ * The special identifiers, "^" and "$", are positions as well, entered by
+ * {@link TransitionIdentifier#BOF} and {@link TransitionIdentifier#EOF}
+ * transitions.
+ * <p>
+ * The automaton is lowered into a {@link Program} directly, since its states
+ * can have transitions labelled by both an identifier and its negation, which
+ * {@link TransitionIdentifier#equals(Object)} does not tell apart. It cannot
+ * expand identifiers bound to patterns, so it must only be built once every
+ * identifier is bound to a predicate. Counted repetitions of other nodes are
+ * unrolled, but those of a single identifier, which {@link CounterState} runs
+ * without copies, are not supported.
+ *
+ * @see NfaConstruction#GLUSHKOV
+ */
+final class GlushkovBuilder {
+
+	/**
+	 * Identifiers of the positions.
+	 */
+	private final List<TransitionIdentifier> positions = Lists.newArrayList();
+
+	/**
+	 * Positions that can follow each position.
+	 */
+	private final List<BitSet> follow = Lists.newArrayList();
+
+	private GlushkovBuilder() {
+	}
+
+	/**
+	 * First positions, last positions and nullability of a node.
+	 */
+	private static final class Summary {
+		final BitSet first;
+		final BitSet last;
+		final boolean nullable;
+
+		Summary(BitSet first, BitSet last, boolean nullable) {
+			this.first = first;
+			this.last = last;
+			this.nullable = nullable;
+		}
+	}
+
+	/**
+	 * Returns the position automaton of the given node, as a {@link Program}.
+	 * The initial state is 0, and the state of the i-th position is i + 1.
+	 * Returns null if the node has a counted repetition of a single
+	 * identifier.
+	 */
+	static Program build(RegexNode node) {
+		if (node.hasCounter()) {
+			return null;
+		}
+		GlushkovBuilder builder = new GlushkovBuilder();
+		Summary summary = builder.summarize(node);
+
+		int stateCount = builder.positions.size() + 1;
+		TransitionIdentifier[][] tids = new TransitionIdentifier[stateCount][];
+		int[][] targets = new int[stateCount][];
+		boolean[] accepting = new boolean[stateCount];
+
+		builder.transitions(0, summary.first, tids, targets);
+		accepting[0] = summary.nullable;
+		for (int p = 0; p < builder.positions.size(); p++) {
+			builder.transitions(p + 1, builder.follow.get(p), tids, targets);
+			accepting[p + 1] = summary.last.get(p);
+		}
+		return new Program(0, tids, targets, accepting);
+	}
+
+	/**
+	 * Fills the transitions of {@code state}, to the states of the given
+	 * positions.
+	 */
+	private void transitions(int state, BitSet successors,
+			TransitionIdentifier[][] tids, int[][] targets) {
+		tids[state] = new TransitionIdentifier[successors.cardinality()];
+		targets[state] = new int[tids[state].length];
+		int i = 0;
+		for (int p = successors.nextSetBit(0); p >= 0; p = successors
+				.nextSetBit(p + 1)) {
+			tids[state][i] = positions.get(p);
+			targets[state][i] = p + 1;
+			i++;
+		}
+	}
+
+	/**
+	 * Assigns positions to the identifiers of the node, adds the follow
+	 * relation within the node, and returns its summary.
+	 */
+	private Summary summarize(RegexNode node) {
+		if (node instanceof Symbol) {
+			Symbol symbol = (Symbol) node;
+			int p = positions.size();
+			positions.add(symbol.special ? TransitionIdentifier
+					.makeSpecialTid(symbol.id) : TransitionIdentifier.makeTid(
+					symbol.id, symbol.negated));
+			follow.add(new BitSet());
+			BitSet only = new BitSet();
+			only.set(p);
+			return new Summary(only, (BitSet) only.clone(), false);
+		} else if (node instanceof Concat) {
+			Summary result = null;
+			for (RegexNode element : ((Concat) node).elements) {
+				Summary summary = summarize(element);
+				result = result == null ? summary : concat(result, summary);
+			}
+			return result;
+		} else if (node instanceof Alternation) {
+			BitSet first = new BitSet();
+			BitSet last = new BitSet();
+			boolean nullable = false;
+			for (RegexNode alternative : ((Alternation) node).alternatives) {
+				Summary summary = summarize(alternative);
+				first.or(summary.first);
+				last.or(summary.last);
+				nullable |= summary.nullable;
+			}
+			return new Summary(first, last, nullable);
+		} else if (node instanceof Quantified) {
+			Quantified quantified = (Quantified) node;
+			Summary summary = summarize(quantified.child);
+			if (quantified.operator != RegexOperator.QUESTION) {
+				// the last positions loop back to the first positions.
+				addFollow(summary.last, summary.first);
+			}
+			boolean nullable = quantified.operator != RegexOperator.PLUS
+					|| summary.nullable;
+			return new Summary(summary.first, summary.last, nullable);
+		} else if (node instanceof Counted) {
+			Counted counted = (Counted) node;
+			return summarize(RegexNode.repeat(counted.child, counted.min,
+					counted.max));
+		}
+		// the empty string.
+		return new Summary(new BitSet(), new BitSet(), true);
+	}
+
+	/**
+	 * Returns the summary of {@code left} followed by {@code right}.
+	 */
+	private Summary concat(Summary left, Summary right) {
+		addFollow(left.last, right.first);
+		BitSet first = (BitSet) left.first.clone();
+		if (left.nullable) {
+			first.or(right.first);
+		}
+		BitSet last = (BitSet) right.last.clone();
+		if (right.nullable) {
+			last.or(left.last);
+		}
+		return new Summary(first, last, left.nullable && right.nullable);
+	}
+
+	/**
+	 * Lets every position in {@code successors} follow every position in
+	 * {@code predecessors}.
+	 */
+	private void addFollow(BitSet predecessors, BitSet successors) {
+		for (int p = predecessors.nextSetBit(0); p >= 0; p = predecessors
+				.nextSetBit(p + 1)) {
+			follow.get(p).or(successors);
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package com.jeeex.objregex.impl;
+
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import java.nio.IntBuffer;
+import java.util.Map;
+
+import com.google.common.base.Predicate;
+import com.jeeex.objregex.IntObjectPattern;
+import com.jeeex.objregex.IntPredicate;
+
+/**
+ * An implementation of {@link IntObjectPattern}.
+ * <p>
+ * The users of objregex should not initiate this class directly -
+ * {@link DefaultRegexFactory} should be used instead.
+ */
+final class IntObjectPatternImpl extends
+		PrimitivePatternImpl<Integer, IntPredicate, IntBuffer> implements
+		IntObjectPattern {
+
+	private static final IntPredicate ALWAYS_TRUE = new IntPredicate() {
+		public boolean apply(int input) {
+			return true;
+		}
+	};
+
+	private static final IntPredicate ALWAYS_FALSE = new IntPredicate() {
+		public boolean apply(int input) {
+			return false;
+		}
+	};
+
+	private IntEvaluator evaluator;
+
+	private static final class IntEvaluator extends Evaluator<IntPredicate> {
+		int element;
+
+		IntEvaluator(Program program, Map<String, IntPredicate> idToPredicate) {
+			super(program, idToPredicate);
+		}
+
+		@Override
+		boolean call(int slot) {
+			return getPredicate(slot).apply(element);
+		}
+	}
+
+	IntObjectPatternImpl(ObjectPatternImpl<Integer> pattern) {
+		super(pattern, ALWAYS_TRUE, ALWAYS_FALSE);
+	}
+
+	public boolean match(int[] input) throws NullPointerException {
+		return match(input, 0, input.length);
+	}
+
+	public boolean match(int[] input, int fromIndex, int toIndex)
+			throws NullPointerException, IndexOutOfBoundsException {
+		checkPositionIndexes(fromIndex, toIndex, input.length);
+		// wrapping does not copy the array.
+		return match(IntBuffer.wrap(input), fromIndex, toIndex);
+	}
+
+	@Override
+	Evaluator<IntPredicate> newEvaluator(Program program,
+			Map<String, IntPredicate> idToPredicate) {
+		evaluator = new IntEvaluator(program, idToPredicate);
+		return evaluator;
+	}
+
+	@Override
+	void load(int index) {
+		evaluator.element = input.get(index);
+		evaluator.nextElement();
+	}
+
+	@Override
+	Predicate<Integer> box(final IntPredicate predicate) {
+		return new Predicate<Integer>() {
+			public boolean apply(Integer input) {
+				return predicate.apply(input);
+			}
+		};
+	}
+}
@@ -0,0 +1,321 @@
+package com.jeeex.objregex.impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+/**
+ * A deterministic automaton built on demand from a {@link Program} by subset
+ * construction.
+ * <p>
+ * Each DFA state is an interned, closed set of NFA states. Every element is
+ * first classified into a {@link Minterms minterm}, and the transitions
+ * leaving a DFA state are stored in an array indexed by minterm id. A
+ * transition is computed the first time its minterm is seen from the state,
+ * and cached afterwards, so the NFA state sets are derived at most once per
+ * distinct minterm and a cached step is a single array lookup.
+ * <p>
+ * The cache is bounded by an approximate memory limit. When the limit is
+ * exceeded, every cached state and transition is discarded, and the cache is
+ * rebuilt as matching continues. The cache is also discarded by
+ * {@link #invalidate()}, which is called whenever an identifier is assigned,
+ * and when the minterm ids become stale.
+ * <p>
+ * The program must not have counters, which a finite cache of state sets
+ * cannot represent.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @see MatchEngine#LAZY_DFA
+ */
+final class LazyDFA<T> {
+
+	/**
+	 * Approximate memory used by a DFA state, in bytes, besides its arrays.
+	 */
+	private static final int STATE_OVERHEAD = 64;
+
+	/**
+	 * Approximate memory used by an entry of a transition array, in bytes.
+	 */
+	private static final int TRANSITION_SIZE = 8;
+
+	/**
+	 * A DFA state, or a closed set of NFA states.
+	 */
+	static final class DState {
+		/**
+		 * NFA states, in ascending order.
+		 */
+		final int[] states;
+
+		/**
+		 * Whether the accepting state is reachable at EOF.
+		 */
+		final boolean accepting;
+
+		/**
+		 * Whether the result of a match is known once this state is reached:
+		 * the set is empty, every state is dead or some state accepts
+		 * forever.
+		 */
+		final boolean decided;
+
+		/**
+		 * Cached transitions, indexed by minterm id. {@code null} entries
+		 * have not been computed yet.
+		 */
+		DState[] next = new DState[0];
+
+		DState(int[] states, boolean accepting, boolean decided) {
+			this.states = states;
+			this.accepting = accepting;
+			this.decided = decided;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof DState
+					&& Arrays.equals(states, ((DState) other).states);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(states);
+		}
+	}
+
+	private final Program program;
+	private final PredicateEvaluator<T> evaluator;
+	private final Minterms<T> minterms;
+	private final int memoryLimit;
+
+	/**
+	 * Used to stop as soon as the result is known. Null if the program could
+	 * not be analyzed.
+	 */
+	private StateAnalysis analysis;
+
+	/**
+	 * Interned DFA states.
+	 */
+	private final Map<DState, DState> cache = Maps.newHashMap();
+	private int memoryUsed;
+	private DState start;
+	private int flushCount;
+
+	/**
+	 * Scratch space used to compute NFA state sets.
+	 */
+	private final StateSet scratch;
+
+	LazyDFA(Program program, PredicateEvaluator<T> evaluator,
+			int memoryLimit) {
+		this.program = program;
+		this.evaluator = evaluator;
+		this.minterms = new Minterms<T>(program, evaluator);
+		this.memoryLimit = memoryLimit;
+		this.scratch = new StateSet(program.getStateCount());
+	}
+
+	boolean match(Iterator<? extends T> input) {
+		DState state = getStart();
+		while (!state.decided && input.hasNext()) {
+			state = next(state, input.next());
+		}
+		return state.accepting;
+	}
+
+	boolean match(List<? extends T> input, int fromIndex, int toIndex) {
+		DState state = getStart();
+		for (int i = fromIndex; i < toIndex && !state.decided; i++) {
+			state = next(state, input.get(i));
+		}
+		return state.accepting;
+	}
+
+	boolean match(T[] input) {
+		DState state = getStart();
+		for (int i = 0; i < input.length && !state.decided; i++) {
+			state = next(state, input[i]);
+		}
+		return state.accepting;
+	}
+
+	/**
+	 * Sets the analysis used to stop early, discarding the cache.
+	 */
+	void setAnalysis(StateAnalysis analysis) {
+		this.analysis = analysis;
+		invalidate();
+	}
+
+	/**
+	 * Discards every cached state and transition, and every minterm.
+	 */
+	void invalidate() {
+		cache.clear();
+		minterms.clear();
+		memoryUsed = 0;
+		start = null;
+	}
+
+	/**
+	 * Returns the number of times the cache was discarded because the memory
+	 * limit was exceeded.
+	 */
+	int getFlushCount() {
+		return flushCount;
+	}
+
+	/**
+	 * Returns the number of DFA states in the cache.
+	 */
+	int getStateCount() {
+		return cache.size();
+	}
+
+	/**
+	 * Returns the number of minterms seen since the cache was last discarded.
+	 */
+	int getMintermCount() {
+		return minterms.size();
+	}
+
+	private DState getStart() {
+		if (start == null) {
+			scratch.clear();
+			for (int s : program.getBofClosure(program.getStart())) {
+				scratch.add(s);
+			}
+			start = intern(scratch);
+		}
+		return start;
+	}
+
+	/**
+	 * Returns the DFA state reached from {@code state} by {@code token}.
+	 */
+	private DState next(DState state, T token) {
+		evaluator.setElement(token);
+		if (!minterms.isSupported()) {
+			// too many identifiers to classify elements.
+			return intern(successors(state));
+		}
+		if (minterms.isStale()) {
+			// the minterm ids no longer cover every identifier.
+			invalidate();
+			state = intern(toStateSet(state.states));
+		}
+
+		int minterm = minterms.classify();
+		DState[] row = state.next;
+		if (minterm < row.length && row[minterm] != null) {
+			return row[minterm];
+		}
+
+		DState next = intern(successors(state, minterm));
+		if (minterm >= row.length) {
+			int length = Math.max(minterm + 1, minterms.size());
+			memoryUsed += TRANSITION_SIZE * (length - row.length);
+			DState[] grown = new DState[length];
+			System.arraycopy(row, 0, grown, 0, row.length);
+			state.next = grown;
+		}
+		if (memoryUsed > memoryLimit) {
+			// the cache is full - start over, keeping only the state that is
+			// about to be used.
+			flushCount++;
+			invalidate();
+			return intern(toStateSet(next.states));
+		}
+		state.next[minterm] = next;
+		return next;
+	}
+
+	/**
+	 * Computes the closed set of NFA states reached from {@code state} by the
+	 * elements of the given minterm.
+	 */
+	private StateSet successors(DState state, int minterm) {
+		StateSet next = scratch;
+		next.clear();
+		for (int s : state.states) {
+			int[] targets = program.getTargets(s);
+			int[] labels = program.getLabels(s);
+			for (int j = 0; j < targets.length; j++) {
+				if (!next.contains(targets[j])
+						&& minterms.accepts(minterm, labels[j])) {
+					for (int t : program.getClosure(targets[j])) {
+						next.add(t);
+					}
+				}
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Computes the closed set of NFA states reached from {@code state} by the
+	 * current element, without going through the cache.
+	 */
+	private StateSet successors(DState state) {
+		StateSet next = scratch;
+		next.clear();
+		for (int s : state.states) {
+			int[] targets = program.getTargets(s);
+			int[] labels = program.getLabels(s);
+			for (int j = 0; j < targets.length; j++) {
+				if (!next.contains(targets[j])
+						&& evaluator.evaluate(labels[j])) {
+					for (int t : program.getClosure(targets[j])) {
+						next.add(t);
+					}
+				}
+			}
+		}
+		return next;
+	}
+
+	private StateSet toStateSet(int[] states) {
+		scratch.clear();
+		for (int s : states) {
+			scratch.add(s);
+		}
+		return scratch;
+	}
+
+	/**
+	 * Returns the DFA state for the given set of NFA states, creating it if
+	 * required.
+	 */
+	private DState intern(StateSet set) {
+		int[] states = new int[set.size()];
+		for (int i = 0; i < states.length; i++) {
+			states[i] = set.get(i);
+		}
+		Arrays.sort(states);
+
+		DState probe = new DState(states, false, false);
+		DState interned = cache.get(probe);
+		if (interned != null) {
+			return interned;
+		}
+
+		boolean accepting = false;
+		for (int s : states) {
+			accepting |= program.isAcceptingAtEof(s);
+		}
+
+		// the empty set can never grow.
+		boolean decided = states.length == 0
+				|| (analysis != null && analysis.isDecided(set, false));
+		interned = new DState(states, accepting, decided);
+		cache.put(interned, interned);
+		memoryUsed += STATE_OVERHEAD + 4 * states.length;
+		return interned;
+	}
+}
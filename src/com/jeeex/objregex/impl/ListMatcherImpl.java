@@ -0,0 +1,126 @@
+package com.jeeex.objregex.impl;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkPositionIndex;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.jeeex.objregex.ListMatcher;
+
+/**
+ * An implementation of {@link ListMatcher}, which runs the {@link Searcher}
+ * of its pattern.
+ */
+final class ListMatcherImpl<T> implements ListMatcher<T> {
+
+	private final ObjectPatternImpl<T> pattern;
+	private final List<? extends T> input;
+
+	/**
+	 * Index at which the next search starts. Greater than the size of the
+	 * input once every match has been found.
+	 */
+	private int from;
+
+	/**
+	 * Bounds of the last match. Null if the last search failed.
+	 */
+	private int[] match;
+
+	/**
+	 * Bounds of the groups of the last match, as returned by
+	 * {@link ObjectPatternImpl#findGroups}. Null if they have not been
+	 * resolved yet.
+	 */
+	private int[] groups;
+
+	ListMatcherImpl(ObjectPatternImpl<T> pattern, List<? extends T> input) {
+		this.pattern = pattern;
+		this.input = input;
+	}
+
+	public boolean find() {
+		if (from > input.size()) {
+			match = null;
+			return false;
+		}
+		groups = null;
+		match = pattern.find(input, from);
+		if (match == null) {
+			from = input.size() + 1;
+			return false;
+		}
+		// an empty match would be found again.
+		from = match[1] == match[0] ? match[1] + 1 : match[1];
+		return true;
+	}
+
+	public boolean find(int fromIndex) throws IndexOutOfBoundsException {
+		checkPositionIndex(fromIndex, input.size());
+		reset();
+		from = fromIndex;
+		return find();
+	}
+
+	public int start() throws IllegalStateException {
+		return start(0);
+	}
+
+	public int end() throws IllegalStateException {
+		return end(0);
+	}
+
+	public List<T> group() throws IllegalStateException {
+		return group(0);
+	}
+
+	public int groupCount() {
+		return pattern.getGroupCount();
+	}
+
+	public int start(int group) throws IllegalStateException,
+			IndexOutOfBoundsException {
+		return getGroups(group)[2 * group];
+	}
+
+	public int end(int group) throws IllegalStateException,
+			IndexOutOfBoundsException {
+		return getGroups(group)[2 * group + 1];
+	}
+
+	public List<T> group(int group) throws IllegalStateException,
+			IndexOutOfBoundsException {
+		int[] bounds = getGroups(group);
+		int start = bounds[2 * group];
+		if (start < 0) {
+			return null;
+		}
+		return Collections.unmodifiableList(input.subList(start,
+				bounds[2 * group + 1]));
+	}
+
+	/**
+	 * Returns the bounds of the groups of the last match, resolving them if
+	 * required. Group 0 is always resolved.
+	 */
+	private int[] getGroups(int group) {
+		checkState(match != null, "No match available.");
+		checkElementIndex(group, pattern.getGroupCount() + 1);
+		if (group == 0) {
+			return match;
+		}
+		if (groups == null) {
+			groups = pattern.findGroups(input, match[0]);
+		}
+		return groups;
+	}
+
+	public ListMatcher<T> reset() {
+		from = 0;
+		match = null;
+		groups = null;
+		return this;
+	}
+}
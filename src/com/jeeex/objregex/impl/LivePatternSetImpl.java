@@ -0,0 +1,377 @@
+package com.jeeex.objregex.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.regex.PatternSyntaxException;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jeeex.objregex.LivePatternSet;
+import com.jeeex.objregex.PatternSnapshot;
+
+/**
+ * An implementation of {@link LivePatternSet}.
+ * <p>
+ * When an expression is added, it is parsed, optimized and translated to
+ * {@link State}s, which are lowered into a {@link Program} of its own,
+ * {@link Program#lowerCompletely() completely}, so that the snapshots only
+ * ever read it. That program is a fragment of every later snapshot, until the
+ * expression is removed: a change only adds or drops a fragment, or replaces
+ * a predicate, and never lowers the other expressions again.
+ * <p>
+ * The identifiers of all fragments are numbered by set-wide slots, so that a
+ * match calls each predicate at most once per element, however many
+ * expressions refer to it. Each match of a snapshot gets its own
+ * {@link CounterRegisters} and evaluators, which are the only state that a
+ * match writes. Snapshots are published through a volatile field.
+ * <p>
+ * The users of objregex should not initiate this class directly -
+ * {@link DefaultRegexFactory} should be used instead.
+ */
+final class LivePatternSetImpl<T> implements LivePatternSet<T> {
+
+	/**
+	 * Holds the identifiers of the set, and translates the expressions to
+	 * {@link State}s with them. It is never matched itself. Guarded by this.
+	 */
+	private final ObjectPatternImpl<T> bindings;
+
+	/**
+	 * The expression at each index, or null if it was removed. Guarded by
+	 * this.
+	 */
+	private final List<String> regexes = Lists.newArrayList();
+
+	/**
+	 * The fragment of each expression, or null if it was removed. Guarded by
+	 * this.
+	 */
+	private final List<Fragment> fragments = Lists.newArrayList();
+
+	/**
+	 * Map of identifier -> set-wide slot. Slots are never reused. Guarded by
+	 * this.
+	 */
+	private final Map<String, Integer> slotNumbers = Maps.newHashMap();
+	private final List<String> slotIds = Lists.newArrayList();
+
+	private volatile Snapshot<T> snapshot;
+
+	/**
+	 * The program of an expression. Never written to once it is built.
+	 */
+	private static final class Fragment {
+		final int index;
+		final Program program;
+
+		/**
+		 * The set-wide slot of each slot of {@link #program}.
+		 */
+		final int[] slots;
+
+		Fragment(int index, Program program, int[] slots) {
+			this.index = index;
+			this.program = program;
+			this.slots = slots;
+		}
+	}
+
+	/**
+	 * An immutable state of the set.
+	 */
+	private static final class Snapshot<T> implements PatternSnapshot<T> {
+		private final Fragment[] fragments;
+
+		/**
+		 * The predicate of each set-wide slot.
+		 */
+		private final Predicate<T>[] predicates;
+		private final String[] regexes;
+
+		Snapshot(Fragment[] fragments, Predicate<T>[] predicates,
+				String[] regexes) {
+			this.fragments = fragments;
+			this.predicates = predicates;
+			this.regexes = regexes;
+		}
+
+		public BitSet match(List<? extends T> input)
+				throws NullPointerException {
+			checkNotNull(input);
+			if (!(input instanceof RandomAccess)) {
+				return match(input.iterator());
+			}
+			Run<T> run = new Run<T>(this);
+			for (int i = 0; i < input.size() && !run.isDead(); i++) {
+				run.feed(input.get(i));
+			}
+			return run.accepted();
+		}
+
+		public BitSet match(Iterator<? extends T> input)
+				throws NullPointerException {
+			checkNotNull(input);
+			Run<T> run = new Run<T>(this);
+			while (!run.isDead() && input.hasNext()) {
+				run.feed(input.next());
+			}
+			return run.accepted();
+		}
+
+		public int size() {
+			return regexes.length;
+		}
+
+		public String getRegex(int index) {
+			return index >= 0 && index < regexes.length ? regexes[index]
+					: null;
+		}
+	}
+
+	/**
+	 * A match of a snapshot, which simulates the fragments side by side, like
+	 * {@link SetSimulator} does with a single program. Fragments that can no
+	 * longer match are dropped.
+	 */
+	private static final class Run<T> {
+		private final Predicate<T>[] predicates;
+
+		/**
+		 * {@code values[slot]} is valid if and only if {@code stamps[slot] ==
+		 * stamp}.
+		 */
+		private final int[] stamps;
+		private final boolean[] values;
+		private int stamp = 1;
+		private T element;
+
+		/**
+		 * The fragments that can still match, in {@code [0, alive)}.
+		 */
+		private final FragmentRun<T>[] runs;
+		private int alive;
+
+		@SuppressWarnings("unchecked")
+		Run(Snapshot<T> snapshot) {
+			this.predicates = snapshot.predicates;
+			this.stamps = new int[predicates.length];
+			this.values = new boolean[predicates.length];
+			this.runs = (FragmentRun<T>[]) new FragmentRun<?>[snapshot.fragments
+					.length];
+			for (Fragment fragment : snapshot.fragments) {
+				runs[alive++] = new FragmentRun<T>(this, fragment);
+			}
+			prune();
+		}
+
+		boolean isDead() {
+			return alive == 0;
+		}
+
+		void feed(T element) {
+			this.element = element;
+			if (++stamp == 0) {
+				// the stamp wrapped around, so old stamps could look current.
+				Arrays.fill(stamps, 0);
+				stamp = 1;
+			}
+			for (int i = 0; i < alive; i++) {
+				runs[i].step();
+			}
+			prune();
+		}
+
+		/**
+		 * Evaluates the predicate of the given set-wide slot against the
+		 * current element, at most once per element.
+		 */
+		boolean evaluate(int slot) {
+			if (stamps[slot] != stamp) {
+				values[slot] = predicates[slot].apply(element);
+				stamps[slot] = stamp;
+			}
+			return values[slot];
+		}
+
+		/**
+		 * Drops the fragments that can no longer match.
+		 */
+		private void prune() {
+			int kept = 0;
+			for (int i = 0; i < alive; i++) {
+				if (!runs[i].isDead()) {
+					runs[kept++] = runs[i];
+				}
+			}
+			alive = kept;
+		}
+
+		/**
+		 * Returns the expressions that are matched if the input ends now.
+		 */
+		BitSet accepted() {
+			BitSet matched = new BitSet();
+			for (int i = 0; i < alive; i++) {
+				if (runs[i].isAcceptingAtEof()) {
+					matched.set(runs[i].fragment.index);
+				}
+			}
+			return matched;
+		}
+	}
+
+	/**
+	 * The simulation of a fragment within a {@link Run}, which evaluates the
+	 * labels of the fragment with the set-wide slots of the run.
+	 */
+	private static final class FragmentRun<T> extends SlotEvaluator {
+		private final Run<T> run;
+		final Fragment fragment;
+		private final CounterRegisters counters;
+		private StateSet states;
+		private StateSet nextStates;
+
+		FragmentRun(Run<T> run, Fragment fragment) {
+			super(fragment.program);
+			this.run = run;
+			this.fragment = fragment;
+			this.counters = new CounterRegisters(program);
+			this.states = new StateSet(program.getStateCount());
+			this.nextStates = new StateSet(program.getStateCount());
+			for (int s : program.getBofClosure(program.getStart())) {
+				states.add(s);
+			}
+		}
+
+		@Override
+		boolean call(int slot) {
+			return run.evaluate(fragment.slots[slot]);
+		}
+
+		/**
+		 * Consumes the current element of the run.
+		 */
+		void step() {
+			nextElement();
+			ObjectPatternImpl.step(program, this, states, nextStates, counters);
+			StateSet swap = states;
+			states = nextStates;
+			nextStates = swap;
+		}
+
+		boolean isDead() {
+			return states.isEmpty() && !counters.isActive();
+		}
+
+		boolean isAcceptingAtEof() {
+			for (int i = 0; i < states.size(); i++) {
+				if (program.isAcceptingAtEof(states.get(i))) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	LivePatternSetImpl(boolean optimizerEnabled) {
+		this.bindings = new ObjectPatternImpl<T>("");
+		bindings.setOptimizerEnabled(optimizerEnabled);
+		publish();
+	}
+
+	public synchronized int add(String regex) throws PatternSyntaxException,
+			IllegalArgumentException, NullPointerException {
+		checkNotNull(regex);
+		checkArgument(bindings.idToPredicate.keySet().containsAll(
+				RegexUtil.extractIdentifiers(RegexUtil.getRootNode(regex))),
+				"Every identifier must be assigned a predicate.");
+		Program program = new Program(bindings.buildState(regex));
+		program.lowerCompletely();
+		int[] slots = new int[program.getSlotCount()];
+		for (int slot = 0; slot < slots.length; slot++) {
+			slots[slot] = slot(program.getSlotId(slot));
+		}
+
+		int index = regexes.size();
+		regexes.add(regex);
+		fragments.add(new Fragment(index, program, slots));
+		publish();
+		return index;
+	}
+
+	public synchronized boolean remove(int index) {
+		if (index < 0 || index >= regexes.size() || regexes.get(index) == null) {
+			return false;
+		}
+		regexes.set(index, null);
+		fragments.set(index, null);
+		publish();
+		return true;
+	}
+
+	public synchronized void set(String identifier, Predicate<T> predicate)
+			throws NullPointerException {
+		// the fragments only refer to the identifier, so they are still
+		// valid.
+		bindings.set(identifier, predicate);
+		publish();
+	}
+
+	public PatternSnapshot<T> snapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Returns the program of the expression at the given index, or null if
+	 * there is none.
+	 */
+	@VisibleForTesting
+	synchronized Program getProgram(int index) {
+		Fragment fragment = fragments.get(index);
+		return fragment != null ? fragment.program : null;
+	}
+
+	/**
+	 * Returns the set-wide slot of the given identifier, assigning a new one
+	 * if required.
+	 */
+	private int slot(String id) {
+		Integer number = slotNumbers.get(id);
+		if (number != null) {
+			return number;
+		}
+		slotNumbers.put(id, slotIds.size());
+		slotIds.add(id);
+		return slotIds.size() - 1;
+	}
+
+	/**
+	 * Makes a snapshot of the current fragments and predicates the latest
+	 * one. The fragments are shared with the previous snapshot.
+	 */
+	@SuppressWarnings("unchecked")
+	private void publish() {
+		List<Fragment> live = Lists.newArrayList();
+		for (Fragment fragment : fragments) {
+			if (fragment != null) {
+				live.add(fragment);
+			}
+		}
+		Predicate<T>[] predicates = (Predicate<T>[]) new Predicate<?>[slotIds
+				.size()];
+		for (int slot = 0; slot < predicates.length; slot++) {
+			predicates[slot] = bindings.idToPredicate.get(slotIds.get(slot));
+		}
+		snapshot = new Snapshot<T>(live.toArray(new Fragment[live.size()]),
+				predicates, regexes.toArray(new String[regexes.size()]));
+	}
+}
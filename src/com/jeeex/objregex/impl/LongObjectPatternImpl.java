@@ -0,0 +1,86 @@
+package com.jeeex.objregex.impl;
+
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import java.nio.LongBuffer;
+import java.util.Map;
+
+import com.google.common.base.Predicate;
+import com.jeeex.objregex.LongObjectPattern;
+import com.jeeex.objregex.LongPredicate;
+
+/**
+ * An implementation of {@link LongObjectPattern}.
+ * <p>
+ * The users of objregex should not initiate this class directly -
+ * {@link DefaultRegexFactory} should be used instead.
+ */
+final class LongObjectPatternImpl extends
+		PrimitivePatternImpl<Long, LongPredicate, LongBuffer> implements
+		LongObjectPattern {
+
+	private static final LongPredicate ALWAYS_TRUE = new LongPredicate() {
+		public boolean apply(long input) {
+			return true;
+		}
+	};
+
+	private static final LongPredicate ALWAYS_FALSE = new LongPredicate() {
+		public boolean apply(long input) {
+			return false;
+		}
+	};
+
+	private LongEvaluator evaluator;
+
+	private static final class LongEvaluator extends Evaluator<LongPredicate> {
+		long element;
+
+		LongEvaluator(Program program,
+				Map<String, LongPredicate> idToPredicate) {
+			super(program, idToPredicate);
+		}
+
+		@Override
+		boolean call(int slot) {
+			return getPredicate(slot).apply(element);
+		}
+	}
+
+	LongObjectPatternImpl(ObjectPatternImpl<Long> pattern) {
+		super(pattern, ALWAYS_TRUE, ALWAYS_FALSE);
+	}
+
+	public boolean match(long[] input) throws NullPointerException {
+		return match(input, 0, input.length);
+	}
+
+	public boolean match(long[] input, int fromIndex, int toIndex)
+			throws NullPointerException, IndexOutOfBoundsException {
+		checkPositionIndexes(fromIndex, toIndex, input.length);
+		// wrapping does not copy the array.
+		return match(LongBuffer.wrap(input), fromIndex, toIndex);
+	}
+
+	@Override
+	Evaluator<LongPredicate> newEvaluator(Program program,
+			Map<String, LongPredicate> idToPredicate) {
+		evaluator = new LongEvaluator(program, idToPredicate);
+		return evaluator;
+	}
+
+	@Override
+	void load(int index) {
+		evaluator.element = input.get(index);
+		evaluator.nextElement();
+	}
+
+	@Override
+	Predicate<Long> box(final LongPredicate predicate) {
+		return new Predicate<Long>() {
+			public boolean apply(Long input) {
+				return predicate.apply(input);
+			}
+		};
+	}
+}
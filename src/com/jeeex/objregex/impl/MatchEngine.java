@@ -0,0 +1,51 @@
+package com.jeeex.objregex.impl;
+
+import com.jeeex.objregex.ObjectPattern;
+
+/**
+ * The algorithms that {@link ObjectPattern}s produced by
+ * {@link DefaultRegexFactory} can use to match their input.
+ * 
+ * @see DefaultRegexFactory#setEngine(MatchEngine)
+ */
+public enum MatchEngine {
+	/**
+	 * Simulates the NFA with a set of active states, which is replaced by the
+	 * union of the closures of its successors after every element. The state
+	 * of a match is created per call, so once its identifiers are assigned, a
+	 * pattern can be matched by several threads at once, unless it refers to
+	 * another pattern.
+	 */
+	SET_SIMULATION,
+
+	/**
+	 * Runs the NFA as a Pike VM, with two thread lists that are reused across
+	 * elements and across calls. Matching takes O(input x states) time, and
+	 * does not allocate once every state has been visited.
+	 */
+	PIKE_VM,
+
+	/**
+	 * Builds a DFA on demand, caching each state set and transition the first
+	 * time it is computed. The cache is bounded by
+	 * {@link DefaultRegexFactory#setDfaMemoryLimit(int)}.
+	 */
+	LAZY_DFA,
+
+	/**
+	 * Builds a minimal DFA over every combination of predicate outcomes before
+	 * the first match, so that matching an element is a single table lookup.
+	 * Falls back to {@link #PIKE_VM} when the pattern refers to another
+	 * pattern, including itself, or when the DFA would exceed
+	 * {@link DefaultRegexFactory#setDfaMemoryLimit(int)}.
+	 */
+	EAGER_DFA,
+
+	/**
+	 * Compiles the {@link #EAGER_DFA} to a class at runtime, with a block of
+	 * code per state and a direct call per predicate, so that the JIT compiler
+	 * can inline the predicates into the matching loop. Falls back to
+	 * {@link #EAGER_DFA} when the generated code would be too long.
+	 */
+	COMPILED;
+}
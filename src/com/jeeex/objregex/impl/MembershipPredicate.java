@@ -0,0 +1,42 @@
+package com.jeeex.objregex.impl;
+
+import java.util.Collections;
+import java.util.Set;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Sets;
+
+/**
+ * A predicate that accepts the elements of a set of values, bound by
+ * {@link ObjectPatternImpl#setEquals(String, Object)} and
+ * {@link ObjectPatternImpl#setIn(String, Set)}.
+ * <p>
+ * {@link PredicateEvaluator} does not call it, but looks the element up in an
+ * index of the values of every such predicate of a program.
+ */
+final class MembershipPredicate<T> implements Predicate<T> {
+
+	private final Set<Object> values;
+
+	/**
+	 * @param values
+	 *            copied, and may contain {@code null}.
+	 */
+	MembershipPredicate(Set<?> values) {
+		this.values = Collections.unmodifiableSet(Sets
+				.<Object> newHashSet(values));
+	}
+
+	public boolean apply(T input) {
+		return values.contains(input);
+	}
+
+	Set<Object> getValues() {
+		return values;
+	}
+
+	@Override
+	public String toString() {
+		return "In" + values;
+	}
+}
@@ -0,0 +1,161 @@
+package com.jeeex.objregex.impl;
+
+import java.util.Arrays;
+
+/**
+ * Partitions elements into minterms - the distinct combinations of predicate
+ * outcomes over the {@link Program#getSlot(int) slots} of a {@link Program}.
+ * <p>
+ * Every element is classified once, by evaluating the predicate of each slot,
+ * and the resulting outcome vector is interned to a small, dense minterm id.
+ * Two elements with the same minterm id are indistinguishable to the
+ * automaton, so the id can drive it as if it were a character. Only the
+ * minterms that actually occur in the input are assigned an id.
+ * <p>
+ * Outcome vectors are kept in a {@code long}, so at most {@link #MAX_SLOTS}
+ * slots are supported. The ids become stale when the {@link Program}
+ * discovers new slots, which only happens while lazily expanding a pattern
+ * that refers to another pattern.
+ * <p>
+ * This class is not thread safe.
+ */
+final class Minterms<T> {
+
+	/**
+	 * Maximum number of slots an outcome vector can hold.
+	 */
+	static final int MAX_SLOTS = 64;
+
+	private final Program program;
+	private final PredicateEvaluator<T> evaluator;
+
+	/**
+	 * Number of slots covered by the outcome vectors.
+	 */
+	private int slotCount;
+
+	/**
+	 * Outcome vector of each minterm id.
+	 */
+	private long[] vectors = new long[16];
+	private int size;
+
+	/**
+	 * Open addressing hash table of outcome vector -> minterm id + 1. Zero
+	 * marks an empty entry.
+	 */
+	private long[] keys = new long[32];
+	private int[] ids = new int[32];
+
+	Minterms(Program program, PredicateEvaluator<T> evaluator) {
+		this.program = program;
+		this.evaluator = evaluator;
+		this.slotCount = program.getSlotCount();
+	}
+
+	/**
+	 * Returns whether elements can be classified, that is, whether the
+	 * {@link Program} has at most {@link #MAX_SLOTS} slots.
+	 */
+	boolean isSupported() {
+		return program.getSlotCount() <= MAX_SLOTS;
+	}
+
+	/**
+	 * Returns whether the {@link Program} has discovered slots that the
+	 * minterm ids do not account for. Stale ids must be discarded with
+	 * {@link #clear()}.
+	 */
+	boolean isStale() {
+		return program.getSlotCount() != slotCount;
+	}
+
+	/**
+	 * Discards every minterm id, and starts covering every slot of the
+	 * {@link Program}.
+	 */
+	void clear() {
+		slotCount = program.getSlotCount();
+		size = 0;
+		Arrays.fill(ids, 0);
+	}
+
+	/**
+	 * Returns the number of minterm ids assigned so far.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the minterm id of the current element of the
+	 * {@link PredicateEvaluator}.
+	 */
+	int classify() {
+		long vector = 0;
+		for (int slot = 0; slot < slotCount; slot++) {
+			if (evaluator.evaluateSlot(slot)) {
+				vector |= 1L << slot;
+			}
+		}
+		return intern(vector);
+	}
+
+	/**
+	 * Returns the outcome vector of the given minterm id: bit {@code i} is set
+	 * if the predicate of slot {@code i} accepts the elements of the minterm.
+	 */
+	long getVector(int minterm) {
+		return vectors[minterm];
+	}
+
+	/**
+	 * Returns whether the given label accepts the elements of the given
+	 * minterm, taking negation into account.
+	 */
+	boolean accepts(int minterm, int label) {
+		boolean outcome = ((vectors[minterm] >>> program.getSlot(label)) & 1) != 0;
+		return outcome != program.isNegation(label);
+	}
+
+	private int intern(long vector) {
+		int mask = keys.length - 1;
+		int i = hash(vector) & mask;
+		while (ids[i] != 0) {
+			if (keys[i] == vector) {
+				return ids[i] - 1;
+			}
+			i = (i + 1) & mask;
+		}
+
+		if (size == vectors.length) {
+			vectors = ArrayUtil.grow(vectors, size * 2);
+		}
+		vectors[size] = vector;
+		keys[i] = vector;
+		ids[i] = ++size;
+		if (size * 2 > keys.length) {
+			rehash();
+		}
+		return size - 1;
+	}
+
+	private void rehash() {
+		keys = new long[keys.length * 2];
+		ids = new int[ids.length * 2];
+		int mask = keys.length - 1;
+		for (int id = 0; id < size; id++) {
+			int i = hash(vectors[id]) & mask;
+			while (ids[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			keys[i] = vectors[id];
+			ids[i] = id + 1;
+		}
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
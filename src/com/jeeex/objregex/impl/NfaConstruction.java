@@ -0,0 +1,28 @@
+package com.jeeex.objregex.impl;
+
+import com.jeeex.objregex.ObjectPattern;
+
+/**
+ * The ways {@link ObjectPattern}s produced by {@link DefaultRegexFactory} can
+ * translate their pattern to an NFA. Every {@link MatchEngine} runs on the
+ * resulting NFA.
+ *
+ * @see DefaultRegexFactory#setConstruction(NfaConstruction)
+ */
+public enum NfaConstruction {
+	/**
+	 * Thompson's construction, by {@link StateUtil}. Every operator adds
+	 * states connected by epsilon transitions, whose closures are cached, and
+	 * identifiers bound to patterns are expanded as they are reached.
+	 */
+	THOMPSON,
+
+	/**
+	 * The position automaton, by {@link GlushkovBuilder}: one state per
+	 * occurrence of an identifier, and no epsilon transitions. Built before
+	 * the first match once every identifier is bound to a predicate. Falls
+	 * back to {@link #THOMPSON} while an identifier is bound to a pattern,
+	 * including "this".
+	 */
+	GLUSHKOV;
+}
@@ -0,0 +1,77 @@
+package com.jeeex.objregex.impl;
+
+import java.util.ConcurrentModificationException;
+
+import com.jeeex.objregex.ObjectMatcher;
+
+/**
+ * An implementation of {@link ObjectMatcher}, which simulates the NFA of its
+ * pattern one element at a time with
+ * {@link ObjectPatternImpl#consume(StateSet, Object, PredicateEvaluator, StateSet, CounterRegisters)}
+ * , whatever the {@link MatchEngine} of the pattern is.
+ */
+final class ObjectMatcherImpl<T> implements ObjectMatcher<T> {
+
+	private final ObjectPatternImpl<T> pattern;
+
+	/**
+	 * {@link ObjectPatternImpl#getModCount()} at the last {@link #reset()}.
+	 */
+	private int expectedModCount;
+
+	private PredicateEvaluator<T> evaluator;
+
+	private CounterRegisters counters;
+
+	/**
+	 * The states active after the elements fed so far, and the set that the
+	 * next element fills. They are swapped after every element.
+	 */
+	private StateSet currentStates;
+	private StateSet nextStates;
+
+	ObjectMatcherImpl(ObjectPatternImpl<T> pattern) {
+		this.pattern = pattern;
+		reset();
+	}
+
+	public void feed(T element) {
+		checkForComodification();
+		if (pattern.isDecided(currentStates, counters)) {
+			return;
+		}
+		pattern.consume(currentStates, element, evaluator, nextStates,
+				counters);
+
+		StateSet swap = currentStates;
+		currentStates = nextStates;
+		nextStates = swap;
+	}
+
+	public boolean isMatching() {
+		checkForComodification();
+		return pattern.isAcceptingAtEof(currentStates);
+	}
+
+	public boolean canStillMatch() {
+		checkForComodification();
+		return !pattern.isDead(currentStates, counters);
+	}
+
+	public ObjectMatcher<T> reset() {
+		Program program = pattern.prepare();
+		expectedModCount = pattern.getModCount();
+		evaluator = pattern.newEvaluator();
+		counters = new CounterRegisters(program);
+		currentStates = pattern.startStates(counters);
+		nextStates = new StateSet(program.getStateCount());
+		return this;
+	}
+
+	private void checkForComodification() {
+		if (pattern.getModCount() != expectedModCount) {
+			throw new ConcurrentModificationException(
+					"An identifier was assigned since the last reset.");
+		}
+	}
+}
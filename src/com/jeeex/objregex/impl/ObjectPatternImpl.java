@@ -1,25 +1,31 @@
 package com.jeeex.objregex.impl;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.jeeex.objregex.impl.TransitionIdentifier.BOF;
-import static com.jeeex.objregex.impl.TransitionIdentifier.EOF;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
 import static com.jeeex.objregex.impl.TransitionIdentifier.EPSILON;
 import static java.text.MessageFormat.format;
 
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.jeeex.objregex.ListMatcher;
+import com.jeeex.objregex.ObjectMatcher;
 import com.jeeex.objregex.ObjectPattern;
+import com.jeeex.objregex.TimestampExtractor;
+import com.jeeex.objregex.WindowedMatcher;
 import com.jeeex.objregex.javacc.ASTStart;
 
 /**
@@ -56,11 +62,22 @@ class ObjectPatternImpl<T> implements ObjectPattern<T> {
 	final Set<String> assignedIds = Sets.newHashSet();
 	private final String regex;
 
+	/**
+	 * The algorithm used by {@link #match(List)}.
+	 */
+	private final MatchEngine engine;
+
 	/**
 	 * Visitor to translate the AST to {@link State}s.
 	 */
 	private final ASTVisitor visitor = new ASTVisitor();
-	private final SingleLazyStateManager manager = new SingleLazyStateManager() {
+	private final SingleLazyStateManager manager = new StateManager();
+
+	/**
+	 * Creates the transitions of the {@link LazyState}s, by looking up the
+	 * identifiers.
+	 */
+	private class StateManager extends SingleLazyStateManager {
 		@Override
 		public void initializeLazySingle(LazyState tail,
 				TransitionIdentifier identifier, LeafState head) {
@@ -79,7 +96,7 @@ class ObjectPatternImpl<T> implements ObjectPattern<T> {
 				// the pattern string, then it is connected to tail and
 				// head.
 				String pattern = idToPattern.get(identifier.getId());
-				State state = visitor.start(COMPILED_ASTS.get(pattern), this);
+				State state = build(pattern, this);
 
 				// connect initialized state to head and tail.
 				tail.addTransition(EPSILON, state.getTail());
@@ -90,13 +107,200 @@ class ObjectPatternImpl<T> implements ObjectPattern<T> {
 						identifier));
 			}
 		}
-	};
+
+		@Override
+		public boolean initializeLazyCounter(LazyState tail,
+				TransitionIdentifier identifier, int min, int max,
+				LeafState head) {
+			switch (categorize(identifier)) {
+			case PREDICATE:
+				return true;
+			case PATTERN:
+				// a pattern cannot be counted, so it is repeated instead.
+				State state = RegexNode.repeat(
+						new RegexNode.Symbol(identifier.getId(), identifier
+								.isNegation(), false), min, max).toState(this);
+				tail.addTransition(EPSILON, state.getTail());
+				state.getHead().addTransition(EPSILON, head);
+				return false;
+			default:
+				throw new RuntimeException(format("Unknown identifier {0}.",
+						identifier));
+			}
+		}
+	}
 
 	/**
 	 * State graph generated from the string {@link #regex}.
 	 */
 	private State state;
 
+	/**
+	 * {@link #state}, lowered into a flat integer-indexed form.
+	 */
+	private Program thompsonProgram;
+
+	/**
+	 * Position automaton of {@link #regex}, if {@link #construction} is
+	 * {@link NfaConstruction#GLUSHKOV}. Null if it has not been built yet.
+	 */
+	private Program glushkovProgram;
+
+	/**
+	 * The program used by {@link #match(List)}: either
+	 * {@link #thompsonProgram} or {@link #glushkovProgram}.
+	 */
+	private Program program;
+
+	/**
+	 * How {@link #regex} is translated to {@link #program}.
+	 */
+	private NfaConstruction construction = NfaConstruction.THOMPSON;
+
+	/**
+	 * Whether building {@link #glushkovProgram} has been attempted.
+	 */
+	private boolean glushkovProgramBuilt;
+
+	/**
+	 * The engine that runs {@link #program}: {@link #engine}, unless it cannot
+	 * run counters while {@link #program} may have some.
+	 */
+	private MatchEngine runningEngine;
+
+	/**
+	 * Executes {@link #program} when {@link #engine} is
+	 * {@link MatchEngine#PIKE_VM}.
+	 */
+	private PikeVM<T> pikeVM;
+
+	/**
+	 * Executes {@link #program} when {@link #engine} is
+	 * {@link MatchEngine#LAZY_DFA}.
+	 */
+	private LazyDFA<T> lazyDFA;
+
+	/**
+	 * Executes {@link #program} when {@link #engine} is
+	 * {@link MatchEngine#EAGER_DFA}, built by the first {@link #match(List)}.
+	 * Null if it has not been built yet, or if it could not be built.
+	 */
+	private EagerDFA<T> eagerDFA;
+
+	/**
+	 * Whether building {@link #eagerDFA} has been attempted since the last
+	 * assignment.
+	 */
+	private boolean eagerDFABuilt;
+
+	/**
+	 * Executes {@link #eagerDFA} when {@link #engine} is
+	 * {@link MatchEngine#COMPILED}. Null if it has not been generated yet, or
+	 * if it could not be generated.
+	 */
+	private CompiledMatcher compiledMatcher;
+
+	/**
+	 * Whether generating {@link #compiledMatcher} has been attempted since
+	 * the last assignment.
+	 */
+	private boolean compiledMatcherBuilt;
+
+	/**
+	 * Predicate calls made by the discarded {@link #compiledMatcher}s and
+	 * {@link #evaluator}s.
+	 */
+	private long discardedCallCount;
+
+	/**
+	 * Predicate calls made by the evaluators of the set simulations, which
+	 * are created per match.
+	 */
+	private final AtomicLong simulationCallCount = new AtomicLong();
+
+	/**
+	 * Dead and accepting forever states of {@link #program}, used by every
+	 * engine to stop as soon as the result is known. Null if it has not been
+	 * computed yet, or if {@link #program} cannot be analyzed.
+	 */
+	private StateAnalysis analysis;
+
+	/**
+	 * Whether {@link #program} has been picked and analyzed since the last
+	 * assignment. Set last, so that a thread that reads it as {@code true}
+	 * sees the result.
+	 */
+	private volatile boolean analyzed;
+
+	/**
+	 * Identifiers that appear in {@link #regex}.
+	 */
+	private Set<String> identifiers;
+
+	/**
+	 * Approximate memory limit of {@link #lazyDFA} and {@link #eagerDFA}, in
+	 * bytes.
+	 */
+	private int dfaMemoryLimit = DefaultRegexFactory.DEFAULT_DFA_MEMORY_LIMIT;
+
+	/**
+	 * Whether {@link RegexOptimizer} simplifies the patterns before they are
+	 * translated to {@link State}s.
+	 */
+	private boolean optimizerEnabled = true;
+
+	/**
+	 * Number of NFA states saved by {@link RegexOptimizer} on {@link #regex}.
+	 */
+	private int statesSaved;
+
+	/**
+	 * Evaluates the predicates bound to the labels of {@link #program} for
+	 * the engines that keep their state in the pattern. The set simulation
+	 * creates an evaluator per match instead.
+	 */
+	private PredicateEvaluator<T> evaluator;
+
+	/**
+	 * Bound to every slot of {@link #program} once it is lowered completely,
+	 * for the evaluators of the set simulations to share. Null if it has not
+	 * been analyzed, or if it refers to other patterns.
+	 */
+	private PredicateEvaluator<T> bindings;
+
+	/**
+	 * Finds matches inside lists for the {@link ListMatcher}s. Null if it has
+	 * not been created since the last assignment.
+	 */
+	private Searcher<T> searcher;
+
+	/**
+	 * Evaluates the predicates of {@link #searcher}.
+	 */
+	private PredicateEvaluator<T> searchEvaluator;
+
+	/**
+	 * Finds the capture groups of the matches for the {@link ListMatcher}s.
+	 * Null if it has not been created since the last assignment.
+	 */
+	private Searcher<T> groupSearcher;
+
+	/**
+	 * Evaluates the predicates of the program of {@link #groupSearcher}.
+	 */
+	private PredicateEvaluator<T> groupEvaluator;
+
+	/**
+	 * Number of capture groups of {@link #regex}.
+	 */
+	private int groupCount;
+
+	/**
+	 * Number of times an identifier has been assigned or unassigned, so that
+	 * the {@link ObjectMatcher}s can tell that their states are stale.
+	 */
+	private int modCount;
+
 	/**
 	 * Map of "regex pattern" -> "Compiled AST"
 	 */
@@ -108,8 +312,25 @@ class ObjectPatternImpl<T> implements ObjectPattern<T> {
 						}
 					});;
 
+	/**
+	 * Map of "regex pattern" -> "Optimized intermediate representation"
+	 */
+	private static final ConcurrentMap<String, RegexNode> OPTIMIZED_REGEXES = new MapMaker()
+			.softKeys().softValues().makeComputingMap(
+					new Function<String, RegexNode>() {
+						public RegexNode apply(String pattern) {
+							return RegexOptimizer.optimize(RegexNode
+									.fromAST(COMPILED_ASTS.get(pattern)));
+						}
+					});
+
 	ObjectPatternImpl(String regex) {
+		this(regex, MatchEngine.SET_SIMULATION);
+	}
+
+	ObjectPatternImpl(String regex, MatchEngine engine) {
 		this.regex = regex;
+		this.engine = checkNotNull(engine);
 	}
 
 	public boolean apply(List<? extends T> input) {
@@ -128,43 +349,373 @@ class ObjectPatternImpl<T> implements ObjectPattern<T> {
 	}
 
 	public void compile() {
-		State state = visitor.start(COMPILED_ASTS.get(regex), manager);
+		ASTStart root = COMPILED_ASTS.get(regex);
+		State state = build(regex, manager);
+		if (optimizerEnabled) {
+			statesSaved = RegexOptimizer.getStatesSaved(RegexNode.fromAST(root),
+					OPTIMIZED_REGEXES.get(regex));
+		}
 		// finished - set up stuff.
 		this.state = state;
+		this.runningEngine = engine;
+		this.thompsonProgram = new Program(state);
+		this.identifiers = RegexUtil.extractIdentifiers(root);
+		this.groupCount = RegexUtil.countGroups(root);
+		setProgram(thompsonProgram);
+	}
+
+	/**
+	 * Makes the engines run the given program, unless they already do.
+	 */
+	private void setProgram(Program program) {
+		if (program == this.program) {
+			return;
+		}
+		if (evaluator != null) {
+			discardedCallCount += evaluator.getCallCount();
+		}
+		discardSearcher();
+		this.program = program;
+		this.evaluator = new PredicateEvaluator<T>(program, idToPredicate);
+		if (engine != MatchEngine.SET_SIMULATION) {
+			// the other engines fall back to the Pike VM.
+			this.pikeVM = new PikeVM<T>(program, evaluator);
+		}
+		if (engine == MatchEngine.LAZY_DFA) {
+			this.lazyDFA = new LazyDFA<T>(program, evaluator, dfaMemoryLimit);
+		}
+	}
+
+	/**
+	 * Returns the searcher, creating it if required. It runs
+	 * {@link #program}, counters included.
+	 */
+	Searcher<T> getSearcher() {
+		analyze();
+		if (searcher == null) {
+			searchEvaluator = newEvaluator();
+			searcher = new Searcher<T>(program, searchEvaluator, 0);
+		}
+		return searcher;
+	}
+
+	/**
+	 * Returns the searcher of the capture groups, creating it if required. It
+	 * runs a separate program, built from {@link #regex} with a
+	 * {@link TagState} around every group, without optimization. Counted
+	 * repetitions are run by counters, as in {@link #getSearcher()}.
+	 */
+	private Searcher<T> getGroupSearcher() {
+		analyze();
+		if (groupSearcher == null) {
+			Program tagged = new Program(RegexNode.fromASTWithGroups(
+					COMPILED_ASTS.get(regex)).toState(manager));
+			groupEvaluator = new PredicateEvaluator<T>(tagged, idToPredicate);
+			groupSearcher = new Searcher<T>(tagged, groupEvaluator, groupCount);
+		}
+		return groupSearcher;
+	}
+
+	/**
+	 * Discards the searchers, since their programs may no longer be valid.
+	 */
+	private void discardSearcher() {
+		if (searchEvaluator != null) {
+			discardedCallCount += searchEvaluator.getCallCount();
+		}
+		if (groupEvaluator != null) {
+			discardedCallCount += groupEvaluator.getCallCount();
+		}
+		searcher = null;
+		searchEvaluator = null;
+		groupSearcher = null;
+		groupEvaluator = null;
+	}
+
+	/**
+	 * Returns the position automaton of {@link #regex}, building it if
+	 * required. Must only be called once every identifier is assigned a
+	 * predicate. Returns null if the pattern has counters.
+	 */
+	private Program getGlushkovProgram() {
+		if (!glushkovProgramBuilt) {
+			glushkovProgramBuilt = true;
+			glushkovProgram = GlushkovBuilder.build(getNode(regex));
+		}
+		return glushkovProgram;
+	}
+
+	/**
+	 * Returns the intermediate representation of the given pattern, as it is
+	 * translated to {@link State}s.
+	 */
+	private RegexNode getNode(String pattern) {
+		return optimizerEnabled ? OPTIMIZED_REGEXES.get(pattern) : RegexNode
+				.fromAST(COMPILED_ASTS.get(pattern));
+	}
+
+	/**
+	 * Returns whether {@link #program} may have counters, which only
+	 * {@link MatchEngine#SET_SIMULATION} and {@link MatchEngine#PIKE_VM} run.
+	 * Every assigned pattern is checked, whether it is referred to or not.
+	 */
+	private boolean mayHaveCounters() {
+		if (getNode(regex).hasCounter()) {
+			return true;
+		}
+		for (String pattern : idToPattern.values()) {
+			if (getNode(pattern).hasCounter()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Translates the given pattern to {@link State}s, through
+	 * {@link RegexOptimizer} if it is enabled.
+	 */
+	private State build(String pattern, SingleTransitionFactory factory) {
+		if (optimizerEnabled) {
+			return OPTIMIZED_REGEXES.get(pattern).toState(factory);
+		}
+		return visitor.start(COMPILED_ASTS.get(pattern), factory);
+	}
+
+	/**
+	 * Translates the given pattern to {@link State}s whose identifiers are
+	 * resolved against the identifiers assigned to this pattern, as
+	 * {@link #regex} is. Used by {@link PatternSetImpl}.
+	 */
+	State buildState(String pattern) {
+		return build(pattern, manager);
 	}
 
 	/**
 	 * Consume a token of input
 	 * 
 	 * @param states
-	 *            Starting set of the NFA states
+	 *            Starting set of the NFA states, as {@link Program} state
+	 *            numbers.
 	 * @param token
 	 *            Token to be consumed.
-	 * @return Set of NFA states after {@code token} has been consumed. That is,
-	 *         set of all states that is connected by a
-	 *         {@link TransitionIdentifier} that evaluates {@code token} to
-	 *         True.
-	 */
-	Set<State> consume(final Set<State> states, T token) {
-		// set of all transition id's going out from the states.
-		final Set<TransitionIdentifier> outgoingTransitions = StateUtil
-				.getOutgoingTransitions(states);
-		final ImmutableSet.Builder<State> nextStatesBuilder = ImmutableSet
-				.builder();
-
-		for (TransitionIdentifier tid : outgoingTransitions) {
-			if (tid.isSpecial()) {
-				// Special TransitionIdentifiers are not mapped to any
-				// predicates.
-				continue;
-			} else if (idToPredicate.get(tid.getId()).apply(token) != tid
-					.isNegation()) {
+	 * @param evaluator
+	 *            Evaluates the predicates against {@code token}, created by
+	 *            {@link #newEvaluator()}.
+	 * @param nextStates
+	 *            Cleared, then filled with the set of NFA states after {@code
+	 *            token} has been consumed. That is, the transitive closure of
+	 *            the set of all states that is connected by a
+	 *            {@link TransitionIdentifier} that evaluates {@code token} to
+	 *            True, or by a counter that completes a repetition with
+	 *            {@code token}.
+	 * @param counters
+	 *            Registers of the counters, advanced over {@code token}.
+	 */
+	void consume(final StateSet states, T token,
+			PredicateEvaluator<T> evaluator, final StateSet nextStates,
+			CounterRegisters counters) {
+		long calls = evaluator.getCallCount();
+		evaluator.setElement(token);
+		try {
+			step(program, evaluator, states, nextStates, counters);
+		} finally {
+			simulationCallCount.addAndGet(evaluator.getCallCount() - calls);
+		}
+	}
+
+	/**
+	 * Returns a new evaluator of the predicates bound to {@link #program}, for
+	 * a single match. Each match has its own, so that threads can match at
+	 * once.
+	 */
+	PredicateEvaluator<T> newEvaluator() {
+		if (bindings != null) {
+			return new PredicateEvaluator<T>(bindings);
+		}
+		return new PredicateEvaluator<T>(program, idToPredicate);
+	}
+
+	/**
+	 * Same as {@link #consume}, over any program, for the current element of
+	 * {@code evaluator}.
+	 */
+	static void step(Program program, SlotEvaluator evaluator,
+			StateSet states, StateSet nextStates, CounterRegisters counters) {
+		nextStates.clear();
+		for (int i = 0; i < states.size(); i++) {
+			int s = states.get(i);
+			int[] targets = program.getTargets(s);
+			int[] labels = program.getLabels(s);
+			for (int j = 0; j < targets.length; j++) {
 				// if the predicate evaluates to true, than traverse the
-				// sets.
-				nextStatesBuilder.addAll(StateUtil.traverse(states, tid));
+				// transition. A state that is already present brought its
+				// closure along with it.
+				if (!nextStates.contains(targets[j])
+						&& evaluator.evaluate(labels[j])) {
+					for (int t : program.getClosure(targets[j])) {
+						nextStates.add(t);
+					}
+				}
+			}
+		}
+		// the counters that complete a repetition with this element.
+		int exits = counters.advance(states, evaluator);
+		for (int i = 0; i < exits; i++) {
+			for (int t : program.getClosure(counters.getExit(i))) {
+				nextStates.add(t);
 			}
 		}
-		return nextStatesBuilder.build();
+	}
+
+	public long getPredicateCallCount() {
+		long count = evaluator.getCallCount() + discardedCallCount
+				+ simulationCallCount.get();
+		if (compiledMatcher != null) {
+			count += compiledMatcher.getCallCount();
+		}
+		if (searchEvaluator != null) {
+			count += searchEvaluator.getCallCount();
+		}
+		if (groupEvaluator != null) {
+			count += groupEvaluator.getCallCount();
+		}
+		return count;
+	}
+
+	/**
+	 * Sets the approximate memory limit of the {@link MatchEngine#LAZY_DFA}
+	 * cache, and of the construction of the {@link MatchEngine#EAGER_DFA}, in
+	 * bytes. Must be called before {@link #compile()}.
+	 */
+	void setDfaMemoryLimit(int dfaMemoryLimit) {
+		this.dfaMemoryLimit = dfaMemoryLimit;
+	}
+
+	/**
+	 * Sets how the pattern is translated to an NFA. Must be called before
+	 * {@link #compile()}.
+	 */
+	void setConstruction(NfaConstruction construction) {
+		this.construction = construction;
+	}
+
+	/**
+	 * Returns the program that the engines currently run.
+	 */
+	@VisibleForTesting
+	Program getProgram() {
+		return program;
+	}
+
+	/**
+	 * Enables or disables {@link RegexOptimizer}. Must be called before
+	 * {@link #compile()}.
+	 */
+	void setOptimizerEnabled(boolean optimizerEnabled) {
+		this.optimizerEnabled = optimizerEnabled;
+	}
+
+	/**
+	 * Returns the number of NFA states that {@link RegexOptimizer} saved.
+	 * Zero if the optimizer is disabled.
+	 */
+	public int getStatesSaved() {
+		return statesSaved;
+	}
+
+	/**
+	 * Returns the lazy DFA, if {@link #engine} is {@link MatchEngine#LAZY_DFA}.
+	 */
+	@VisibleForTesting
+	LazyDFA<T> getLazyDFA() {
+		return lazyDFA;
+	}
+
+	/**
+	 * Returns the eager DFA, building it if required. Returns null if
+	 * {@link #regex} refers to an identifier that is not assigned a predicate,
+	 * or if the DFA exceeds {@link #dfaMemoryLimit}.
+	 */
+	EagerDFA<T> getEagerDFA() {
+		if (!eagerDFABuilt) {
+			eagerDFABuilt = true;
+			if (isPredicatesOnly()) {
+				eagerDFA = EagerDFA.build(program, evaluator, dfaMemoryLimit);
+			}
+		}
+		return eagerDFA;
+	}
+
+	/**
+	 * Returns the generated matcher, generating it if required. Returns null
+	 * if there is no {@link #getEagerDFA() eager DFA} to generate it from, or
+	 * if the generated code would be too long.
+	 */
+	@VisibleForTesting
+	CompiledMatcher getCompiledMatcher() {
+		if (!compiledMatcherBuilt) {
+			compiledMatcherBuilt = true;
+			EagerDFA<T> dfa = getEagerDFA();
+			if (dfa != null) {
+				Predicate<?>[] predicates = new Predicate<?>[dfa.getSlotCount()];
+				for (int slot = 0; slot < predicates.length; slot++) {
+					predicates[slot] = idToPredicate.get(program.getSlotId(slot));
+				}
+				compiledMatcher = BytecodeCompiler.compile(dfa, predicates);
+			}
+		}
+		return compiledMatcher;
+	}
+
+	/**
+	 * Returns whether every identifier of {@link #regex} is assigned a
+	 * predicate, so that {@link #program} can be lowered completely. Patterns,
+	 * including "this", can nest without bound.
+	 */
+	private boolean isPredicatesOnly() {
+		return idToPredicate.keySet().containsAll(identifiers);
+	}
+
+	/**
+	 * Picks {@link #program} and analyzes it if required, and hands the
+	 * result to the engines. If every identifier is assigned a predicate,
+	 * {@link #program} is lowered completely, after which the set simulation
+	 * does not write to it.
+	 */
+	private void analyze() {
+		if (analyzed) {
+			return;
+		}
+		synchronized (this) {
+			if (analyzed) {
+				return;
+			}
+			boolean predicatesOnly = isPredicatesOnly();
+			if (construction == NfaConstruction.GLUSHKOV) {
+				Program glushkov = predicatesOnly ? getGlushkovProgram() : null;
+				setProgram(glushkov != null ? glushkov : thompsonProgram);
+			}
+			runningEngine = engine;
+			if (engine != MatchEngine.SET_SIMULATION && mayHaveCounters()) {
+				runningEngine = MatchEngine.PIKE_VM;
+			}
+			analysis = null;
+			bindings = null;
+			if (predicatesOnly) {
+				program.lowerCompletely();
+				analysis = StateAnalysis.analyze(program, evaluator);
+				bindings = new PredicateEvaluator<T>(program, idToPredicate);
+				bindings.bindAll();
+			}
+			if (pikeVM != null) {
+				pikeVM.setAnalysis(analysis);
+			}
+			if (lazyDFA != null) {
+				lazyDFA.setAnalysis(analysis);
+			}
+			analyzed = true;
+		}
 	}
 
 	public String getRegex() {
@@ -172,25 +723,319 @@ class ObjectPatternImpl<T> implements ObjectPattern<T> {
 	}
 
 	public boolean match(List<? extends T> input) throws NullPointerException {
+		if (input instanceof RandomAccess) {
+			return matchRange(input, 0, input.size());
+		}
+		return match(input.iterator());
+	}
+
+	public boolean match(T[] input) throws NullPointerException {
+		checkNotNull(input);
+		analyze();
+		switch (runningEngine) {
+		case PIKE_VM:
+			return pikeVM.match(input);
+		case LAZY_DFA:
+			return lazyDFA.match(input);
+		case COMPILED:
+			CompiledMatcher matcher = getCompiledMatcher();
+			return matcher != null ? matcher.match(input, 0, input.length)
+					: matchEager(input);
+		case EAGER_DFA:
+			return matchEager(input);
+		default:
+			return simulate(input);
+		}
+	}
+
+	public boolean match(List<? extends T> input, int fromIndex, int toIndex)
+			throws NullPointerException, IndexOutOfBoundsException {
+		checkPositionIndexes(fromIndex, toIndex, input.size());
+		if (input instanceof RandomAccess) {
+			return matchRange(input, fromIndex, toIndex);
+		}
+		return match(input.subList(fromIndex, toIndex).iterator());
+	}
+
+	public ListMatcher<T> matcher(List<? extends T> input)
+			throws NullPointerException {
+		return new ListMatcherImpl<T>(this, checkNotNull(input));
+	}
+
+	public ObjectMatcher<T> newMatcher() {
+		return new ObjectMatcherImpl<T>(this);
+	}
+
+	public WindowedMatcher<T> newWindowedMatcher(
+			TimestampExtractor<? super T> timestamps, long window)
+			throws NullPointerException, IllegalArgumentException {
+		checkNotNull(timestamps);
+		checkArgument(window >= 0, "The window must not be negative.");
+		return new WindowedMatcherImpl<T>(this, timestamps, window);
+	}
+
+	/**
+	 * Picks {@link #program} and analyzes it, as a match does, and returns
+	 * it.
+	 */
+	Program prepare() {
+		analyze();
+		return program;
+	}
+
+	/**
+	 * Returns the number of times an identifier has been assigned or
+	 * unassigned.
+	 */
+	int getModCount() {
+		return modCount;
+	}
+
+	/**
+	 * Searches the elements of the list from {@code fromIndex} to the end for
+	 * the leftmost-longest match.
+	 * 
+	 * @return {@code {start, end}} of the match, or null if there is none.
+	 */
+	int[] find(List<? extends T> input, int fromIndex) {
+		Searcher<T> searcher = getSearcher();
+		if (!searcher.search(input, fromIndex, input.size(), false)) {
+			return null;
+		}
+		return new int[] { searcher.getSlot(0), searcher.getSlot(1) };
+	}
+
+	/**
+	 * Returns the spans of the capture groups of the match that starts at
+	 * {@code start}, found by {@link #find}: the beginning and the end of
+	 * group {@code g} are at {@code 2g} and {@code 2g + 1}, or -1 if the
+	 * group did not take part in the match.
+	 */
+	int[] findGroups(List<? extends T> input, int start) {
+		Searcher<T> searcher = getGroupSearcher();
+		int[] groups = new int[2 * (groupCount + 1)];
+		if (!searcher.search(input, start, input.size(), true)) {
+			// cannot happen, since the match exists.
+			throw new IllegalStateException();
+		}
+		for (int slot = 0; slot < groups.length; slot++) {
+			groups[slot] = searcher.getSlot(slot);
+		}
+		return groups;
+	}
+
+	/**
+	 * Returns the number of capture groups of the pattern.
+	 */
+	int getGroupCount() {
+		return groupCount;
+	}
+
+	public boolean match(Iterable<? extends T> input)
+			throws NullPointerException {
+		if (input instanceof List) {
+			return match((List<? extends T>) input);
+		}
+		return match(input.iterator());
+	}
 
+	public boolean match(Iterator<? extends T> input)
+			throws NullPointerException {
+		checkNotNull(input);
+		analyze();
+		switch (runningEngine) {
+		case PIKE_VM:
+			return pikeVM.match(input);
+		case LAZY_DFA:
+			return lazyDFA.match(input);
+		case COMPILED:
+			CompiledMatcher matcher = getCompiledMatcher();
+			return matcher != null ? matcher.match(input)
+					: matchEager(input);
+		case EAGER_DFA:
+			return matchEager(input);
+		default:
+			return simulate(input);
+		}
+	}
+
+	/**
+	 * Matches the input with the eager DFA, or with the Pike VM if there is
+	 * none.
+	 */
+	private boolean matchEager(Iterator<? extends T> input) {
+		EagerDFA<T> dfa = getEagerDFA();
+		return dfa != null ? dfa.match(input) : pikeVM.match(input);
+	}
+
+	/**
+	 * Matches the given range of the list by index, without allocating an
+	 * iterator or a sub list.
+	 */
+	private boolean matchRange(List<? extends T> input, int fromIndex,
+			int toIndex) {
+		analyze();
+		switch (runningEngine) {
+		case PIKE_VM:
+			return pikeVM.match(input, fromIndex, toIndex);
+		case LAZY_DFA:
+			return lazyDFA.match(input, fromIndex, toIndex);
+		case COMPILED:
+			CompiledMatcher matcher = getCompiledMatcher();
+			return matcher != null ? matcher.match(input, fromIndex, toIndex)
+					: matchEager(input, fromIndex, toIndex);
+		case EAGER_DFA:
+			return matchEager(input, fromIndex, toIndex);
+		default:
+			return simulate(input, fromIndex, toIndex);
+		}
+	}
+
+	private boolean matchEager(List<? extends T> input, int fromIndex,
+			int toIndex) {
+		EagerDFA<T> dfa = getEagerDFA();
+		return dfa != null ? dfa.match(input, fromIndex, toIndex) : pikeVM
+				.match(input, fromIndex, toIndex);
+	}
+
+	private boolean matchEager(T[] input) {
+		EagerDFA<T> dfa = getEagerDFA();
+		return dfa != null ? dfa.match(input) : pikeVM.match(input);
+	}
+
+	/**
+	 * Matches the input by simulating the NFA with a set of active states.
+	 * 
+	 * @see MatchEngine#SET_SIMULATION
+	 */
+	private boolean simulate(Iterator<? extends T> input) {
+		PredicateEvaluator<T> evaluator = newEvaluator();
+		CounterRegisters counters = new CounterRegisters(program);
 		// temporary, current set of states reached by the regex engine.
-		// starts from the transitive closure of state.getTail().
-		Set<State> currentStates = StateUtil.transitiveClosure(ImmutableSet
-				.of(state.getTail()), ImmutableSet.of(EPSILON, BOF));
-
-		for (T curToken : input) {
-			// consume the token, and take the transitive closure.
-			currentStates = StateUtil.transitiveClosure(consume(currentStates,
-					curToken));
+		// starts from the transitive closure of the start state. The two sets
+		// are swapped after every token, rather than reallocated.
+		StateSet currentStates = startStates(counters);
+		StateSet nextStates = new StateSet(program.getStateCount());
+
+		try {
 			// states cannot grow if it's empty, so terminate the loop.
-			if (currentStates.isEmpty()) {
-				break;
+			while (!isDecided(currentStates, counters) && input.hasNext()) {
+				// consume the token, which yields a closed set of states.
+				evaluator.setElement(input.next());
+				step(program, evaluator, currentStates, nextStates, counters);
+
+				StateSet swap = currentStates;
+				currentStates = nextStates;
+				nextStates = swap;
+			}
+		} finally {
+			simulationCallCount.addAndGet(evaluator.getCallCount());
+		}
+		return isAcceptingAtEof(currentStates);
+	}
+
+	/**
+	 * Same as {@link #simulate(Iterator)}, over a range of a list.
+	 */
+	private boolean simulate(List<? extends T> input, int fromIndex,
+			int toIndex) {
+		PredicateEvaluator<T> evaluator = newEvaluator();
+		CounterRegisters counters = new CounterRegisters(program);
+		StateSet currentStates = startStates(counters);
+		StateSet nextStates = new StateSet(program.getStateCount());
+
+		try {
+			for (int i = fromIndex; i < toIndex
+					&& !isDecided(currentStates, counters); i++) {
+				evaluator.setElement(input.get(i));
+				step(program, evaluator, currentStates, nextStates, counters);
+
+				StateSet swap = currentStates;
+				currentStates = nextStates;
+				nextStates = swap;
+			}
+		} finally {
+			simulationCallCount.addAndGet(evaluator.getCallCount());
+		}
+		return isAcceptingAtEof(currentStates);
+	}
+
+	/**
+	 * Same as {@link #simulate(Iterator)}, over an array.
+	 */
+	private boolean simulate(T[] input) {
+		PredicateEvaluator<T> evaluator = newEvaluator();
+		CounterRegisters counters = new CounterRegisters(program);
+		StateSet currentStates = startStates(counters);
+		StateSet nextStates = new StateSet(program.getStateCount());
+
+		try {
+			for (int i = 0; i < input.length
+					&& !isDecided(currentStates, counters); i++) {
+				evaluator.setElement(input[i]);
+				step(program, evaluator, currentStates, nextStates, counters);
+
+				StateSet swap = currentStates;
+				currentStates = nextStates;
+				nextStates = swap;
 			}
+		} finally {
+			simulationCallCount.addAndGet(evaluator.getCallCount());
 		}
+		return isAcceptingAtEof(currentStates);
+	}
 
-		currentStates = StateUtil.transitiveClosure(currentStates, ImmutableSet
-				.of(EPSILON, EOF));
-		return currentStates.contains(state.getHead());
+	/**
+	 * Returns a new set, holding the closure of the start state, and clears
+	 * the counters.
+	 */
+	StateSet startStates(CounterRegisters counters) {
+		counters.clear();
+		StateSet states = new StateSet(program.getStateCount());
+		for (int s : program.getBofClosure(program.getStart())) {
+			states.add(s);
+		}
+		return states;
+	}
+
+	/**
+	 * Returns whether the result of the match is known once {@code states}
+	 * are active, whatever the rest of the input is.
+	 */
+	boolean isDecided(StateSet states, CounterRegisters counters) {
+		return (states.isEmpty() && !counters.isActive())
+				|| (analysis != null && analysis.isDecided(states, counters
+						.isActive()));
+	}
+
+	/**
+	 * Returns whether no input can lead to a match once {@code states} are
+	 * active. If {@link #program} cannot be analyzed, only an empty set is
+	 * known to be dead.
+	 */
+	boolean isDead(StateSet states, CounterRegisters counters) {
+		if (counters.isActive()) {
+			return false;
+		}
+		for (int i = 0; i < states.size(); i++) {
+			if (analysis == null || !analysis.isDead(states.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether the match succeeds if the input ends once {@code
+	 * states} are active.
+	 */
+	boolean isAcceptingAtEof(StateSet states) {
+		for (int i = 0; i < states.size(); i++) {
+			if (program.isAcceptingAtEof(states.get(i))) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	public void set(String identifier, Predicate<T> predicate)
@@ -203,6 +1048,16 @@ class ObjectPatternImpl<T> implements ObjectPattern<T> {
 		assignedIds.add(identifier);
 	}
 
+	public void setEquals(String identifier, T value)
+			throws NullPointerException {
+		set(identifier, new MembershipPredicate<T>(Collections.singleton(value)));
+	}
+
+	public void setIn(String identifier, Set<? extends T> values)
+			throws NullPointerException {
+		set(identifier, new MembershipPredicate<T>(values));
+	}
+
 	public void set(String identifier, String pattern)
 			throws NullPointerException {
 		checkNotNull(identifier);
@@ -220,9 +1075,27 @@ class ObjectPatternImpl<T> implements ObjectPattern<T> {
 	 * @param identifier
 	 */
 	public void unset(String identifier) {
+		modCount++;
 		idToPattern.remove(identifier);
 		idToPredicate.remove(identifier);
 		assignedIds.remove(identifier);
+		if (evaluator != null) {
+			evaluator.unbind();
+		}
+		if (lazyDFA != null) {
+			lazyDFA.invalidate();
+		}
+		analysis = null;
+		analyzed = false;
+		bindings = null;
+		eagerDFA = null;
+		eagerDFABuilt = false;
+		if (compiledMatcher != null) {
+			discardedCallCount += compiledMatcher.getCallCount();
+		}
+		compiledMatcher = null;
+		compiledMatcherBuilt = false;
+		discardSearcher();
 	}
 
 	/**
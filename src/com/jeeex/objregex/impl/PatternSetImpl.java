@@ -0,0 +1,136 @@
+package com.jeeex.objregex.impl;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.jeeex.objregex.PatternSet;
+
+/**
+ * An implementation of {@link PatternSet}.
+ * <p>
+ * The expressions are translated to {@link State}s side by side, and lowered
+ * into a single {@link Program}, whose accepting states tell which expression
+ * they accept, and which a {@link SetSimulator} runs. Labels are numbered by
+ * identifier, so the {@link PredicateEvaluator} calls each predicate once per
+ * element whichever expressions refer to it, and the cost of an element
+ * depends on the number of active states and distinct predicates, rather than
+ * on the number of expressions.
+ * <p>
+ * The users of objregex should not initiate this class directly -
+ * {@link DefaultRegexFactory} should be used instead.
+ */
+final class PatternSetImpl<T> implements PatternSet<T> {
+
+	private final ImmutableList<String> regexes;
+
+	/**
+	 * Holds the identifiers of the set, and translates the expressions to
+	 * {@link State}s with them. It is never matched itself.
+	 */
+	private final ObjectPatternImpl<T> bindings;
+
+	/**
+	 * Runs the expressions, lowered into a single program. Null if it has not
+	 * been built since the last assignment.
+	 */
+	private SetSimulator<T> simulator;
+
+	private PredicateEvaluator<T> evaluator;
+
+	/**
+	 * Predicate calls made by the discarded {@link #evaluator}s.
+	 */
+	private long discardedCallCount;
+
+	/**
+	 * @throws java.util.regex.PatternSyntaxException
+	 *             if any of the expressions is invalid.
+	 */
+	PatternSetImpl(List<String> regexes, boolean optimizerEnabled) {
+		for (String regex : regexes) {
+			// fail now, rather than at the first match.
+			RegexUtil.getRootNode(checkNotNull(regex));
+		}
+		this.regexes = ImmutableList.copyOf(regexes);
+		this.bindings = new ObjectPatternImpl<T>("");
+		bindings.setOptimizerEnabled(optimizerEnabled);
+	}
+
+	public BitSet match(List<? extends T> input) throws NullPointerException {
+		checkNotNull(input);
+		return prepare().match(input);
+	}
+
+	public BitSet match(Iterator<? extends T> input)
+			throws NullPointerException {
+		checkNotNull(input);
+		return prepare().match(input);
+	}
+
+	public void set(String identifier, Predicate<T> predicate)
+			throws NullPointerException {
+		bindings.set(identifier, predicate);
+		discardProgram();
+	}
+
+	public void set(String identifier, String pattern)
+			throws NullPointerException {
+		bindings.set(identifier, pattern);
+		discardProgram();
+	}
+
+	public int size() {
+		return regexes.size();
+	}
+
+	public String getRegex(int index) throws IndexOutOfBoundsException {
+		return regexes.get(index);
+	}
+
+	/**
+	 * Returns the number of times a predicate bound to this set has been
+	 * called while matching. Each predicate is called at most once per
+	 * element.
+	 */
+	public long getPredicateCallCount() {
+		long count = discardedCallCount;
+		if (evaluator != null) {
+			count += evaluator.getCallCount();
+		}
+		return count;
+	}
+
+	/**
+	 * Builds {@link #simulator}, unless it is built already, and returns it.
+	 */
+	private SetSimulator<T> prepare() {
+		if (simulator == null) {
+			State[] roots = new State[regexes.size()];
+			for (int i = 0; i < roots.length; i++) {
+				roots[i] = bindings.buildState(regexes.get(i));
+			}
+			Program program = new Program(roots);
+			evaluator = new PredicateEvaluator<T>(program,
+					bindings.idToPredicate);
+			simulator = new SetSimulator<T>(program, evaluator);
+		}
+		return simulator;
+	}
+
+	/**
+	 * Discards {@link #simulator}, whose program's {@link LazyState}s may have
+	 * been initialized with the previous assignments.
+	 */
+	private void discardProgram() {
+		if (evaluator != null) {
+			discardedCallCount += evaluator.getCallCount();
+		}
+		evaluator = null;
+		simulator = null;
+	}
+}
@@ -0,0 +1,190 @@
+package com.jeeex.objregex.impl;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Executes a {@link Program} as a Pike VM.
+ * <p>
+ * The VM keeps two thread lists - the states active before and after the
+ * current element - as {@link SparseStateSet}s. A thread is added to a list at
+ * most once per element, and epsilon transitions are followed as threads are
+ * added, so each element is processed in time proportional to the number of
+ * states and transitions. The thread lists and the work stack are reused
+ * across elements and across calls, so no memory is allocated while matching,
+ * apart from lowering states that have never been visited before. The
+ * counters of the program are run alongside the threads.
+ * <p>
+ * This class is not thread safe, and {@link #match(List, int, int)} must not be called
+ * reentrantly.
+ * 
+ * @see MatchEngine#PIKE_VM
+ */
+final class PikeVM<T> {
+
+	private final Program program;
+	private final PredicateEvaluator<T> evaluator;
+
+	private SparseStateSet current;
+	private SparseStateSet next;
+	private final CounterRegisters counters;
+
+	/**
+	 * Used to stop as soon as the result is known. Null if the program could
+	 * not be analyzed.
+	 */
+	private StateAnalysis analysis;
+
+	/**
+	 * Work stack used to follow epsilon transitions.
+	 */
+	private int[] stack = new int[16];
+
+	PikeVM(Program program, PredicateEvaluator<T> evaluator) {
+		this.program = program;
+		this.evaluator = evaluator;
+		this.current = new SparseStateSet(program.getStateCount());
+		this.next = new SparseStateSet(program.getStateCount());
+		this.counters = new CounterRegisters(program);
+	}
+
+	boolean match(Iterator<? extends T> input) {
+		begin();
+		while (!isDecided() && input.hasNext()) {
+			advance(input.next());
+		}
+		return end();
+	}
+
+	boolean match(List<? extends T> input, int fromIndex, int toIndex) {
+		begin();
+		for (int i = fromIndex; i < toIndex && !isDecided(); i++) {
+			advance(input.get(i));
+		}
+		return end();
+	}
+
+	boolean match(T[] input) {
+		begin();
+		for (int i = 0; i < input.length && !isDecided(); i++) {
+			advance(input[i]);
+		}
+		return end();
+	}
+
+	void setAnalysis(StateAnalysis analysis) {
+		this.analysis = analysis;
+	}
+
+	/**
+	 * Returns whether the result of the match is known, whatever the rest of
+	 * the input is.
+	 */
+	private boolean isDecided() {
+		return (current.isEmpty() && !counters.isActive())
+				|| (analysis != null && analysis.isDecided(current, counters
+						.isActive()));
+	}
+
+	/**
+	 * Starts a thread at the start state.
+	 */
+	private void begin() {
+		current.clear();
+		counters.clear();
+		addThread(current, program.getStart(), true, false);
+	}
+
+	/**
+	 * Advances every thread over {@code token}, then swaps the thread lists.
+	 */
+	private void advance(T token) {
+		next.clear();
+		step(current, token, next);
+
+		SparseStateSet swap = current;
+		current = next;
+		next = swap;
+	}
+
+	/**
+	 * Follows the EOF transitions, and returns whether an accepting state is
+	 * reached.
+	 */
+	private boolean end() {
+		next.clear();
+		for (int i = 0; i < current.size(); i++) {
+			addThread(next, current.get(i), false, true);
+		}
+		for (int i = 0; i < next.size(); i++) {
+			if (program.isAccepting(next.get(i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Advances every thread in {@code clist} over {@code token}, adding the
+	 * surviving threads to {@code nlist}.
+	 */
+	private void step(SparseStateSet clist, T token, SparseStateSet nlist) {
+		evaluator.setElement(token);
+		for (int i = 0; i < clist.size(); i++) {
+			int s = clist.get(i);
+			int[] targets = program.getTargets(s);
+			int[] labels = program.getLabels(s);
+			for (int j = 0; j < targets.length; j++) {
+				if (!nlist.contains(targets[j])
+						&& evaluator.evaluate(labels[j])) {
+					addThread(nlist, targets[j], false, false);
+				}
+			}
+		}
+		int exits = counters.advance(clist, evaluator);
+		for (int i = 0; i < exits; i++) {
+			addThread(nlist, counters.getExit(i), false, false);
+		}
+	}
+
+	/**
+	 * Adds a thread for {@code state} to the list, then follows the epsilon
+	 * transitions (and optionally BOF or EOF transitions) from it.
+	 */
+	private void addThread(SparseStateSet list, int state, boolean withBof,
+			boolean withEof) {
+		if (!list.add(state)) {
+			return;
+		}
+		int top = 0;
+		stack[top++] = state;
+		while (top > 0) {
+			int s = stack[--top];
+			top = push(list, program.getEpsilonTargets(s), top);
+			if (withBof) {
+				top = push(list, program.getBofTargets(s), top);
+			}
+			if (withEof) {
+				top = push(list, program.getEofTargets(s), top);
+			}
+		}
+	}
+
+	/**
+	 * Adds every state in {@code targets} that is not in {@code list} yet, and
+	 * pushes it on the work stack.
+	 * 
+	 * @return the new top of the stack.
+	 */
+	private int push(SparseStateSet list, int[] targets, int top) {
+		for (int t : targets) {
+			if (list.add(t)) {
+				if (top == stack.length) {
+					stack = ArrayUtil.grow(stack, top * 2);
+				}
+				stack[top++] = t;
+			}
+		}
+		return top;
+	}
+}
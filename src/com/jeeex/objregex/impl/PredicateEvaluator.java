@@ -0,0 +1,185 @@
+package com.jeeex.objregex.impl;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Maps;
+
+/**
+ * Evaluates the predicates bound to the labels of a {@link Program} against
+ * the current element, which is set by {@link #setElement(Object)}.
+ * <p>
+ * The slots bound to a {@link MembershipPredicate} are not called one by one:
+ * each value of those predicates is mapped to the bit mask of the slots that
+ * accept it, and the element is looked up in that map once, when the first
+ * of them is evaluated.
+ * <p>
+ * This class is not thread safe.
+ */
+final class PredicateEvaluator<T> extends SlotEvaluator {
+
+	private final Map<String, Predicate<T>> idToPredicate;
+
+	/**
+	 * Predicates bound to the slots, looked up from {@link #idToPredicate} on
+	 * first use.
+	 */
+	private Predicate<T>[] predicates;
+
+	private T element;
+
+	/**
+	 * Maps each value of the {@link MembershipPredicate membership predicates}
+	 * to the bit mask of the slots that accept it. Null until one of them is
+	 * evaluated.
+	 */
+	private Map<Object, long[]> index;
+
+	/**
+	 * The number of slots of the program when {@link #index} was built. Slots
+	 * added since, as the program is lowered, are not in it.
+	 */
+	private int indexedSlotCount;
+
+	/**
+	 * The mask of the current element, or null if no slot of {@link #index}
+	 * accepts it. Valid if {@link #lookedUp}.
+	 */
+	private long[] mask;
+	private boolean lookedUp;
+
+	@SuppressWarnings("unchecked")
+	PredicateEvaluator(Program program,
+			Map<String, Predicate<T>> idToPredicate) {
+		super(program);
+		this.idToPredicate = idToPredicate;
+		this.predicates = (Predicate<T>[]) new Predicate<?>[8];
+	}
+
+	/**
+	 * Creates an evaluator that shares the predicates and the index of {@code
+	 * bound}, which must have been {@link #bindAll() bound}. Neither is
+	 * written to again, so evaluators created for concurrent matches can share
+	 * them.
+	 */
+	PredicateEvaluator(PredicateEvaluator<T> bound) {
+		super(bound.program);
+		this.idToPredicate = bound.idToPredicate;
+		this.predicates = bound.predicates;
+		this.index = bound.index;
+		this.indexedSlotCount = bound.indexedSlotCount;
+	}
+
+	/**
+	 * Looks up the predicate of every slot, and builds the index if any of
+	 * them is a membership predicate. The program must be
+	 * {@link Program#lowerCompletely() lowered completely}, so that no slot is
+	 * added afterwards.
+	 */
+	void bindAll() {
+		int slotCount = program.getSlotCount();
+		if (slotCount > predicates.length) {
+			growPredicates(slotCount);
+		}
+		boolean indexed = false;
+		for (int slot = 0; slot < slotCount; slot++) {
+			predicates[slot] = idToPredicate.get(program.getSlotId(slot));
+			indexed |= predicates[slot] instanceof MembershipPredicate<?>;
+		}
+		if (indexed) {
+			buildIndex();
+		}
+	}
+
+	/**
+	 * Makes {@code element} the element that predicates are evaluated against,
+	 * discarding the memoized results.
+	 */
+	void setElement(T element) {
+		this.element = element;
+		lookedUp = false;
+		nextElement();
+	}
+
+	@Override
+	boolean call(int slot) {
+		if (slot >= predicates.length) {
+			growPredicates(Math.max(program.getSlotCount(),
+					predicates.length * 2));
+		}
+		Predicate<T> predicate = predicates[slot];
+		if (predicate == null) {
+			predicate = idToPredicate.get(program.getSlotId(slot));
+			predicates[slot] = predicate;
+		}
+		if (predicate instanceof MembershipPredicate<?>) {
+			return lookUp(slot);
+		}
+		return predicate.apply(element);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void growPredicates(int capacity) {
+		Predicate<T>[] grown = (Predicate<T>[]) new Predicate<?>[capacity];
+		System.arraycopy(predicates, 0, grown, 0, predicates.length);
+		predicates = grown;
+	}
+
+	/**
+	 * Evaluates the membership predicate of the given slot with
+	 * {@link #index}, building it if required.
+	 */
+	private boolean lookUp(int slot) {
+		if (index == null || slot >= indexedSlotCount) {
+			buildIndex();
+		}
+		if (!lookedUp) {
+			mask = index.get(element);
+			lookedUp = true;
+		}
+		return mask != null && (mask[slot >>> 6] & (1L << slot)) != 0;
+	}
+
+	private void buildIndex() {
+		indexedSlotCount = program.getSlotCount();
+		int words = (indexedSlotCount + 63) >>> 6;
+		index = Maps.newHashMap();
+		for (int slot = 0; slot < indexedSlotCount; slot++) {
+			Predicate<T> predicate = idToPredicate.get(program.getSlotId(slot));
+			if (!(predicate instanceof MembershipPredicate<?>)) {
+				continue;
+			}
+			for (Object value : ((MembershipPredicate<?>) predicate)
+					.getValues()) {
+				long[] slots = index.get(value);
+				if (slots == null) {
+					slots = new long[words];
+					index.put(value, slots);
+				}
+				slots[slot >>> 6] |= 1L << slot;
+			}
+		}
+		lookedUp = false;
+	}
+
+	/**
+	 * Returns whether the predicate of the given slot is
+	 * {@link Predicates#alwaysTrue()}, which is bound to "." by
+	 * {@link DefaultRegexFactory}.
+	 */
+	@Override
+	boolean isAlwaysTrue(int slot) {
+		return idToPredicate.get(program.getSlotId(slot)) == Predicates
+				.alwaysTrue();
+	}
+
+	@Override
+	void unbind() {
+		super.unbind();
+		Arrays.fill(predicates, null);
+		index = null;
+		lookedUp = false;
+	}
+}
@@ -0,0 +1,206 @@
+package com.jeeex.objregex.impl;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.nio.Buffer;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Maps;
+
+/**
+ * Common part of the patterns over primitive values, such as
+ * {@link IntObjectPatternImpl}.
+ * <p>
+ * The regular expression is compiled, optimized and analyzed by an
+ * {@link ObjectPatternImpl} of the boxed type, whose identifiers are bound to
+ * boxed views of the primitive predicates, so that they are categorized as
+ * usual. Those are never called: the program of the pattern is simulated like
+ * {@link MatchEngine#SET_SIMULATION} does, by a {@link SlotEvaluator} that
+ * subclasses feed the primitive values to, whichever engine the pattern was
+ * compiled with. Subclasses only add the entry points of their primitive
+ * type.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @param <B>
+ *            The boxed type of the values.
+ * @param <P>
+ *            The type of the primitive predicates.
+ * @param <V>
+ *            The type of the buffers of values.
+ */
+abstract class PrimitivePatternImpl<B, P, V extends Buffer> {
+
+	final ObjectPatternImpl<B> pattern;
+
+	private final Map<String, P> idToPredicate = Maps.newHashMap();
+
+	/**
+	 * The values being matched. Null unless a match is running.
+	 */
+	V input;
+
+	/**
+	 * The program that {@link #evaluator} and {@link #counters} were created
+	 * for.
+	 */
+	private Program program;
+
+	private SlotEvaluator evaluator;
+
+	private CounterRegisters counters;
+
+	/**
+	 * {@link ObjectPatternImpl#getModCount()} when {@link #evaluator} last
+	 * looked up the predicates.
+	 */
+	private int modCount;
+
+	/**
+	 * Evaluates the primitive predicates against the current value, which
+	 * subclasses hold.
+	 */
+	abstract static class Evaluator<P> extends SlotEvaluator {
+		private final Map<String, P> idToPredicate;
+
+		/**
+		 * Predicates bound to the slots, looked up from {@link #idToPredicate}
+		 * on first use.
+		 */
+		private Object[] predicates = new Object[8];
+
+		Evaluator(Program program, Map<String, P> idToPredicate) {
+			super(program);
+			this.idToPredicate = idToPredicate;
+		}
+
+		/**
+		 * Returns the predicate bound to the given slot.
+		 */
+		@SuppressWarnings("unchecked")
+		final P getPredicate(int slot) {
+			if (slot >= predicates.length) {
+				predicates = ArrayUtil.grow(predicates, Math.max(program
+						.getSlotCount(), predicates.length * 2));
+			}
+			Object predicate = predicates[slot];
+			if (predicate == null) {
+				predicate = idToPredicate.get(program.getSlotId(slot));
+				predicates[slot] = predicate;
+			}
+			return (P) predicate;
+		}
+
+		@Override
+		void unbind() {
+			super.unbind();
+			Arrays.fill(predicates, null);
+		}
+	}
+
+	/**
+	 * @param pattern
+	 *            The compiled pattern, with the default identifiers of
+	 *            {@link DefaultRegexFactory} bound.
+	 * @param alwaysTrue
+	 *            The predicate of ".".
+	 * @param alwaysFalse
+	 *            The predicate of "null", since primitive values are never
+	 *            null.
+	 */
+	PrimitivePatternImpl(ObjectPatternImpl<B> pattern, P alwaysTrue,
+			P alwaysFalse) {
+		this.pattern = pattern;
+		idToPredicate.put(".", alwaysTrue);
+		idToPredicate.put("null", alwaysFalse);
+	}
+
+	/**
+	 * Creates the evaluator of the given program, which {@link #load(int)}
+	 * feeds.
+	 */
+	abstract Evaluator<P> newEvaluator(Program program,
+			Map<String, P> idToPredicate);
+
+	/**
+	 * Makes the value at the given index of {@link #input} the current element
+	 * of the evaluator.
+	 */
+	abstract void load(int index);
+
+	/**
+	 * Returns a view of the given predicate over the boxed type, which the
+	 * pattern categorizes identifiers with.
+	 */
+	abstract Predicate<B> box(P predicate);
+
+	public boolean match(V input) throws NullPointerException {
+		return match(input, input.position(), input.limit());
+	}
+
+	/**
+	 * Matches the values of the given buffer from {@code fromIndex},
+	 * inclusive, to {@code toIndex}, exclusive.
+	 */
+	final boolean match(V input, int fromIndex, int toIndex) {
+		this.input = input;
+		try {
+			return simulate(fromIndex, toIndex);
+		} finally {
+			this.input = null;
+		}
+	}
+
+	/**
+	 * Simulates the program over the values of the input from {@code
+	 * fromIndex}, inclusive, to {@code toIndex}, exclusive, which are
+	 * provided by {@link #load(int)}.
+	 */
+	private boolean simulate(int fromIndex, int toIndex) {
+		Program current = pattern.prepare();
+		if (current != program) {
+			program = current;
+			evaluator = newEvaluator(program, idToPredicate);
+			counters = new CounterRegisters(program);
+			modCount = pattern.getModCount();
+		} else if (modCount != pattern.getModCount()) {
+			evaluator.unbind();
+			modCount = pattern.getModCount();
+		}
+		StateSet currentStates = pattern.startStates(counters);
+		StateSet nextStates = new StateSet(program.getStateCount());
+		for (int i = fromIndex; i < toIndex
+				&& !pattern.isDecided(currentStates, counters); i++) {
+			load(i);
+			ObjectPatternImpl.step(program, evaluator, currentStates,
+					nextStates, counters);
+
+			StateSet swap = currentStates;
+			currentStates = nextStates;
+			nextStates = swap;
+		}
+		return pattern.isAcceptingAtEof(currentStates);
+	}
+
+	public void set(String identifier, P predicate)
+			throws NullPointerException {
+		checkNotNull(identifier);
+		checkNotNull(predicate);
+		idToPredicate.put(identifier, predicate);
+		pattern.set(identifier, box(predicate));
+	}
+
+	public void set(String identifier, String pattern)
+			throws NullPointerException {
+		checkNotNull(identifier);
+		checkNotNull(pattern);
+		idToPredicate.remove(identifier);
+		this.pattern.set(identifier, pattern);
+	}
+
+	public String getRegex() {
+		return pattern.getRegex();
+	}
+}
@@ -0,0 +1,681 @@
+package com.jeeex.objregex.impl;
+
+import static com.jeeex.objregex.impl.TransitionIdentifier.BOF;
+import static com.jeeex.objregex.impl.TransitionIdentifier.EOF;
+import static com.jeeex.objregex.impl.TransitionIdentifier.EPSILON;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+
+/**
+ * A flat, integer-indexed form of a {@link State} graph.
+ * <p>
+ * Every {@link State} reachable from the root is assigned a state number, and
+ * its transitions are copied into primitive arrays: the target states and the
+ * label index of every non-special transition, and separate edge lists for
+ * {@link TransitionIdentifier#EPSILON}, {@link TransitionIdentifier#BOF} and
+ * {@link TransitionIdentifier#EOF} transitions. Labels are numbered as well,
+ * so that the matcher can work with array indexing alone.
+ * <p>
+ * States are lowered on demand - the transitions of a state are copied the
+ * first time they are requested. This is required because the transitions of
+ * a {@link LazyState} can only be computed after the identifiers have been
+ * bound, and because recursive patterns generate an unbounded number of
+ * states. Once lowered, a state never changes. A program can also be created
+ * with every state lowered up front, as {@link GlushkovBuilder} does.
+ * <p>
+ * A {@link CounterState} is lowered into a <em>counter</em>: from its state
+ * to the state of its exit, over {@code min} to {@code max} consecutive
+ * elements that satisfy its label. Counters are not transitions - the
+ * matching engines run them with {@link CounterRegisters}.
+ * <p>
+ * A {@link TagState} keeps its tag, which only {@link Searcher} reads.
+ * <p>
+ * A program can also run several patterns at once, for a
+ * {@link PatternSetImpl}: each pattern has its own accepting state, which
+ * tells which pattern it accepts.
+ * <p>
+ * This class is not thread safe.
+ */
+final class Program {
+
+	private static final int[] NO_EDGES = new int[0];
+
+	/**
+	 * Map of {@link State} -> state number.
+	 */
+	private final Map<State, Integer> stateNumbers = Maps.newHashMap();
+
+	/**
+	 * Map of {@link TransitionIdentifier#toString()} -> label number. The
+	 * string form is used since {@link TransitionIdentifier#equals(Object)}
+	 * ignores negation.
+	 */
+	private final Map<String, Integer> labelNumbers = Maps.newHashMap();
+
+	/**
+	 * Map of identifier -> slot number. An identifier and its negation share
+	 * a slot.
+	 */
+	private final Map<String, Integer> slotNumbers = Maps.newHashMap();
+
+	private State[] states = new State[16];
+	private boolean[] lowered = new boolean[16];
+	private boolean[] accepting = new boolean[16];
+	private int[][] targets = new int[16][];
+	private int[][] labels = new int[16][];
+	private int[][] epsilon = new int[16][];
+	private int[][] bof = new int[16][];
+	private int[][] eof = new int[16][];
+	private int[][] closures = new int[16][];
+	private int[][] bofClosures = new int[16][];
+	private int[][] eofClosures = new int[16][];
+
+	/**
+	 * Counter of each state, plus one. Zero if the state has no counter.
+	 */
+	private int[] stateCounters = new int[16];
+
+	/**
+	 * Tag of each state, plus one. Zero if the state is not a
+	 * {@link TagState}.
+	 */
+	private int[] stateTags = new int[16];
+
+	/**
+	 * Pattern accepted by each state, plus one. Zero if the state is not
+	 * accepting, or if the program is not run for several patterns.
+	 */
+	private int[] statePatterns = new int[16];
+	private int stateCount;
+
+	private int[] counterEntries = new int[4];
+	private int[] counterExits = new int[4];
+	private int[] counterLabels = new int[4];
+	private int[] counterMins = new int[4];
+	private int[] counterMaxes = new int[4];
+	private int counterCount;
+
+	/**
+	 * Work list used to compute closures.
+	 */
+	private final StateSet scratch = new StateSet(16);
+
+	private String[] labelIds = new String[8];
+	private boolean[] labelNegations = new boolean[8];
+	private int[] labelSlots = new int[8];
+	private int labelCount;
+
+	private String[] slotIds = new String[8];
+	private int slotCount;
+
+	private final int start;
+
+	/**
+	 * Creates a program for the given {@link State}. No transitions are
+	 * lowered yet.
+	 */
+	Program(State root) {
+		this.start = number(root.getTail());
+		accepting[number(root.getHead())] = true;
+	}
+
+	/**
+	 * Creates a program that runs the given {@link State}s at once: the start
+	 * state has an {@link TransitionIdentifier#EPSILON} transition to the tail
+	 * of every root, and the head of root {@code i} accepts pattern {@code i}.
+	 * Null roots are skipped, so that patterns keep their number when others
+	 * are removed.
+	 */
+	Program(State[] roots) {
+		LeafState root = new LeafState();
+		for (State state : roots) {
+			if (state != null) {
+				root.addTransition(EPSILON, state.getTail());
+			}
+		}
+		this.start = number(root);
+		for (int i = 0; i < roots.length; i++) {
+			if (roots[i] == null) {
+				continue;
+			}
+			int head = number(roots[i].getHead());
+			accepting[head] = true;
+			statePatterns[head] = i + 1;
+		}
+	}
+
+	/**
+	 * Creates a program whose states are all lowered already. State {@code s}
+	 * has a transition labelled {@code tids[s][i]} to state {@code
+	 * targets[s][i]}, and is accepting if {@code accepting[s]} is true.
+	 */
+	Program(int start, TransitionIdentifier[][] tids, int[][] targets,
+			boolean[] accepting) {
+		int count = accepting.length;
+		grow(Math.max(count, 1));
+		this.start = start;
+		this.stateCount = count;
+		for (int s = 0; s < count; s++) {
+			this.accepting[s] = accepting[s];
+			store(s, tids[s], targets[s]);
+		}
+	}
+
+	/**
+	 * Returns the state number of the initial state, the tail of the root
+	 * {@link State}.
+	 */
+	int getStart() {
+		return start;
+	}
+
+	/**
+	 * Returns whether the given state is accepting. A program created from a
+	 * {@link State} has a single accepting state, the head of the root.
+	 */
+	boolean isAccepting(int state) {
+		return accepting[state];
+	}
+
+	/**
+	 * Returns the pattern that the given state accepts, in a program created
+	 * for several patterns, or -1 if it is not accepting.
+	 */
+	int getPattern(int state) {
+		return statePatterns[state] - 1;
+	}
+
+	/**
+	 * Returns the number of states discovered so far. This number grows as
+	 * more states are lowered.
+	 */
+	int getStateCount() {
+		return stateCount;
+	}
+
+	/**
+	 * Returns the number of labels discovered so far.
+	 */
+	int getLabelCount() {
+		return labelCount;
+	}
+
+	/**
+	 * Returns the number of slots discovered so far.
+	 */
+	int getSlotCount() {
+		return slotCount;
+	}
+
+	/**
+	 * Returns the number of counters discovered so far. The counter of a
+	 * state is discovered when the state is lowered.
+	 */
+	int getCounterCount() {
+		return counterCount;
+	}
+
+	/**
+	 * Returns the slot that the given state writes to, if it is a
+	 * {@link TagState}, or -1.
+	 */
+	int getTag(int state) {
+		return stateTags[state] - 1;
+	}
+
+	/**
+	 * Returns the counter of the given state, or -1 if it has none.
+	 */
+	int getCounter(int state) {
+		lower(state);
+		return stateCounters[state] - 1;
+	}
+
+	/**
+	 * Returns the state that the given counter starts from.
+	 */
+	int getCounterEntry(int counter) {
+		return counterEntries[counter];
+	}
+
+	/**
+	 * Returns the state that the given counter leads to.
+	 */
+	int getCounterExit(int counter) {
+		return counterExits[counter];
+	}
+
+	/**
+	 * Returns the label that every element counted by the given counter must
+	 * satisfy.
+	 */
+	int getCounterLabel(int counter) {
+		return counterLabels[counter];
+	}
+
+	/**
+	 * Returns the minimum number of elements of the given counter.
+	 */
+	int getCounterMin(int counter) {
+		return counterMins[counter];
+	}
+
+	/**
+	 * Returns the maximum number of elements of the given counter, or
+	 * {@link RegexNode#UNBOUNDED}.
+	 */
+	int getCounterMax(int counter) {
+		return counterMaxes[counter];
+	}
+
+	/**
+	 * Returns the identifier of the given label.
+	 */
+	String getLabelId(int label) {
+		return labelIds[label];
+	}
+
+	/**
+	 * Returns the slot of the given label. Labels share a slot if and only if
+	 * they have the same identifier, regardless of negation.
+	 */
+	int getSlot(int label) {
+		return labelSlots[label];
+	}
+
+	/**
+	 * Returns the identifier of the given slot.
+	 */
+	String getSlotId(int slot) {
+		return slotIds[slot];
+	}
+
+	/**
+	 * Returns whether the given label is a negated identifier.
+	 */
+	boolean isNegation(int label) {
+		return labelNegations[label];
+	}
+
+	/**
+	 * Returns the target states of the non-special transitions of the given
+	 * state. {@code getTargets(s)[i]} is labelled by {@code getLabels(s)[i]}.
+	 */
+	int[] getTargets(int state) {
+		lower(state);
+		return targets[state];
+	}
+
+	/**
+	 * Returns the labels of the non-special transitions of the given state.
+	 */
+	int[] getLabels(int state) {
+		lower(state);
+		return labels[state];
+	}
+
+	/**
+	 * Returns the targets of the {@link TransitionIdentifier#EPSILON}
+	 * transitions of the given state.
+	 */
+	int[] getEpsilonTargets(int state) {
+		lower(state);
+		return epsilon[state];
+	}
+
+	/**
+	 * Returns the targets of the {@link TransitionIdentifier#BOF} transitions
+	 * of the given state.
+	 */
+	int[] getBofTargets(int state) {
+		lower(state);
+		return bof[state];
+	}
+
+	/**
+	 * Returns the targets of the {@link TransitionIdentifier#EOF} transitions
+	 * of the given state.
+	 */
+	int[] getEofTargets(int state) {
+		lower(state);
+		return eof[state];
+	}
+
+	/**
+	 * Returns the transitive closure of the given state over
+	 * {@link TransitionIdentifier#EPSILON} transitions, including the state
+	 * itself. The closure is computed once, and cached.
+	 */
+	int[] getClosure(int state) {
+		if (closures[state] == null) {
+			// computing the closure may grow the arrays.
+			int[] closure = computeClosure(state, false, false);
+			closures[state] = closure;
+		}
+		return closures[state];
+	}
+
+	/**
+	 * Returns the transitive closure of the given state over
+	 * {@link TransitionIdentifier#EPSILON} and {@link TransitionIdentifier#BOF}
+	 * transitions.
+	 */
+	int[] getBofClosure(int state) {
+		if (bofClosures[state] == null) {
+			// computing the closure may grow the arrays.
+			int[] closure = computeClosure(state, true, false);
+			bofClosures[state] = closure;
+		}
+		return bofClosures[state];
+	}
+
+	/**
+	 * Returns the transitive closure of the given state over
+	 * {@link TransitionIdentifier#EPSILON} and {@link TransitionIdentifier#EOF}
+	 * transitions.
+	 */
+	int[] getEofClosure(int state) {
+		if (eofClosures[state] == null) {
+			// computing the closure may grow the arrays.
+			int[] closure = computeClosure(state, false, true);
+			eofClosures[state] = closure;
+		}
+		return eofClosures[state];
+	}
+
+	/**
+	 * Returns whether an accepting state can be reached from the given state
+	 * once the input has been exhausted.
+	 */
+	boolean isAcceptingAtEof(int state) {
+		for (int s : getEofClosure(state)) {
+			if (accepting[s]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Lowers every state reachable from the start state, and returns them.
+	 * Must not be called on a program that refers to itself, whose states are
+	 * unbounded.
+	 */
+	StateSet lowerAll() {
+		StateSet reachable = new StateSet(stateCount);
+		reachable.add(start);
+		for (int i = 0; i < reachable.size(); i++) {
+			int s = reachable.get(i);
+			for (int t : getTargets(s)) {
+				reachable.add(t);
+			}
+			for (int t : getEpsilonTargets(s)) {
+				reachable.add(t);
+			}
+			for (int t : getBofTargets(s)) {
+				reachable.add(t);
+			}
+			for (int t : getEofTargets(s)) {
+				reachable.add(t);
+			}
+			int counter = getCounter(s);
+			if (counter >= 0) {
+				reachable.add(counterExits[counter]);
+			}
+		}
+		return reachable;
+	}
+
+	/**
+	 * Lowers every state reachable from the start state and computes their
+	 * closures, after which the program is never written to again: it can
+	 * be shared by threads, once it is safely published. Must not be called
+	 * on a program that refers to itself.
+	 */
+	void lowerCompletely() {
+		StateSet reachable = lowerAll();
+		for (int i = 0; i < reachable.size(); i++) {
+			int s = reachable.get(i);
+			getClosure(s);
+			getBofClosure(s);
+			getEofClosure(s);
+		}
+	}
+
+	/**
+	 * Expands {@code states} to its transitive closure over
+	 * {@link TransitionIdentifier#EPSILON} transitions, and optionally over
+	 * {@link TransitionIdentifier#BOF} or {@link TransitionIdentifier#EOF}
+	 * transitions. This is the union of the cached closures of the members.
+	 */
+	void closure(StateSet states, boolean withBof, boolean withEof) {
+		int size = states.size();
+		for (int i = 0; i < size; i++) {
+			int s = states.get(i);
+			int[] closure;
+			if (withBof) {
+				closure = getBofClosure(s);
+			} else if (withEof) {
+				closure = getEofClosure(s);
+			} else {
+				closure = getClosure(s);
+			}
+			for (int t : closure) {
+				states.add(t);
+			}
+		}
+	}
+
+	private int[] computeClosure(int state, boolean withBof, boolean withEof) {
+		StateSet closure = scratch;
+		closure.clear();
+		closure.add(state);
+		// states appended by add() are visited by this loop as well.
+		for (int i = 0; i < closure.size(); i++) {
+			int s = closure.get(i);
+			for (int t : getEpsilonTargets(s)) {
+				closure.add(t);
+			}
+			if (withBof) {
+				for (int t : getBofTargets(s)) {
+					closure.add(t);
+				}
+			}
+			if (withEof) {
+				for (int t : getEofTargets(s)) {
+					closure.add(t);
+				}
+			}
+		}
+		int[] result = new int[closure.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = closure.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Copies the transitions of the given state into the arrays, unless it has
+	 * been done already.
+	 */
+	private void lower(int state) {
+		if (lowered[state]) {
+			return;
+		}
+		// may trigger the lazy initialization, which can create new states.
+		Multimap<TransitionIdentifier, State> transitions = states[state]
+				.getTransitions();
+
+		TransitionIdentifier[] stateTids = new TransitionIdentifier[transitions
+				.size()];
+		int[] stateTargets = new int[transitions.size()];
+		int i = 0;
+		for (Map.Entry<TransitionIdentifier, State> entry : transitions
+				.entries()) {
+			stateTids[i] = entry.getKey();
+			stateTargets[i] = number(entry.getValue());
+			i++;
+		}
+		if (states[state] instanceof CounterState) {
+			CounterState counterState = (CounterState) states[state];
+			if (counterState.isCounting()) {
+				addCounter(state, counterState);
+			}
+		}
+		store(state, stateTids, stateTargets);
+	}
+
+	private void addCounter(int state, CounterState counterState) {
+		if (counterCount == counterEntries.length) {
+			int capacity = counterCount * 2;
+			counterEntries = ArrayUtil.grow(counterEntries, capacity);
+			counterExits = ArrayUtil.grow(counterExits, capacity);
+			counterLabels = ArrayUtil.grow(counterLabels, capacity);
+			counterMins = ArrayUtil.grow(counterMins, capacity);
+			counterMaxes = ArrayUtil.grow(counterMaxes, capacity);
+		}
+		counterEntries[counterCount] = state;
+		counterExits[counterCount] = number(counterState.getExit());
+		counterLabels[counterCount] = label(counterState.getTid());
+		counterMins[counterCount] = counterState.getMin();
+		counterMaxes[counterCount] = counterState.getMax();
+		stateCounters[state] = ++counterCount;
+	}
+
+	/**
+	 * Sorts the transitions of the given state into the arrays, and marks it
+	 * as lowered.
+	 */
+	private void store(int state, TransitionIdentifier[] stateTids,
+			int[] stateTargets) {
+		int labelled = 0;
+		int epsilonCount = 0;
+		int bofCount = 0;
+		int eofCount = 0;
+		for (TransitionIdentifier tid : stateTids) {
+			if (tid.equals(EPSILON)) {
+				epsilonCount++;
+			} else if (tid.equals(BOF)) {
+				bofCount++;
+			} else if (tid.equals(EOF)) {
+				eofCount++;
+			} else {
+				labelled++;
+			}
+		}
+
+		int[] labelledTargets = new int[labelled];
+		int[] stateLabels = new int[labelled];
+		int[] stateEpsilon = epsilonCount == 0 ? NO_EDGES
+				: new int[epsilonCount];
+		int[] stateBof = bofCount == 0 ? NO_EDGES : new int[bofCount];
+		int[] stateEof = eofCount == 0 ? NO_EDGES : new int[eofCount];
+
+		labelled = epsilonCount = bofCount = eofCount = 0;
+		for (int i = 0; i < stateTids.length; i++) {
+			TransitionIdentifier tid = stateTids[i];
+			if (tid.equals(EPSILON)) {
+				stateEpsilon[epsilonCount++] = stateTargets[i];
+			} else if (tid.equals(BOF)) {
+				stateBof[bofCount++] = stateTargets[i];
+			} else if (tid.equals(EOF)) {
+				stateEof[eofCount++] = stateTargets[i];
+			} else {
+				labelledTargets[labelled] = stateTargets[i];
+				stateLabels[labelled] = label(tid);
+				labelled++;
+			}
+		}
+
+		targets[state] = labelledTargets;
+		labels[state] = stateLabels;
+		epsilon[state] = stateEpsilon;
+		bof[state] = stateBof;
+		eof[state] = stateEof;
+		lowered[state] = true;
+	}
+
+	/**
+	 * Returns the state number of the given state, assigning a new one if
+	 * required.
+	 */
+	private int number(State state) {
+		Integer number = stateNumbers.get(state);
+		if (number != null) {
+			return number;
+		}
+		if (stateCount == states.length) {
+			grow(stateCount * 2);
+		}
+		states[stateCount] = state;
+		if (state instanceof TagState) {
+			stateTags[stateCount] = ((TagState) state).getSlot() + 1;
+		}
+		stateNumbers.put(state, stateCount);
+		return stateCount++;
+	}
+
+	/**
+	 * Grows the per-state arrays to the given capacity, if required.
+	 */
+	private void grow(int capacity) {
+		if (capacity > states.length) {
+			states = ArrayUtil.grow(states, capacity);
+			lowered = ArrayUtil.grow(lowered, capacity);
+			accepting = ArrayUtil.grow(accepting, capacity);
+			targets = ArrayUtil.grow(targets, capacity);
+			labels = ArrayUtil.grow(labels, capacity);
+			epsilon = ArrayUtil.grow(epsilon, capacity);
+			bof = ArrayUtil.grow(bof, capacity);
+			eof = ArrayUtil.grow(eof, capacity);
+			closures = ArrayUtil.grow(closures, capacity);
+			bofClosures = ArrayUtil.grow(bofClosures, capacity);
+			eofClosures = ArrayUtil.grow(eofClosures, capacity);
+			stateCounters = ArrayUtil.grow(stateCounters, capacity);
+			stateTags = ArrayUtil.grow(stateTags, capacity);
+			statePatterns = ArrayUtil.grow(statePatterns, capacity);
+		}
+	}
+
+	/**
+	 * Returns the label number of the given non-special identifier, assigning
+	 * a new one if required.
+	 */
+	private int label(TransitionIdentifier tid) {
+		String key = tid.toString();
+		Integer number = labelNumbers.get(key);
+		if (number != null) {
+			return number;
+		}
+		if (labelCount == labelIds.length) {
+			labelIds = ArrayUtil.grow(labelIds, labelCount * 2);
+			labelNegations = ArrayUtil.grow(labelNegations, labelCount * 2);
+			labelSlots = ArrayUtil.grow(labelSlots, labelCount * 2);
+		}
+		labelIds[labelCount] = tid.getId();
+		labelNegations[labelCount] = tid.isNegation();
+		labelSlots[labelCount] = slot(tid.getId());
+		labelNumbers.put(key, labelCount);
+		return labelCount++;
+	}
+
+	/**
+	 * Returns the slot number of the given identifier, assigning a new one if
+	 * required.
+	 */
+	private int slot(String id) {
+		Integer number = slotNumbers.get(id);
+		if (number != null) {
+			return number;
+		}
+		if (slotCount == slotIds.length) {
+			slotIds = ArrayUtil.grow(slotIds, slotCount * 2);
+		}
+		slotIds[slotCount] = id;
+		slotNumbers.put(id, slotCount);
+		return slotCount++;
+	}
+}
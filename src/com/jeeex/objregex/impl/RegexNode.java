@@ -0,0 +1,644 @@
+package com.jeeex.objregex.impl;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.jeeex.objregex.impl.TransitionIdentifier.EPSILON;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.jeeex.objregex.javacc.ASTConcatExpr;
+import com.jeeex.objregex.javacc.ASTExpression;
+import com.jeeex.objregex.javacc.ASTIdentifier;
+import com.jeeex.objregex.javacc.ASTNegativeIdentifier;
+import com.jeeex.objregex.javacc.ASTOperatorExpr;
+import com.jeeex.objregex.javacc.ASTSpecialIdentifier;
+import com.jeeex.objregex.javacc.ASTStart;
+import com.jeeex.objregex.javacc.ASTTerm;
+import com.jeeex.objregex.javacc.EnhancedNode;
+
+/**
+ * Intermediate representation of a regular expression, between the AST
+ * produced by the parser and the NFA {@link State}s.
+ * <p>
+ * Nodes are immutable, and compare equal when they are structurally equal, so
+ * that {@link RegexOptimizer} can rewrite them freely. {@link #toState} builds
+ * the NFA of a node, and {@link #getStateCount()} tells how many states it
+ * builds, without building them.
+ */
+abstract class RegexNode {
+
+	/**
+	 * The empty string.
+	 */
+	static final RegexNode EMPTY = new Empty();
+
+	/**
+	 * Maximum of a counted repetition without an upper bound, such as "A{2,}".
+	 */
+	static final int UNBOUNDED = -1;
+
+	/**
+	 * Translates the AST of a regular expression, node by node.
+	 */
+	static RegexNode fromAST(EnhancedNode node) {
+		return fromAST(node, null);
+	}
+
+	/**
+	 * Same as {@link #fromAST(EnhancedNode)}, but every parenthesized
+	 * expression becomes a {@link Group}, numbered from 1 in the order of its
+	 * opening parenthesis. Such nodes must not be optimized.
+	 */
+	static RegexNode fromASTWithGroups(EnhancedNode node) {
+		return fromAST(node, new int[1]);
+	}
+
+	/**
+	 * @param groups
+	 *            Holds the number of groups created so far, or null if groups
+	 *            are not created.
+	 */
+	private static RegexNode fromAST(EnhancedNode node, int[] groups) {
+		if (node instanceof ASTTerm && groups != null
+				&& node.getFirstChild() instanceof ASTExpression) {
+			int index = ++groups[0];
+			return new Group(fromAST(node.getFirstChild(), groups), index);
+		} else if (node instanceof ASTStart || node instanceof ASTTerm) {
+			return fromAST(node.getFirstChild(), groups);
+		} else if (node instanceof ASTExpression) {
+			return alternation(fromAST(node.getNodeList(), groups));
+		} else if (node instanceof ASTConcatExpr) {
+			return concat(fromAST(node.getNodeList(), groups));
+		} else if (node instanceof ASTOperatorExpr) {
+			RegexNode result = fromAST(node.getFirstChild(), groups);
+			for (EnhancedNode operator : node.getNodeList(1)) {
+				int[] bounds = RegexUtil.extractRepetition(operator);
+				if (bounds == null) {
+					result = new Quantified(result, RegexOperator
+							.get(operator.jjtGetFirstToken().image));
+				} else {
+					result = new Counted(result, bounds[0], bounds[1]);
+				}
+			}
+			return result;
+		} else if (node instanceof ASTIdentifier) {
+			return new Symbol(node.jjtGetFirstToken().image, false, false);
+		} else if (node instanceof ASTNegativeIdentifier) {
+			return new Symbol(node.getFirstChild().jjtGetFirstToken().image,
+					true, false);
+		} else if (node instanceof ASTSpecialIdentifier) {
+			return new Symbol(node.jjtGetFirstToken().image, false, true);
+		}
+		throw new UnsupportedOperationException("Unexpected node " + node);
+	}
+
+	private static List<RegexNode> fromAST(List<EnhancedNode> nodes,
+			int[] groups) {
+		List<RegexNode> result = Lists.newArrayList();
+		for (EnhancedNode node : nodes) {
+			result.add(fromAST(node, groups));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the concatenation of the given nodes, which may be empty.
+	 */
+	static RegexNode concat(List<RegexNode> elements) {
+		switch (elements.size()) {
+		case 0:
+			return EMPTY;
+		case 1:
+			return elements.get(0);
+		default:
+			return new Concat(elements);
+		}
+	}
+
+	/**
+	 * Returns the alternation of the given nodes, which must not be empty.
+	 */
+	static RegexNode alternation(List<RegexNode> alternatives) {
+		if (alternatives.size() == 1) {
+			return alternatives.get(0);
+		}
+		return new Alternation(alternatives);
+	}
+
+	/**
+	 * Returns {@code node} repeated from {@code min} to {@code max} times,
+	 * with copies of the node: "A{2,4}" is "A A A? A?".
+	 */
+	static RegexNode repeat(RegexNode node, int min, int max) {
+		List<RegexNode> elements = Lists.newArrayList();
+		for (int i = 0; i < min; i++) {
+			elements.add(node);
+		}
+		if (max == UNBOUNDED) {
+			if (min == 0) {
+				elements.add(new Quantified(node, RegexOperator.STAR));
+			} else {
+				elements.set(min - 1, new Quantified(node, RegexOperator.PLUS));
+			}
+		} else {
+			for (int i = min; i < max; i++) {
+				elements.add(new Quantified(node, RegexOperator.QUESTION));
+			}
+		}
+		return concat(elements);
+	}
+
+	/**
+	 * Returns whether {@code node} is a chain of operators that contains a
+	 * counted repetition. {@link ASTVisitor} hands such chains over to
+	 * {@link #toState}.
+	 */
+	static boolean isCountedChain(RegexNode node) {
+		while (node instanceof Quantified || node instanceof Counted) {
+			if (node instanceof Counted) {
+				return true;
+			}
+			node = ((Quantified) node).child;
+		}
+		return false;
+	}
+
+	/**
+	 * Builds the NFA of this node.
+	 */
+	abstract State toState(SingleTransitionFactory factory);
+
+	/**
+	 * Returns whether {@link #toState} builds a {@link CounterState}.
+	 */
+	boolean hasCounter() {
+		return false;
+	}
+
+	/**
+	 * Returns the number of states that {@link #toState} builds.
+	 */
+	abstract int getStateCount();
+
+	/**
+	 * Returns the number of states that the literal translation of this node
+	 * by {@link ASTVisitor} builds.
+	 */
+	abstract int getLiteralStateCount();
+
+	/**
+	 * A single identifier, possibly negated, or a special identifier.
+	 */
+	static final class Symbol extends RegexNode {
+		final String id;
+		final boolean negated;
+		final boolean special;
+
+		Symbol(String id, boolean negated, boolean special) {
+			this.id = checkNotNull(id);
+			this.negated = negated;
+			this.special = special;
+		}
+
+		@Override
+		State toState(SingleTransitionFactory factory) {
+			if (special) {
+				return StateUtil.single(TransitionIdentifier
+						.makeSpecialTid(id));
+			}
+			return factory.singleTransition(TransitionIdentifier.makeTid(id,
+					negated));
+		}
+
+		@Override
+		int getStateCount() {
+			return 2;
+		}
+
+		@Override
+		int getLiteralStateCount() {
+			return 2;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Symbol)) {
+				return false;
+			}
+			Symbol symbol = (Symbol) other;
+			return id.equals(symbol.id) && negated == symbol.negated
+					&& special == symbol.special;
+		}
+
+		@Override
+		public int hashCode() {
+			return id.hashCode() * 4 + (negated ? 2 : 0) + (special ? 1 : 0);
+		}
+
+		@Override
+		public String toString() {
+			return negated ? "!" + id : id;
+		}
+	}
+
+	/**
+	 * The empty string.
+	 */
+	private static final class Empty extends RegexNode {
+		@Override
+		State toState(SingleTransitionFactory factory) {
+			return new LeafState();
+		}
+
+		@Override
+		int getStateCount() {
+			return 1;
+		}
+
+		@Override
+		int getLiteralStateCount() {
+			return 2;
+		}
+
+		@Override
+		public String toString() {
+			return "()";
+		}
+	}
+
+	/**
+	 * Two or more nodes, one after another.
+	 */
+	static final class Concat extends RegexNode {
+		final List<RegexNode> elements;
+
+		Concat(List<RegexNode> elements) {
+			this.elements = ImmutableList.copyOf(elements);
+		}
+
+		/**
+		 * Links the elements one after the other, as
+		 * {@link StateUtil#concat(State, State)} would, but wraps them in a
+		 * single {@link CompositeState}, which does not nest deeper as more
+		 * elements are appended.
+		 */
+		@Override
+		State toState(SingleTransitionFactory factory) {
+			State first = elements.get(0).toState(factory);
+			State last = first;
+			for (RegexNode element : elements.subList(1, elements.size())) {
+				State state = element.toState(factory);
+				last.addTransition(EPSILON, state);
+				last = state;
+			}
+			return new CompositeState(last, first);
+		}
+
+		@Override
+		int getStateCount() {
+			int count = 0;
+			for (RegexNode element : elements) {
+				count += element.getStateCount();
+			}
+			return count;
+		}
+
+		@Override
+		int getLiteralStateCount() {
+			int count = 0;
+			for (RegexNode element : elements) {
+				count += element.getLiteralStateCount();
+			}
+			return count;
+		}
+
+		@Override
+		boolean hasCounter() {
+			for (RegexNode element : elements) {
+				if (element.hasCounter()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Concat
+					&& elements.equals(((Concat) other).elements);
+		}
+
+		@Override
+		public int hashCode() {
+			return elements.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder("(");
+			for (RegexNode element : elements) {
+				if (builder.length() > 1) {
+					builder.append(' ');
+				}
+				builder.append(element);
+			}
+			return builder.append(')').toString();
+		}
+	}
+
+	/**
+	 * Two or more alternatives.
+	 */
+	static final class Alternation extends RegexNode {
+		final List<RegexNode> alternatives;
+
+		Alternation(List<RegexNode> alternatives) {
+			this.alternatives = ImmutableList.copyOf(alternatives);
+		}
+
+		/**
+		 * Builds a fresh tail and head around the alternatives, so that no
+		 * alternative can be entered from, or left into, another one.
+		 */
+		@Override
+		State toState(SingleTransitionFactory factory) {
+			State tail = new LeafState();
+			State head = new LeafState();
+			for (RegexNode alternative : alternatives) {
+				State state = alternative.toState(factory);
+				tail.addTransition(EPSILON, state);
+				state.addTransition(EPSILON, head);
+			}
+			return new CompositeState(head, tail);
+		}
+
+		@Override
+		int getStateCount() {
+			int count = 2;
+			for (RegexNode alternative : alternatives) {
+				count += alternative.getStateCount();
+			}
+			return count;
+		}
+
+		/**
+		 * {@link StateUtil#or(State, State)} adds two states per pair.
+		 */
+		@Override
+		int getLiteralStateCount() {
+			int count = 2 * (alternatives.size() - 1);
+			for (RegexNode alternative : alternatives) {
+				count += alternative.getLiteralStateCount();
+			}
+			return count;
+		}
+
+		@Override
+		boolean hasCounter() {
+			for (RegexNode alternative : alternatives) {
+				if (alternative.hasCounter()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Alternation
+					&& alternatives.equals(((Alternation) other).alternatives);
+		}
+
+		@Override
+		public int hashCode() {
+			return alternatives.hashCode() + 1;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder("(");
+			for (RegexNode alternative : alternatives) {
+				if (builder.length() > 1) {
+					builder.append('|');
+				}
+				builder.append(alternative);
+			}
+			return builder.append(')').toString();
+		}
+	}
+
+	/**
+	 * A node followed by a postfix operator.
+	 */
+	static final class Quantified extends RegexNode {
+		final RegexNode child;
+		final RegexOperator operator;
+
+		Quantified(RegexNode child, RegexOperator operator) {
+			this.child = checkNotNull(child);
+			this.operator = checkNotNull(operator);
+		}
+
+		@Override
+		State toState(SingleTransitionFactory factory) {
+			State state = child.toState(factory);
+			switch (operator) {
+			case STAR:
+				return StateUtil.kleineClosure(state);
+			case PLUS:
+				return StateUtil.plus(state);
+			default:
+				return StateUtil.optional(state);
+			}
+		}
+
+		@Override
+		int getStateCount() {
+			int extra = operator == RegexOperator.QUESTION ? 2 : 1;
+			return child.getStateCount() + extra;
+		}
+
+		/**
+		 * {@link ASTVisitor} builds A+ as A A*, where the first A is the
+		 * operand without its other operators, and A? as A | ().
+		 */
+		@Override
+		int getLiteralStateCount() {
+			if (isCountedChain(this)) {
+				return getStateCount();
+			}
+			int count = child.getLiteralStateCount();
+			switch (operator) {
+			case STAR:
+				return count + 1;
+			case PLUS:
+				RegexNode operand = child;
+				while (operand instanceof Quantified) {
+					operand = ((Quantified) operand).child;
+				}
+				return count + operand.getLiteralStateCount() + 1;
+			default:
+				return count + 4;
+			}
+		}
+
+		@Override
+		boolean hasCounter() {
+			return child.hasCounter();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Quantified)) {
+				return false;
+			}
+			Quantified quantified = (Quantified) other;
+			return child.equals(quantified.child)
+					&& operator == quantified.operator;
+		}
+
+		@Override
+		public int hashCode() {
+			return child.hashCode() * 31 + operator.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return child.toString() + operator;
+		}
+	}
+
+	/**
+	 * A node repeated from {@link #min} to {@link #max} times, such as
+	 * "A{2,5}". A single identifier is repeated with a counter, by a
+	 * {@link CounterState}. Any other node is repeated with copies of itself.
+	 */
+	static final class Counted extends RegexNode {
+		final RegexNode child;
+		final int min;
+		final int max;
+
+		Counted(RegexNode child, int min, int max) {
+			this.child = checkNotNull(child);
+			this.min = min;
+			this.max = max;
+		}
+
+		/**
+		 * Returns whether the repetition is executed by a counter.
+		 */
+		private boolean isCounting() {
+			return max != 0 && child instanceof Symbol
+					&& !((Symbol) child).special;
+		}
+
+		@Override
+		State toState(SingleTransitionFactory factory) {
+			if (isCounting()) {
+				Symbol symbol = (Symbol) child;
+				return CounterState.create(TransitionIdentifier.makeTid(
+						symbol.id, symbol.negated), min, max, factory);
+			}
+			return repeat(child, min, max).toState(factory);
+		}
+
+		@Override
+		int getStateCount() {
+			return isCounting() ? 2 : repeat(child, min, max).getStateCount();
+		}
+
+		/**
+		 * {@link ASTVisitor} hands counted repetitions over to
+		 * {@link #toState}.
+		 */
+		@Override
+		int getLiteralStateCount() {
+			return getStateCount();
+		}
+
+		@Override
+		boolean hasCounter() {
+			return isCounting() || child.hasCounter();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Counted)) {
+				return false;
+			}
+			Counted counted = (Counted) other;
+			return child.equals(counted.child) && min == counted.min
+					&& max == counted.max;
+		}
+
+		@Override
+		public int hashCode() {
+			return (child.hashCode() * 31 + min) * 31 + max;
+		}
+
+		@Override
+		public String toString() {
+			return child + "{" + min + ","
+					+ (max == UNBOUNDED ? "" : String.valueOf(max)) + "}";
+		}
+	}
+
+	/**
+	 * A capture group, enclosed by the {@link TagState}s of slots
+	 * {@code 2 * index} and {@code 2 * index + 1}.
+	 */
+	static final class Group extends RegexNode {
+		final RegexNode child;
+		final int index;
+
+		Group(RegexNode child, int index) {
+			this.child = checkNotNull(child);
+			this.index = index;
+		}
+
+		@Override
+		State toState(SingleTransitionFactory factory) {
+			State state = child.toState(factory);
+			State open = new TagState(2 * index);
+			State close = new TagState(2 * index + 1);
+			open.addTransition(EPSILON, state);
+			state.addTransition(EPSILON, close);
+			return new CompositeState(close, open);
+		}
+
+		@Override
+		int getStateCount() {
+			return child.getStateCount() + 2;
+		}
+
+		@Override
+		int getLiteralStateCount() {
+			return child.getLiteralStateCount() + 2;
+		}
+
+		@Override
+		boolean hasCounter() {
+			return child.hasCounter();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Group)) {
+				return false;
+			}
+			Group group = (Group) other;
+			return child.equals(group.child) && index == group.index;
+		}
+
+		@Override
+		public int hashCode() {
+			return child.hashCode() * 31 + index;
+		}
+
+		@Override
+		public String toString() {
+			return "(?" + index + " " + child + ")";
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package com.jeeex.objregex.impl;
+
+import static com.jeeex.objregex.impl.RegexOperator.PLUS;
+import static com.jeeex.objregex.impl.RegexOperator.QUESTION;
+import static com.jeeex.objregex.impl.RegexOperator.STAR;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.jeeex.objregex.impl.RegexNode.Alternation;
+import com.jeeex.objregex.impl.RegexNode.Concat;
+import com.jeeex.objregex.impl.RegexNode.Counted;
+import com.jeeex.objregex.impl.RegexNode.Quantified;
+
+/**
+ * Simplifies a {@link RegexNode} tree before it is translated to an NFA,
+ * without changing the language it matches.
+ * <ul>
+ * <li>Nested concatenations and alternations are flattened, and empty
+ * elements of a concatenation are dropped.</li>
+ * <li>Stacked operators are collapsed: {@code A**}, {@code A+*}, {@code A?+}
+ * and {@code A+?} are all {@code A*}, {@code A++} is {@code A+} and {@code
+ * A??} is {@code A?}.</li>
+ * <li>Operators on the alternatives of a starred alternation are dropped:
+ * {@code (A?|B+)*} is {@code (A|B)*}.</li>
+ * <li>Counted repetitions that an operator can express are replaced by it:
+ * {@code A{0,1}} is {@code A?} and {@code A{1,}} is {@code A+}.</li>
+ * <li>Duplicate alternatives are dropped, an empty alternative turns the
+ * alternation into an optional one, and common prefixes of alternatives are
+ * factored out: {@code A B|A C} is {@code A (B|C)}.</li>
+ * </ul>
+ * The order of alternatives is not preserved.
+ */
+final class RegexOptimizer {
+
+	private RegexOptimizer() {
+		// prevent initialization.
+	}
+
+	/**
+	 * Returns the simplified form of the given tree.
+	 */
+	static RegexNode optimize(RegexNode node) {
+		if (node instanceof Concat) {
+			return optimizeConcat(((Concat) node).elements);
+		} else if (node instanceof Alternation) {
+			return optimizeAlternation(((Alternation) node).alternatives);
+		} else if (node instanceof Quantified) {
+			Quantified quantified = (Quantified) node;
+			return optimizeQuantified(optimize(quantified.child),
+					quantified.operator);
+		} else if (node instanceof Counted) {
+			Counted counted = (Counted) node;
+			return optimizeCounted(optimize(counted.child), counted.min,
+					counted.max);
+		}
+		return node;
+	}
+
+	/**
+	 * Returns the number of NFA states that the optimization of {@code node}
+	 * saves, compared to its literal translation.
+	 */
+	static int getStatesSaved(RegexNode node, RegexNode optimized) {
+		return node.getLiteralStateCount() - optimized.getStateCount();
+	}
+
+	private static RegexNode optimizeConcat(List<RegexNode> elements) {
+		List<RegexNode> result = Lists.newArrayList();
+		for (RegexNode element : elements) {
+			RegexNode optimized = optimize(element);
+			if (optimized instanceof Concat) {
+				result.addAll(((Concat) optimized).elements);
+			} else if (optimized != RegexNode.EMPTY) {
+				result.add(optimized);
+			}
+		}
+		return RegexNode.concat(result);
+	}
+
+	private static RegexNode optimizeAlternation(List<RegexNode> alternatives) {
+		// flatten, and drop the duplicates.
+		Set<RegexNode> unique = Sets.newLinkedHashSet();
+		for (RegexNode alternative : alternatives) {
+			RegexNode optimized = optimize(alternative);
+			if (optimized instanceof Alternation) {
+				unique.addAll(((Alternation) optimized).alternatives);
+			} else {
+				unique.add(optimized);
+			}
+		}
+		boolean optional = unique.remove(RegexNode.EMPTY);
+		if (unique.isEmpty()) {
+			return RegexNode.EMPTY;
+		}
+
+		// group the alternatives by their first element.
+		Map<RegexNode, List<RegexNode>> groups = Maps.newLinkedHashMap();
+		for (RegexNode alternative : unique) {
+			RegexNode first = first(alternative);
+			List<RegexNode> group = groups.get(first);
+			if (group == null) {
+				group = Lists.newArrayList();
+				groups.put(first, group);
+			}
+			group.add(alternative);
+		}
+
+		List<RegexNode> result = Lists.newArrayList();
+		for (Map.Entry<RegexNode, List<RegexNode>> entry : groups.entrySet()) {
+			List<RegexNode> group = entry.getValue();
+			if (group.size() == 1) {
+				result.add(group.get(0));
+				continue;
+			}
+			List<RegexNode> rests = Lists.newArrayList();
+			for (RegexNode alternative : group) {
+				rests.add(rest(alternative));
+			}
+			List<RegexNode> factored = Lists.newArrayList();
+			factored.add(entry.getKey());
+			factored.add(optimizeAlternation(rests));
+			result.add(optimizeConcat(factored));
+		}
+
+		RegexNode alternation = result.size() == 1 ? result.get(0)
+				: new Alternation(result);
+		return optional ? optimizeQuantified(alternation, QUESTION)
+				: alternation;
+	}
+
+	/**
+	 * Applies {@code operator} to an optimized node.
+	 */
+	private static RegexNode optimizeQuantified(RegexNode child,
+			RegexOperator operator) {
+		if (child == RegexNode.EMPTY) {
+			return child;
+		}
+		if (child instanceof Quantified) {
+			Quantified inner = (Quantified) child;
+			return optimizeQuantified(inner.child, combine(inner.operator,
+					operator));
+		}
+		if (operator != QUESTION && child instanceof Alternation) {
+			// every alternative can be repeated on its own, so their own
+			// operators are redundant.
+			List<RegexNode> alternatives = Lists.newArrayList();
+			boolean changed = false;
+			for (RegexNode alternative : ((Alternation) child).alternatives) {
+				if (alternative instanceof Quantified) {
+					Quantified quantified = (Quantified) alternative;
+					alternatives.add(quantified.child);
+					if (quantified.operator != PLUS) {
+						// the alternation could match the empty string.
+						operator = STAR;
+					}
+					changed = true;
+				} else {
+					alternatives.add(alternative);
+				}
+			}
+			if (changed) {
+				return optimizeQuantified(optimizeAlternation(alternatives),
+						operator);
+			}
+		}
+		return new Quantified(child, operator);
+	}
+
+	/**
+	 * Repeats an optimized node from {@code min} to {@code max} times.
+	 */
+	private static RegexNode optimizeCounted(RegexNode child, int min,
+			int max) {
+		if (child == RegexNode.EMPTY || max == 0) {
+			return RegexNode.EMPTY;
+		}
+		if (min == 1 && max == 1) {
+			return child;
+		}
+		if (min == 0 && max == 1) {
+			return optimizeQuantified(child, QUESTION);
+		}
+		if (min <= 1 && max == RegexNode.UNBOUNDED) {
+			return optimizeQuantified(child, min == 0 ? STAR : PLUS);
+		}
+		return new Counted(child, min, max);
+	}
+
+	/**
+	 * Returns the single operator equivalent to {@code inner} followed by
+	 * {@code outer}.
+	 */
+	private static RegexOperator combine(RegexOperator inner,
+			RegexOperator outer) {
+		if (inner == outer) {
+			return inner;
+		}
+		// any mix of different operators can repeat any number of times,
+		// including zero.
+		return STAR;
+	}
+
+	private static RegexNode first(RegexNode node) {
+		return node instanceof Concat ? ((Concat) node).elements.get(0) : node;
+	}
+
+	private static RegexNode rest(RegexNode node) {
+		if (node instanceof Concat) {
+			List<RegexNode> elements = ((Concat) node).elements;
+			return RegexNode.concat(elements.subList(1, elements.size()));
+		}
+		return RegexNode.EMPTY;
+	}
+}
@@ -3,16 +3,25 @@ package com.jeeex.objregex.impl;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.PatternSyntaxException;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.jeeex.objregex.ObjectPattern;
+import com.jeeex.objregex.javacc.ASTExpression;
+import com.jeeex.objregex.javacc.ASTIdentifier;
+import com.jeeex.objregex.javacc.ASTOperator;
 import com.jeeex.objregex.javacc.ASTOperatorExpr;
 import com.jeeex.objregex.javacc.ASTStart;
+import com.jeeex.objregex.javacc.ASTTerm;
 import com.jeeex.objregex.javacc.EnhancedNode;
 import com.jeeex.objregex.javacc.ParseException;
 import com.jeeex.objregex.javacc.RegexParser;
+import com.jeeex.objregex.javacc.RegexParserConstants;
+import com.jeeex.objregex.javacc.Token;
+import com.jeeex.objregex.javacc.TokenMgrError;
 
 /**
  * Utility method for regular expression.
@@ -46,17 +55,80 @@ public class RegexUtil {
 			throws PatternSyntaxException {
 		Reader reader = new StringReader(pattern);
 		RegexParser parser = new RegexParser(reader);
+		ASTStart root;
 		try {
-			return (ASTStart) parser.Start();
+			root = (ASTStart) parser.Start();
 		} catch (ParseException e) {
 			// TODO(Jeeyoung Kim) Exception should provide better message to the
 			// users.
 			throw new PatternSyntaxException("", pattern, 0);
+		} catch (TokenMgrError e) {
+			throw new PatternSyntaxException(e.getMessage(), pattern, -1);
 		}
+		checkRepetitions(root, pattern);
+		return root;
 	}
 
 	/**
-	 * Extract the operators from the {@link ASTOperatorExpr} node.
+	 * Checks the bounds of every counted repetition in the given AST.
+	 */
+	private static void checkRepetitions(EnhancedNode node, String pattern)
+			throws PatternSyntaxException {
+		if (node instanceof ASTOperator) {
+			try {
+				extractRepetition(node);
+			} catch (IllegalArgumentException e) {
+				throw new PatternSyntaxException(e.getMessage(), pattern, node
+						.jjtGetFirstToken().beginColumn - 1);
+			}
+		}
+		for (EnhancedNode child : node.getNodeList()) {
+			checkRepetitions(child, pattern);
+		}
+	}
+
+	/**
+	 * Extract the bounds of a counted repetition, such as "{2,5}", from the
+	 * {@link ASTOperator} node.
+	 * 
+	 * @return The minimum and the maximum number of repetitions, where the
+	 *         maximum is {@link RegexNode#UNBOUNDED} for "{n,}". Null if the
+	 *         node is a {@link RegexOperator}.
+	 * @throws IllegalArgumentException
+	 *             If a bound is too large, or if the minimum is greater than
+	 *             the maximum.
+	 */
+	public static int[] extractRepetition(EnhancedNode operator)
+			throws IllegalArgumentException {
+		Token token = operator.jjtGetFirstToken();
+		if (token.kind != RegexParserConstants.REPETITION) {
+			return null;
+		}
+		String bounds = token.image.substring(1, token.image.length() - 1);
+		int comma = bounds.indexOf(',');
+		int min;
+		int max;
+		try {
+			if (comma < 0) {
+				min = max = Integer.parseInt(bounds);
+			} else {
+				min = Integer.parseInt(bounds.substring(0, comma));
+				max = comma == bounds.length() - 1 ? RegexNode.UNBOUNDED
+						: Integer.parseInt(bounds.substring(comma + 1));
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Repetition bound too large.");
+		}
+		if (max != RegexNode.UNBOUNDED && max < min) {
+			throw new IllegalArgumentException(
+					"Repetition maximum smaller than minimum.");
+		}
+		return new int[] { min, max };
+	}
+
+	/**
+	 * Extract the operators from the {@link ASTOperatorExpr} node, which must
+	 * not contain counted repetitions.
 	 * 
 	 * @return {@link Lists} of {@link RegexOperator}s, as they appear in the
 	 *         input node.
@@ -69,4 +141,43 @@ public class RegexUtil {
 					}
 				});
 	}
+
+	/**
+	 * Extract the names of all the identifiers that appear in the given AST,
+	 * including negated identifiers. Special identifiers are not included.
+	 * 
+	 * @return {@link Set} of identifier names, in the order they appear in the
+	 *         input node.
+	 */
+	public static Set<String> extractIdentifiers(EnhancedNode node) {
+		Set<String> identifiers = Sets.newLinkedHashSet();
+		collectIdentifiers(node, identifiers);
+		return identifiers;
+	}
+
+	private static void collectIdentifiers(EnhancedNode node,
+			Set<String> identifiers) {
+		if (node instanceof ASTIdentifier) {
+			identifiers.add(node.jjtGetFirstToken().image);
+		}
+		for (EnhancedNode child : node.getNodeList()) {
+			collectIdentifiers(child, identifiers);
+		}
+	}
+
+	/**
+	 * Counts the parenthesized expressions in the given AST, which are the
+	 * capture groups of the pattern.
+	 */
+	public static int countGroups(EnhancedNode node) {
+		int count = 0;
+		if (node instanceof ASTTerm
+				&& node.getFirstChild() instanceof ASTExpression) {
+			count++;
+		}
+		for (EnhancedNode child : node.getNodeList()) {
+			count += countGroups(child);
+		}
+		return count;
+	}
 }
@@ -0,0 +1,243 @@
+package com.jeeex.objregex.impl;
+
+/**
+ * The registers of the counters of a {@link Program}, for the engines whose
+ * threads carry a row of values, such as the index at which they started.
+ * <p>
+ * As in {@link CounterRegisters}, the register of a counter holds a run per
+ * element at which its entry state was active, since the last element that
+ * did not satisfy its label. Here a run also keeps the row of the thread that
+ * entered the counter, and the exit state is given the best row among the
+ * runs that are from the minimum to the maximum long, as the best thread of
+ * the states of the unrolled repetition would be kept.
+ * <p>
+ * A run waits in a first queue until it reaches the minimum, then joins a
+ * second one, which it leaves once it exceeds the maximum. The runs leave the
+ * second queue in the order that they joined it, so a run that is not better
+ * than one that joined after it can never be the best again, and is dropped:
+ * the rows of the second queue get worse from front to back, and the best one
+ * is at its front. So an element costs amortized constant time per counter,
+ * whatever the bounds are.
+ * <p>
+ * This class is not thread safe.
+ */
+abstract class RowCounterRegisters {
+
+	private final Program program;
+	private final int width;
+
+	/**
+	 * Runs of each counter that are shorter than its minimum, oldest first.
+	 * Null until the counter is first entered.
+	 */
+	private RunQueue[] waiting = new RunQueue[4];
+
+	/**
+	 * Runs of each counter that are at least its minimum long, best first.
+	 * Null until the counter is first entered.
+	 */
+	private RunQueue[] ready = new RunQueue[4];
+
+	/**
+	 * Number of elements that satisfied the label of each counter, since it
+	 * last had no run.
+	 */
+	private long[] clocks = new long[4];
+	private int activeCount;
+
+	/**
+	 * A ring buffer of runs: the start of each, on the clock of the counter,
+	 * and its row.
+	 */
+	private static final class RunQueue {
+		final int width;
+		long[] starts = new long[4];
+		long[] rows;
+		int head;
+		int size;
+
+		RunQueue(int width) {
+			this.width = width;
+			this.rows = new long[4 * width];
+		}
+
+		long getStart(int i) {
+			return starts[(head + i) % starts.length];
+		}
+
+		/**
+		 * Returns the offset of the row of the i-th run in {@link #rows}.
+		 */
+		int getOffset(int i) {
+			return (head + i) % starts.length * width;
+		}
+
+		void addLast(long start, long[] row, int offset) {
+			if (size == starts.length) {
+				// unwrap the ring into a larger one.
+				long[] grownStarts = new long[size * 2];
+				long[] grownRows = new long[size * 2 * width];
+				int first = size - head;
+				System.arraycopy(starts, head, grownStarts, 0, first);
+				System.arraycopy(starts, 0, grownStarts, first, head);
+				System.arraycopy(rows, head * width, grownRows, 0, first
+						* width);
+				System.arraycopy(rows, 0, grownRows, first * width, head
+						* width);
+				starts = grownStarts;
+				rows = grownRows;
+				head = 0;
+			}
+			int slot = (head + size) % starts.length;
+			starts[slot] = start;
+			System.arraycopy(row, offset, rows, slot * width, width);
+			size++;
+		}
+
+		void removeFirst() {
+			head = (head + 1) % starts.length;
+			size--;
+		}
+
+		void removeLast() {
+			size--;
+		}
+
+		void clear() {
+			head = 0;
+			size = 0;
+		}
+	}
+
+	/**
+	 * @param width
+	 *            Number of values of a row.
+	 */
+	RowCounterRegisters(Program program, int width) {
+		this.program = program;
+		this.width = width;
+	}
+
+	/**
+	 * Returns whether the row at {@code offset} of {@code rows} is better than
+	 * the row at {@code otherOffset} of {@code otherRows}.
+	 */
+	abstract boolean isBetter(long[] rows, int offset, long[] otherRows,
+			int otherOffset);
+
+	/**
+	 * Clears every register, before a new input.
+	 */
+	void clear() {
+		for (int c = 0; c < waiting.length; c++) {
+			if (isActive(c)) {
+				reset(c);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether any counter is in the middle of a repetition.
+	 */
+	boolean isActive() {
+		return activeCount > 0;
+	}
+
+	/**
+	 * Advances the given counter over the current element of {@code
+	 * evaluator}.
+	 *
+	 * @param entry
+	 *            The row of the thread of the entry state of the counter, or
+	 *            null if the state is not active before the element.
+	 * @param exit
+	 *            Filled with the row of the exit state, if it is reached.
+	 * @return Whether the exit state is reached with this element.
+	 */
+	boolean advance(int counter, long[] entry, SlotEvaluator evaluator,
+			long[] exit) {
+		if (counter >= waiting.length) {
+			int capacity = counter * 2 + 1;
+			waiting = grow(waiting, capacity);
+			ready = grow(ready, capacity);
+			clocks = ArrayUtil.grow(clocks, capacity);
+		}
+		boolean active = isActive(counter);
+		if (entry == null && !active) {
+			return false;
+		}
+		if (!evaluator.evaluate(program.getCounterLabel(counter))) {
+			if (active) {
+				reset(counter);
+			}
+			return false;
+		}
+		if (waiting[counter] == null) {
+			waiting[counter] = new RunQueue(width);
+			ready[counter] = new RunQueue(width);
+		}
+		RunQueue shorter = waiting[counter];
+		RunQueue runs = ready[counter];
+
+		long clock = ++clocks[counter];
+		if (entry != null) {
+			shorter.addLast(clock, entry, 0);
+		}
+		int min = Math.max(program.getCounterMin(counter), 1);
+		int max = program.getCounterMax(counter);
+		while (shorter.size > 0 && clock - shorter.getStart(0) + 1 >= min) {
+			int offset = shorter.getOffset(0);
+			while (runs.size > 0
+					&& !isBetter(runs.rows, runs.getOffset(runs.size - 1),
+							shorter.rows, offset)) {
+				runs.removeLast();
+			}
+			// the runs of an unbounded counter never leave, so only the best
+			// one is kept.
+			if (max != RegexNode.UNBOUNDED || runs.size == 0) {
+				runs.addLast(shorter.getStart(0), shorter.rows, offset);
+			}
+			shorter.removeFirst();
+		}
+		if (max != RegexNode.UNBOUNDED) {
+			// drop the runs that are longer than the maximum.
+			while (runs.size > 0 && clock - runs.getStart(0) + 1 > max) {
+				runs.removeFirst();
+			}
+		}
+
+		if (!active) {
+			activeCount++;
+		}
+		if (!isActive(counter)) {
+			reset(counter);
+			return false;
+		}
+		if (runs.size == 0) {
+			return false;
+		}
+		System.arraycopy(runs.rows, runs.getOffset(0), exit, 0, width);
+		return true;
+	}
+
+	private static RunQueue[] grow(RunQueue[] array, int length) {
+		RunQueue[] grown = new RunQueue[length];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	private boolean isActive(int counter) {
+		return waiting[counter] != null
+				&& (waiting[counter].size > 0 || ready[counter].size > 0);
+	}
+
+	/**
+	 * Drops every run of the given counter.
+	 */
+	private void reset(int counter) {
+		activeCount--;
+		waiting[counter].clear();
+		ready[counter].clear();
+		clocks[counter] = 0;
+	}
+}
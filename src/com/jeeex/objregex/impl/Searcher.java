@@ -0,0 +1,374 @@
+package com.jeeex.objregex.impl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.RandomAccess;
+
+/**
+ * Finds the leftmost-longest match of a {@link Program} inside a list, in a
+ * single pass, along with the spans of its capture groups.
+ * <p>
+ * The searcher is a {@link PikeVM} whose threads carry a row of slots: the
+ * index at which the thread started, and the beginning and the end of every
+ * capture group, written by the {@link TagState}s that the thread goes
+ * through. A new thread is started at every index until a match is found.
+ * When two threads reach the same state, only the better one is kept, since
+ * any continuation of the other one is a continuation of it as well: the one
+ * that started first, then, group by group, the one whose group began first
+ * and ended last. Once a thread accepts, the threads that started after it
+ * are dropped, and the search ends as soon as no thread that started at or
+ * before it is left. So the groups are resolved without backtracking, and a
+ * group that is repeated reports its last repetition.
+ * <p>
+ * The counters of the program are run by {@link RowCounterRegisters}, whose
+ * runs keep the row of the thread that entered them, so a counted repetition
+ * costs the same whatever its bounds are.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @see com.jeeex.objregex.ListMatcher
+ */
+final class Searcher<T> {
+
+	private final Program program;
+	private final PredicateEvaluator<T> evaluator;
+
+	/**
+	 * Number of slots of a row: the start and the end of the match, then the
+	 * beginning and the end of every group. The end of the match is only
+	 * written once a thread accepts.
+	 */
+	private final int width;
+
+	/**
+	 * The threads before and after the current element.
+	 */
+	private ThreadList current;
+	private ThreadList next;
+
+	/**
+	 * Registers of the counters of the program, created for each search.
+	 */
+	private Counters counters;
+
+	/**
+	 * Work stack used to follow epsilon transitions.
+	 */
+	private int[] stack = new int[16];
+
+	/**
+	 * Row of the thread whose transitions are followed.
+	 */
+	private final long[] source;
+
+	/**
+	 * Row of the thread being added.
+	 */
+	private final long[] candidate;
+
+	/**
+	 * Row of the best match so far. Its start is -1 if there is none.
+	 */
+	private final long[] match;
+
+	/**
+	 * A set of states, each with the row of its thread.
+	 */
+	private static final class ThreadList {
+		final SparseStateSet states = new SparseStateSet(16);
+		final int width;
+		long[] rows;
+
+		ThreadList(int width) {
+			this.width = width;
+			this.rows = new long[16 * width];
+		}
+
+		/**
+		 * Gives {@code state} the thread of the given row, unless it has a
+		 * better one.
+		 *
+		 * @return {@code true} if the thread of the state changed.
+		 */
+		boolean set(int state, long[] row) {
+			if (states.add(state)) {
+				if ((state + 1) * width > rows.length) {
+					rows = ArrayUtil.grow(rows, Math.max((state + 1) * width,
+							rows.length * 2));
+				}
+			} else if (!isBetter(width, row, 0, rows, state * width)) {
+				return false;
+			}
+			System.arraycopy(row, 0, rows, state * width, width);
+			return true;
+		}
+
+		void copy(int state, long[] row) {
+			System.arraycopy(rows, state * width, row, 0, width);
+		}
+
+		long getStart(int state) {
+			return rows[state * width];
+		}
+	}
+
+	/**
+	 * Registers of the counters, whose runs keep the rows of the threads.
+	 */
+	private static final class Counters extends RowCounterRegisters {
+		private final int width;
+
+		Counters(Program program, int width) {
+			super(program, width);
+			this.width = width;
+		}
+
+		@Override
+		boolean isBetter(long[] rows, int offset, long[] otherRows,
+				int otherOffset) {
+			return Searcher.isBetter(width, rows, offset, otherRows,
+					otherOffset);
+		}
+	}
+
+	/**
+	 * @param groupCount
+	 *            Number of capture groups of the program, whose tags are slots
+	 *            {@code 2} to {@code 2 * groupCount + 1}.
+	 */
+	Searcher(Program program, PredicateEvaluator<T> evaluator, int groupCount) {
+		this.program = program;
+		this.evaluator = evaluator;
+		this.width = 2 * (groupCount + 1);
+		this.current = new ThreadList(width);
+		this.next = new ThreadList(width);
+		this.source = new long[width];
+		this.candidate = new long[width];
+		this.match = new long[width];
+	}
+
+	Program getProgram() {
+		return program;
+	}
+
+	PredicateEvaluator<T> getEvaluator() {
+		return evaluator;
+	}
+
+	/**
+	 * Returns whether the thread of the row at {@code offset} of {@code rows}
+	 * is better than the one at {@code otherOffset} of {@code otherRows}, both
+	 * {@code width} long: it started first, or else, group by group, the group
+	 * began first, or ended last.
+	 */
+	private static boolean isBetter(int width, long[] rows, int offset,
+			long[] otherRows, int otherOffset) {
+		if (rows[offset] != otherRows[otherOffset]) {
+			return rows[offset] < otherRows[otherOffset];
+		}
+		for (int slot = 2; slot < width; slot += 2) {
+			long begin = rows[offset + slot];
+			long otherBegin = otherRows[otherOffset + slot];
+			if (begin != otherBegin) {
+				// a group that did not begin is the worst.
+				return otherBegin < 0 || (begin >= 0 && begin < otherBegin);
+			}
+			long end = rows[offset + slot + 1];
+			long otherEnd = otherRows[otherOffset + slot + 1];
+			if (end != otherEnd) {
+				return end > otherEnd;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Searches the elements of the list from {@code fromIndex}, inclusive, to
+	 * {@code toIndex}, exclusive, for the leftmost-longest match. "^" matches
+	 * at index 0 only, and "$" at {@code toIndex} only.
+	 *
+	 * @param anchored
+	 *            If true, only the matches that start at {@code fromIndex}
+	 *            are searched.
+	 * @return {@code true} if a match was found, whose slots are then
+	 *         returned by {@link #getSlot(int)}.
+	 */
+	boolean search(List<? extends T> input, int fromIndex, int toIndex,
+			boolean anchored) {
+		ListIterator<? extends T> iterator = input instanceof RandomAccess ? null
+				: input.listIterator(fromIndex);
+		current.states.clear();
+		counters = new Counters(program, width);
+		match[0] = -1;
+		for (int i = fromIndex;; i++) {
+			if (match[0] < 0 && (!anchored || i == fromIndex)) {
+				Arrays.fill(candidate, -1);
+				candidate[0] = i;
+				addThread(current, program.getStart(), i, i == 0, false);
+			}
+			if (i == toIndex) {
+				// follow the EOF transitions before accepting.
+				next.states.clear();
+				for (int j = 0; j < current.states.size(); j++) {
+					int s = current.states.get(j);
+					current.copy(s, candidate);
+					addThread(next, s, i, false, true);
+				}
+				accept(next, i);
+				break;
+			}
+			accept(current, i);
+			T element = iterator != null ? iterator.next() : input.get(i);
+			step(element, i + 1);
+			if (current.states.isEmpty() && !counters.isActive()
+					&& (match[0] >= 0 || anchored)) {
+				// no thread can improve on the match.
+				break;
+			}
+		}
+		return match[0] >= 0;
+	}
+
+	/**
+	 * Returns a slot of the last match: its start and end for slots 0 and 1,
+	 * and the beginning and the end of group {@code g} for slots {@code 2g}
+	 * and {@code 2g + 1}, which are -1 if the group did not take part in the
+	 * match.
+	 */
+	int getSlot(int slot) {
+		return (int) match[slot];
+	}
+
+	/**
+	 * Records the match ending at {@code index}, for every accepting thread
+	 * that improves on the current match.
+	 */
+	private void accept(ThreadList list, int index) {
+		for (int i = 0; i < list.states.size(); i++) {
+			int s = list.states.get(i);
+			if (!program.isAccepting(s)) {
+				continue;
+			}
+			list.copy(s, candidate);
+			candidate[1] = index;
+			if (match[0] < 0 || candidate[0] < match[0]
+					|| (candidate[0] == match[0] && index > match[1])
+					|| (index == match[1] && isBetter(width, candidate, 0,
+							match, 0))) {
+				System.arraycopy(candidate, 0, match, 0, width);
+			}
+		}
+	}
+
+	/**
+	 * Advances every thread and every counter that can still lead to the
+	 * leftmost match over {@code element}, then swaps the thread lists.
+	 *
+	 * @param position
+	 *            Index after the element.
+	 */
+	private void step(T element, int position) {
+		evaluator.setElement(element);
+		next.states.clear();
+		for (int i = 0; i < current.states.size(); i++) {
+			int s = current.states.get(i);
+			if (match[0] >= 0 && current.getStart(s) > match[0]) {
+				continue;
+			}
+			int[] targets = program.getTargets(s);
+			int[] labels = program.getLabels(s);
+			for (int j = 0; j < targets.length; j++) {
+				if (evaluator.evaluate(labels[j])) {
+					current.copy(s, candidate);
+					addThread(next, targets[j], position, false, false);
+				}
+			}
+		}
+		for (int c = 0; c < program.getCounterCount(); c++) {
+			int entry = program.getCounterEntry(c);
+			long[] row = null;
+			if (current.states.contains(entry)
+					&& (match[0] < 0 || current.getStart(entry) <= match[0])) {
+				current.copy(entry, source);
+				row = source;
+			}
+			if (counters.advance(c, row, evaluator, candidate)) {
+				addThread(next, program.getCounterExit(c), position, false,
+						false);
+			}
+		}
+
+		ThreadList swap = current;
+		current = next;
+		next = swap;
+	}
+
+	/**
+	 * Adds a thread for {@code state}, whose row is {@link #candidate} before
+	 * the state is entered, to the list, then follows the epsilon transitions
+	 * (and optionally BOF or EOF transitions) from it.
+	 *
+	 * @param position
+	 *            Index that the tags record.
+	 */
+	private void addThread(ThreadList list, int state, int position,
+			boolean withBof, boolean withEof) {
+		tag(state, position);
+		if (!list.set(state, candidate)) {
+			return;
+		}
+		int top = 0;
+		stack[top++] = state;
+		while (top > 0) {
+			int s = stack[--top];
+			top = push(list, s, program.getEpsilonTargets(s), position, top);
+			if (withBof) {
+				top = push(list, s, program.getBofTargets(s), position, top);
+			}
+			if (withEof) {
+				top = push(list, s, program.getEofTargets(s), position, top);
+			}
+		}
+	}
+
+	/**
+	 * Gives every state in {@code targets} the thread of {@code from}, and
+	 * pushes the states whose thread changed on the work stack.
+	 *
+	 * @return the new top of the stack.
+	 */
+	private int push(ThreadList list, int from, int[] targets, int position,
+			int top) {
+		if (targets.length == 0) {
+			return top;
+		}
+		list.copy(from, source);
+		for (int t : targets) {
+			System.arraycopy(source, 0, candidate, 0, width);
+			tag(t, position);
+			if (list.set(t, candidate)) {
+				if (top == stack.length) {
+					stack = ArrayUtil.grow(stack, top * 2);
+				}
+				stack[top++] = t;
+			}
+		}
+		return top;
+	}
+
+	/**
+	 * Writes the tag of {@code state}, if it has one, to {@link #candidate}.
+	 * The beginning of a group also clears its end, left by an earlier
+	 * repetition.
+	 */
+	private void tag(int state, int position) {
+		int slot = program.getTag(state);
+		if (slot >= 0) {
+			candidate[slot] = position;
+			if ((slot & 1) == 0) {
+				candidate[slot + 1] = -1;
+			}
+		}
+	}
+}
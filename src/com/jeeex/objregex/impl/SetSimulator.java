@@ -0,0 +1,105 @@
+package com.jeeex.objregex.impl;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Simulates a {@link Program} created for several patterns, like
+ * {@link MatchEngine#SET_SIMULATION} does, and tells which patterns the input
+ * matches.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @see Program#Program(State[])
+ */
+final class SetSimulator<T> {
+
+	private final Program program;
+	private final PredicateEvaluator<T> evaluator;
+	private final CounterRegisters counters;
+
+	SetSimulator(Program program, PredicateEvaluator<T> evaluator) {
+		this.program = program;
+		this.evaluator = evaluator;
+		this.counters = new CounterRegisters(program);
+	}
+
+	/**
+	 * Returns the patterns that the given list matches.
+	 */
+	BitSet match(List<? extends T> input) {
+		if (!(input instanceof RandomAccess)) {
+			return match(input.iterator());
+		}
+		StateSet currentStates = startStates();
+		StateSet nextStates = new StateSet(program.getStateCount());
+		for (int i = 0; i < input.size() && !isDead(currentStates); i++) {
+			evaluator.setElement(input.get(i));
+			ObjectPatternImpl.step(program, evaluator, currentStates,
+					nextStates, counters);
+
+			StateSet swap = currentStates;
+			currentStates = nextStates;
+			nextStates = swap;
+		}
+		return accepted(currentStates);
+	}
+
+	/**
+	 * Returns the patterns that the elements returned by the given iterator
+	 * match. No more elements are pulled once no pattern can match.
+	 */
+	BitSet match(Iterator<? extends T> input) {
+		StateSet currentStates = startStates();
+		StateSet nextStates = new StateSet(program.getStateCount());
+		while (!isDead(currentStates) && input.hasNext()) {
+			evaluator.setElement(input.next());
+			ObjectPatternImpl.step(program, evaluator, currentStates,
+					nextStates, counters);
+
+			StateSet swap = currentStates;
+			currentStates = nextStates;
+			nextStates = swap;
+		}
+		return accepted(currentStates);
+	}
+
+	/**
+	 * Returns a new set, holding the closure of the start state, and clears
+	 * the counters.
+	 */
+	private StateSet startStates() {
+		counters.clear();
+		StateSet states = new StateSet(program.getStateCount());
+		for (int s : program.getBofClosure(program.getStart())) {
+			states.add(s);
+		}
+		return states;
+	}
+
+	/**
+	 * Returns whether no pattern can match once {@code states} are active.
+	 */
+	private boolean isDead(StateSet states) {
+		return states.isEmpty() && !counters.isActive();
+	}
+
+	/**
+	 * Returns the patterns that are matched if the input ends once {@code
+	 * states} are active.
+	 */
+	private BitSet accepted(StateSet states) {
+		BitSet matched = new BitSet();
+		for (int i = 0; i < states.size(); i++) {
+			for (int s : program.getEofClosure(states.get(i))) {
+				int pattern = program.getPattern(s);
+				if (pattern >= 0) {
+					matched.set(pattern);
+				}
+			}
+		}
+		return matched;
+	}
+}
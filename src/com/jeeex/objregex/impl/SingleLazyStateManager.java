@@ -64,6 +64,20 @@ public abstract class SingleLazyStateManager implements SingleTransitionFactory
 	public abstract void initializeLazySingle(LazyState tail,
 			TransitionIdentifier identifier, LeafState head);
 
+	/**
+	 * Initializes the given counted repetition of a single identifier, created
+	 * by {@link CounterState#create}. Returns true if the repetition should be
+	 * executed by a counter. Otherwise, this method must connect {@code tail}
+	 * to {@code head} with states that repeat the identifier.
+	 * <p>
+	 * The default implementation always returns true. The same restrictions as
+	 * {@link #initializeLazySingle} apply.
+	 */
+	public boolean initializeLazyCounter(LazyState tail,
+			TransitionIdentifier identifier, int min, int max, LeafState head) {
+		return true;
+	}
+
 	/**
 	 * Similar to {@link StateUtil#single(TransitionIdentifier)}, but creates
 	 * lazily initialized transition.
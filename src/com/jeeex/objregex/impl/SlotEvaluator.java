@@ -0,0 +1,101 @@
+package com.jeeex.objregex.impl;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates the labels of a {@link Program} against the current element,
+ * whatever the type of the element is.
+ * <p>
+ * Results are memoized per {@link Program#getSlot(int) slot} until
+ * {@link #nextElement()} is called, so each predicate is called at most once
+ * per element no matter how many active transitions mention it, and an
+ * identifier and its negation share one evaluation. Subclasses hold the
+ * element and call the predicates.
+ * <p>
+ * This class is not thread safe.
+ */
+abstract class SlotEvaluator {
+
+	final Program program;
+
+	/**
+	 * {@code values[slot]} is valid if and only if {@code stamps[slot] ==
+	 * stamp}.
+	 */
+	private int[] stamps = new int[8];
+	private boolean[] values = new boolean[8];
+	private int stamp = 1;
+
+	private long callCount;
+
+	SlotEvaluator(Program program) {
+		this.program = program;
+	}
+
+	/**
+	 * Discards the memoized results, once subclasses have changed the
+	 * element.
+	 */
+	final void nextElement() {
+		if (++stamp == 0) {
+			// the stamp wrapped around, so old stamps could look current.
+			Arrays.fill(stamps, 0);
+			stamp = 1;
+		}
+	}
+
+	/**
+	 * Evaluates the given label against the current element, taking negation
+	 * into account.
+	 */
+	final boolean evaluate(int label) {
+		return evaluateSlot(program.getSlot(label)) != program.isNegation(label);
+	}
+
+	/**
+	 * Evaluates the predicate of the given slot against the current element.
+	 */
+	final boolean evaluateSlot(int slot) {
+		if (slot >= stamps.length) {
+			int capacity = Math.max(program.getSlotCount(), stamps.length * 2);
+			stamps = ArrayUtil.grow(stamps, capacity);
+			values = ArrayUtil.grow(values, capacity);
+		}
+		if (stamps[slot] == stamp) {
+			return values[slot];
+		}
+		callCount++;
+		boolean value = call(slot);
+		values[slot] = value;
+		stamps[slot] = stamp;
+		return value;
+	}
+
+	/**
+	 * Calls the predicate bound to the given slot on the current element.
+	 */
+	abstract boolean call(int slot);
+
+	/**
+	 * Returns whether the predicate of the given slot is known to accept
+	 * every element. {@code false} unless subclasses know better.
+	 */
+	boolean isAlwaysTrue(int slot) {
+		return false;
+	}
+
+	/**
+	 * Forgets the memoized results, and in subclasses, the bound predicates.
+	 * Must be called whenever an identifier is assigned.
+	 */
+	void unbind() {
+		Arrays.fill(stamps, 0);
+	}
+
+	/**
+	 * Returns the number of times a predicate has been called.
+	 */
+	final long getCallCount() {
+		return callCount;
+	}
+}
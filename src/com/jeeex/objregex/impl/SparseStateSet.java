@@ -0,0 +1,68 @@
+package com.jeeex.objregex.impl;
+
+/**
+ * A set of {@link Program} state numbers, implemented as a sparse set: a dense
+ * array holds the members in insertion order, and a sparse array maps each
+ * state to its position in the dense array. Membership tests, insertions and
+ * {@link #clear()} are all constant time, and no memory is allocated unless
+ * the set has to grow to accommodate newly discovered states.
+ */
+final class SparseStateSet {
+
+	private int[] dense;
+	private int[] sparse;
+	private int size;
+
+	SparseStateSet(int capacity) {
+		capacity = Math.max(capacity, 1);
+		dense = new int[capacity];
+		sparse = new int[capacity];
+	}
+
+	/**
+	 * Adds the given state to this set.
+	 * 
+	 * @return {@code true} if the state was not in this set.
+	 */
+	boolean add(int state) {
+		if (state >= sparse.length) {
+			int capacity = Math.max(state + 1, sparse.length * 2);
+			sparse = ArrayUtil.grow(sparse, capacity);
+			dense = ArrayUtil.grow(dense, capacity);
+		}
+		if (contains(state)) {
+			return false;
+		}
+		dense[size] = state;
+		sparse[state] = size;
+		size++;
+		return true;
+	}
+
+	boolean contains(int state) {
+		if (state >= sparse.length) {
+			return false;
+		}
+		int index = sparse[state];
+		return index < size && dense[index] == state;
+	}
+
+	/**
+	 * Returns the {@code index}-th member of this set, in insertion order.
+	 */
+	int get(int index) {
+		return dense[index];
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	void clear() {
+		size = 0;
+	}
+}
@@ -0,0 +1,173 @@
+package com.jeeex.objregex.impl;
+
+/**
+ * Finds the states of a fully lowered {@link Program} that decide the result
+ * of a match before the input is exhausted.
+ * <ul>
+ * <li>A state is <em>dead</em> if the accepting state cannot be reached from
+ * it. Once every active state is dead, the match fails.</li>
+ * <li>A state <em>accepts forever</em> if it is accepting at EOF, and a
+ * transition bound to {@link com.google.common.base.Predicates#alwaysTrue()}
+ * - the "." identifier - leads from its closure back to a state that accepts
+ * forever. Once any active state accepts forever, the match succeeds no
+ * matter what follows.</li>
+ * </ul>
+ * A counter of the program leads from its entry state to its exit state, so
+ * the entry state is live if the exit state is. Counters never keep a state
+ * accepting forever.
+ * <p>
+ * The analysis depends on the bound predicates, so it must be redone whenever
+ * an identifier is assigned.
+ */
+final class StateAnalysis {
+
+	private final boolean[] dead;
+	private final boolean[] acceptingForever;
+
+	private StateAnalysis(boolean[] dead, boolean[] acceptingForever) {
+		this.dead = dead;
+		this.acceptingForever = acceptingForever;
+	}
+
+	/**
+	 * Analyzes the given program, lowering it completely. Must not be called
+	 * on a program that refers to other patterns.
+	 */
+	static StateAnalysis analyze(Program program, SlotEvaluator evaluator) {
+		StateSet reachable = program.lowerAll();
+		int stateCount = program.getStateCount();
+
+		// live states, by backward reachability from the accepting states.
+		int[][] predecessors = new int[stateCount][];
+		int[] predecessorCounts = new int[stateCount];
+		for (int i = 0; i < reachable.size(); i++) {
+			int s = reachable.get(i);
+			addPredecessor(predecessors, predecessorCounts, s, program
+					.getTargets(s));
+			addPredecessor(predecessors, predecessorCounts, s, program
+					.getEpsilonTargets(s));
+			addPredecessor(predecessors, predecessorCounts, s, program
+					.getBofTargets(s));
+			int counter = program.getCounter(s);
+			if (counter >= 0) {
+				addPredecessor(predecessors, predecessorCounts, s,
+						new int[] { program.getCounterExit(counter) });
+			}
+		}
+		StateSet live = new StateSet(stateCount);
+		for (int i = 0; i < reachable.size(); i++) {
+			int s = reachable.get(i);
+			if (program.isAcceptingAtEof(s)) {
+				live.add(s);
+			}
+		}
+		for (int i = 0; i < live.size(); i++) {
+			int s = live.get(i);
+			for (int p = 0; p < predecessorCounts[s]; p++) {
+				live.add(predecessors[s][p]);
+			}
+		}
+		boolean[] dead = new boolean[stateCount];
+		for (int s = 0; s < stateCount; s++) {
+			dead[s] = !live.contains(s);
+		}
+
+		// states that accept forever, as a greatest fixed point: start from
+		// every accepting state, and drop the states that cannot stay.
+		boolean[] acceptingForever = new boolean[stateCount];
+		for (int i = 0; i < reachable.size(); i++) {
+			int s = reachable.get(i);
+			acceptingForever[s] = program.isAcceptingAtEof(s);
+		}
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = 0; i < reachable.size(); i++) {
+				int s = reachable.get(i);
+				if (acceptingForever[s]
+						&& !canStay(program, evaluator, acceptingForever, s)) {
+					acceptingForever[s] = false;
+					changed = true;
+				}
+			}
+		}
+		return new StateAnalysis(dead, acceptingForever);
+	}
+
+	/**
+	 * Returns whether any element leads from {@code state} to a state that
+	 * accepts forever.
+	 */
+	private static boolean canStay(Program program,
+			SlotEvaluator evaluator, boolean[] acceptingForever,
+			int state) {
+		for (int s : program.getClosure(state)) {
+			int[] targets = program.getTargets(s);
+			int[] labels = program.getLabels(s);
+			for (int j = 0; j < targets.length; j++) {
+				if (program.isNegation(labels[j])
+						|| !evaluator.isAlwaysTrue(program.getSlot(labels[j]))) {
+					continue;
+				}
+				for (int t : program.getClosure(targets[j])) {
+					if (acceptingForever[t]) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private static void addPredecessor(int[][] predecessors, int[] counts,
+			int predecessor, int[] targets) {
+		for (int t : targets) {
+			if (predecessors[t] == null) {
+				predecessors[t] = new int[2];
+			} else if (counts[t] == predecessors[t].length) {
+				predecessors[t] = ArrayUtil.grow(predecessors[t], counts[t] * 2);
+			}
+			predecessors[t][counts[t]++] = predecessor;
+		}
+	}
+
+	boolean isDead(int state) {
+		return dead[state];
+	}
+
+	boolean isAcceptingForever(int state) {
+		return acceptingForever[state];
+	}
+
+	/**
+	 * Returns whether the result of a match is known once {@code states} are
+	 * active: either every state is dead and no counter is in the middle of a
+	 * repetition, or some state accepts forever.
+	 */
+	boolean isDecided(StateSet states, boolean countersActive) {
+		boolean allDead = true;
+		for (int i = 0; i < states.size(); i++) {
+			int s = states.get(i);
+			if (acceptingForever[s]) {
+				return true;
+			}
+			allDead &= dead[s];
+		}
+		return allDead && !countersActive;
+	}
+
+	/**
+	 * Same as {@link #isDecided(StateSet, boolean)}.
+	 */
+	boolean isDecided(SparseStateSet states, boolean countersActive) {
+		boolean allDead = true;
+		for (int i = 0; i < states.size(); i++) {
+			int s = states.get(i);
+			if (acceptingForever[s]) {
+				return true;
+			}
+			allDead &= dead[s];
+		}
+		return allDead && !countersActive;
+	}
+}
@@ -0,0 +1,82 @@
+package com.jeeex.objregex.impl;
+
+/**
+ * A reusable set of {@link Program} state numbers.
+ * <p>
+ * Membership is kept in a {@code long[]} bitset, and the members are also
+ * recorded in insertion order, so that the set can be iterated, and cleared,
+ * in time proportional to its size rather than to the number of states. The
+ * set grows as required, since the number of states in a {@link Program} can
+ * grow during matching.
+ * <p>
+ * Iterating the members by index while adding new ones visits the new members
+ * as well, which makes the set usable as its own work list when computing
+ * closures.
+ */
+final class StateSet {
+
+	private long[] words;
+	private int[] members;
+	private int size;
+
+	/**
+	 * Creates an empty set, with room for state numbers below {@code capacity}
+	 */
+	StateSet(int capacity) {
+		capacity = Math.max(capacity, 1);
+		words = new long[(capacity + 63) >>> 6];
+		members = new int[capacity];
+	}
+
+	/**
+	 * Adds the given state to this set.
+	 *
+	 * @return {@code true} if the state was not in this set.
+	 */
+	boolean add(int state) {
+		int word = state >>> 6;
+		if (word >= words.length) {
+			words = ArrayUtil.grow(words, Math.max(word + 1, words.length * 2));
+		}
+		long bit = 1L << state;
+		if ((words[word] & bit) != 0) {
+			return false;
+		}
+		words[word] |= bit;
+		if (size == members.length) {
+			members = ArrayUtil.grow(members, size * 2);
+		}
+		members[size++] = state;
+		return true;
+	}
+
+	boolean contains(int state) {
+		int word = state >>> 6;
+		return word < words.length && (words[word] & (1L << state)) != 0;
+	}
+
+	/**
+	 * Returns the {@code index}-th member of this set, in insertion order.
+	 */
+	int get(int index) {
+		return members[index];
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all the members. Only the words that hold a member are touched.
+	 */
+	void clear() {
+		for (int i = 0; i < size; i++) {
+			words[members[i] >>> 6] = 0;
+		}
+		size = 0;
+	}
+}
@@ -61,7 +61,9 @@ public class StateUtil {
 	 * Returns the NFA for the regular expression "A | B".
 	 * <p>
 	 * Namely, it is set of states A, B, HEAD, TAIL, with epsilon-transitions
-	 * from TAIL to A and B, from A and B to HEAD.
+	 * from TAIL to A and B, from A and B to HEAD. HEAD and TAIL are new
+	 * states: reusing the head and tail of A would let B be entered from
+	 * inside A when A is a Kleene closure, such that "A* | B" matched "A B".
 	 * 
 	 * @param first
 	 *            NFA state for regex A.
@@ -69,15 +71,47 @@ public class StateUtil {
 	 *            NFA state for regex B.
 	 */
 	public static State or(State first, State second) {
-		State tail = first.getTail();
-		State head = first.getHead();
+		State tail = new LeafState();
+		State head = new LeafState();
 
+		tail.addTransition(EPSILON, first);
 		tail.addTransition(EPSILON, second);
+		first.addTransition(EPSILON, head);
 		second.addTransition(EPSILON, head);
 
 		return new CompositeState(head, tail);
 	}
 
+	/**
+	 * Returns the NFA for the regular expression "A+", with a single new
+	 * state, rather than "A A*".
+	 * 
+	 * @param state
+	 *            NFA state for regex A.
+	 */
+	public static State plus(State state) {
+		State head = new LeafState();
+		state.addTransition(EPSILON, head);
+		head.addTransition(EPSILON, state);
+		return new CompositeState(head, state);
+	}
+
+	/**
+	 * Returns the NFA for the regular expression "A?", with two new states,
+	 * rather than "A | ()".
+	 * 
+	 * @param state
+	 *            NFA state for regex A.
+	 */
+	public static State optional(State state) {
+		State tail = new LeafState();
+		State head = new LeafState();
+		tail.addTransition(EPSILON, state);
+		tail.addTransition(EPSILON, head);
+		state.addTransition(EPSILON, head);
+		return new CompositeState(head, tail);
+	}
+
 	/**
 	 * Returns the NFA for regular expression "a", where {@code a} is a single
 	 * character.
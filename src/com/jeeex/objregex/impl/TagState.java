@@ -0,0 +1,25 @@
+package com.jeeex.objregex.impl;
+
+/**
+ * A state that records where the input was when it is entered, into a slot of
+ * the thread that enters it. A capture group is enclosed by two of them: one
+ * for its beginning, and one for its end.
+ * <p>
+ * Only the {@link Searcher} reads the tags. To every other engine, this is an
+ * ordinary {@link LeafState}.
+ */
+final class TagState extends LeafState {
+
+	private final int slot;
+
+	TagState(int slot) {
+		this.slot = slot;
+	}
+
+	/**
+	 * Returns the slot of the threads that this state writes to.
+	 */
+	int getSlot() {
+		return slot;
+	}
+}
@@ -0,0 +1,281 @@
+package com.jeeex.objregex.impl;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ConcurrentModificationException;
+
+import com.jeeex.objregex.TimestampExtractor;
+import com.jeeex.objregex.WindowedMatcher;
+
+/**
+ * An implementation of {@link WindowedMatcher}, which runs the program of the
+ * {@link Searcher} of its pattern as a {@link PikeVM} whose threads carry the
+ * index and the time of the element they started at.
+ * <p>
+ * A new thread starts at every element. When two threads reach the same
+ * state, only the one that started last is kept: any continuation of the
+ * other one is a continuation of it as well, and it stays in the window for
+ * longer. A thread that started more than the window before the current
+ * element is dropped when the element is consumed, which costs a comparison,
+ * and since a thread is dropped at most once, it is constant time per thread
+ * in amortized terms.
+ * <p>
+ * The counters of the program are run by {@link RowCounterRegisters}, whose
+ * runs keep the index and the time of the thread that entered them. The exit
+ * state is given the run that started last, which is the last one to fall out
+ * of the window, so if it has, every run has.
+ */
+final class WindowedMatcherImpl<T> implements WindowedMatcher<T> {
+
+	private final ObjectPatternImpl<T> pattern;
+	private final TimestampExtractor<? super T> timestamps;
+	private final long window;
+
+	/**
+	 * {@link ObjectPatternImpl#getModCount()} at the last {@link #reset()}.
+	 */
+	private int expectedModCount;
+
+	private Program program;
+	private PredicateEvaluator<T> evaluator;
+
+	/**
+	 * The threads before and after the current element.
+	 */
+	private ThreadList current = new ThreadList();
+	private ThreadList next = new ThreadList();
+
+	/**
+	 * Registers of the counters of the program, created at every
+	 * {@link #reset()}.
+	 */
+	private Counters counters;
+
+	/**
+	 * The index and the time of the thread that enters a counter, and of the
+	 * thread that leaves it.
+	 */
+	private final long[] entryRow = new long[2];
+	private final long[] exitRow = new long[2];
+
+	/**
+	 * Work stack used to follow epsilon transitions.
+	 */
+	private int[] stack = new int[16];
+
+	/**
+	 * Index of the next element in the stream.
+	 */
+	private long index;
+
+	/**
+	 * Time of the last element fed.
+	 */
+	private long lastTime;
+
+	/**
+	 * Start of the occurrence that ends at the last element fed, or -1 if
+	 * there is none.
+	 */
+	private long matchStart;
+
+	/**
+	 * A set of states, each with the index and the time of the element at
+	 * which its thread started.
+	 */
+	private static final class ThreadList {
+		final SparseStateSet states = new SparseStateSet(16);
+		long[] starts = new long[16];
+		long[] times = new long[16];
+
+		/**
+		 * Gives {@code state} the thread that started at {@code start}, unless
+		 * it has one that started later.
+		 *
+		 * @return {@code true} if the thread of the state changed.
+		 */
+		boolean set(int state, long start, long time) {
+			if (states.add(state)) {
+				if (state >= starts.length) {
+					int capacity = Math.max(state + 1, starts.length * 2);
+					starts = ArrayUtil.grow(starts, capacity);
+					times = ArrayUtil.grow(times, capacity);
+				}
+			} else if (start <= starts[state]) {
+				return false;
+			}
+			starts[state] = start;
+			times[state] = time;
+			return true;
+		}
+	}
+
+	/**
+	 * Registers of the counters, whose runs keep the index and the time of
+	 * their thread. A run is better if it started later.
+	 */
+	private static final class Counters extends RowCounterRegisters {
+		Counters(Program program) {
+			super(program, 2);
+		}
+
+		@Override
+		boolean isBetter(long[] rows, int offset, long[] otherRows,
+				int otherOffset) {
+			return rows[offset] > otherRows[otherOffset];
+		}
+	}
+
+	WindowedMatcherImpl(ObjectPatternImpl<T> pattern,
+			TimestampExtractor<? super T> timestamps, long window) {
+		this.pattern = pattern;
+		this.timestamps = timestamps;
+		this.window = window;
+		reset();
+	}
+
+	public boolean feed(T element) throws IllegalArgumentException {
+		checkForComodification();
+		long time = timestamps.getTimestamp(element);
+		if (index > 0 && time < lastTime) {
+			throw new IllegalArgumentException("The element at " + index
+					+ " is older than the previous one.");
+		}
+		lastTime = time;
+		addThread(current, program.getStart(), index, time, index == 0, false);
+
+		evaluator.setElement(element);
+		next.states.clear();
+		for (int i = 0; i < current.states.size(); i++) {
+			int s = current.states.get(i);
+			long start = current.starts[s];
+			long startTime = current.times[s];
+			if (time - startTime > window) {
+				// fell out of the window.
+				continue;
+			}
+			int[] targets = program.getTargets(s);
+			int[] labels = program.getLabels(s);
+			for (int j = 0; j < targets.length; j++) {
+				if (evaluator.evaluate(labels[j])) {
+					addThread(next, targets[j], start, startTime, false, false);
+				}
+			}
+		}
+		for (int c = 0; c < program.getCounterCount(); c++) {
+			int entry = program.getCounterEntry(c);
+			long[] row = null;
+			if (current.states.contains(entry)
+					&& time - current.times[entry] <= window) {
+				entryRow[0] = current.starts[entry];
+				entryRow[1] = current.times[entry];
+				row = entryRow;
+			}
+			if (counters.advance(c, row, evaluator, exitRow)
+					&& time - exitRow[1] <= window) {
+				addThread(next, program.getCounterExit(c), exitRow[0],
+						exitRow[1], false, false);
+			}
+		}
+		ThreadList swap = current;
+		current = next;
+		next = swap;
+		index++;
+
+		matchStart = -1;
+		next.states.clear();
+		for (int i = 0; i < current.states.size(); i++) {
+			int s = current.states.get(i);
+			if (program.isAccepting(s)) {
+				matchStart = Math.max(matchStart, current.starts[s]);
+			}
+			if (program.getEofTargets(s).length > 0) {
+				// "$" matches after the element.
+				addThread(next, s, current.starts[s], current.times[s], false,
+						true);
+			}
+		}
+		for (int i = 0; i < next.states.size(); i++) {
+			int s = next.states.get(i);
+			if (program.isAccepting(s)) {
+				matchStart = Math.max(matchStart, next.starts[s]);
+			}
+		}
+		return matchStart >= 0;
+	}
+
+	public long start() throws IllegalStateException {
+		checkMatch();
+		return matchStart;
+	}
+
+	public long end() throws IllegalStateException {
+		checkMatch();
+		return index;
+	}
+
+	public WindowedMatcher<T> reset() {
+		Searcher<T> searcher = pattern.getSearcher();
+		expectedModCount = pattern.getModCount();
+		program = searcher.getProgram();
+		evaluator = searcher.getEvaluator();
+		counters = new Counters(program);
+		current.states.clear();
+		index = 0;
+		matchStart = -1;
+		return this;
+	}
+
+	/**
+	 * Adds a thread for {@code state} to the list, then follows the epsilon
+	 * transitions (and optionally BOF or EOF transitions) from it.
+	 */
+	private void addThread(ThreadList list, int state, long start, long time,
+			boolean withBof, boolean withEof) {
+		if (!list.set(state, start, time)) {
+			return;
+		}
+		int top = 0;
+		stack[top++] = state;
+		while (top > 0) {
+			int s = stack[--top];
+			top = push(list, program.getEpsilonTargets(s), start, time, top);
+			if (withBof) {
+				top = push(list, program.getBofTargets(s), start, time, top);
+			}
+			if (withEof) {
+				top = push(list, program.getEofTargets(s), start, time, top);
+			}
+		}
+	}
+
+	/**
+	 * Gives every state in {@code targets} the given thread, and pushes the
+	 * states whose thread changed on the work stack.
+	 *
+	 * @return the new top of the stack.
+	 */
+	private int push(ThreadList list, int[] targets, long start, long time,
+			int top) {
+		for (int t : targets) {
+			if (list.set(t, start, time)) {
+				if (top == stack.length) {
+					stack = ArrayUtil.grow(stack, top * 2);
+				}
+				stack[top++] = t;
+			}
+		}
+		return top;
+	}
+
+	private void checkMatch() {
+		checkState(matchStart >= 0, "No match available.");
+	}
+
+	private void checkForComodification() {
+		if (pattern.getModCount() != expectedModCount) {
+			throw new ConcurrentModificationException(
+					"An identifier was assigned since the last reset.");
+		}
+	}
+}
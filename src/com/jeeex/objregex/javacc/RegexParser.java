@@ -51,14 +51,14 @@ public class RegexParser/*@bgen(jjtree)*/implements RegexParserTreeConstants, Re
       label_1:
       while (true) {
         switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
-        case 13:
+        case 14:
           ;
           break;
         default:
           jj_la1[0] = jj_gen;
           break label_1;
         }
-        jj_consume_token(13);
+        jj_consume_token(14);
         ConcatExpr();
       }
     } catch (Throwable jjte000) {
@@ -97,7 +97,7 @@ public class RegexParser/*@bgen(jjtree)*/implements RegexParserTreeConstants, Re
         case NOT:
         case SPECIAL_IDENTIFIER:
         case IDENTIFIER:
-        case 14:
+        case 15:
           ;
           break;
         default:
@@ -140,6 +140,7 @@ public class RegexParser/*@bgen(jjtree)*/implements RegexParserTreeConstants, Re
       while (true) {
         switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
         case POSTFIX_OPERATOR:
+        case REPETITION:
           ;
           break;
         default:
@@ -177,7 +178,18 @@ public class RegexParser/*@bgen(jjtree)*/implements RegexParserTreeConstants, Re
   jjtree.openNodeScope(jjtn000);
   jjtn000.jjtSetFirstToken(getToken(1));
     try {
-      jj_consume_token(POSTFIX_OPERATOR);
+      switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
+      case POSTFIX_OPERATOR:
+        jj_consume_token(POSTFIX_OPERATOR);
+        break;
+      case REPETITION:
+        jj_consume_token(REPETITION);
+        break;
+      default:
+        jj_la1[3] = jj_gen;
+        jj_consume_token(-1);
+        throw new ParseException();
+      }
     } finally {
     if (jjtc000) {
       jjtree.closeNodeScope(jjtn000, true);
@@ -203,13 +215,13 @@ public class RegexParser/*@bgen(jjtree)*/implements RegexParserTreeConstants, Re
       case NOT:
         NegativeIdentifier();
         break;
-      case 14:
-        jj_consume_token(14);
-        Expression();
+      case 15:
         jj_consume_token(15);
+        Expression();
+        jj_consume_token(16);
         break;
       default:
-        jj_la1[3] = jj_gen;
+        jj_la1[4] = jj_gen;
         jj_consume_token(-1);
         throw new ParseException();
       }
@@ -307,13 +319,13 @@ public class RegexParser/*@bgen(jjtree)*/implements RegexParserTreeConstants, Re
   public Token jj_nt;
   private int jj_ntk;
   private int jj_gen;
-  final private int[] jj_la1 = new int[4];
+  final private int[] jj_la1 = new int[5];
   static private int[] jj_la1_0;
   static {
       jj_la1_init_0();
    }
    private static void jj_la1_init_0() {
-      jj_la1_0 = new int[] {0x2000,0x4380,0x1000,0x4380,};
+      jj_la1_0 = new int[] {0x4000,0x8380,0x3000,0x3000,0x8380,};
    }
 
   /** Constructor with InputStream. */
@@ -327,7 +339,7 @@ public class RegexParser/*@bgen(jjtree)*/implements RegexParserTreeConstants, Re
     token = new Token();
     jj_ntk = -1;
     jj_gen = 0;
-    for (int i = 0; i < 4; i++) jj_la1[i] = -1;
+    for (int i = 0; i < 5; i++) jj_la1[i] = -1;
   }
 
   /** Reinitialise. */
@@ -342,7 +354,7 @@ public class RegexParser/*@bgen(jjtree)*/implements RegexParserTreeConstants, Re
     jj_ntk = -1;
     jjtree.reset();
     jj_gen = 0;
-    for (int i = 0; i < 4; i++) jj_la1[i] = -1;
+    for (int i = 0; i < 5; i++) jj_la1[i] = -1;
   }
 
   /** Constructor. */
@@ -352,7 +364,7 @@ public class RegexParser/*@bgen(jjtree)*/implements RegexParserTreeConstants, Re
     token = new Token();
     jj_ntk = -1;
     jj_gen = 0;
-    for (int i = 0; i < 4; i++) jj_la1[i] = -1;
+    for (int i = 0; i < 5; i++) jj_la1[i] = -1;
   }
 
   /** Reinitialise. */
@@ -363,7 +375,7 @@ public class RegexParser/*@bgen(jjtree)*/implements RegexParserTreeConstants, Re
     jj_ntk = -1;
     jjtree.reset();
     jj_gen = 0;
-    for (int i = 0; i < 4; i++) jj_la1[i] = -1;
+    for (int i = 0; i < 5; i++) jj_la1[i] = -1;
   }
 
   /** Constructor with generated Token Manager. */
@@ -372,7 +384,7 @@ public class RegexParser/*@bgen(jjtree)*/implements RegexParserTreeConstants, Re
     token = new Token();
     jj_ntk = -1;
     jj_gen = 0;
-    for (int i = 0; i < 4; i++) jj_la1[i] = -1;
+    for (int i = 0; i < 5; i++) jj_la1[i] = -1;
   }
 
   /** Reinitialise. */
@@ -382,7 +394,7 @@ public class RegexParser/*@bgen(jjtree)*/implements RegexParserTreeConstants, Re
     jj_ntk = -1;
     jjtree.reset();
     jj_gen = 0;
-    for (int i = 0; i < 4; i++) jj_la1[i] = -1;
+    for (int i = 0; i < 5; i++) jj_la1[i] = -1;
   }
 
   private Token jj_consume_token(int kind) throws ParseException {
@@ -433,12 +445,12 @@ public class RegexParser/*@bgen(jjtree)*/implements RegexParserTreeConstants, Re
   /** Generate ParseException. */
   public ParseException generateParseException() {
     jj_expentries.clear();
-    boolean[] la1tokens = new boolean[16];
+    boolean[] la1tokens = new boolean[17];
     if (jj_kind >= 0) {
       la1tokens[jj_kind] = true;
       jj_kind = -1;
     }
-    for (int i = 0; i < 4; i++) {
+    for (int i = 0; i < 5; i++) {
       if (jj_la1[i] == jj_gen) {
         for (int j = 0; j < 32; j++) {
           if ((jj_la1_0[i] & (1<<j)) != 0) {
@@ -447,7 +459,7 @@ public class RegexParser/*@bgen(jjtree)*/implements RegexParserTreeConstants, Re
         }
       }
     }
-    for (int i = 0; i < 16; i++) {
+    for (int i = 0; i < 17; i++) {
       if (la1tokens[i]) {
         jj_expentry = new int[1];
         jj_expentry[0] = i;
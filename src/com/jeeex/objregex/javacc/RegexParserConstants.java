@@ -22,6 +22,8 @@ public interface RegexParserConstants {
   int DIGIT = 11;
   /** RegularExpression Id. */
   int POSTFIX_OPERATOR = 12;
+  /** RegularExpression Id. */
+  int REPETITION = 13;
 
   /** Lexical state. */
   int DEFAULT = 0;
@@ -41,6 +43,7 @@ public interface RegexParserConstants {
     "<LETTER>",
     "<DIGIT>",
     "<POSTFIX_OPERATOR>",
+    "<REPETITION>",
     "\"|\"",
     "\"(\"",
     "\")\"",
@@ -34,11 +34,11 @@ private int jjMoveStringLiteralDfa0_0()
       case 33:
          return jjStopAtPos(0, 7);
       case 40:
-         return jjStopAtPos(0, 14);
-      case 41:
          return jjStopAtPos(0, 15);
+      case 41:
+         return jjStopAtPos(0, 16);
       case 124:
-         return jjStopAtPos(0, 13);
+         return jjStopAtPos(0, 14);
       default :
          return jjMoveNfa_0(0, 0);
    }
@@ -49,7 +49,7 @@ static final long[] jjbitVec0 = {
 private int jjMoveNfa_0(int startState, int curPos)
 {
    int startsAt = 0;
-   jjnewStateCnt = 17;
+   jjnewStateCnt = 22;
    int i = 1;
    jjstateSet[0] = startState;
    int kind = 0x7fffffff;
@@ -98,51 +98,63 @@ private int jjMoveNfa_0(int startState, int curPos)
                   if ((0x80000c0000000000L & l) != 0L && kind > 12)
                      kind = 12;
                   break;
-               case 5:
+               case 6:
+                  if ((0x3ff000000000000L & l) != 0L)
+                     jjCheckNAddStates(2, 4);
+                  break;
+               case 7:
+                  if (curChar == 44)
+                     jjCheckNAddTwoStates(8, 9);
+                  break;
+               case 8:
+                  if ((0x3ff000000000000L & l) != 0L)
+                     jjCheckNAddTwoStates(8, 9);
+                  break;
+               case 10:
                   if (curChar == 47)
                      jjAddStates(0, 1);
                   break;
-               case 6:
+               case 11:
                   if (curChar == 47)
-                     jjCheckNAddStates(2, 4);
+                     jjCheckNAddStates(5, 7);
                   break;
-               case 7:
+               case 12:
                   if ((0xffffffffffffdbffL & l) != 0L)
-                     jjCheckNAddStates(2, 4);
+                     jjCheckNAddStates(5, 7);
                   break;
-               case 8:
+               case 13:
                   if ((0x2400L & l) != 0L && kind > 5)
                      kind = 5;
                   break;
-               case 9:
+               case 14:
                   if (curChar == 10 && kind > 5)
                      kind = 5;
                   break;
-               case 10:
+               case 15:
                   if (curChar == 13)
-                     jjstateSet[jjnewStateCnt++] = 9;
+                     jjstateSet[jjnewStateCnt++] = 14;
                   break;
-               case 11:
+               case 16:
                   if (curChar == 42)
-                     jjCheckNAddTwoStates(12, 13);
+                     jjCheckNAddTwoStates(17, 18);
                   break;
-               case 12:
+               case 17:
                   if ((0xfffffbffffffffffL & l) != 0L)
-                     jjCheckNAddTwoStates(12, 13);
+                     jjCheckNAddTwoStates(17, 18);
                   break;
-               case 13:
+               case 18:
                   if (curChar == 42)
-                     jjAddStates(5, 6);
+                     jjAddStates(8, 9);
                   break;
-               case 14:
+               case 19:
                   if ((0xffff7fffffffffffL & l) != 0L)
-                     jjCheckNAddTwoStates(15, 13);
+                     jjCheckNAddTwoStates(20, 18);
                   break;
-               case 15:
+               case 20:
                   if ((0xfffffbffffffffffL & l) != 0L)
-                     jjCheckNAddTwoStates(15, 13);
+                     jjCheckNAddTwoStates(20, 18);
                   break;
-               case 16:
+               case 21:
                   if (curChar == 47 && kind > 6)
                      kind = 6;
                   break;
@@ -164,6 +176,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                         kind = 9;
                      jjCheckNAdd(3);
                   }
+                  else if (curChar == 123)
+                     jjstateSet[jjnewStateCnt++] = 6;
                   else if (curChar == 94)
                   {
                      if (kind > 8)
@@ -178,15 +192,23 @@ private int jjMoveNfa_0(int startState, int curPos)
                      kind = 9;
                   jjCheckNAdd(3);
                   break;
-               case 7:
-                  jjAddStates(2, 4);
+               case 5:
+                  if (curChar == 123)
+                     jjstateSet[jjnewStateCnt++] = 6;
+                  break;
+               case 9:
+                  if (curChar == 125 && kind > 13)
+                     kind = 13;
                   break;
                case 12:
-                  jjCheckNAddTwoStates(12, 13);
+                  jjAddStates(5, 7);
                   break;
-               case 14:
-               case 15:
-                  jjCheckNAddTwoStates(15, 13);
+               case 17:
+                  jjCheckNAddTwoStates(17, 18);
+                  break;
+               case 19:
+               case 20:
+                  jjCheckNAddTwoStates(20, 18);
                   break;
                default : break;
             }
@@ -200,18 +222,18 @@ private int jjMoveNfa_0(int startState, int curPos)
          {
             switch(jjstateSet[--i])
             {
-               case 7:
+               case 12:
                   if ((jjbitVec0[i2] & l2) != 0L)
-                     jjAddStates(2, 4);
+                     jjAddStates(5, 7);
                   break;
-               case 12:
+               case 17:
                   if ((jjbitVec0[i2] & l2) != 0L)
-                     jjCheckNAddTwoStates(12, 13);
+                     jjCheckNAddTwoStates(17, 18);
                   break;
-               case 14:
-               case 15:
+               case 19:
+               case 20:
                   if ((jjbitVec0[i2] & l2) != 0L)
-                     jjCheckNAddTwoStates(15, 13);
+                     jjCheckNAddTwoStates(20, 18);
                   break;
                default : break;
             }
@@ -224,34 +246,34 @@ private int jjMoveNfa_0(int startState, int curPos)
          kind = 0x7fffffff;
       }
       ++curPos;
-      if ((i = jjnewStateCnt) == (startsAt = 17 - (jjnewStateCnt = startsAt)))
+      if ((i = jjnewStateCnt) == (startsAt = 22 - (jjnewStateCnt = startsAt)))
          return curPos;
       try { curChar = input_stream.readChar(); }
       catch(java.io.IOException e) { return curPos; }
    }
 }
 static final int[] jjnextStates = {
-   6, 11, 7, 8, 10, 14, 16, 
+   11, 16, 6, 7, 9, 12, 13, 15, 19, 21, 
 };
 
 /** Token literal values. */
 public static final String[] jjstrLiteralImages = {
 "", null, null, null, null, null, null, "\41", null, null, null, null, null, 
-"\174", "\50", "\51", };
+null, "\174", "\50", "\51", };
 
 /** Lexer state names. */
 public static final String[] lexStateNames = {
    "DEFAULT",
 };
 static final long[] jjtoToken = {
-   0xf381L, 
+   0x1f381L, 
 };
 static final long[] jjtoSkip = {
    0x7eL, 
 };
 protected SimpleCharStream input_stream;
-private final int[] jjrounds = new int[17];
-private final int[] jjstateSet = new int[34];
+private final int[] jjrounds = new int[22];
+private final int[] jjstateSet = new int[44];
 protected char curChar;
 /** Constructor. */
 public RegexParserTokenManager(SimpleCharStream stream){
@@ -278,7 +300,7 @@ private void ReInitRounds()
 {
    int i;
    jjround = 0x80000001;
-   for (i = 17; i-- > 0;)
+   for (i = 22; i-- > 0;)
       jjrounds[i] = 0x80000000;
 }
 
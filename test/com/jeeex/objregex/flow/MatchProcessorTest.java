@@ -0,0 +1,336 @@
+package com.jeeex.objregex.flow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.Lists;
+import com.jeeex.objregex.ObjectPattern;
+import com.jeeex.objregex.impl.DefaultRegexFactory;
+
+public class MatchProcessorTest {
+
+	/**
+	 * Publishes the elements of an iterator synchronously, as they are
+	 * requested.
+	 */
+	private static class IteratorPublisher implements Publisher<String> {
+		private final Iterator<String> iterator;
+		int pulls;
+		boolean cancelled;
+
+		IteratorPublisher(Iterator<String> iterator) {
+			this.iterator = iterator;
+		}
+
+		public void subscribe(final Subscriber<? super String> subscriber) {
+			subscriber.onSubscribe(new Subscription() {
+				public void request(long n) {
+					for (long i = 0; i < n && !cancelled; i++) {
+						if (!iterator.hasNext()) {
+							subscriber.onComplete();
+							return;
+						}
+						pulls++;
+						subscriber.onNext(iterator.next());
+					}
+				}
+
+				public void cancel() {
+					cancelled = true;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Records the events, requesting them in batches.
+	 */
+	private static class RecordingSubscriber implements Subscriber<MatchEvent> {
+		final List<MatchEvent> events = Lists.newArrayList();
+		private final int batch;
+		Subscription subscription;
+		boolean completed;
+		Throwable error;
+		private int outstanding;
+
+		RecordingSubscriber(int batch) {
+			this.batch = batch;
+		}
+
+		public void onSubscribe(Subscription subscription) {
+			this.subscription = subscription;
+			outstanding = batch;
+			subscription.request(batch);
+		}
+
+		public void onNext(MatchEvent item) {
+			assertTrue("more events than requested", outstanding > 0);
+			events.add(item);
+			if (--outstanding == 0) {
+				outstanding = batch;
+				subscription.request(batch);
+			}
+		}
+
+		public void onError(Throwable throwable) {
+			error = throwable;
+		}
+
+		public void onComplete() {
+			completed = true;
+		}
+	}
+
+	private static ObjectPattern<String> compile(String regex) {
+		ObjectPattern<String> pattern = new DefaultRegexFactory()
+				.compile(regex);
+		pattern.set("A", Predicates.equalTo("A"));
+		pattern.set("B", Predicates.equalTo("B"));
+		return pattern;
+	}
+
+	private static List<MatchEvent> run(String regex, int batch,
+			String... input) {
+		MatchProcessor<String> processor = new MatchProcessor<String>(
+				compile(regex));
+		RecordingSubscriber subscriber = new RecordingSubscriber(batch);
+		processor.subscribe(subscriber);
+		new IteratorPublisher(Arrays.asList(input).iterator())
+				.subscribe(processor);
+		assertTrue(subscriber.completed);
+		assertNull(subscriber.error);
+		return subscriber.events;
+	}
+
+	@Test
+	public void testEvents() {
+		for (int batch = 1; batch <= 4; batch++) {
+			assertEquals(Arrays.asList(new MatchEvent(0, false, true),
+					new MatchEvent(1, true, true), new MatchEvent(2, false,
+							true), new MatchEvent(3, true, true)), run(
+					"(A B)*", batch, "A", "B", "A", "B"));
+		}
+	}
+
+	@Test
+	public void testStopsWhenDecided() {
+		IteratorPublisher publisher = new IteratorPublisher(Arrays.asList(
+				"A", "B", "B", "A", "B").iterator());
+		MatchProcessor<String> processor = new MatchProcessor<String>(
+				compile("A B+"));
+		RecordingSubscriber subscriber = new RecordingSubscriber(1);
+		processor.subscribe(subscriber);
+		publisher.subscribe(processor);
+
+		assertEquals(new MatchEvent(3, false, false), subscriber.events
+				.get(3));
+		assertEquals(4, subscriber.events.size());
+		assertTrue(subscriber.completed);
+		assertTrue(publisher.cancelled);
+		assertEquals(4, publisher.pulls);
+	}
+
+	@Test
+	public void testBackpressure() {
+		IteratorPublisher publisher = new IteratorPublisher(Arrays.asList(
+				"A", "A", "A", "A").iterator());
+		MatchProcessor<String> processor = new MatchProcessor<String>(
+				compile("A*"));
+		final List<MatchEvent> events = Lists.newArrayList();
+		final Subscription[] subscription = new Subscription[1];
+		processor.subscribe(new Subscriber<MatchEvent>() {
+			public void onSubscribe(Subscription s) {
+				subscription[0] = s;
+			}
+
+			public void onNext(MatchEvent item) {
+				events.add(item);
+			}
+
+			public void onError(Throwable throwable) {
+			}
+
+			public void onComplete() {
+			}
+		});
+		publisher.subscribe(processor);
+		assertEquals(0, publisher.pulls);
+
+		subscription[0].request(2);
+		assertEquals(2, publisher.pulls);
+		assertEquals(2, events.size());
+
+		subscription[0].cancel();
+		subscription[0].request(2);
+		assertTrue(publisher.cancelled);
+		assertEquals(2, events.size());
+	}
+
+	@Test
+	public void testDemandBeforePublisher() {
+		MatchProcessor<String> processor = new MatchProcessor<String>(
+				compile("A"));
+		RecordingSubscriber subscriber = new RecordingSubscriber(10);
+		processor.subscribe(subscriber);
+		new IteratorPublisher(Arrays.asList("A").iterator())
+				.subscribe(processor);
+		assertEquals(Arrays.asList(new MatchEvent(0, true, true)),
+				subscriber.events);
+		assertTrue(subscriber.completed);
+	}
+
+	@Test
+	public void testCompletionBeforeSubscriber() {
+		MatchProcessor<String> processor = new MatchProcessor<String>(
+				compile("A"));
+		new IteratorPublisher(Arrays.<String> asList().iterator())
+				.subscribe(processor);
+		processor.onComplete();
+		RecordingSubscriber subscriber = new RecordingSubscriber(1);
+		processor.subscribe(subscriber);
+		assertTrue(subscriber.completed);
+		assertTrue(subscriber.events.isEmpty());
+	}
+
+	@Test
+	public void testSingleSubscriber() {
+		MatchProcessor<String> processor = new MatchProcessor<String>(
+				compile("A"));
+		RecordingSubscriber first = new RecordingSubscriber(1);
+		RecordingSubscriber second = new RecordingSubscriber(1);
+		processor.subscribe(first);
+		processor.subscribe(second);
+		assertNull(first.error);
+		assertTrue(second.error instanceof IllegalStateException);
+		assertFalse(second.completed);
+	}
+
+	@Test
+	public void testBadRequest() {
+		RecordingSubscriber subscriber = new RecordingSubscriber(1);
+		MatchProcessor<String> processor = new MatchProcessor<String>(
+				compile("A"));
+		processor.subscribe(subscriber);
+		subscriber.subscription.request(0);
+		assertTrue(subscriber.error instanceof IllegalArgumentException);
+
+		// no signal after the terminal one.
+		subscriber = new RecordingSubscriber(1);
+		processor = new MatchProcessor<String>(compile("A"));
+		processor.subscribe(subscriber);
+		processor.onComplete();
+		assertTrue(subscriber.completed);
+		subscriber.subscription.request(-1);
+		assertNull(subscriber.error);
+	}
+
+	/**
+	 * Records the order of the signals, and fails if one arrives while another
+	 * is in progress.
+	 */
+	private static class SerialSubscriber implements Subscriber<MatchEvent> {
+		final List<String> signals = Lists.newArrayList();
+		Subscription subscription;
+		private boolean inSignal;
+
+		private void begin(String signal) {
+			assertFalse("overlapping signal " + signal, inSignal);
+			inSignal = true;
+			signals.add(signal);
+		}
+
+		public void onSubscribe(Subscription subscription) {
+			begin("subscribe");
+			this.subscription = subscription;
+			inSignal = false;
+		}
+
+		public void onNext(MatchEvent item) {
+			begin("next");
+			inSignal = false;
+		}
+
+		public void onError(Throwable throwable) {
+			begin("error");
+			inSignal = false;
+		}
+
+		public void onComplete() {
+			begin("complete");
+			inSignal = false;
+		}
+	}
+
+	@Test
+	public void testBadRequestDuringEvent() {
+		IteratorPublisher publisher = new IteratorPublisher(Arrays.asList(
+				"A", "A", "A").iterator());
+		MatchProcessor<String> processor = new MatchProcessor<String>(
+				compile("A*"));
+		SerialSubscriber subscriber = new SerialSubscriber() {
+			@Override
+			public void onNext(MatchEvent item) {
+				super.onNext(item);
+				subscription.request(0);
+				signals.add("requested");
+			}
+		};
+		processor.subscribe(subscriber);
+		publisher.subscribe(processor);
+		subscriber.subscription.request(3);
+
+		assertEquals(Arrays.asList("subscribe", "next", "requested", "error"),
+				subscriber.signals);
+		assertTrue(publisher.cancelled);
+		assertEquals(1, publisher.pulls);
+	}
+
+	@Test
+	public void testTerminationDuringSubscribe() throws Exception {
+		final MatchProcessor<String> processor = new MatchProcessor<String>(
+				compile("A"));
+		final CountDownLatch subscribing = new CountDownLatch(1);
+		final CountDownLatch terminated = new CountDownLatch(1);
+		Thread publisher = new Thread() {
+			@Override
+			public void run() {
+				try {
+					subscribing.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				processor.onComplete();
+				terminated.countDown();
+			}
+		};
+		publisher.start();
+		SerialSubscriber subscriber = new SerialSubscriber() {
+			@Override
+			public void onSubscribe(Subscription subscription) {
+				super.onSubscribe(subscription);
+				subscribing.countDown();
+				try {
+					terminated.await();
+				} catch (InterruptedException e) {
+					throw new AssertionError(e);
+				}
+				signals.add("subscribed");
+			}
+		};
+		processor.subscribe(subscriber);
+		publisher.join();
+
+		assertEquals(Arrays.asList("subscribe", "subscribed", "complete"),
+				subscriber.signals);
+	}
+}
@@ -0,0 +1,62 @@
+package com.jeeex.objregex.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicates;
+
+public class BytecodeCompilerTest {
+
+	private ObjectPatternImpl<String> compile(String regex) {
+		return (ObjectPatternImpl<String>) MatchEngineTest.compile(regex,
+				MatchEngine.COMPILED);
+	}
+
+	@Test
+	public void testGeneratesClass() {
+		ObjectPatternImpl<String> pattern = compile("(A|B)* C");
+		assertTrue(pattern.match(Arrays.asList("A", "B", "C")));
+		assertFalse(pattern.match(Arrays.asList("A", "B")));
+
+		CompiledMatcher matcher = pattern.getCompiledMatcher();
+		assertNotNull(matcher);
+		assertTrue(matcher.getClass().getClassLoader() != CompiledMatcher.class
+				.getClassLoader());
+		assertTrue(matcher.match(Arrays.asList("C").iterator()));
+		Object[] input = { "A", "C", "C" };
+		assertTrue(matcher.match(input, 0, 2));
+		assertFalse(matcher.match(input, 1, 3));
+	}
+
+	@Test
+	public void testStopsAtDeadState() {
+		ObjectPatternImpl<String> pattern = compile("A B");
+		// the third element is never evaluated.
+		assertFalse(pattern.match(Arrays.asList("B", null, null)));
+		assertEquals(1, pattern.getPredicateCallCount());
+	}
+
+	@Test
+	public void testFallbackOnRecursion() {
+		ObjectPatternImpl<String> pattern = compile("A this* B");
+		assertTrue(pattern.match(Arrays.asList("A", "A", "B", "B")));
+		assertNull(pattern.getCompiledMatcher());
+	}
+
+	@Test
+	public void testRegenerateOnSet() {
+		ObjectPatternImpl<String> pattern = compile("A+");
+		assertTrue(pattern.match(Arrays.asList("A", "A")));
+
+		pattern.set("A", Predicates.equalTo("B"));
+		assertFalse(pattern.match(Arrays.asList("A", "A")));
+		assertTrue(pattern.match(Arrays.asList("B", "B")));
+	}
+}
@@ -0,0 +1,158 @@
+package com.jeeex.objregex.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.jeeex.objregex.ObjectPattern;
+
+public class CounterRegistersTest {
+
+	/**
+	 * Counted repetitions, and the same patterns written out.
+	 */
+	static final String[][] EQUIVALENTS = { { "A{3}", "A A A" },
+			{ "A{0,2} B", "A? A? B" }, { "!C{2,}", "!C !C+" },
+			{ "(A{1,2} B)*", "((A|A A) B)*" }, { "A{2} A{2,3}", "A A A A A?" },
+			{ "^ A{2,} $", "^ A A+ $" }, { "(A|B){2}", "(A|B) (A|B)" },
+			{ "A{1,} B{0,}", "A+ B*" }, { "A{0}", "" },
+			{ "(A{2,3})*", "(A A A?)*" },
+			{ "(A|B)* A{2,3} B", "(A|B)* A A A? B" },
+			{ "(B A{1,3})* A{2}", "(B (A|A A|A A A))* A A" } };
+
+	private static List<String> repeat(String element, int count) {
+		return Lists.newArrayList(Collections.nCopies(count, element));
+	}
+
+	@Test
+	public void testSameAsUnrolled() {
+		for (MatchEngine engine : MatchEngine.values()) {
+			for (String[] pair : EQUIVALENTS) {
+				MatchEngineTest.assertSameMatches(engine + " " + pair[0],
+						MatchEngineTest.compile(pair[1], engine),
+						MatchEngineTest.compile(pair[0], engine));
+			}
+		}
+	}
+
+	@Test
+	public void testLargeBounds() {
+		for (MatchEngine engine : MatchEngine.values()) {
+			ObjectPattern<String> pattern = MatchEngineTest.compile(
+					"B A{60,120} B", engine);
+			for (int count : new int[] { 59, 60, 100, 120, 121 }) {
+				List<String> input = repeat("A", count);
+				input.add(0, "B");
+				input.add("B");
+				assertEquals(engine + " " + count, count >= 60 && count <= 120,
+						pattern.match(input));
+			}
+
+			pattern = MatchEngineTest.compile("A{1000,}", engine);
+			assertFalse(pattern.match(repeat("A", 999)));
+			assertTrue(pattern.match(repeat("A", 1000)));
+			assertTrue(pattern.match(repeat("A", 5000)));
+		}
+	}
+
+	@Test
+	public void testHugeBounds() {
+		List<String> input = repeat("A", 200000);
+		for (MatchEngine engine : MatchEngine.values()) {
+			assertFalse(engine.toString(), MatchEngineTest.compile(
+					"A{2147483647}", engine).match(input));
+			assertTrue(engine.toString(), MatchEngineTest.compile(
+					"A{100000,2147483647}", engine).match(input));
+			// a run is entered at every element.
+			assertTrue(engine.toString(), MatchEngineTest.compile(
+					".* A{100000}", engine).match(input));
+		}
+	}
+
+	private static final SingleTransitionFactory FACTORY = new SingleTransitionFactory() {
+		public State singleTransition(TransitionIdentifier tid) {
+			return StateUtil.single(tid);
+		}
+	};
+
+	@Test
+	public void testFlatStateCount() {
+		for (String regex : Lists.newArrayList("A{2,3}", "A{60,120}",
+				"A{1000,}")) {
+			Program program = new Program(RegexNode.fromAST(
+					RegexUtil.getRootNode(regex)).toState(FACTORY));
+			assertEquals(regex, 2, program.lowerAll().size());
+			assertEquals(regex, 1, program.getCounterCount());
+		}
+	}
+
+	@Test
+	public void testWordBoundaries() {
+		for (int bound : new int[] { 63, 64, 65, 128 }) {
+			ObjectPattern<String> pattern = MatchEngineTest.compile("A{"
+					+ bound + "}", MatchEngine.SET_SIMULATION);
+			for (int count = bound - 2; count <= bound + 2; count++) {
+				assertEquals(bound + " " + count, count == bound, pattern
+						.match(repeat("A", count)));
+			}
+			pattern = MatchEngineTest.compile("A{" + bound + ",} B",
+					MatchEngine.PIKE_VM);
+			for (int count = bound - 2; count <= bound + 2; count++) {
+				List<String> input = repeat("A", count);
+				input.add("B");
+				assertEquals(bound + " " + count, count >= bound, pattern
+						.match(input));
+			}
+		}
+	}
+
+	@Test
+	public void testPatternIsRepeated() {
+		ObjectPattern<String> pattern = MatchEngineTest.compile("X{2,3}",
+				MatchEngine.PIKE_VM);
+		pattern.set("X", "A B");
+		assertFalse(pattern.match(Lists.newArrayList("A", "B")));
+		assertTrue(pattern.match(Lists.newArrayList("A", "B", "A", "B")));
+		assertTrue(pattern.match(Lists.newArrayList("A", "B", "A", "B", "A",
+				"B")));
+		assertFalse(pattern.match(Lists.newArrayList("A", "B", "A", "B", "A",
+				"B", "A", "B")));
+	}
+
+	@Test
+	public void testConcurrentMatches() throws InterruptedException {
+		final ObjectPattern<String> pattern = MatchEngineTest.compile(
+				"A{50,100} B", MatchEngine.SET_SIMULATION);
+		final AtomicInteger wrong = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int round = 0; round < 20; round++) {
+						for (int count = 0; count <= 150; count++) {
+							List<String> input = repeat("A", count);
+							input.add("B");
+							boolean expected = count >= 50 && count <= 100;
+							if (pattern.match(input) != expected) {
+								wrong.incrementAndGet();
+							}
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, wrong.get());
+	}
+}
@@ -0,0 +1,79 @@
+package com.jeeex.objregex.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicates;
+
+public class EagerDFATest {
+
+	private ObjectPatternImpl<String> compile(String regex, int memoryLimit) {
+		DefaultRegexFactory factory = new DefaultRegexFactory();
+		factory.setEngine(MatchEngine.EAGER_DFA);
+		factory.setDfaMemoryLimit(memoryLimit);
+		return MatchEngineTest.compile(factory, regex);
+	}
+
+	@Test
+	public void testMinimize() {
+		// states 1 and 2 are equivalent, and so are 0 and 3.
+		int[] delta = { 1, 3, 2, 3, 2, 3, 1, 3 };
+		boolean[] accepting = { false, true, true, false };
+		int[] blocks = EagerDFA.minimize(4, 2, delta, accepting);
+		assertArrayEquals(new int[] { 0, 1, 1, 0 }, blocks);
+	}
+
+	@Test
+	public void testMinimalStateCount() {
+		// before C, after C, both - for an element that satisfies C and
+		// either A or B - and the dead state.
+		ObjectPatternImpl<String> pattern = compile("(A|B)* C (A|B)*",
+				DefaultRegexFactory.DEFAULT_DFA_MEMORY_LIMIT);
+		assertTrue(pattern.match(Arrays.asList("A", "C", "B")));
+		assertEquals(4, pattern.getEagerDFA().getStateCount());
+
+		// both branches collapse into the same states.
+		pattern = compile("(A A*)|(A+)",
+				DefaultRegexFactory.DEFAULT_DFA_MEMORY_LIMIT);
+		assertTrue(pattern.match(Arrays.asList("A", "A")));
+		assertEquals(3, pattern.getEagerDFA().getStateCount());
+		assertEquals(2, pattern.getEagerDFA().getColumnCount());
+	}
+
+	@Test
+	public void testFallbackOnRecursion() {
+		ObjectPatternImpl<String> pattern = compile("A this* B",
+				DefaultRegexFactory.DEFAULT_DFA_MEMORY_LIMIT);
+		assertTrue(pattern.match(Arrays.asList("A", "A", "B", "B")));
+		assertFalse(pattern.match(Arrays.asList("A", "A", "B")));
+		assertNull(pattern.getEagerDFA());
+	}
+
+	@Test
+	public void testFallbackOnMemoryLimit() {
+		ObjectPatternImpl<String> pattern = compile("(A|B)* C (A|B)*", 1);
+		assertTrue(pattern.match(Arrays.asList("A", "C", "B")));
+		assertFalse(pattern.match(Arrays.asList("A", "B")));
+		assertNull(pattern.getEagerDFA());
+	}
+
+	@Test
+	public void testRebuildOnSet() {
+		ObjectPatternImpl<String> pattern = compile("A+",
+				DefaultRegexFactory.DEFAULT_DFA_MEMORY_LIMIT);
+		assertTrue(pattern.match(Arrays.asList("A", "A")));
+		assertNotNull(pattern.getEagerDFA());
+
+		pattern.set("A", Predicates.equalTo("B"));
+		assertFalse(pattern.match(Arrays.asList("A", "A")));
+		assertTrue(pattern.match(Arrays.asList("B", "B")));
+	}
+}
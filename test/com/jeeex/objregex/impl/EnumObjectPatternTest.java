@@ -0,0 +1,151 @@
+package com.jeeex.objregex.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Lists;
+import com.jeeex.objregex.EnumObjectPattern;
+import com.jeeex.objregex.ObjectPattern;
+
+public class EnumObjectPatternTest {
+
+	private enum Letter {
+		A, B, C, D
+	}
+
+	private static final List<Letter> ALPHABET = Arrays.asList(Letter.A,
+			Letter.B, Letter.C, Letter.D, null);
+
+	private final DefaultRegexFactory factory = new DefaultRegexFactory();
+
+	private EnumObjectPatternImpl<Letter> compile(String regex) {
+		EnumObjectPatternImpl<Letter> pattern = (EnumObjectPatternImpl<Letter>) factory
+				.compileEnum(regex, Letter.class);
+		pattern.set("A", EnumSet.of(Letter.A));
+		pattern.set("B", EnumSet.of(Letter.B, Letter.D));
+		pattern.set("C", EnumSet.of(Letter.C));
+		return pattern;
+	}
+
+	@Test
+	public void testSameAsObjectPattern() {
+		for (String regex : MatchEngineTest.PATTERNS) {
+			ObjectPattern<Letter> expected = factory.compile(regex);
+			expected.set("A", Predicates.in(EnumSet.of(Letter.A)));
+			expected.set("B", Predicates.in(EnumSet.of(Letter.B, Letter.D)));
+			expected.set("C", Predicates.in(EnumSet.of(Letter.C)));
+			EnumObjectPattern<Letter> actual = compile(regex);
+			for (List<Letter> input : MatchEngineTest.allInputs(ALPHABET, 4)) {
+				String message = regex + " " + input;
+				boolean match = expected.match(input);
+				assertEquals(message, match, actual.match(input));
+				assertEquals(message, match, actual.match(input.iterator()));
+				assertEquals(message, match, actual.match(input
+						.toArray(new Letter[input.size()])));
+				assertEquals(message, match, actual.match(Lists
+						.newLinkedList(input)));
+			}
+		}
+	}
+
+	@Test
+	public void testTable() {
+		assertTrue(compile("A (B|C)* !A").buildTable());
+		assertTrue(compile(".* !null .*").buildTable());
+		// there is no DFA to derive the table from.
+		assertFalse(compile("A this* B").buildTable());
+		assertFalse(compile("A{2} B").buildTable());
+
+		EnumObjectPatternImpl<Letter> pattern = compile("X B");
+		pattern.set("X", "A C");
+		assertFalse(pattern.buildTable());
+		assertTrue(pattern.match(Arrays.asList(Letter.A, Letter.C, Letter.D)));
+
+		pattern = compile("X B");
+		pattern.set("X", EnumSet.of(Letter.C));
+		assertTrue(pattern.match(Arrays.asList(Letter.C, Letter.D)));
+		// the table is rebuilt after an assignment.
+		pattern.set("X", EnumSet.of(Letter.A));
+		assertTrue(pattern.buildTable());
+		assertTrue(pattern.match(Arrays.asList(Letter.A, Letter.D)));
+		assertFalse(pattern.match(Arrays.asList(Letter.C, Letter.D)));
+	}
+
+	@Test
+	public void testRange() {
+		EnumObjectPattern<Letter> pattern = compile("A B+");
+		List<Letter> input = Arrays.asList(Letter.C, Letter.A, Letter.B,
+				Letter.D, Letter.C);
+		assertTrue(pattern.match(input, 1, 4));
+		assertFalse(pattern.match(input, 1, 5));
+		assertFalse(pattern.match(input, 0, 4));
+	}
+
+	@Test
+	public void testPredicateResolvedOnce() {
+		final int[] calls = new int[1];
+		EnumObjectPattern<Letter> pattern = compile("A* X");
+		pattern.set("X", new Predicate<Letter>() {
+			public boolean apply(Letter input) {
+				calls[0]++;
+				return input != Letter.A;
+			}
+		});
+		// once per constant, and once with null.
+		assertEquals(Letter.values().length + 1, calls[0]);
+		assertTrue(pattern.match(Arrays.asList(Letter.A, Letter.A, Letter.D)));
+		assertTrue(pattern.match(Arrays.asList(Letter.A, null)));
+		assertFalse(pattern.match(Arrays.asList(Letter.A, Letter.A)));
+		assertEquals(Letter.values().length + 1, calls[0]);
+		assertEquals(0, pattern.getPredicateCallCount());
+	}
+
+	/**
+	 * Assigns X a predicate that accepts null, and Y one that throws on it.
+	 */
+	private EnumObjectPatternImpl<Letter> compileNullPredicates(String regex) {
+		EnumObjectPatternImpl<Letter> pattern = compile(regex);
+		pattern.set("X", Predicates.<Letter> isNull());
+		pattern.set("Y", new Predicate<Letter>() {
+			public boolean apply(Letter input) {
+				return input.ordinal() > 0;
+			}
+		});
+		return pattern;
+	}
+
+	@Test
+	public void testPredicateOfNull() {
+		EnumObjectPatternImpl<Letter> pattern = compileNullPredicates("X Y");
+		assertTrue(pattern.buildTable());
+		assertTrue(pattern.match(Arrays.asList(null, Letter.B)));
+		assertFalse(pattern.match(Arrays.asList(Letter.A, Letter.B)));
+		assertFalse(pattern.match(Arrays.<Letter> asList(null, null)));
+
+		// the same without the table.
+		pattern = compileNullPredicates("X Y{2}");
+		assertFalse(pattern.buildTable());
+		assertTrue(pattern.match(Arrays.asList(null, Letter.B, Letter.C)));
+		assertFalse(pattern.match(Arrays.asList(Letter.A, Letter.B, Letter.C)));
+		assertFalse(pattern.match(Arrays.<Letter> asList(null, null, null)));
+	}
+
+	@Test
+	public void testSetIsCopied() {
+		EnumSet<Letter> values = EnumSet.of(Letter.A);
+		EnumObjectPattern<Letter> pattern = compile("X");
+		pattern.set("X", values);
+		values.add(Letter.B);
+		assertTrue(pattern.match(Arrays.asList(Letter.A)));
+		assertFalse(pattern.match(Arrays.asList(Letter.B)));
+	}
+}
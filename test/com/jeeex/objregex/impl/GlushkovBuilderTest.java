@@ -0,0 +1,82 @@
+package com.jeeex.objregex.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.jeeex.objregex.ObjectPattern;
+
+public class GlushkovBuilderTest {
+
+	private static Program build(String regex) {
+		return GlushkovBuilder.build(RegexOptimizer.optimize(RegexNode
+				.fromAST(RegexUtil.getRootNode(regex))));
+	}
+
+	private static ObjectPattern<String> compile(String regex,
+			MatchEngine engine) {
+		return MatchEngineTest.compile(regex, engine, NfaConstruction.GLUSHKOV);
+	}
+
+	@Test
+	public void testOneStatePerPosition() {
+		Program program = build("(A|B)* C (A|B)*");
+		StateSet states = program.lowerAll();
+		assertEquals(6, states.size());
+		for (int i = 0; i < states.size(); i++) {
+			assertEquals(0, program.getEpsilonTargets(states.get(i)).length);
+		}
+		assertTrue(program.isAccepting(program.getTargets(program.getStart())[2]));
+	}
+
+	@Test
+	public void testSpecialPositions() {
+		Program program = build("^A* $");
+		assertEquals(0, program.getTargets(program.getStart()).length);
+		assertEquals(1, program.getBofTargets(program.getStart()).length);
+		assertFalse(program.isAcceptingAtEof(program.getStart()));
+	}
+
+	@Test
+	public void testSameAsThompson() {
+		List<String> patterns = Lists.newArrayList(MatchEngineTest.PATTERNS);
+		// an identifier and its negation, out of the same state.
+		patterns.add("A (A|!A) B?");
+		patterns.add("(A? B?)+ C");
+		for (MatchEngine engine : MatchEngine.values()) {
+			for (String regex : patterns) {
+				MatchEngineTest.assertSameMatches(engine + " " + regex,
+						MatchEngineTest.compile(regex,
+								MatchEngine.SET_SIMULATION), compile(regex,
+								engine));
+			}
+		}
+	}
+
+	@Test
+	public void testFallback() {
+		ObjectPatternImpl<String> pattern = (ObjectPatternImpl<String>) compile(
+				"A X", MatchEngine.PIKE_VM);
+		pattern.set("X", "B C");
+		assertTrue(pattern.match(ImmutableList.of("A", "B", "C")));
+		Program thompson = pattern.getProgram();
+
+		pattern.set("X", Predicates.equalTo("B"));
+		assertTrue(pattern.match(ImmutableList.of("A", "B")));
+		Program glushkov = pattern.getProgram();
+		assertNotSame(thompson, glushkov);
+
+		pattern.set("X", "B C");
+		assertTrue(pattern.match(ImmutableList.of("A", "B", "C")));
+		assertSame(thompson, pattern.getProgram());
+	}
+}
@@ -0,0 +1,65 @@
+package com.jeeex.objregex.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicates;
+import com.jeeex.objregex.ObjectPattern;
+
+public class LazyDFATest {
+
+	private ObjectPatternImpl<String> compile(String regex, int memoryLimit) {
+		DefaultRegexFactory factory = new DefaultRegexFactory();
+		factory.setEngine(MatchEngine.LAZY_DFA);
+		factory.setDfaMemoryLimit(memoryLimit);
+		return MatchEngineTest.compile(factory, regex);
+	}
+
+	@Test
+	public void testCachesStates() {
+		ObjectPatternImpl<String> pattern = compile("(A B)* C",
+				DefaultRegexFactory.DEFAULT_DFA_MEMORY_LIMIT);
+
+		// the first match discovers the identifiers.
+		assertTrue(pattern.match(Arrays.asList("A", "B", "A", "B", "C")));
+		assertTrue(pattern.match(Arrays.asList("A", "B", "A", "B", "C")));
+		int states = pattern.getLazyDFA().getStateCount();
+		int minterms = pattern.getLazyDFA().getMintermCount();
+
+		assertTrue(pattern.match(Arrays.asList("A", "B", "A", "B", "A", "B",
+				"C")));
+		assertEquals(states, pattern.getLazyDFA().getStateCount());
+		assertEquals(minterms, pattern.getLazyDFA().getMintermCount());
+		assertEquals(0, pattern.getLazyDFA().getFlushCount());
+	}
+
+	@Test
+	public void testFlushOnOverflow() {
+		ObjectPattern<String> tiny = compile("(A|B)* C (A|B)*", 1);
+		ObjectPattern<String> expected = MatchEngineTest.compile(
+				"(A|B)* C (A|B)*", MatchEngine.SET_SIMULATION);
+
+		MatchEngineTest.assertSameMatches("tiny cache", expected, tiny);
+		assertTrue(((ObjectPatternImpl<String>) tiny).getLazyDFA()
+				.getFlushCount() > 0);
+	}
+
+	@Test
+	public void testInvalidateOnSet() {
+		ObjectPatternImpl<String> pattern = compile("A+",
+				DefaultRegexFactory.DEFAULT_DFA_MEMORY_LIMIT);
+
+		assertTrue(pattern.match(Arrays.asList("A", "A")));
+		assertTrue(pattern.getLazyDFA().getStateCount() > 0);
+
+		pattern.set("A", Predicates.equalTo("B"));
+		assertEquals(0, pattern.getLazyDFA().getStateCount());
+		assertFalse(pattern.match(Arrays.asList("A", "A")));
+		assertTrue(pattern.match(Arrays.asList("B", "B")));
+	}
+}
@@ -0,0 +1,314 @@
+package com.jeeex.objregex.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.jeeex.objregex.ListMatcher;
+import com.jeeex.objregex.ObjectPattern;
+
+public class ListMatcherTest {
+
+	/**
+	 * Returns the spans of every match, as found by the matcher.
+	 */
+	private static List<List<Integer>> findAll(ObjectPattern<String> pattern,
+			List<String> input) {
+		List<List<Integer>> spans = Lists.newArrayList();
+		ListMatcher<String> matcher = pattern.matcher(input);
+		while (matcher.find()) {
+			spans.add(ImmutableList.of(matcher.start(), matcher.end()));
+		}
+		return spans;
+	}
+
+	/**
+	 * Returns the spans of every leftmost-longest match, by trying every sub
+	 * list. Only valid for patterns without "^" and "$".
+	 */
+	private static List<List<Integer>> findAllSlowly(
+			ObjectPattern<String> pattern, List<String> input) {
+		List<List<Integer>> spans = Lists.newArrayList();
+		int from = 0;
+		search: while (from <= input.size()) {
+			for (int start = from; start <= input.size(); start++) {
+				for (int end = input.size(); end >= start; end--) {
+					if (pattern.match(input, start, end)) {
+						spans.add(ImmutableList.of(start, end));
+						from = end == start ? end + 1 : end;
+						continue search;
+					}
+				}
+			}
+			break;
+		}
+		return spans;
+	}
+
+	@Test
+	public void testSameAsSubLists() {
+		for (MatchEngine engine : MatchEngine.values()) {
+			for (String regex : MatchEngineTest.PATTERNS) {
+				if (regex.contains("^") || regex.contains("$")) {
+					continue;
+				}
+				ObjectPattern<String> pattern = MatchEngineTest.compile(regex,
+						engine);
+				for (List<String> input : MatchEngineTest.allInputs(
+						MatchEngineTest.ALPHABET, 5)) {
+					assertEquals(engine + " " + regex + " " + input,
+							findAllSlowly(pattern, input), findAll(pattern,
+									input));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testLeftmostLongest() {
+		ObjectPattern<String> pattern = MatchEngineTest.compile(
+				"(A B C)|B|(B C C)", MatchEngine.PIKE_VM);
+		// the match at 1 is found first, but the one at 0 is leftmost.
+		assertEquals(ImmutableList.of(ImmutableList.of(0, 3)), findAll(
+				pattern, Arrays.asList("A", "B", "C", "C")));
+		assertEquals(ImmutableList.of(ImmutableList.of(1, 4)), findAll(
+				pattern, Arrays.asList("C", "B", "C", "C")));
+	}
+
+	@Test
+	public void testAnchors() {
+		ObjectPattern<String> pattern = MatchEngineTest.compile("^ A+",
+				MatchEngine.PIKE_VM);
+		assertEquals(ImmutableList.of(ImmutableList.of(0, 2)), findAll(
+				pattern, Arrays.asList("A", "A", "B", "A")));
+		assertEquals(ImmutableList.of(), findAll(pattern, Arrays.asList("B",
+				"A")));
+
+		pattern = MatchEngineTest.compile("A+ $", MatchEngine.PIKE_VM);
+		assertEquals(ImmutableList.of(ImmutableList.of(3, 5)), findAll(
+				pattern, Arrays.asList("A", "A", "B", "A", "A")));
+
+		pattern = MatchEngineTest.compile("^|$", MatchEngine.PIKE_VM);
+		assertEquals(ImmutableList.of(ImmutableList.of(0, 0), ImmutableList
+				.of(2, 2)), findAll(pattern, Arrays.asList("A", "B")));
+	}
+
+	@Test
+	public void testEmptyMatches() {
+		ObjectPattern<String> pattern = MatchEngineTest.compile("A*",
+				MatchEngine.SET_SIMULATION);
+		assertEquals(ImmutableList.of(ImmutableList.of(0, 0), ImmutableList
+				.of(1, 3), ImmutableList.of(3, 3)), findAll(pattern, Arrays
+				.asList("B", "A", "A")));
+	}
+
+	@Test
+	public void testCounters() {
+		ObjectPattern<String> pattern = MatchEngineTest.compile("A{2,3}",
+				MatchEngine.LAZY_DFA);
+		assertEquals(ImmutableList.of(ImmutableList.of(0, 3), ImmutableList
+				.of(3, 5), ImmutableList.of(6, 8)), findAll(pattern, Arrays
+				.asList("A", "A", "A", "A", "A", "B", "A", "A", "C", "A")));
+	}
+
+	@Test
+	public void testCountersSameAsUnrolled() {
+		for (String[] pair : CounterRegistersTest.EQUIVALENTS) {
+			ObjectPattern<String> counted = MatchEngineTest.compile(pair[0],
+					MatchEngine.SET_SIMULATION);
+			ObjectPattern<String> unrolled = MatchEngineTest.compile(pair[1],
+					MatchEngine.SET_SIMULATION);
+			for (List<String> input : MatchEngineTest.allInputs(
+					MatchEngineTest.ALPHABET, 6)) {
+				assertEquals(pair[0] + " " + input, findAll(unrolled, input),
+						findAll(counted, input));
+			}
+		}
+	}
+
+	@Test
+	public void testLargeBounds() {
+		List<String> input = Lists.newArrayList(Collections.nCopies(200000,
+				"A"));
+		for (int bound : new int[] { 5000, 20000, 100000 }) {
+			List<List<Integer>> spans = findAll(MatchEngineTest.compile("A{"
+					+ bound + "}", MatchEngine.SET_SIMULATION), input);
+			assertEquals(200000 / bound, spans.size());
+			assertEquals(ImmutableList.of(bound, 2 * bound), spans.get(1));
+		}
+		assertEquals(ImmutableList.of(), findAll(MatchEngineTest.compile(
+				"A{2147483647}", MatchEngine.SET_SIMULATION), input));
+		// a group cannot be counted, so it is repeated.
+		assertEquals(ImmutableList.of(), findAll(MatchEngineTest.compile(
+				"(B|C){20000}", MatchEngine.SET_SIMULATION), input));
+	}
+
+	@Test
+	public void testGroupAndReset() {
+		List<String> input = new LinkedList<String>(Arrays.asList("C", "A",
+				"B", "C", "A", "B"));
+		ListMatcher<String> matcher = MatchEngineTest.compile("A B",
+				MatchEngine.PIKE_VM).matcher(input);
+		assertTrue(matcher.find());
+		assertEquals(Arrays.asList("A", "B"), matcher.group());
+		assertTrue(matcher.find());
+		assertEquals(4, matcher.start());
+		assertFalse(matcher.find());
+		assertFalse(matcher.find());
+
+		assertTrue(matcher.reset().find());
+		assertEquals(1, matcher.start());
+		assertTrue(matcher.find(2));
+		assertEquals(4, matcher.start());
+	}
+
+	/**
+	 * Returns the spans of every group of the first match.
+	 */
+	private static List<List<Integer>> groups(String regex, String... input) {
+		ListMatcher<String> matcher = MatchEngineTest.compile(regex,
+				MatchEngine.PIKE_VM).matcher(Arrays.asList(input));
+		assertTrue(matcher.find());
+		List<List<Integer>> spans = Lists.newArrayList();
+		for (int group = 0; group <= matcher.groupCount(); group++) {
+			spans.add(ImmutableList.of(matcher.start(group), matcher
+					.end(group)));
+		}
+		return spans;
+	}
+
+	private static List<List<Integer>> spans(int... bounds) {
+		List<List<Integer>> spans = Lists.newArrayList();
+		for (int i = 0; i < bounds.length; i += 2) {
+			spans.add(ImmutableList.of(bounds[i], bounds[i + 1]));
+		}
+		return spans;
+	}
+
+	@Test
+	public void testGroups() {
+		assertEquals(spans(1, 7, 4, 6), groups("A (!A B)* A", "C", "A", "C",
+				"B", "C", "B", "A"));
+		assertEquals(spans(0, 3, 0, 3, 3, 3), groups("(A*)(A*)", "A", "A",
+				"A"));
+		assertEquals(spans(0, 1, -1, -1, 0, 1), groups("(A)|(B)", "B"));
+		assertEquals(spans(0, 4, 2, 4, 2, 3), groups("((A) B)+", "A", "B",
+				"A", "B"));
+		assertEquals(spans(0, 2, 1, 2), groups("(A){2}", "A", "A", "A"));
+		assertEquals(spans(1, 3, 1, 3, -1, -1), groups("(A B)|(A)", "C", "A",
+				"B"));
+		assertEquals(spans(0, 2, 2, 2), groups("A B (^|$)", "A", "B"));
+	}
+
+	/**
+	 * Returns the spans of every group of every match.
+	 */
+	private static List<List<Integer>> findAllGroups(
+			ObjectPattern<String> pattern, List<String> input) {
+		List<List<Integer>> spans = Lists.newArrayList();
+		ListMatcher<String> matcher = pattern.matcher(input);
+		while (matcher.find()) {
+			for (int group = 0; group <= matcher.groupCount(); group++) {
+				spans.add(ImmutableList.of(matcher.start(group), matcher
+						.end(group)));
+			}
+		}
+		return spans;
+	}
+
+	@Test
+	public void testGroupsOfCounters() {
+		String[][] equivalents = { { "(A{2,3}) (A{1,2})", "(A A A?) (A A?)" },
+				{ "(A{1,}) (B{0,2})", "(A+) (B? B?)" },
+				{ "(!C{2,}) C", "(!C !C+) C" },
+				{ "((A|B)* A{2}) (B{1,3})", "((A|B)* A A) (B B? B?)" } };
+		for (String[] pair : equivalents) {
+			ObjectPattern<String> counted = MatchEngineTest.compile(pair[0],
+					MatchEngine.SET_SIMULATION);
+			ObjectPattern<String> unrolled = MatchEngineTest.compile(pair[1],
+					MatchEngine.SET_SIMULATION);
+			for (List<String> input : MatchEngineTest.allInputs(
+					MatchEngineTest.ALPHABET, 6)) {
+				assertEquals(pair[0] + " " + input, findAllGroups(unrolled,
+						input), findAllGroups(counted, input));
+			}
+		}
+	}
+
+	@Test
+	public void testGroupsOfLargeBounds() {
+		List<String> input = Lists.newArrayList(Collections.nCopies(200000,
+				"A"));
+		ListMatcher<String> matcher = MatchEngineTest.compile(
+				"(A{20000}) (A{100000,})", MatchEngine.SET_SIMULATION)
+				.matcher(input);
+		assertTrue(matcher.find());
+		assertEquals(20000, matcher.end(1));
+		assertEquals(200000, matcher.end(2));
+	}
+
+	@Test
+	public void testGroupViews() {
+		ListMatcher<String> matcher = MatchEngineTest.compile("(A) (C)? B",
+				MatchEngine.PIKE_VM).matcher(Arrays.asList("B", "A", "B"));
+		assertTrue(matcher.find());
+		assertEquals(2, matcher.groupCount());
+		assertEquals(Arrays.asList("A"), matcher.group(1));
+		assertNull(matcher.group(2));
+		assertEquals(Arrays.asList("A", "B"), matcher.group(0));
+	}
+
+	@Test
+	public void testGroupOfPattern() {
+		ObjectPattern<String> pattern = MatchEngineTest.compile("C (X)+",
+				MatchEngine.SET_SIMULATION);
+		pattern.set("X", "A B");
+		ListMatcher<String> matcher = pattern.matcher(Arrays.asList("C", "A",
+				"B", "A", "B", "A"));
+		assertTrue(matcher.find());
+		assertEquals(5, matcher.end());
+		assertEquals(3, matcher.start(1));
+	}
+
+	@Test
+	public void testGroupsAgreeWithFind() {
+		for (String regex : MatchEngineTest.PATTERNS) {
+			ObjectPatternImpl<String> pattern = (ObjectPatternImpl<String>) MatchEngineTest
+					.compile(regex, MatchEngine.PIKE_VM);
+			for (List<String> input : MatchEngineTest.allInputs(
+					MatchEngineTest.ALPHABET, 4)) {
+				ListMatcher<String> matcher = pattern.matcher(input);
+				while (matcher.find()) {
+					int[] groups = pattern.findGroups(input, matcher.start());
+					assertEquals(regex + " " + input, matcher.end(), groups[1]);
+				}
+			}
+		}
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testNoSuchGroup() {
+		ListMatcher<String> matcher = MatchEngineTest.compile("(A)",
+				MatchEngine.PIKE_VM).matcher(Arrays.asList("A"));
+		assertTrue(matcher.find());
+		matcher.start(2);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testNoMatch() {
+		ListMatcher<String> matcher = MatchEngineTest.compile("A",
+				MatchEngine.PIKE_VM).matcher(Arrays.asList("B"));
+		assertFalse(matcher.find());
+		matcher.start();
+	}
+}
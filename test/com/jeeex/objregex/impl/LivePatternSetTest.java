@@ -0,0 +1,215 @@
+package com.jeeex.objregex.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.jeeex.objregex.LivePatternSet;
+import com.jeeex.objregex.PatternSnapshot;
+
+public class LivePatternSetTest {
+
+	/**
+	 * Returns the expected result of matching {@code input} against the
+	 * expressions of the snapshot.
+	 */
+	private static BitSet expected(PatternSnapshot<String> snapshot,
+			List<String> input, int indices) {
+		BitSet expected = new BitSet();
+		for (int i = 0; i < indices; i++) {
+			String regex = snapshot.getRegex(i);
+			if (regex != null
+					&& MatchEngineTest.compile(regex,
+							MatchEngine.SET_SIMULATION).match(input)) {
+				expected.set(i);
+			}
+		}
+		return expected;
+	}
+
+	@Test
+	public void testAddAndRemove() {
+		LivePatternSet<String> set = MatchEngineTest.newLivePatternSet();
+		List<String> regexes = Lists.newArrayList();
+		for (String regex : MatchEngineTest.PATTERNS) {
+			if (!regex.contains("this")) {
+				assertEquals(regexes.size(), set.add(regex));
+				regexes.add(regex);
+			}
+		}
+		for (int i = 0; i < regexes.size(); i += 3) {
+			assertTrue(set.remove(i));
+			assertFalse(set.remove(i));
+		}
+		PatternSnapshot<String> snapshot = set.snapshot();
+		assertEquals(regexes.size(), snapshot.size());
+		assertNull(snapshot.getRegex(0));
+		for (List<String> input : MatchEngineTest.allInputs(
+				MatchEngineTest.ALPHABET, 4)) {
+			BitSet expected = expected(snapshot, input, regexes.size());
+			assertEquals(input.toString(), expected, snapshot.match(input));
+			assertEquals(input.toString(), expected, snapshot.match(Lists
+					.newLinkedList(input).iterator()));
+		}
+	}
+
+	@Test
+	public void testSnapshotsAreImmutable() {
+		LivePatternSet<String> set = MatchEngineTest.newLivePatternSet();
+		int a = set.add("A");
+		PatternSnapshot<String> before = set.snapshot();
+		int any = set.add(".*");
+		set.remove(a);
+		PatternSnapshot<String> after = set.snapshot();
+
+		List<String> input = ImmutableList.of("A");
+		BitSet expected = new BitSet();
+		expected.set(a);
+		assertEquals(expected, before.match(input));
+		assertNull(before.getRegex(any));
+		expected.clear();
+		expected.set(any);
+		assertEquals(expected, after.match(input));
+		assertNull(after.getRegex(a));
+	}
+
+	@Test
+	public void testChangesKeepOtherPrograms() {
+		LivePatternSetImpl<String> set = (LivePatternSetImpl<String>) MatchEngineTest
+				.newLivePatternSet();
+		int a = set.add("A B*");
+		Program program = set.getProgram(a);
+		int c = set.add("C");
+		set.set("B", Predicates.equalTo("C"));
+		assertTrue(set.remove(c));
+		assertSame(program, set.getProgram(a));
+		assertNull(set.getProgram(c));
+		BitSet expected = new BitSet();
+		expected.set(a);
+		assertEquals(expected, set.snapshot().match(ImmutableList.of("A",
+				"C", "C")));
+	}
+
+	@Test
+	public void testSharedPredicateCalls() {
+		LivePatternSet<String> set = MatchEngineTest.newLivePatternSet();
+		final int[] calls = new int[1];
+		set.set("X", new Predicate<String>() {
+			public boolean apply(String input) {
+				calls[0]++;
+				return true;
+			}
+		});
+		for (int i = 0; i < 10; i++) {
+			set.add("X+ A");
+		}
+		set.snapshot().match(ImmutableList.of("B", "B", "A"));
+		// one call per element, however many expressions refer to X.
+		assertEquals(3, calls[0]);
+	}
+
+	@Test
+	public void testIndicesAreNotReused() {
+		LivePatternSet<String> set = MatchEngineTest.newLivePatternSet();
+		assertEquals(0, set.add("A"));
+		assertTrue(set.remove(0));
+		assertEquals(1, set.add("B"));
+		assertFalse(set.remove(5));
+		assertFalse(set.remove(-1));
+	}
+
+	@Test
+	public void testUnassignedIdentifier() {
+		LivePatternSet<String> set = MatchEngineTest.newLivePatternSet();
+		try {
+			set.add("A X");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected.
+		}
+		try {
+			set.add("A this");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected.
+		}
+		assertEquals(0, set.snapshot().size());
+		set.set("X", Predicates.equalTo("X"));
+		assertEquals(0, set.add("A X"));
+	}
+
+	@Test
+	public void testConcurrentReaders() throws InterruptedException {
+		final LivePatternSet<String> set = MatchEngineTest
+				.newLivePatternSet();
+		final List<String> regexes = ImmutableList.of("A B*", "(A|B)* C",
+				"A{2,3}", ".* B .*", "!A+");
+		final List<List<String>> inputs = MatchEngineTest.allInputs(
+				MatchEngineTest.ALPHABET, 3);
+		// whether each input matches each expression.
+		final boolean[][] matches = new boolean[regexes.size()][inputs.size()];
+		for (int r = 0; r < regexes.size(); r++) {
+			for (int i = 0; i < inputs.size(); i++) {
+				matches[r][i] = MatchEngineTest.compile(regexes.get(r),
+						MatchEngine.SET_SIMULATION).match(inputs.get(i));
+			}
+		}
+		final int adds = 200;
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] readers = new Thread[4];
+		for (int t = 0; t < readers.length; t++) {
+			readers[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int round = 0; round < 50; round++) {
+							PatternSnapshot<String> snapshot = set.snapshot();
+							for (int i = 0; i < inputs.size(); i++) {
+								BitSet expected = new BitSet();
+								for (int index = 0; index < snapshot.size();
+										index++) {
+									String regex = snapshot.getRegex(index);
+									if (regex != null
+											&& matches[regexes.indexOf(regex)][i]) {
+										expected.set(index);
+									}
+								}
+								assertEquals(expected, snapshot.match(inputs
+										.get(i)));
+							}
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			};
+			readers[t].start();
+		}
+		for (int i = 0; i < adds; i++) {
+			set.add(regexes.get(i % regexes.size()));
+			if (i % 2 == 1) {
+				set.remove(i - 1);
+			}
+		}
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		assertEquals(adds, set.snapshot().size());
+	}
+}
@@ -0,0 +1,77 @@
+package com.jeeex.objregex.impl;
+
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.jeeex.objregex.ObjectPattern;
+
+/**
+ * Compares the throughput of every {@link MatchEngine} and
+ * {@link NfaConstruction} on a few patterns, then of both constructions on the
+ * patterns of {@link MatchEngineTest}. Not a unit test - run
+ * {@link #main(String[])} directly.
+ */
+public class MatchEngineBenchmark {
+
+	static final List<String> PATTERNS = ImmutableList.of("(A|B)* C (A|B)*",
+			"(A|B|C)*", ".* !null .*", "(!C)* C (!C)*");
+
+	static final int INPUT_LENGTH = 100000;
+	static final int WARMUP_ROUNDS = 20;
+	static final int ROUNDS = 50;
+
+	public static void main(String[] args) {
+		List<List<String>> inputs = Lists.newArrayList();
+		Random random = new Random(42);
+		for (int i = 0; i < 4; i++) {
+			List<String> input = Lists.newArrayList();
+			for (int j = 0; j < INPUT_LENGTH; j++) {
+				input.add(MatchEngineTest.ALPHABET.get(random.nextInt(2)));
+			}
+			// exactly one C, somewhere in the input.
+			input.set(random.nextInt(INPUT_LENGTH), "C");
+			inputs.add(input);
+		}
+
+		for (String regex : PATTERNS) {
+			for (MatchEngine engine : MatchEngine.values()) {
+				for (NfaConstruction construction : NfaConstruction.values()) {
+					benchmark(regex, engine, construction, inputs);
+				}
+			}
+		}
+		for (String regex : MatchEngineTest.PATTERNS) {
+			for (NfaConstruction construction : NfaConstruction.values()) {
+				benchmark(regex, MatchEngine.PIKE_VM, construction, inputs);
+			}
+		}
+	}
+
+	private static void benchmark(String regex, MatchEngine engine,
+			NfaConstruction construction, List<List<String>> inputs) {
+		ObjectPattern<String> pattern = MatchEngineTest.compile(regex, engine,
+				construction);
+		run(pattern, inputs, WARMUP_ROUNDS);
+		long start = System.nanoTime();
+		int matches = run(pattern, inputs, ROUNDS);
+		long elapsed = System.nanoTime() - start;
+		System.out.printf("%-20s %-15s %-9s %8.2f ns/element (%d matches)%n",
+				regex, engine, construction, (double) elapsed
+						/ (ROUNDS * inputs.size() * INPUT_LENGTH), matches);
+	}
+
+	private static int run(ObjectPattern<String> pattern,
+			List<List<String>> inputs, int rounds) {
+		int matches = 0;
+		for (int i = 0; i < rounds; i++) {
+			for (List<String> input : inputs) {
+				if (pattern.match(input)) {
+					matches++;
+				}
+			}
+		}
+		return matches;
+	}
+}
@@ -0,0 +1,164 @@
+package com.jeeex.objregex.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.jeeex.objregex.LivePatternSet;
+import com.jeeex.objregex.ObjectPattern;
+import com.jeeex.objregex.PatternSet;
+
+/**
+ * Checks that every {@link MatchEngine} agrees with
+ * {@link MatchEngine#SET_SIMULATION} on every short input.
+ */
+public class MatchEngineTest {
+
+	static final List<String> ALPHABET = ImmutableList.of("A", "B", "C");
+
+	static final List<String> PATTERNS = ImmutableList.of("", "^$", "A",
+			"!A", "A B", "A|B", "(A|B)*", "A+", "A?", "(A B)|(C A)",
+			"A* B+ C?", "^A* $", ".* !null .*", "(A (!A B)* A)|C",
+			"A this* B", "(A|B)* C (A|B)*", "A**", "(A+)*", "((A|)B)*",
+			"A|!A", "(!A !B)+ C", "A*|B", "(A B)|(A C)|A", "A{2}",
+			"A{1,3} B", "(A|B){2,3}", "!C{2,} C", "(A{2})+", "A{0,2}$",
+			"(A B){1,}");
+
+	/**
+	 * Compiles {@code regex} with the given engine, binding A, B and C.
+	 */
+	static ObjectPattern<String> compile(String regex, MatchEngine engine) {
+		return compile(regex, engine, NfaConstruction.THOMPSON);
+	}
+
+	/**
+	 * Compiles {@code regex} with the given engine and construction, binding
+	 * A, B and C.
+	 */
+	static ObjectPattern<String> compile(String regex, MatchEngine engine,
+			NfaConstruction construction) {
+		DefaultRegexFactory factory = new DefaultRegexFactory();
+		factory.setEngine(engine);
+		factory.setConstruction(construction);
+		return compile(factory, regex);
+	}
+
+	/**
+	 * Compiles {@code regex} with the given factory, binding A, B and C.
+	 */
+	static ObjectPatternImpl<String> compile(DefaultRegexFactory factory,
+			String regex) {
+		ObjectPatternImpl<String> pattern = (ObjectPatternImpl<String>) factory
+				.<String> compile(regex);
+		for (String letter : ALPHABET) {
+			pattern.set(letter, Predicates.equalTo(letter));
+		}
+		return pattern;
+	}
+
+	/**
+	 * Compiles the given expressions into a set, binding A, B and C.
+	 */
+	static PatternSet<String> compileSet(List<String> regexes) {
+		PatternSet<String> set = new DefaultRegexFactory()
+				.<String> compileSet(regexes);
+		for (String letter : ALPHABET) {
+			set.set(letter, Predicates.equalTo(letter));
+		}
+		return set;
+	}
+
+	/**
+	 * Creates an empty live set, binding A, B and C.
+	 */
+	static LivePatternSet<String> newLivePatternSet() {
+		LivePatternSet<String> set = new DefaultRegexFactory()
+				.<String> newLivePatternSet();
+		for (String letter : ALPHABET) {
+			set.set(letter, Predicates.equalTo(letter));
+		}
+		return set;
+	}
+
+	/**
+	 * Returns every list over {@code alphabet} no longer than {@code length}.
+	 */
+	static <E> List<List<E>> allInputs(List<E> alphabet, int length) {
+		List<List<E>> inputs = Lists.newArrayList();
+		List<List<E>> previous = Lists.newArrayList();
+		previous.add(ImmutableList.<E> of());
+		inputs.addAll(previous);
+		for (int i = 0; i < length; i++) {
+			List<List<E>> current = Lists.newArrayList();
+			for (List<E> prefix : previous) {
+				for (E element : alphabet) {
+					List<E> input = Lists.newArrayList(prefix);
+					input.add(element);
+					current.add(input);
+				}
+			}
+			inputs.addAll(current);
+			previous = current;
+		}
+		return inputs;
+	}
+
+	/**
+	 * Asserts that {@code actual} and {@code expected} agree on every short
+	 * input.
+	 */
+	static void assertSameMatches(String message,
+			ObjectPattern<String> expected, ObjectPattern<String> actual) {
+		for (List<String> input : allInputs(ALPHABET, 6)) {
+			assertEquals(message + " " + input, expected.match(input), actual
+					.match(input));
+		}
+	}
+
+	@Test
+	public void testSameAsSetSimulation() {
+		for (MatchEngine engine : MatchEngine.values()) {
+			for (String regex : PATTERNS) {
+				assertSameMatches(engine + " " + regex, compile(regex,
+						MatchEngine.SET_SIMULATION), compile(regex, engine));
+			}
+		}
+	}
+
+	@Test
+	public void testArrayAndRange() {
+		for (MatchEngine engine : MatchEngine.values()) {
+			for (String regex : PATTERNS) {
+				ObjectPattern<String> pattern = compile(regex, engine);
+				for (List<String> input : allInputs(ALPHABET, 4)) {
+					String message = engine + " " + regex + " " + input;
+					boolean expected = pattern.match(input);
+
+					assertEquals(message, expected, pattern.match(input
+							.toArray(new String[input.size()])));
+
+					// the same elements, surrounded by others.
+					List<String> padded = Lists.newArrayList("C", "A");
+					padded.addAll(input);
+					padded.add("B");
+					int toIndex = 2 + input.size();
+					assertEquals(message, expected, pattern.match(padded, 2,
+							toIndex));
+					assertEquals(message, expected, pattern.match(Lists
+							.newLinkedList(padded), 2, toIndex));
+				}
+			}
+		}
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testRangeOutOfBounds() {
+		compile("A*", MatchEngine.SET_SIMULATION).match(
+				ImmutableList.of("A"), 0, 2);
+	}
+}
@@ -0,0 +1,92 @@
+package com.jeeex.objregex.impl;
+
+import static com.jeeex.objregex.impl.TransitionIdentifier.makeTid;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+public class MintermsTest {
+
+	private Program program;
+	private PredicateEvaluator<String> evaluator;
+	private Minterms<String> minterms;
+
+	@Before
+	public void setup() {
+		// VOWEL | !A
+		State state = StateUtil.or(StateUtil.single(makeTid("VOWEL")),
+				StateUtil.single(makeTid("A", true)));
+		program = new Program(state);
+
+		Map<String, Predicate<String>> predicates = Maps.newHashMap();
+		predicates.put("VOWEL", Predicates.in(ImmutableSet.of("A", "E")));
+		predicates.put("A", Predicates.equalTo("A"));
+		evaluator = new PredicateEvaluator<String>(program, predicates);
+
+		// lower every state, so that both slots are known.
+		program.getEofClosure(program.getStart());
+		for (int s : program.getClosure(program.getStart())) {
+			program.getTargets(s);
+		}
+		minterms = new Minterms<String>(program, evaluator);
+	}
+
+	private int classify(String element) {
+		evaluator.setElement(element);
+		return minterms.classify();
+	}
+
+	@Test
+	public void testClassify() {
+		assertEquals(2, program.getSlotCount());
+		assertFalse(minterms.isStale());
+
+		int a = classify("A");
+		int e = classify("E");
+		int x = classify("X");
+
+		assertEquals(3, minterms.size());
+		assertEquals(e, classify("E"));
+		assertTrue(a != e && e != x && a != x);
+
+		// Z is neither a vowel nor "A", just like X.
+		assertEquals(x, classify("Z"));
+		assertEquals(3, minterms.size());
+	}
+
+	@Test
+	public void testAccepts() {
+		int a = classify("A");
+		int x = classify("X");
+
+		for (int label = 0; label < program.getLabelCount(); label++) {
+			if (program.isNegation(label)) {
+				// !A
+				assertFalse(minterms.accepts(a, label));
+				assertTrue(minterms.accepts(x, label));
+			} else {
+				// VOWEL
+				assertTrue(minterms.accepts(a, label));
+				assertFalse(minterms.accepts(x, label));
+			}
+		}
+	}
+
+	@Test
+	public void testClear() {
+		classify("A");
+		minterms.clear();
+		assertEquals(0, minterms.size());
+		assertEquals(0, classify("X"));
+	}
+}
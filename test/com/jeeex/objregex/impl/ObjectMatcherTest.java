@@ -0,0 +1,131 @@
+package com.jeeex.objregex.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.Lists;
+import com.jeeex.objregex.ObjectMatcher;
+import com.jeeex.objregex.ObjectPattern;
+
+public class ObjectMatcherTest {
+
+	@Test
+	public void testSameAsMatch() {
+		for (String regex : MatchEngineTest.PATTERNS) {
+			ObjectPattern<String> pattern = MatchEngineTest.compile(regex,
+					MatchEngine.SET_SIMULATION);
+			ObjectMatcher<String> matcher = pattern.newMatcher();
+			for (List<String> input : MatchEngineTest.allInputs(
+					MatchEngineTest.ALPHABET, 5)) {
+				matcher.reset();
+				List<String> prefix = Lists.newArrayList();
+				for (String element : input) {
+					matcher.feed(element);
+					prefix.add(element);
+					assertEquals(regex + " " + prefix, pattern.match(prefix),
+							matcher.isMatching());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCanStillMatch() {
+		List<List<String>> continuations = MatchEngineTest.allInputs(
+				MatchEngineTest.ALPHABET, 3);
+		for (String regex : MatchEngineTest.PATTERNS) {
+			ObjectPattern<String> pattern = MatchEngineTest.compile(regex,
+					MatchEngine.PIKE_VM);
+			ObjectMatcher<String> matcher = pattern.newMatcher();
+			for (List<String> input : MatchEngineTest.allInputs(
+					MatchEngineTest.ALPHABET, 3)) {
+				matcher.reset();
+				for (String element : input) {
+					matcher.feed(element);
+				}
+				if (matcher.canStillMatch()) {
+					continue;
+				}
+				// no continuation may match.
+				for (List<String> continuation : continuations) {
+					List<String> whole = Lists.newArrayList(input);
+					whole.addAll(continuation);
+					assertFalse(regex + " " + whole, pattern.match(whole));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testDeadInput() {
+		ObjectMatcher<String> matcher = MatchEngineTest.compile("A B* C",
+				MatchEngine.SET_SIMULATION).newMatcher();
+		assertTrue(matcher.canStillMatch());
+		matcher.feed("A");
+		matcher.feed("B");
+		assertTrue(matcher.canStillMatch());
+		assertFalse(matcher.isMatching());
+		matcher.feed("C");
+		assertTrue(matcher.isMatching());
+		matcher.feed("C");
+		assertFalse(matcher.canStillMatch());
+		matcher.feed("C");
+		assertFalse(matcher.canStillMatch());
+
+		matcher.reset();
+		matcher.feed("A");
+		matcher.feed("C");
+		assertTrue(matcher.isMatching());
+	}
+
+	@Test
+	public void testUnboundedInput() {
+		ObjectPattern<String> pattern = MatchEngineTest.compile(
+				"(!C)* C A{100,}", MatchEngine.SET_SIMULATION);
+		ObjectMatcher<String> matcher = pattern.newMatcher();
+		for (int i = 0; i < 100000; i++) {
+			matcher.feed("B");
+		}
+		matcher.feed("C");
+		for (int i = 0; i < 99; i++) {
+			matcher.feed("A");
+		}
+		assertFalse(matcher.isMatching());
+		assertTrue(matcher.canStillMatch());
+		matcher.feed("A");
+		assertTrue(matcher.isMatching());
+		// each element was tested against each predicate at most once.
+		assertTrue(pattern.getPredicateCallCount() <= 2 * 100101);
+	}
+
+	@Test
+	public void testAcceptingForever() {
+		ObjectPattern<String> pattern = MatchEngineTest.compile("A .*",
+				MatchEngine.SET_SIMULATION);
+		ObjectMatcher<String> matcher = pattern.newMatcher();
+		matcher.feed("A");
+		long calls = pattern.getPredicateCallCount();
+		for (int i = 0; i < 1000; i++) {
+			matcher.feed("B");
+		}
+		assertTrue(matcher.isMatching());
+		assertEquals(calls, pattern.getPredicateCallCount());
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void testAssignment() {
+		ObjectPattern<String> pattern = MatchEngineTest.compile("A B",
+				MatchEngine.SET_SIMULATION);
+		ObjectMatcher<String> matcher = pattern.newMatcher();
+		matcher.feed("A");
+		pattern.set("B", Predicates.equalTo("C"));
+		matcher.feed("C");
+	}
+}
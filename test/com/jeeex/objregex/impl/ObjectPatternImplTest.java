@@ -1,11 +1,24 @@
 package com.jeeex.objregex.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
+import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.jeeex.objregex.ObjectPattern;
 
 public class ObjectPatternImplTest {
 
@@ -36,4 +49,227 @@ public class ObjectPatternImplTest {
 		assertEquals(ImmutableSet.of(), ptrn.idToPredicate.keySet());
 		assertEquals(ImmutableSet.of("FOO", "BAR"), ptrn.assignedIds);
 	}
+
+	/**
+	 * Predicate that counts how many times it has been called.
+	 */
+	static class CountingPredicate implements Predicate<String> {
+		private final Predicate<String> delegate;
+		int calls;
+
+		CountingPredicate(Predicate<String> delegate) {
+			this.delegate = delegate;
+		}
+
+		public boolean apply(String input) {
+			calls++;
+			return delegate.apply(input);
+		}
+	}
+
+	@Test
+	public void testPredicateCalledOncePerElement() {
+		List<String> input = Arrays.asList("A", "C", "B", "C", "B", "A");
+
+		for (MatchEngine engine : MatchEngine.values()) {
+			CountingPredicate a = new CountingPredicate(Predicates.equalTo("A"));
+			CountingPredicate b = new CountingPredicate(Predicates.equalTo("B"));
+
+			ObjectPatternImpl<String> ptrn = new ObjectPatternImpl<String>(
+					"A (!A B)* A", engine);
+			ptrn.compile();
+			ptrn.set("A", a);
+			ptrn.set("B", b);
+
+			assertTrue(ptrn.match(input));
+			assertTrue(engine.toString(), a.calls <= input.size());
+			assertTrue(engine.toString(), b.calls <= input.size());
+			assertEquals(a.calls + b.calls, ptrn.getPredicateCallCount());
+		}
+	}
+
+	/**
+	 * An endless iterator, that counts the elements pulled from it.
+	 */
+	static class CountingIterator implements Iterator<String> {
+		private final String element;
+		int pulls;
+
+		CountingIterator(String element) {
+			this.element = element;
+		}
+
+		public boolean hasNext() {
+			return true;
+		}
+
+		public String next() {
+			pulls++;
+			return element;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	@Test
+	public void testIteratorStopsWhenDecided() {
+		for (MatchEngine engine : MatchEngine.values()) {
+			ObjectPattern<String> dead = MatchEngineTest.compile("A B*",
+					engine);
+			CountingIterator iterator = new CountingIterator("C");
+			assertFalse(engine.toString(), dead.match(iterator));
+			assertTrue(engine.toString(), iterator.pulls <= 1);
+
+			ObjectPattern<String> forever = MatchEngineTest.compile("A .*",
+					engine);
+			iterator = new CountingIterator("A");
+			assertTrue(engine.toString(), forever.match(iterator));
+			assertTrue(engine.toString(), iterator.pulls <= 2);
+		}
+	}
+
+	@Test
+	public void testIterable() {
+		ObjectPattern<String> pattern = MatchEngineTest.compile("(A|B)+",
+				MatchEngine.LAZY_DFA);
+		Iterable<String> set = new LinkedHashSet<String>(Arrays.asList("A",
+				"B"));
+		assertTrue(pattern.match(set));
+		assertTrue(pattern.match(set.iterator()));
+		assertFalse(pattern.match(new LinkedHashSet<String>(Arrays.asList(
+				"A", "C"))));
+		assertTrue(pattern.match((Iterable<String>) Arrays.asList("B", "A")));
+	}
+
+	@Test
+	public void testSetEquals() {
+		for (MatchEngine engine : MatchEngine.values()) {
+			DefaultRegexFactory factory = new DefaultRegexFactory();
+			factory.setEngine(engine);
+			for (String regex : MatchEngineTest.PATTERNS) {
+				ObjectPattern<String> pattern = factory.compile(regex);
+				pattern.setEquals("A", "A");
+				pattern.setIn("B", ImmutableSet.of("B", "D"));
+				pattern.set("C", Predicates.equalTo("C"));
+				ObjectPattern<String> expected = MatchEngineTest.compile(
+						regex, MatchEngine.SET_SIMULATION);
+				expected.set("B", Predicates.in(ImmutableSet.of("B", "D")));
+				MatchEngineTest.assertSameMatches(engine + " " + regex,
+						expected, pattern);
+			}
+		}
+
+		ObjectPattern<String> pattern = new DefaultRegexFactory()
+				.compile("A N");
+		pattern.setEquals("A", "A");
+		pattern.setEquals("N", null);
+		assertTrue(pattern.match(Arrays.asList("A", null)));
+		assertFalse(pattern.match(Arrays.asList("A", "A")));
+		pattern.setIn("N", new HashSet<String>(Arrays.asList("B", null)));
+		assertTrue(pattern.match(Arrays.asList("A", "B")));
+		assertTrue(pattern.match(Arrays.asList("A", null)));
+	}
+
+	/**
+	 * Element that counts how many times it has been hashed.
+	 */
+	private static class Key {
+		private final int value;
+		int hashes;
+
+		Key(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public int hashCode() {
+			hashes++;
+			return value;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key && ((Key) other).value == value;
+		}
+	}
+
+	@Test
+	public void testOneLookupPerElement() {
+		// more identifiers than fit in one word of the masks.
+		int count = 100;
+		StringBuilder regex = new StringBuilder("(I0");
+		for (int i = 1; i < count; i++) {
+			regex.append("|I").append(i);
+		}
+		regex.append(")* I0");
+
+		for (MatchEngine engine : MatchEngine.values()) {
+			ObjectPatternImpl<Key> pattern = new ObjectPatternImpl<Key>(
+					regex.toString(), engine);
+			pattern.compile();
+			for (int i = 0; i < count; i++) {
+				pattern.setEquals("I" + i, new Key(i));
+			}
+			List<Key> input = Lists.newArrayList();
+			for (int i = count - 1; i >= 0; i--) {
+				input.add(new Key(i));
+			}
+			assertTrue(engine.toString(), pattern.match(input));
+			for (Key key : input) {
+				assertTrue(engine.toString(), key.hashes <= 1);
+			}
+			input.add(new Key(count));
+			assertFalse(engine.toString(), pattern.match(input));
+		}
+	}
+
+	@Test
+	public void testConcurrentMatches() throws InterruptedException {
+		final ObjectPatternImpl<String> pattern = new ObjectPatternImpl<String>(
+				"A (!A B)* A");
+		pattern.compile();
+		pattern.setEquals("A", "A");
+		pattern.set("B", Predicates.equalTo("B"));
+		// long inputs that stay alive to the end, so that matches overlap.
+		Random random = new Random(0);
+		final List<List<String>> inputs = Lists.newArrayList();
+		for (int i = 0; i < 1000; i++) {
+			List<String> input = Lists.newArrayList("A");
+			for (int j = 0; j < 100; j++) {
+				input.add("B");
+			}
+			input.add(random.nextBoolean() ? "A" : "B");
+			inputs.add(input);
+		}
+		final boolean[] expected = new boolean[inputs.size()];
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = pattern.match(inputs.get(i));
+		}
+		long calls = pattern.getPredicateCallCount();
+
+		final AtomicInteger wrong = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int round = 0; round < 10; round++) {
+						for (int i = 0; i < expected.length; i++) {
+							if (pattern.match(inputs.get(i)) != expected[i]) {
+								wrong.incrementAndGet();
+							}
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, wrong.get());
+		assertEquals(41 * calls, pattern.getPredicateCallCount());
+	}
 }
@@ -0,0 +1,125 @@
+package com.jeeex.objregex.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.jeeex.objregex.ObjectPattern;
+import com.jeeex.objregex.PatternSet;
+
+public class PatternSetTest {
+
+	/**
+	 * Returns {@link MatchEngineTest#PATTERNS}, but "this", which is not
+	 * defined in a set.
+	 */
+	private static List<String> setPatterns() {
+		List<String> regexes = Lists.newArrayList();
+		for (String regex : MatchEngineTest.PATTERNS) {
+			if (!regex.contains("this")) {
+				regexes.add(regex);
+			}
+		}
+		return regexes;
+	}
+
+	@Test
+	public void testSameAsPatterns() {
+		List<String> regexes = setPatterns();
+		PatternSet<String> set = MatchEngineTest.compileSet(regexes);
+		List<ObjectPattern<String>> patterns = Lists.newArrayList();
+		for (String regex : regexes) {
+			patterns.add(MatchEngineTest.compile(regex,
+					MatchEngine.SET_SIMULATION));
+		}
+		for (List<String> input : MatchEngineTest.allInputs(
+				MatchEngineTest.ALPHABET, 5)) {
+			BitSet expected = new BitSet();
+			for (int i = 0; i < patterns.size(); i++) {
+				if (patterns.get(i).match(input)) {
+					expected.set(i);
+				}
+			}
+			assertEquals(input.toString(), expected, set.match(input));
+			assertEquals(input.toString(), expected, set.match(Lists
+					.newLinkedList(input).iterator()));
+		}
+	}
+
+	@Test
+	public void testSharedPredicates() {
+		final int[] calls = new int[1];
+		Predicate<String> isA = new Predicate<String>() {
+			public boolean apply(String input) {
+				calls[0]++;
+				return input.equals("A");
+			}
+		};
+		List<String> regexes = Lists.newArrayList();
+		for (int i = 0; i < 400; i++) {
+			regexes.add(".* A{" + (i % 20 + 1) + "} .*");
+		}
+		PatternSet<String> set = new DefaultRegexFactory()
+				.<String> compileSet(regexes);
+		set.set("A", isA);
+
+		List<String> input = Lists.newArrayList();
+		for (int i = 0; i < 100; i++) {
+			input.add(i % 10 < 5 ? "A" : "B");
+		}
+		BitSet matched = set.match(input);
+		assertEquals(400 / 20 * 5, matched.cardinality());
+		assertTrue(matched.get(4));
+		// one call per element, however many patterns refer to A.
+		assertEquals(100, calls[0]);
+	}
+
+	@Test
+	public void testIteratorStops() {
+		PatternSet<String> set = MatchEngineTest.compileSet(ImmutableList.of(
+				"A B", "A C*", "A .*"));
+		ObjectPatternImplTest.CountingIterator iterator = new ObjectPatternImplTest.CountingIterator(
+				"B");
+		assertEquals(new BitSet(), set.match(iterator));
+		// no pattern can match once the first element is not A.
+		assertEquals(1, iterator.pulls);
+	}
+
+	@Test
+	public void testReassignment() {
+		PatternSet<String> set = MatchEngineTest.compileSet(ImmutableList.of(
+				"A", "B", "C+"));
+		List<String> input = ImmutableList.of("A");
+		BitSet expected = new BitSet();
+		expected.set(0);
+		assertEquals(expected, set.match(input));
+
+		set.set("B", "A");
+		set.set("C", Predicates.<String> alwaysTrue());
+		expected.set(1, 3);
+		assertEquals(expected, set.match(input));
+	}
+
+	@Test
+	public void testEmptySet() {
+		PatternSet<String> set = MatchEngineTest.compileSet(Collections
+				.<String> emptyList());
+		assertEquals(0, set.size());
+		assertEquals(new BitSet(), set.match(ImmutableList.of("A")));
+	}
+
+	@Test(expected = PatternSyntaxException.class)
+	public void testInvalidPattern() {
+		MatchEngineTest.compileSet(ImmutableList.of("A", "A{}"));
+	}
+}
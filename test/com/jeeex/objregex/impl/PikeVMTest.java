@@ -0,0 +1,33 @@
+package com.jeeex.objregex.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.jeeex.objregex.ObjectPattern;
+
+public class PikeVMTest {
+
+	@Test
+	public void testReuseAcrossCalls() {
+		ObjectPattern<String> pattern = MatchEngineTest.compile("A+ B",
+				MatchEngine.PIKE_VM);
+
+		assertTrue(pattern.match(Arrays.asList("A", "A", "B")));
+		assertFalse(pattern.match(Arrays.asList("A", "A")));
+		assertTrue(pattern.match(Arrays.asList("A", "B")));
+		assertFalse(pattern.match(Arrays.<String> asList()));
+	}
+
+	@Test
+	public void testRecursion() {
+		ObjectPattern<String> pattern = MatchEngineTest.compile("A this* B",
+				MatchEngine.PIKE_VM);
+
+		assertTrue(pattern.match(Arrays.asList("A", "A", "B", "A", "B", "B")));
+		assertFalse(pattern.match(Arrays.asList("A", "A", "B", "B", "B")));
+	}
+}
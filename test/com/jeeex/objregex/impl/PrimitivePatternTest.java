@@ -0,0 +1,186 @@
+package com.jeeex.objregex.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.jeeex.objregex.DoubleObjectPattern;
+import com.jeeex.objregex.DoublePredicate;
+import com.jeeex.objregex.IntObjectPattern;
+import com.jeeex.objregex.IntPredicate;
+import com.jeeex.objregex.LongObjectPattern;
+import com.jeeex.objregex.LongPredicate;
+import com.jeeex.objregex.ObjectPattern;
+
+public class PrimitivePatternTest {
+
+	private static final IntPredicate NEGATIVE = new IntPredicate() {
+		public boolean apply(int input) {
+			return input < 0;
+		}
+	};
+
+	private static final IntPredicate POSITIVE = new IntPredicate() {
+		public boolean apply(int input) {
+			return input > 0;
+		}
+	};
+
+	private final DefaultRegexFactory factory = new DefaultRegexFactory();
+
+	/**
+	 * Binds A, B and C to the values 0, 1 and 2, the indices of
+	 * {@link MatchEngineTest#ALPHABET}.
+	 */
+	private static void bind(IntObjectPattern pattern) {
+		for (int i = 0; i < MatchEngineTest.ALPHABET.size(); i++) {
+			final int value = i;
+			pattern.set(MatchEngineTest.ALPHABET.get(i), new IntPredicate() {
+				public boolean apply(int input) {
+					return input == value;
+				}
+			});
+		}
+	}
+
+	private static void bind(LongObjectPattern pattern) {
+		for (int i = 0; i < MatchEngineTest.ALPHABET.size(); i++) {
+			final long value = i;
+			pattern.set(MatchEngineTest.ALPHABET.get(i), new LongPredicate() {
+				public boolean apply(long input) {
+					return input == value;
+				}
+			});
+		}
+	}
+
+	private static void bind(DoubleObjectPattern pattern) {
+		for (int i = 0; i < MatchEngineTest.ALPHABET.size(); i++) {
+			final double value = i;
+			pattern.set(MatchEngineTest.ALPHABET.get(i), new DoublePredicate() {
+				public boolean apply(double input) {
+					return input == value;
+				}
+			});
+		}
+	}
+
+	@Test
+	public void testSameAsObjectPattern() {
+		for (String regex : MatchEngineTest.PATTERNS) {
+			ObjectPattern<String> expected = MatchEngineTest.compile(regex,
+					MatchEngine.SET_SIMULATION);
+			IntObjectPattern ints = factory.compileInt(regex);
+			LongObjectPattern longs = factory.compileLong(regex);
+			DoubleObjectPattern doubles = factory.compileDouble(regex);
+			bind(ints);
+			bind(longs);
+			bind(doubles);
+			for (List<String> input : MatchEngineTest.allInputs(
+					MatchEngineTest.ALPHABET, 5)) {
+				int[] intInput = new int[input.size()];
+				long[] longInput = new long[input.size()];
+				double[] doubleInput = new double[input.size()];
+				for (int i = 0; i < intInput.length; i++) {
+					intInput[i] = MatchEngineTest.ALPHABET.indexOf(input.get(i));
+					longInput[i] = intInput[i];
+					doubleInput[i] = intInput[i];
+				}
+				String message = regex + " " + input;
+				boolean match = expected.match(input);
+				assertEquals(message, match, ints.match(intInput));
+				assertEquals(message, match, longs.match(longInput));
+				assertEquals(message, match, doubles.match(doubleInput));
+			}
+		}
+	}
+
+	@Test
+	public void testAlternatingSequence() {
+		IntObjectPattern pattern = factory.compileInt("POS? (NEG POS)* NEG?");
+		pattern.set("NEG", NEGATIVE);
+		pattern.set("POS", POSITIVE);
+
+		assertTrue(pattern.match(new int[] { 1, -3 }));
+		assertTrue(pattern.match(new int[] { -3, 5, -4, 7, -6, 9, -10, 200 }));
+		assertFalse(pattern.match(new int[] { 1, 1 }));
+		assertFalse(pattern.match(new int[] { 1, -3, 2, -4, 5, -2, -6 }));
+	}
+
+	@Test
+	public void testRangeAndBuffers() {
+		IntObjectPattern pattern = factory.compileInt("POS NEG{2,} .*");
+		pattern.set("NEG", NEGATIVE);
+		pattern.set("POS", POSITIVE);
+		int[] values = { -1, 1, -1, -1, 1, -1 };
+
+		assertFalse(pattern.match(values));
+		assertTrue(pattern.match(values, 1, 4));
+		assertFalse(pattern.match(values, 1, 3));
+
+		IntBuffer buffer = IntBuffer.wrap(values);
+		buffer.position(1);
+		assertTrue(pattern.match(buffer));
+		assertEquals(1, buffer.position());
+		buffer.limit(3);
+		assertFalse(pattern.match(buffer));
+
+		IntBuffer direct = ByteBuffer.allocateDirect(4 * values.length)
+				.asIntBuffer();
+		direct.put(values).flip();
+		direct.get();
+		assertTrue(pattern.match(direct.slice()));
+
+		LongObjectPattern longs = factory.compileLong("A{3}");
+		bind(longs);
+		assertTrue(longs.match(LongBuffer.wrap(new long[] { 1, 0, 0, 0 }, 1, 3)));
+		DoubleObjectPattern doubles = factory.compileDouble("A B");
+		bind(doubles);
+		assertTrue(doubles.match(DoubleBuffer.wrap(new double[] { 0, 1 })));
+	}
+
+	@Test
+	public void testPredicateCalls() {
+		final int[] calls = new int[1];
+		IntObjectPattern pattern = factory.compileInt("(A|!A B?)+ A");
+		pattern.set("A", new IntPredicate() {
+			public boolean apply(int input) {
+				calls[0]++;
+				return input == 0;
+			}
+		});
+		pattern.set("B", POSITIVE);
+		assertTrue(pattern.match(new int[] { 0, 1, 0, 2, 0 }));
+		// once per element, however many transitions refer to A.
+		assertEquals(5, calls[0]);
+	}
+
+	@Test
+	public void testAssignment() {
+		IntObjectPattern pattern = factory.compileInt("X+");
+		pattern.set("X", POSITIVE);
+		assertTrue(pattern.match(new int[] { 1, 2 }));
+		pattern.set("X", NEGATIVE);
+		assertFalse(pattern.match(new int[] { 1, 2 }));
+		assertTrue(pattern.match(new int[] { -1, -2 }));
+
+		pattern = factory.compileInt("X+");
+		pattern.set("NEG", NEGATIVE);
+		pattern.set("X", "NEG NEG");
+		assertFalse(pattern.match(new int[] { -1 }));
+		assertTrue(pattern.match(new int[] { -1, -2, -3, -4 }));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testInvalidRange() {
+		factory.compileInt(".*").match(new int[2], 1, 3);
+	}
+}
@@ -0,0 +1,93 @@
+package com.jeeex.objregex.impl;
+
+import static com.jeeex.objregex.impl.TransitionIdentifier.makeTid;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProgramTest {
+
+	private State state;
+	private Program program;
+
+	@Before
+	public void setup() {
+		// (FOO !BAR)*
+		state = StateUtil.kleineClosure(StateUtil.concat(StateUtil
+				.single(makeTid("FOO")), StateUtil.single(makeTid("BAR", true))));
+		program = new Program(state);
+	}
+
+	@Test
+	public void testStartAndAccept() {
+		// kleine closure produces a single state.
+		assertTrue(program.isAccepting(program.getStart()));
+		assertEquals(1, program.getStateCount());
+	}
+
+	@Test
+	public void testLowering() {
+		int start = program.getStart();
+		assertEquals(0, program.getTargets(start).length);
+		assertEquals(1, program.getEpsilonTargets(start).length);
+
+		int foo = program.getEpsilonTargets(start)[0];
+		assertEquals(1, program.getTargets(foo).length);
+		assertEquals("FOO", program.getLabelId(program.getLabels(foo)[0]));
+		assertFalse(program.isNegation(program.getLabels(foo)[0]));
+		assertEquals(1, program.getLabelCount());
+	}
+
+	@Test
+	public void testNegatedLabel() {
+		StateSet states = new StateSet(1);
+		states.add(program.getStart());
+		program.closure(states, false, false);
+
+		int foo = program.getEpsilonTargets(program.getStart())[0];
+		int afterFoo = program.getTargets(foo)[0];
+		StateSet next = new StateSet(1);
+		next.add(afterFoo);
+		program.closure(next, false, false);
+
+		int bar = -1;
+		for (int i = 0; i < next.size(); i++) {
+			int s = next.get(i);
+			if (program.getTargets(s).length > 0) {
+				bar = s;
+			}
+		}
+		int label = program.getLabels(bar)[0];
+		assertEquals("BAR", program.getLabelId(label));
+		assertTrue(program.isNegation(label));
+	}
+
+	@Test
+	public void testClosure() {
+		StateSet states = new StateSet(1);
+		states.add(program.getStart());
+		program.closure(states, false, false);
+
+		// start, and the tail of FOO.
+		assertEquals(2, states.size());
+		assertTrue(states.contains(program.getStart()));
+		assertArrayEquals(new int[0], program.getBofTargets(program.getStart()));
+	}
+
+	@Test
+	public void testCachedClosure() {
+		int[] closure = program.getClosure(program.getStart());
+		assertEquals(2, closure.length);
+		assertEquals(program.getStart(), closure[0]);
+		assertSame(closure, program.getClosure(program.getStart()));
+		assertTrue(program.isAcceptingAtEof(program.getStart()));
+
+		int foo = program.getEpsilonTargets(program.getStart())[0];
+		assertFalse(program.isAcceptingAtEof(foo));
+	}
+}
@@ -0,0 +1,121 @@
+package com.jeeex.objregex.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.jeeex.objregex.ObjectPattern;
+
+public class RegexOptimizerTest {
+
+	private static final SingleTransitionFactory FACTORY = new SingleTransitionFactory() {
+		public State singleTransition(TransitionIdentifier tid) {
+			return StateUtil.single(tid);
+		}
+	};
+
+	private static RegexNode optimize(String regex) {
+		return RegexOptimizer.optimize(RegexNode.fromAST(RegexUtil
+				.getRootNode(regex)));
+	}
+
+	private static void assertOptimized(String expected, String regex) {
+		assertEquals(regex, expected, optimize(regex).toString());
+	}
+
+	@Test
+	public void testFlatten() {
+		assertOptimized("(A B C)", "A (B C)");
+		assertOptimized("(A|B|C)", "A|(B|C)");
+		assertOptimized("(A B)", "A () B");
+	}
+
+	@Test
+	public void testStackedOperators() {
+		assertOptimized("A*", "A**");
+		assertOptimized("A*", "(A+)*");
+		assertOptimized("A*", "A+?");
+		assertOptimized("A*", "A?+");
+		assertOptimized("A+", "A++");
+		assertOptimized("A?", "A??");
+		assertOptimized("(A|B)*", "(A?|B+)*");
+		assertOptimized("(A|B)+", "(A+|B)+");
+		assertOptimized("(A|B)*", "(A?|B)+");
+	}
+
+	@Test
+	public void testAlternatives() {
+		assertOptimized("A", "A|A");
+		assertOptimized("A?", "A|");
+		assertOptimized("(A (B|C))", "A B|A C");
+		assertOptimized("(A (B C)?)", "A B C|A");
+		assertOptimized("((A B?)|C)", "A|C|A B");
+	}
+
+	@Test
+	public void testStatesSaved() {
+		RegexNode node = RegexNode.fromAST(RegexUtil.getRootNode("(A+)*"));
+		assertEquals(3, RegexOptimizer.getStatesSaved(node, RegexOptimizer
+				.optimize(node)));
+
+		ObjectPatternImpl<String> pattern = new ObjectPatternImpl<String>(
+				"A** B");
+		pattern.compile();
+		assertEquals(1, pattern.getStatesSaved());
+
+		ObjectPatternImpl<String> literal = new ObjectPatternImpl<String>(
+				"A** B");
+		literal.setOptimizerEnabled(false);
+		literal.compile();
+		assertEquals(0, literal.getStatesSaved());
+
+		assertEquals(1, new DefaultRegexFactory().compile("A** B")
+				.getStatesSaved());
+	}
+
+	@Test
+	public void testStateCount() {
+		for (String regex : MatchEngineTest.PATTERNS) {
+			if (regex.contains("this")) {
+				continue;
+			}
+			RegexNode node = RegexNode.fromAST(RegexUtil.getRootNode(regex));
+			RegexNode optimized = RegexOptimizer.optimize(node);
+			assertEquals(regex, node.getLiteralStateCount(), new Program(
+					new ASTVisitor().start(RegexUtil.getRootNode(regex),
+							FACTORY)).lowerAll().size());
+			assertEquals(regex, node.getStateCount(), new Program(node
+					.toState(FACTORY)).lowerAll().size());
+			assertEquals(regex, optimized.getStateCount(), new Program(
+					optimized.toState(FACTORY)).lowerAll().size());
+		}
+	}
+
+	@Test
+	public void testSameAsLiteral() {
+		DefaultRegexFactory factory = new DefaultRegexFactory();
+		factory.setOptimizerEnabled(false);
+		for (String regex : MatchEngineTest.PATTERNS) {
+			ObjectPattern<String> literal = MatchEngineTest.compile(factory,
+					regex);
+			MatchEngineTest.assertSameMatches(regex, literal, MatchEngineTest
+					.compile(regex, MatchEngine.SET_SIMULATION));
+		}
+	}
+
+	@Test
+	public void testOrKeepsAlternativesApart() {
+		// "A*" loops on its own tail and head, which the literal translation
+		// of "|" used to share with "B".
+		for (boolean optimizerEnabled : new boolean[] { false, true }) {
+			DefaultRegexFactory factory = new DefaultRegexFactory();
+			factory.setOptimizerEnabled(optimizerEnabled);
+			ObjectPattern<String> pattern = MatchEngineTest.compile(factory,
+					"A*|B");
+			assertFalse(pattern.match(ImmutableList.of("A", "B")));
+			assertFalse(pattern.match(ImmutableList.of("B", "A")));
+		}
+	}
+}
@@ -1,12 +1,17 @@
 package com.jeeex.objregex.impl;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 
 import java.util.List;
+import java.util.regex.PatternSyntaxException;
 
 import org.junit.Test;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.jeeex.objregex.javacc.ASTOperatorExpr;
 import com.jeeex.objregex.javacc.EnhancedNode;
 
@@ -26,12 +31,49 @@ public class RegexUtilTest {
 				doubleOp);
 	}
 
-	static List<RegexOperator> extract(String input) {
-		EnhancedNode node = RegexUtil.getRootNode(input);
+	@Test
+	public void testExtractIdentifiers() {
+		assertEquals(ImmutableSet.of(), RegexUtil.extractIdentifiers(RegexUtil
+				.getRootNode("^$")));
+		assertEquals(ImmutableSet.of("A", "B", "C", "."), RegexUtil
+				.extractIdentifiers(RegexUtil.getRootNode("A (!B A)* C? .")));
+	}
 
-		ASTOperatorExpr opExpr = (ASTOperatorExpr) node.getFirstChild()
-				.getFirstChild().getFirstChild();
+	@Test
+	public void testExtractRepetition() {
+		assertNull(RegexUtil.extractRepetition(operator("A*")));
+		assertArrayEquals(new int[] { 3, 3 }, RegexUtil
+				.extractRepetition(operator("A{3}")));
+		assertArrayEquals(new int[] { 0, 2 }, RegexUtil
+				.extractRepetition(operator("A{0,2}")));
+		assertArrayEquals(new int[] { 5, RegexNode.UNBOUNDED }, RegexUtil
+				.extractRepetition(operator("A{5,}")));
+	}
 
-		return RegexUtil.extractOperators(opExpr);
+	@Test
+	public void testInvalidRepetition() {
+		for (String regex : ImmutableList.of("A{3,2}", "B A{99999999999}",
+				"A{}", "A{,2}")) {
+			try {
+				RegexUtil.getRootNode(regex);
+				fail(regex);
+			} catch (PatternSyntaxException e) {
+				// expected.
+			}
+		}
+	}
+
+	private static EnhancedNode operator(String input) {
+		return extractOperatorExpr(input).getNodeList(1).get(0);
+	}
+
+	private static ASTOperatorExpr extractOperatorExpr(String input) {
+		EnhancedNode node = RegexUtil.getRootNode(input);
+		return (ASTOperatorExpr) node.getFirstChild().getFirstChild()
+				.getFirstChild();
+	}
+
+	static List<RegexOperator> extract(String input) {
+		return RegexUtil.extractOperators(extractOperatorExpr(input));
 	}
 }
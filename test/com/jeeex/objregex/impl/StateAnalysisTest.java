@@ -0,0 +1,63 @@
+package com.jeeex.objregex.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.junit.Test;
+
+import com.jeeex.objregex.ObjectPattern;
+
+public class StateAnalysisTest {
+
+	/**
+	 * A list that fails if any element past {@code prefix} is read.
+	 */
+	static class TrappedList extends AbstractList<String> implements
+			RandomAccess {
+		private final List<String> prefix;
+
+		TrappedList(List<String> prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public String get(int index) {
+			if (index >= prefix.size()) {
+				throw new AssertionError("read element " + index);
+			}
+			return prefix.get(index);
+		}
+
+		@Override
+		public int size() {
+			return 1000000;
+		}
+	}
+
+	private void assertDecided(String regex, boolean expected,
+			String... prefix) {
+		for (MatchEngine engine : MatchEngine.values()) {
+			ObjectPattern<String> pattern = MatchEngineTest.compile(regex,
+					engine);
+			assertEquals(engine + " " + regex, expected, pattern
+					.match(new TrappedList(Arrays.asList(prefix))));
+		}
+	}
+
+	@Test
+	public void testAcceptingForever() {
+		assertDecided(".* !null .*", true, null, "A");
+		assertDecided("A B .*", true, "A", "B");
+		assertDecided("(A|B)* C .*", true, "A", "C");
+	}
+
+	@Test
+	public void testDead() {
+		assertDecided("A $ B", false, "A");
+		assertDecided("A B", false, "B");
+	}
+}
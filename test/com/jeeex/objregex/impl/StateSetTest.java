@@ -0,0 +1,51 @@
+package com.jeeex.objregex.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StateSetTest {
+
+	@Test
+	public void testAdd() {
+		StateSet set = new StateSet(4);
+		assertTrue(set.isEmpty());
+
+		assertTrue(set.add(3));
+		assertTrue(set.add(1));
+		assertFalse(set.add(3));
+
+		assertEquals(2, set.size());
+		assertEquals(3, set.get(0));
+		assertEquals(1, set.get(1));
+		assertTrue(set.contains(1));
+		assertFalse(set.contains(2));
+	}
+
+	@Test
+	public void testGrow() {
+		StateSet set = new StateSet(1);
+		for (int i = 0; i < 200; i += 2) {
+			assertTrue(set.add(i));
+		}
+		assertEquals(100, set.size());
+		assertTrue(set.contains(198));
+		assertFalse(set.contains(199));
+		assertFalse(set.contains(1000));
+	}
+
+	@Test
+	public void testClear() {
+		StateSet set = new StateSet(128);
+		set.add(5);
+		set.add(100);
+		set.clear();
+
+		assertTrue(set.isEmpty());
+		assertFalse(set.contains(5));
+		assertFalse(set.contains(100));
+		assertTrue(set.add(100));
+	}
+}
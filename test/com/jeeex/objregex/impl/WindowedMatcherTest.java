@@ -0,0 +1,230 @@
+package com.jeeex.objregex.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicates;
+import com.jeeex.objregex.ObjectPattern;
+import com.jeeex.objregex.TimestampExtractor;
+import com.jeeex.objregex.WindowedMatcher;
+
+public class WindowedMatcherTest {
+
+	/**
+	 * Times the i-th element of every input at {@code TIMES[i]}.
+	 */
+	private static final long[] TIMES = { 0, 1, 1, 3, 6, 10 };
+
+	/**
+	 * Stamps the elements with their position, so that the inputs can be
+	 * timed without wrapping their elements.
+	 */
+	private static final class Clock implements TimestampExtractor<Object> {
+		int position;
+
+		public long getTimestamp(Object element) {
+			return TIMES[position++];
+		}
+	}
+
+	@Test
+	public void testSameAsSubLists() {
+		for (String regex : MatchEngineTest.PATTERNS) {
+			if (regex.contains("^")) {
+				// sub lists would let "^" match at their beginning.
+				continue;
+			}
+			ObjectPattern<String> pattern = MatchEngineTest.compile(regex,
+					MatchEngine.SET_SIMULATION);
+			for (long window : new long[] { 0, 2, 5 }) {
+				Clock clock = new Clock();
+				WindowedMatcher<String> matcher = pattern.newWindowedMatcher(
+						clock, window);
+				for (List<String> input : MatchEngineTest.allInputs(
+						MatchEngineTest.ALPHABET, 5)) {
+					matcher.reset();
+					clock.position = 0;
+					for (int end = 1; end <= input.size(); end++) {
+						String message = regex + " " + window + " "
+								+ input.subList(0, end);
+						// the latest start of an occurrence in the window.
+						int expected = -1;
+						for (int start = 0; start < end; start++) {
+							if (TIMES[end - 1] - TIMES[start] <= window
+									&& pattern.match(input.subList(start, end))) {
+								expected = start;
+							}
+						}
+						assertEquals(message, expected >= 0, matcher
+								.feed(input.get(end - 1)));
+						if (expected >= 0) {
+							assertEquals(message, expected, matcher.start());
+							assertEquals(message, end, matcher.end());
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCountersSameAsUnrolled() {
+		for (String[] pair : CounterRegistersTest.EQUIVALENTS) {
+			ObjectPattern<String> counted = MatchEngineTest.compile(pair[0],
+					MatchEngine.SET_SIMULATION);
+			ObjectPattern<String> unrolled = MatchEngineTest.compile(pair[1],
+					MatchEngine.SET_SIMULATION);
+			for (long window : new long[] { 0, 2, 5 }) {
+				Clock countedClock = new Clock();
+				Clock unrolledClock = new Clock();
+				WindowedMatcher<String> countedMatcher = counted
+						.newWindowedMatcher(countedClock, window);
+				WindowedMatcher<String> unrolledMatcher = unrolled
+						.newWindowedMatcher(unrolledClock, window);
+				for (List<String> input : MatchEngineTest.allInputs(
+						MatchEngineTest.ALPHABET, TIMES.length)) {
+					countedMatcher.reset();
+					unrolledMatcher.reset();
+					countedClock.position = 0;
+					unrolledClock.position = 0;
+					for (int end = 1; end <= input.size(); end++) {
+						String message = pair[0] + " " + window + " "
+								+ input.subList(0, end);
+						boolean expected = unrolledMatcher.feed(input
+								.get(end - 1));
+						assertEquals(message, expected, countedMatcher
+								.feed(input.get(end - 1)));
+						if (expected) {
+							assertEquals(message, unrolledMatcher.start(),
+									countedMatcher.start());
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testLargeBounds() {
+		final long[] time = new long[1];
+		TimestampExtractor<String> timestamps = new TimestampExtractor<String>() {
+			public long getTimestamp(String element) {
+				return time[0];
+			}
+		};
+		ObjectPattern<String> pattern = MatchEngineTest.compile(
+				"A{20000} B", MatchEngine.SET_SIMULATION);
+		WindowedMatcher<String> wide = pattern.newWindowedMatcher(timestamps,
+				30000);
+		WindowedMatcher<String> narrow = pattern.newWindowedMatcher(
+				timestamps, 10000);
+		int matches = 0;
+		for (int i = 0; i < 100000; i++) {
+			time[0] = i;
+			String element = i % 50000 == 49999 ? "B" : "A";
+			assertFalse(narrow.feed(element));
+			if (wide.feed(element)) {
+				matches++;
+				assertEquals(i - 20000, wide.start());
+			}
+		}
+		assertEquals(2, matches);
+	}
+
+	@Test
+	public void testBeginningOfStream() {
+		WindowedMatcher<String> matcher = MatchEngineTest.compile("^A B",
+				MatchEngine.SET_SIMULATION).newWindowedMatcher(new Clock(), 10);
+		assertFalse(matcher.feed("A"));
+		assertTrue(matcher.feed("B"));
+		assertFalse(matcher.feed("A"));
+		assertFalse(matcher.feed("B"));
+	}
+
+	@Test
+	public void testLongStream() {
+		ObjectPatternImpl<String> pattern = (ObjectPatternImpl<String>) MatchEngineTest
+				.compile("A .* B .* C", MatchEngine.SET_SIMULATION);
+		final long[] time = new long[1];
+		WindowedMatcher<String> matcher = pattern.newWindowedMatcher(
+				new TimestampExtractor<String>() {
+					public long getTimestamp(String element) {
+						return time[0];
+					}
+				}, 30);
+		int matches = 0;
+		for (int i = 0; i < 100000; i++) {
+			time[0] = i;
+			String element = i % 40 == 0 ? "A" : i % 40 == 20 ? "B"
+					: i % 40 == 25 ? "C" : "D";
+			if (matcher.feed(element)) {
+				matches++;
+				assertEquals(i - 25, matcher.start());
+			}
+		}
+		// A and C are 25 apart; one occurrence per period.
+		assertEquals(100000 / 40, matches);
+		// each element was tested against each predicate at most once.
+		assertTrue(pattern.getPredicateCallCount() <= 3 * 100000);
+	}
+
+	@Test
+	public void testWindowExpires() {
+		final long[] time = new long[1];
+		WindowedMatcher<String> matcher = MatchEngineTest.compile("A .* B",
+				MatchEngine.SET_SIMULATION).newWindowedMatcher(
+				new TimestampExtractor<String>() {
+					public long getTimestamp(String element) {
+						return time[0];
+					}
+				}, 5);
+		matcher.feed("A");
+		time[0] = 3;
+		matcher.feed("A");
+		time[0] = 6;
+		assertTrue(matcher.feed("B"));
+		// the second A is still in the window.
+		assertEquals(1, matcher.start());
+		time[0] = 9;
+		assertFalse(matcher.feed("B"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDecreasingTime() {
+		final long[] time = { 5 };
+		WindowedMatcher<String> matcher = MatchEngineTest.compile("A",
+				MatchEngine.SET_SIMULATION).newWindowedMatcher(
+				new TimestampExtractor<String>() {
+					public long getTimestamp(String element) {
+						return time[0]--;
+					}
+				}, 5);
+		matcher.feed("A");
+		matcher.feed("A");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testNoMatch() {
+		WindowedMatcher<String> matcher = MatchEngineTest.compile("A",
+				MatchEngine.SET_SIMULATION).newWindowedMatcher(new Clock(), 5);
+		matcher.feed("B");
+		matcher.start();
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void testAssignment() {
+		ObjectPattern<String> pattern = MatchEngineTest.compile("A B",
+				MatchEngine.SET_SIMULATION);
+		WindowedMatcher<String> matcher = pattern.newWindowedMatcher(
+				new Clock(), 5);
+		matcher.feed("A");
+		pattern.set("B", Predicates.equalTo("C"));
+		matcher.feed("C");
+	}
+}